@@ -0,0 +1,417 @@
+package com.minidb;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+//Disk based B+tree mapping a column value to the row ids holding it.
+//Every node is one page of the index file, read and written through the buffer pool.
+//Page 0 is the header: magic(4) keyType(1) rootPageId(4)
+//
+//Entries are ordered by (key, rowId) so duplicate keys are allowed and every entry is unique,
+//which lets a delete remove exactly one row. Internal nodes keep the (key, rowId) of the first
+//entry of each child after the first one, child[i] holds the entries smaller than separator[i].
+//
+//Deletes don't merge nodes, an emptied leaf stays in the leaf chain until the index is rebuilt.
+public class BPlusTree {
+
+	private static final int MAGIC = 0xDB1D0001;
+	public static final int MAX_KEY_SIZE = 1000;
+
+	//node header: leaf(1) count(2) nextLeaf(4)
+	private static final int NODE_HEADER_SIZE = 7;
+	private static final int ROW_ID_SIZE = 6;
+
+	private static class Node {
+		int pageId;
+		boolean leaf;
+		int next = -1;
+		List<Object> keys = new ArrayList<>();
+		List<RowId> rowIds = new ArrayList<>();
+		List<Integer> children = new ArrayList<>();
+	}
+
+	private static class Split {
+		Object key;
+		RowId rowId;
+		int pageId;
+	}
+
+	private final File file;
+	private final DataType keyType;
+	private int rootPageId;
+
+
+
+
+	private BPlusTree(File file, DataType keyType, int rootPageId) {
+		this.file = file;
+		this.keyType = keyType;
+		this.rootPageId = rootPageId;
+	}
+
+	//Creates an empty tree, replacing the file if it exists
+	public static BPlusTree create(File file, DataType keyType) throws IOException {
+
+		BufferPool.discardFile(file);
+		if(file.exists() && !file.delete())
+			throw new IOException("Could not replace index file " + file.getPath());
+		if(!file.createNewFile())
+			throw new IOException("Could not create index file " + file.getPath());
+
+		int headerId = BufferPool.appendPage(file, new byte[Page.PAGE_SIZE]);
+		BufferPool.unpinPage(file, headerId, true);
+
+		BPlusTree tree = new BPlusTree(file, keyType, -1);
+		Node root = tree.newNode(true);
+		tree.writeNode(root);
+		tree.rootPageId = root.pageId;
+		tree.writeHeader();
+		return tree;
+	}
+
+	public static BPlusTree open(File file) throws IOException {
+
+		byte[] data = BufferPool.fetchPage(file, 0);
+		try {
+			ByteBuffer buffer = ByteBuffer.wrap(data);
+			if(buffer.getInt(0) != MAGIC)
+				throw new IOException(file.getPath() + " is not an index file");
+			DataType keyType = DataType.values()[buffer.get(4)];
+			return new BPlusTree(file, keyType, buffer.getInt(5));
+		}
+		finally {
+			BufferPool.unpinPage(file, 0, false);
+		}
+	}
+
+	private void writeHeader() throws IOException {
+
+		byte[] data = BufferPool.fetchPage(file, 0);
+		synchronized(data) {
+			ByteBuffer buffer = ByteBuffer.wrap(data);
+			buffer.putInt(0, MAGIC);
+			buffer.put(4, (byte) keyType.ordinal());
+			buffer.putInt(5, rootPageId);
+		}
+		BufferPool.unpinPage(file, 0, true);
+	}
+
+	public DataType getKeyType() {
+		return keyType;
+	}
+
+
+
+
+	//Converts a column value to the key stored in the tree
+	//(an Integer for INT, a String for TEXT, the Long key of the other types, see DataType).
+	//Throws IllegalArgumentException when the value isn't one of the key type
+	public Object toKey(String value) {
+		if(keyType == DataType.INT)
+			return Integer.parseInt(value.trim());
+		if(keyType != DataType.TEXT)
+			return keyType.key(value);
+		return value;
+	}
+
+	//The key stored for a typed value with the key given (see DataType.key()), like toKey()
+	public static Object toKey(DataType keyType, long key) {
+		return keyType == DataType.INT ? (Object) (int) key : (Object) key;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static int compareKeys(Object a, Object b) {
+		return ((Comparable<Object>) a).compareTo(b);
+	}
+
+	private static int compareEntries(Object keyA, RowId rowIdA, Object keyB, RowId rowIdB) {
+		int cmp = compareKeys(keyA, keyB);
+		return cmp != 0 ? cmp : rowIdA.compareTo(rowIdB);
+	}
+
+	private int keySize(Object key) {
+		if(keyType == DataType.INT)
+			return 4;
+		if(keyType != DataType.TEXT)
+			return 8;
+		return 2 + ((String) key).getBytes(StandardCharsets.UTF_8).length;
+	}
+
+
+
+
+	private Node newNode(boolean leaf) throws IOException {
+
+		Node node = new Node();
+		node.leaf = leaf;
+		node.pageId = BufferPool.appendPage(file, new byte[Page.PAGE_SIZE]);
+		BufferPool.unpinPage(file, node.pageId, true);
+		return node;
+	}
+
+	private Node readNode(int pageId) throws IOException {
+
+		byte[] data = BufferPool.fetchPage(file, pageId);
+		try {
+			ByteBuffer buffer = ByteBuffer.wrap(data);
+			Node node = new Node();
+			node.pageId = pageId;
+			node.leaf = buffer.get() == 1;
+			int count = buffer.getShort() & 0xFFFF;
+			node.next = buffer.getInt();
+
+			if(!node.leaf)
+				node.children.add(buffer.getInt());
+			for(int i=0;i<count;i++) {
+				node.keys.add(readKey(buffer));
+				node.rowIds.add(new RowId(buffer.getInt(), buffer.getShort() & 0xFFFF));
+				if(!node.leaf)
+					node.children.add(buffer.getInt());
+			}
+			return node;
+		}
+		finally {
+			BufferPool.unpinPage(file, pageId, false);
+		}
+	}
+
+	private void writeNode(Node node) throws IOException {
+
+		byte[] data = BufferPool.fetchPage(file, node.pageId);
+		//latched so the buffer pool doesn't write the page in the middle of the change
+		synchronized(data) {
+			Arrays.fill(data, (byte) 0);
+			ByteBuffer buffer = ByteBuffer.wrap(data);
+			buffer.put((byte) (node.leaf ? 1 : 0));
+			buffer.putShort((short) node.keys.size());
+			buffer.putInt(node.next);
+
+			if(!node.leaf)
+				buffer.putInt(node.children.get(0));
+			for(int i=0;i<node.keys.size();i++) {
+				writeKey(buffer, node.keys.get(i));
+				buffer.putInt(node.rowIds.get(i).getPageId());
+				buffer.putShort((short) node.rowIds.get(i).getSlot());
+				if(!node.leaf)
+					buffer.putInt(node.children.get(i+1));
+			}
+		}
+		BufferPool.unpinPage(file, node.pageId, true);
+	}
+
+	private Object readKey(ByteBuffer buffer) {
+		if(keyType == DataType.INT)
+			return buffer.getInt();
+		if(keyType != DataType.TEXT)
+			return buffer.getLong();
+		byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private void writeKey(ByteBuffer buffer, Object key) {
+		if(keyType == DataType.INT)
+			buffer.putInt((Integer) key);
+		else if(keyType != DataType.TEXT)
+			buffer.putLong((Long) key);
+		else {
+			byte[] bytes = ((String) key).getBytes(StandardCharsets.UTF_8);
+			buffer.putShort((short) bytes.length);
+			buffer.put(bytes);
+		}
+	}
+
+	private int nodeSize(Node node) {
+		int size = NODE_HEADER_SIZE + (node.leaf ? 0 : 4);
+		for(Object key: node.keys)
+			size += keySize(key) + ROW_ID_SIZE + (node.leaf ? 0 : 4);
+		return size;
+	}
+
+
+
+
+	//Position of the first entry >= (key, rowId) in the node
+	private static int lowerBound(Node node, Object key, RowId rowId) {
+		int lo = 0, hi = node.keys.size();
+		while(lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if(compareEntries(node.keys.get(mid), node.rowIds.get(mid), key, rowId) < 0)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	//Child of an internal node that can hold (key, rowId)
+	private static int childIndex(Node node, Object key, RowId rowId) {
+		int lo = 0, hi = node.keys.size();
+		while(lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if(compareEntries(node.keys.get(mid), node.rowIds.get(mid), key, rowId) <= 0)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+
+
+
+	public void insert(Object key, RowId rowId) throws IOException {
+
+		if(keySize(key) > MAX_KEY_SIZE)
+			throw new IllegalArgumentException("Value is too long to be indexed (max " + MAX_KEY_SIZE + " bytes)");
+
+		Split split = insert(rootPageId, key, rowId);
+		if(split != null) {
+			Node root = newNode(false);
+			root.children.add(rootPageId);
+			root.keys.add(split.key);
+			root.rowIds.add(split.rowId);
+			root.children.add(split.pageId);
+			writeNode(root);
+			rootPageId = root.pageId;
+			writeHeader();
+		}
+	}
+
+	private Split insert(int pageId, Object key, RowId rowId) throws IOException {
+
+		Node node = readNode(pageId);
+		if(node.leaf) {
+			int pos = lowerBound(node, key, rowId);
+			if(pos < node.keys.size() && compareEntries(node.keys.get(pos), node.rowIds.get(pos), key, rowId) == 0)
+				return null;
+			node.keys.add(pos, key);
+			node.rowIds.add(pos, rowId);
+		}
+		else {
+			int child = childIndex(node, key, rowId);
+			Split split = insert(node.children.get(child), key, rowId);
+			if(split == null)
+				return null;
+			node.keys.add(child, split.key);
+			node.rowIds.add(child, split.rowId);
+			node.children.add(child + 1, split.pageId);
+		}
+
+		if(nodeSize(node) <= Page.PAGE_SIZE) {
+			writeNode(node);
+			return null;
+		}
+		return splitNode(node);
+	}
+
+	private Split splitNode(Node node) throws IOException {
+
+		Node right = newNode(node.leaf);
+		int mid = node.keys.size() / 2;
+		Split split = new Split();
+		split.pageId = right.pageId;
+
+		if(node.leaf) {
+			right.keys.addAll(node.keys.subList(mid, node.keys.size()));
+			right.rowIds.addAll(node.rowIds.subList(mid, node.rowIds.size()));
+			split.key = right.keys.get(0);
+			split.rowId = right.rowIds.get(0);
+			right.next = node.next;
+			node.next = right.pageId;
+		}
+		else {
+			//the middle separator moves up to the parent
+			split.key = node.keys.get(mid);
+			split.rowId = node.rowIds.get(mid);
+			right.keys.addAll(node.keys.subList(mid + 1, node.keys.size()));
+			right.rowIds.addAll(node.rowIds.subList(mid + 1, node.rowIds.size()));
+			right.children.addAll(node.children.subList(mid + 1, node.children.size()));
+			node.children.subList(mid + 1, node.children.size()).clear();
+		}
+		node.keys.subList(mid, node.keys.size()).clear();
+		node.rowIds.subList(mid, node.rowIds.size()).clear();
+
+		writeNode(node);
+		writeNode(right);
+		return split;
+	}
+
+
+
+
+	//Removes the entry, returns false if it wasn't in the tree
+	public boolean delete(Object key, RowId rowId) throws IOException {
+
+		Node node = findLeaf(key, rowId);
+		int pos = lowerBound(node, key, rowId);
+		if(pos < node.keys.size() && compareEntries(node.keys.get(pos), node.rowIds.get(pos), key, rowId) == 0) {
+			node.keys.remove(pos);
+			node.rowIds.remove(pos);
+			writeNode(node);
+			return true;
+		}
+		return false;
+	}
+
+	private Node findLeaf(Object key, RowId rowId) throws IOException {
+
+		Node node = readNode(rootPageId);
+		while(!node.leaf)
+			node = readNode(node.children.get(childIndex(node, key, rowId)));
+		return node;
+	}
+
+	private Node firstLeaf() throws IOException {
+
+		Node node = readNode(rootPageId);
+		while(!node.leaf)
+			node = readNode(node.children.get(0));
+		return node;
+	}
+
+
+
+
+	public List<RowId> search(Object key) throws IOException {
+		return range(key, true, key, true);
+	}
+
+	//Row ids of the keys between low and high in key order, a null bound is unbounded
+	public List<RowId> range(Object low, boolean lowInclusive, Object high, boolean highInclusive) throws IOException {
+
+		List<RowId> result = new ArrayList<>();
+		Node node;
+		int pos;
+		if(low == null) {
+			node = firstLeaf();
+			pos = 0;
+		}
+		else {
+			RowId bound = lowInclusive ? RowId.MIN : RowId.MAX;
+			node = findLeaf(low, bound);
+			pos = lowerBound(node, low, bound);
+		}
+
+		while(true) {
+			for(;pos<node.keys.size();pos++) {
+				if(high != null) {
+					int cmp = compareKeys(node.keys.get(pos), high);
+					if(cmp > 0 || (cmp == 0 && !highInclusive))
+						return result;
+				}
+				result.add(node.rowIds.get(pos));
+			}
+			if(node.next == -1)
+				return result;
+			node = readNode(node.next);
+			pos = 0;
+		}
+	}
+
+}
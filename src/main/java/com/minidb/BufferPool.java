@@ -0,0 +1,626 @@
+package com.minidb;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//Caches the pages of the data files in memory.
+//A page is pinned while it is used and can't be evicted until it is unpinned.
+//When the pool is full the clock algorithm picks an unpinned page to evict,
+//dirty pages are written back to the file before being evicted.
+//A table page is only written once the write ahead log records up to its LSN are on the disk.
+//
+//The bytes of a pinned page are shared: the table locks (see LockManager) keep readers and writers
+//of a table apart, and a thread changing a page holds the monitor of its byte array, the page latch,
+//for the time of the change. The latch is only held around the change itself, or the copy of the
+//page the pool writes back (see writeFrame), never while calling the buffer pool or the log, so it
+//can't deadlock with them.
+//
+//The pool lock only guards the frames and the page table. A page missing from the pool is read
+//from its file once the lock is released, into a frame reserved for it (see fetchPage), so a
+//statement waiting for the disk doesn't stop the others from finding their pages in the pool.
+//Dirty pages are written back the same way, once the log is flushed up to their LSN, the page
+//pinned meanwhile so it isn't evicted before it is written.
+//No file is read, written, synced or closed and the log isn't flushed while the pool lock is held.
+//Reads, writes, syncs and the close of the same file take turns on its open file.
+//
+//Scans don't have to go through the frames: a page the pool doesn't hold is read in place from
+//a read only mapping of the file (see mappedPage), so a big scan neither copies its pages nor
+//evicts the pages other statements use. -Dminidb.mmap=false turns it off.
+//
+//The size of the pool is set in pages with -Dminidb.buffer.pages (default 256 = 1 MB)
+public class BufferPool {
+
+	private static final int DEFAULT_CAPACITY = 256;
+
+	private static class Frame {
+		String path;
+		int pageId;
+		byte[] data;
+		int pinCount;
+		boolean dirty;
+		boolean referenced;
+		//set while the page is read from the file, outside the pool lock, see fetchPage()
+		boolean loading;
+		boolean failed;
+	}
+
+	private static Frame[] frames = new Frame[Integer.getInteger("minidb.buffer.pages", DEFAULT_CAPACITY)];
+	private static int clockHand = 0;
+	private static final Map<String, Frame> pageTable = new HashMap<>();
+	private static final Map<String, Integer> pageCounts = new HashMap<>();
+	private static final Map<String, RandomAccessFile> openFiles = new HashMap<>();
+
+	private static final boolean MAPPED_READS = !"false".equalsIgnoreCase(System.getProperty("minidb.mmap"));
+	//pages per mapping, a mapping can't pass 2 GB
+	private static final int SEGMENT_PAGES = 1 << 16;
+	private static final Map<String, MappedFile> mappedFiles = new HashMap<>();
+	//bumped before a page is written to its file, see mappedPage()
+	private static volatile long writeStamp = 0;
+
+	private static long hits = 0;
+	private static long misses = 0;
+	private static long evictions = 0;
+	private static long writes = 0;
+	private static long mappedReads = 0;
+
+	//Read only mapping of a data file, one buffer per segment of SEGMENT_PAGES pages
+	private static class MappedFile {
+
+		final FileChannel channel;
+		final List<MappedByteBuffer> segments = new ArrayList<>();
+
+		MappedFile(File file) throws IOException {
+			channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		}
+
+		//The page in place, null when it is past the end of the file
+		ByteBuffer page(int pageId) throws IOException {
+
+			int segment = pageId / SEGMENT_PAGES;
+			int start = (pageId % SEGMENT_PAGES) * Page.PAGE_SIZE;
+			MappedByteBuffer mapped = segment < segments.size() ? segments.get(segment) : null;
+			if(mapped == null || mapped.capacity() < start + Page.PAGE_SIZE) {
+				//not mapped yet, or the file grew since
+				long position = (long) segment * SEGMENT_PAGES * Page.PAGE_SIZE;
+				long size = Math.min(channel.size() - position, (long) SEGMENT_PAGES * Page.PAGE_SIZE);
+				if(size < start + Page.PAGE_SIZE)
+					return null;
+				mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+				while(segments.size() <= segment)
+					segments.add(null);
+				segments.set(segment, mapped);
+			}
+			ByteBuffer page = mapped.duplicate();
+			page.position(start);
+			page.limit(start + Page.PAGE_SIZE);
+			return page.slice();
+		}
+
+		void close() {
+			try {
+				channel.close();
+			}
+			catch(IOException e) {
+				System.err.println(Color.RED + "Error closing a mapped file: " + e.getMessage() + Color.RESET);
+			}
+		}
+	}
+
+
+
+
+	private static String key(String path, int pageId) {
+		return path + "#" + pageId;
+	}
+
+	private static RandomAccessFile open(String path) throws IOException {
+		RandomAccessFile file = openFiles.get(path);
+		if(file == null) {
+			file = new RandomAccessFile(path, "rw");
+			openFiles.put(path, file);
+		}
+		return file;
+	}
+
+
+
+
+	//Number of pages of the file including the new pages not written yet
+	public static synchronized int getPageCount(File file) throws IOException {
+
+		String path = file.getPath();
+		Integer count = pageCounts.get(path);
+		if(count == null) {
+			count = (int) (file.length() / Page.PAGE_SIZE);
+			pageCounts.put(path, count);
+		}
+		return count;
+	}
+
+
+
+
+	//Returns the bytes of the page and pins it, the caller has to unpin it when done.
+	//A missing page gets its frame under the pool lock and is read into it once the lock is released,
+	//the threads fetching the page meanwhile wait for that frame to be loaded
+	public static byte[] fetchPage(File file, int pageId) throws IOException {
+
+		String path = file.getPath();
+		Frame frame;
+		RandomAccessFile raf;
+		while(true) {
+			Frame victim;
+			synchronized(BufferPool.class) {
+				frame = pageTable.get(key(path, pageId));
+				if(frame != null) {
+					hits++;
+					frame.pinCount++;
+					frame.referenced = true;
+					raf = null;
+					break;
+				}
+				if(pageId < 0 || pageId >= getPageCount(file))
+					throw new IOException("Page " + pageId + " does not exist in " + path);
+				victim = dirtyVictim();
+				if(victim == null) {
+					misses++;
+					raf = open(path);
+					frame = allocateFrame(path, pageId, new byte[Page.PAGE_SIZE]);
+					frame.loading = true;
+					break;
+				}
+			}
+			writeBack(Collections.singletonList(victim));
+		}
+
+		if(raf == null) {
+			awaitLoad(frame);
+			return frame.data;
+		}
+		try {
+			synchronized(raf) {
+				raf.seek((long) pageId * Page.PAGE_SIZE);
+				raf.readFully(frame.data);
+			}
+		}
+		catch(IOException e) {
+			synchronized(BufferPool.class) {
+				dropFrame(frame);
+			}
+			loaded(frame, false);
+			throw e;
+		}
+		loaded(frame, true);
+		return frame.data;
+	}
+
+	//Ends the load of a frame and wakes up the threads waiting for it
+	private static void loaded(Frame frame, boolean ok) {
+		synchronized(frame) {
+			frame.loading = false;
+			frame.failed = !ok;
+			frame.notifyAll();
+		}
+	}
+
+	//Waits until the page of a frame, pinned by the caller, is read. A frame that failed to load is
+	//already out of the pool, so there is nothing to unpin
+	private static void awaitLoad(Frame frame) throws IOException {
+
+		boolean interrupted = false;
+		synchronized(frame) {
+			while(frame.loading) {
+				try {
+					frame.wait();
+				}
+				catch(InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		if(interrupted)
+			Thread.currentThread().interrupt();
+		if(frame.failed)
+			throw new IOException("Page " + frame.pageId + " of " + frame.path + " could not be read");
+	}
+
+
+
+
+	//Adds a new page at the end of the file, the page is returned pinned and dirty
+	public static int appendPage(File file, byte[] data) throws IOException {
+
+		String path = file.getPath();
+		while(true) {
+			Frame victim;
+			synchronized(BufferPool.class) {
+				victim = dirtyVictim();
+				if(victim == null) {
+					int pageId = getPageCount(file);
+					Frame frame = allocateFrame(path, pageId, data);
+					frame.dirty = true;
+					pageCounts.put(path, pageId + 1);
+					return pageId;
+				}
+			}
+			writeBack(Collections.singletonList(victim));
+		}
+	}
+
+
+
+
+	//The page read in place from the mapped file, for scans. Null when the pool holds the page, whose
+	//bytes there may be newer than the file, or the page isn't in the file yet: the caller then
+	//fetches it. The bytes change if a page is written back while they are read, so the caller
+	//reads getWriteStamp() before this call and reads the page again if it changed once done
+	public static synchronized ByteBuffer mappedPage(File file, int pageId) throws IOException {
+
+		if(!MAPPED_READS)
+			return null;
+		String path = file.getPath();
+		if(pageTable.containsKey(key(path, pageId)))
+			return null;
+		MappedFile mapped = mappedFiles.get(path);
+		if(mapped == null) {
+			if(!file.exists())
+				return null;
+			mapped = new MappedFile(file);
+			mappedFiles.put(path, mapped);
+		}
+		ByteBuffer page = mapped.page(pageId);
+		if(page != null)
+			mappedReads++;
+		return page;
+	}
+
+	public static long getWriteStamp() {
+		return writeStamp;
+	}
+
+
+
+
+	public static synchronized void unpinPage(File file, int pageId, boolean dirty) {
+
+		Frame frame = pageTable.get(key(file.getPath(), pageId));
+		if(frame == null || frame.pinCount == 0)
+			throw new IllegalStateException("Page " + pageId + " of " + file.getPath() + " is not pinned");
+		frame.pinCount--;
+		if(dirty)
+			frame.dirty = true;
+	}
+
+
+
+
+	//A dirty page is written back before its frame is taken, with the pool lock released: the log
+	//flush and the write of an eviction don't hold up the other statements. Under the pool lock,
+	//dirtyVictim() returns the dirty page the clock picks, pinned for the caller to write back,
+	//or null when the frame it picks is free or clean and allocateFrame() takes it
+	private static Frame dirtyVictim() {
+
+		int slot = findVictim();
+		Frame frame = frames[slot];
+		if(frame == null || !frame.dirty) {
+			//the hand stays on the frame for allocateFrame()
+			clockHand = slot;
+			return null;
+		}
+		frame.pinCount++;
+		return frame;
+	}
+
+	private static Frame allocateFrame(String path, int pageId, byte[] data) {
+
+		int slot = findVictim();
+		Frame frame = frames[slot];
+		if(frame != null) {
+			pageTable.remove(key(frame.path, frame.pageId));
+			evictions++;
+		}
+
+		frame = new Frame();
+		frame.path = path;
+		frame.pageId = pageId;
+		frame.data = data;
+		frame.pinCount = 1;
+		frame.referenced = true;
+		frames[slot] = frame;
+		pageTable.put(key(path, pageId), frame);
+		return frame;
+	}
+
+	//Takes a frame out of the pool, unless it was already replaced
+	private static void dropFrame(Frame frame) {
+
+		if(pageTable.get(key(frame.path, frame.pageId)) == frame)
+			pageTable.remove(key(frame.path, frame.pageId));
+		for(int i=0;i<frames.length;i++) {
+			if(frames[i] == frame)
+				frames[i] = null;
+		}
+	}
+
+	//Clock: sweep the frames, clearing the referenced bit, until an unpinned and unreferenced one is found
+	private static int findVictim() {
+
+		for(int i=0;i<frames.length*2;i++) {
+			int slot = clockHand;
+			clockHand = (clockHand + 1) % frames.length;
+
+			Frame frame = frames[slot];
+			if(frame == null)
+				return slot;
+			if(frame.pinCount > 0)
+				continue;
+			if(frame.referenced)
+				frame.referenced = false;
+			else
+				return slot;
+		}
+		throw new IllegalStateException("Buffer pool is full, all " + frames.length + " pages are pinned");
+	}
+
+	//Writes back the pages pinned by the caller and unpins them, the pool lock must not be held
+	private static void writeBack(List<Frame> dirty) throws IOException {
+
+		try {
+			for(Frame frame: dirty)
+				writeFrame(frame);
+		}
+		finally {
+			synchronized(BufferPool.class) {
+				for(Frame frame: dirty)
+					frame.pinCount--;
+			}
+		}
+	}
+
+	//The page is copied under its latch, so a change made at the same time by a statement on another
+	//thread is either fully in the written page or not at all. The log is then flushed up to the LSN
+	//of the copy and the copy written, holding neither the latch nor the pool lock. A change made
+	//after the copy marks the page dirty again when its statement unpins it
+	private static void writeFrame(Frame frame) throws IOException {
+
+		RandomAccessFile raf;
+		synchronized(BufferPool.class) {
+			frame.dirty = false;
+			raf = open(frame.path);
+		}
+		byte[] data;
+		synchronized(frame.data) {
+			data = frame.data.clone();
+		}
+
+		try {
+			if(Page.isPage(data))
+				WriteAheadLog.flushUpTo(new Page(data).getLsn());
+			writeStamp++;
+			synchronized(raf) {
+				raf.seek((long) frame.pageId * Page.PAGE_SIZE);
+				raf.write(data);
+			}
+		}
+		catch(IOException e) {
+			synchronized(BufferPool.class) {
+				frame.dirty = true;
+			}
+			throw e;
+		}
+		synchronized(BufferPool.class) {
+			writes++;
+		}
+	}
+
+	//Under the pool lock: pins the dirty pages of the file, of every file when path is null
+	private static List<Frame> pinDirty(String path) {
+
+		List<Frame> dirty = new ArrayList<>();
+		for(Frame frame: frames) {
+			if(frame != null && frame.dirty && (path == null || frame.path.equals(path))) {
+				frame.pinCount++;
+				dirty.add(frame);
+			}
+		}
+		return dirty;
+	}
+
+
+
+
+	//Writes back the dirty pages of the file
+	public static void flushFile(File file) throws IOException {
+
+		List<Frame> dirty;
+		synchronized(BufferPool.class) {
+			dirty = pinDirty(file.getPath());
+		}
+		writeBack(dirty);
+	}
+
+	public static void flushAll() throws IOException {
+
+		List<Frame> dirty;
+		synchronized(BufferPool.class) {
+			dirty = pinDirty(null);
+		}
+		writeBack(dirty);
+	}
+
+
+
+
+	//Forces the data written to the open files to the disk, used by checkpoints. The files are synced
+	//with the pool lock released, a file closed meanwhile by discardFile() has nothing left to sync
+	public static void sync() throws IOException {
+
+		List<RandomAccessFile> files;
+		synchronized(BufferPool.class) {
+			files = new ArrayList<>(openFiles.values());
+		}
+		for(RandomAccessFile raf: files) {
+			synchronized(raf) {
+				if(raf.getChannel().isOpen())
+					raf.getFD().sync();
+			}
+		}
+	}
+
+
+
+
+	//Forgets the cached pages of a file without writing them, used when the file is deleted or rewritten
+	public static void discardFile(File file) {
+
+		String path = file.getPath();
+		RandomAccessFile raf;
+		synchronized(BufferPool.class) {
+			for(int i=0;i<frames.length;i++) {
+				if(frames[i] != null && frames[i].path.equals(path)) {
+					pageTable.remove(key(path, frames[i].pageId));
+					frames[i] = null;
+				}
+			}
+			pageCounts.remove(path);
+			MappedFile mapped = mappedFiles.remove(path);
+			if(mapped != null)
+				mapped.close();
+			raf = openFiles.remove(path);
+		}
+		if(raf != null)
+			closeFile(raf, path);
+	}
+
+
+
+
+	//Flushes everything and closes the files, used on exit. The pages are written with the pool lock
+	//released like any other write back, see writeFrame()
+	public static void close() {
+
+		try {
+			flushAll();
+		}
+		catch(IOException e) {
+			System.err.println(Color.RED + "Error flushing the buffer pool: " + e.getMessage() + Color.RESET);
+		}
+
+		Map<String, RandomAccessFile> files;
+		synchronized(BufferPool.class) {
+			files = new HashMap<>(openFiles);
+			openFiles.clear();
+			for(MappedFile mapped: mappedFiles.values())
+				mapped.close();
+			mappedFiles.clear();
+		}
+		for(Map.Entry<String, RandomAccessFile> file: files.entrySet())
+			closeFile(file.getValue(), file.getKey());
+	}
+
+	//Closes a file once the reads, writes and syncs running on it are done
+	private static void closeFile(RandomAccessFile raf, String path) {
+		synchronized(raf) {
+			try {
+				raf.close();
+			}
+			catch(IOException e) {
+				System.err.println(Color.RED + "Error closing " + path + ": " + e.getMessage() + Color.RESET);
+			}
+		}
+	}
+
+
+
+
+	//Resizes the pool, the cached pages are written back and dropped. They are written with the pool
+	//lock released, so the pages are checked again once it is taken back: a page changed meanwhile
+	//is written in another round before the frames are dropped
+	public static void setCapacity(int pages) throws IOException {
+
+		if(pages < 1)
+			throw new IllegalArgumentException("Buffer pool needs at least one page");
+		while(true) {
+			synchronized(BufferPool.class) {
+				boolean dirty = false;
+				for(Frame frame: frames) {
+					if(frame == null)
+						continue;
+					if(frame.pinCount > 0)
+						throw new IllegalStateException("Can't resize the buffer pool while pages are pinned");
+					dirty |= frame.dirty;
+				}
+				if(!dirty) {
+					frames = new Frame[pages];
+					pageTable.clear();
+					clockHand = 0;
+					return;
+				}
+			}
+			flushAll();
+		}
+	}
+
+	public static synchronized int getCapacity() {
+		return frames.length;
+	}
+
+	public static synchronized long getHits() {
+		return hits;
+	}
+
+	public static synchronized long getMisses() {
+		return misses;
+	}
+
+
+
+
+	//Counters shown by SHOW BUFFER POOL
+	public static synchronized List<List<String>> getStats() {
+
+		int cached = 0, dirty = 0, pinned = 0;
+		for(Frame frame: frames) {
+			if(frame == null) continue;
+			cached++;
+			if(frame.dirty) dirty++;
+			if(frame.pinCount > 0) pinned++;
+		}
+		long total = hits + misses;
+		String hitRatio = total == 0 ? "-" : String.format("%.2f%%", hits * 100.0 / total);
+
+		List<List<String>> stats = new ArrayList<>();
+		stats.add(stat("capacity (pages)", frames.length));
+		stats.add(stat("cached pages", cached));
+		stats.add(stat("dirty pages", dirty));
+		stats.add(stat("pinned pages", pinned));
+		stats.add(stat("hits", hits));
+		stats.add(stat("misses", misses));
+		List<String> ratio = new ArrayList<>();
+		ratio.add("hit ratio");
+		ratio.add(hitRatio);
+		stats.add(ratio);
+		stats.add(stat("evictions", evictions));
+		stats.add(stat("page writes", writes));
+		stats.add(stat("mapped page reads", mappedReads));
+		return stats;
+	}
+
+	private static List<String> stat(String name, long value) {
+		List<String> row = new ArrayList<>();
+		row.add(name);
+		row.add(Long.toString(value));
+		return row;
+	}
+
+}
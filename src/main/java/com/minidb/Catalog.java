@@ -0,0 +1,130 @@
+package com.minidb;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+//In-memory copy of the schemas stored in data/catalog/*.meta.
+//The .meta files are read once at startup, afterwards statements only look up the map.
+//Schemas are immutable so any number of threads can read them, CREATE and DROP replace
+//a whole entry at once.
+public class Catalog {
+
+	private static final String catalog_dir = "data" + File.separator + "catalog";
+
+	private static final ConcurrentMap<String, TableSchema> schemas = new ConcurrentHashMap<>();
+	private static volatile boolean loaded = false;
+
+
+
+
+	//Reads every .meta file of the catalog folder
+	public static synchronized void load() {
+
+		schemas.clear();
+		File[] files = new File(catalog_dir).listFiles();
+		if(files != null) {
+			for(File file: files) {
+				if(file.getName().endsWith(".meta")) {
+					String tableName = file.getName().substring(0, file.getName().length() - ".meta".length());
+					TableSchema schema = readSchema(tableName, file);
+					if(schema != null)
+						schemas.put(tableName, schema);
+				}
+			}
+		}
+		loaded = true;
+	}
+
+	private static void ensureLoaded() {
+		if(!loaded)
+			load();
+	}
+
+
+
+
+	private static TableSchema readSchema(String tableName, File metaFile) {
+
+		List<Column> columns = new ArrayList<>();
+		List<IndexInfo> indexes = new ArrayList<>();
+		boolean columnar = false;
+		try(Scanner scanner = new Scanner(metaFile)) {
+
+			while(scanner.hasNextLine()) {
+				String line = scanner.nextLine().trim();
+				if(line.isEmpty()) continue;
+
+				String[] parts = line.split("\\s+");
+				if(parts.length == 3 && parts[0].equals("INDEX"))
+					indexes.add(new IndexInfo(parts[1], tableName, parts[2]));  //INDEX indexName columnName
+				else if(parts.length == 2 && parts[0].equals("STORAGE") && parts[1].equals("COLUMNAR"))
+					columnar = true;
+				else if(parts.length == 2 || isPrimaryKey(parts)) {
+					DataType type = DataType.fromName(parts[1]);
+					if(type == null) {
+						System.err.println(Color.RED + "Unknown type '" + parts[1] + "' of column '" + parts[0] + "' in table '" + tableName + "', reading it as TEXT" + Color.RESET);
+						type = DataType.TEXT;
+					}
+					columns.add(new Column(parts[0], type, columns.size(), parts.length == 4));  //columnName and columnType [PRIMARY KEY]
+				}
+			}
+		}
+		catch(Exception e) {
+			System.err.println(Color.RED + "\nError reading the table schema of '" + tableName + "': " + e.getMessage() + Color.RESET);
+			return null;
+		}
+		return new TableSchema(tableName, columns, indexes, columnar);
+	}
+
+
+
+
+	private static boolean isPrimaryKey(String[] parts) {
+		return parts.length == 4 && parts[2].equalsIgnoreCase("PRIMARY") && parts[3].equalsIgnoreCase("KEY");
+	}
+
+
+
+
+	//Schema of the table, null if it doesn't exist
+	public static TableSchema get(String tableName) {
+		ensureLoaded();
+		return schemas.get(tableName);
+	}
+
+	public static void put(TableSchema schema) {
+		ensureLoaded();
+		schemas.put(schema.getTableName(), schema);
+	}
+
+	public static void remove(String tableName) {
+		ensureLoaded();
+		schemas.remove(tableName);
+	}
+
+	//Looks up an index by name in every table, null if there is no such index
+	public static IndexInfo findIndex(String indexName) {
+		ensureLoaded();
+		for(TableSchema schema: schemas.values()) {
+			for(IndexInfo index: schema.getIndexes()) {
+				if(index.getName().equals(indexName))
+					return index;
+			}
+		}
+		return null;
+	}
+
+	//Table names in alphabetical order
+	public static List<String> getTableNames() {
+		ensureLoaded();
+		List<String> names = new ArrayList<>(schemas.keySet());
+		Collections.sort(names);
+		return names;
+	}
+
+}
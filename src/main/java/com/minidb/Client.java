@@ -0,0 +1,287 @@
+package com.minidb;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+//A connection to a Server, with the same calls as an embedded Connection.
+//The rows of a query are read from the server a batch at a time as ResultSet.next() needs them.
+//A client runs one statement at a time: starting a statement reads and drops what is left of the
+//previous ResultSet. A client isn't thread safe, share clients between threads with a ClientPool.
+public class Client implements AutoCloseable {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final Socket socket;
+	private final DataInputStream in;
+	private final DataOutputStream out;
+	//rows of the last query not read yet
+	private RemoteRows openRows;
+	private boolean broken, closed;
+
+	public Client(String host, int port) throws DatabaseException {
+
+		try {
+			socket = new Socket(host, port);
+			socket.setTcpNoDelay(true);
+			in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+			out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE));
+		}
+		catch(IOException e) {
+			throw new DatabaseException("Error: Can't connect to " + host + ":" + port + ": " + e.getMessage(), e);
+		}
+	}
+
+
+
+
+	public ResultSet executeQuery(String sql, Object... params) throws DatabaseException {
+
+		Result result = request(new Protocol.FrameWriter(Protocol.QUERY).writeString(sql).writeParams(Arrays.asList(params)));
+		if(!result.isQuery())
+			throw new DatabaseException("Error: Statement doesn't return rows, use executeUpdate()");
+		return new ResultSet(result);
+	}
+
+	public long executeUpdate(String sql, Object... params) throws DatabaseException {
+
+		Result result = request(new Protocol.FrameWriter(Protocol.QUERY).writeString(sql).writeParams(Arrays.asList(params)));
+		if(result.isQuery()) {
+			result.close();
+			throw new DatabaseException("Error: Statement returns rows, use executeQuery()");
+		}
+		return result.getUpdateCount();
+	}
+
+	//Parses the statement once on the server, to run it many times with different values
+	public Prepared prepare(String sql) throws DatabaseException {
+
+		Protocol.Frame frame = send(new Protocol.FrameWriter(Protocol.PREPARE).writeString(sql));
+		try {
+			if(frame.getType() != Protocol.PREPARED)
+				throw unexpected(frame);
+			return new Prepared(frame.readInt(), frame.readInt());
+		}
+		catch(IOException e) {
+			throw lost(e);
+		}
+	}
+
+	//False once the connection failed or was closed, a ClientPool drops such clients
+	public boolean isUsable() {
+		return !broken && !closed;
+	}
+
+	@Override
+	public void close() {
+
+		if(closed)
+			return;
+		closed = true;
+		try {
+			if(!broken) {
+				finishRows();
+				new Protocol.FrameWriter(Protocol.QUIT).write(out);
+				out.flush();
+			}
+		}
+		catch(IOException | DatabaseException e) {
+			//closing anyway
+		}
+		try {
+			socket.close();
+		}
+		catch(IOException e) {
+			//nothing left to do
+		}
+	}
+
+
+
+
+	//A statement prepared on the server
+	public class Prepared implements AutoCloseable {
+
+		private final int id;
+		private final int parameterCount;
+
+		Prepared(int id, int parameterCount) {
+			this.id = id;
+			this.parameterCount = parameterCount;
+		}
+
+		public int getParameterCount() {
+			return parameterCount;
+		}
+
+		public ResultSet executeQuery(Object... params) throws DatabaseException {
+
+			Result result = request(new Protocol.FrameWriter(Protocol.EXECUTE).writeInt(id).writeParams(Arrays.asList(params)));
+			if(!result.isQuery())
+				throw new DatabaseException("Error: Statement doesn't return rows, use executeUpdate()");
+			return new ResultSet(result);
+		}
+
+		public long executeUpdate(Object... params) throws DatabaseException {
+
+			Result result = request(new Protocol.FrameWriter(Protocol.EXECUTE).writeInt(id).writeParams(Arrays.asList(params)));
+			if(result.isQuery()) {
+				result.close();
+				throw new DatabaseException("Error: Statement returns rows, use executeQuery()");
+			}
+			return result.getUpdateCount();
+		}
+
+		@Override
+		public void close() throws DatabaseException {
+			if(isUsable())
+				send(new Protocol.FrameWriter(Protocol.CLOSE_STATEMENT).writeInt(id));
+		}
+	}
+
+
+
+
+	//Sends a statement and reads the start of its response
+	private Result request(Protocol.FrameWriter request) throws DatabaseException {
+
+		Protocol.Frame frame = send(request);
+		try {
+			if(frame.getType() == Protocol.UPDATE_COUNT)
+				return Result.update(frame.readLong(), frame.readString());
+			if(frame.getType() != Protocol.ROW_HEADER)
+				throw unexpected(frame);
+
+			int count = frame.readInt();
+			List<String> columns = new ArrayList<>(count);
+			List<DataType> types = new ArrayList<>(count);
+			for(int i=0;i<count;i++) {
+				columns.add(frame.readString());
+				types.add(DataType.valueOf(frame.readString()));
+			}
+			openRows = new RemoteRows(count);
+			return Result.query(columns, types, openRows, "No rows found!");
+		}
+		catch(IOException | IllegalArgumentException e) {
+			throw lost(e);
+		}
+	}
+
+	//Writes the request and reads the first frame of the response, an ERROR frame is thrown
+	private Protocol.Frame send(Protocol.FrameWriter request) throws DatabaseException {
+
+		if(closed)
+			throw new DatabaseException("Error: Client is closed");
+		if(broken)
+			throw new DatabaseException("Error: Connection to the server was lost");
+		finishRows();
+		try {
+			request.write(out);
+			out.flush();
+			Protocol.Frame frame = Protocol.read(in);
+			if(frame == null)
+				throw new IOException("Server closed the connection");
+			if(frame.getType() == Protocol.ERROR)
+				throw new DatabaseException(frame.readString());
+			return frame;
+		}
+		catch(IOException e) {
+			throw lost(e);
+		}
+	}
+
+	//Reads what is left of the rows of the last query
+	private void finishRows() throws DatabaseException {
+
+		if(openRows == null)
+			return;
+		try {
+			while(openRows.next() != null);
+		}
+		catch(IOException e) {
+			throw lost(e);
+		}
+	}
+
+	private DatabaseException lost(Exception e) {
+		broken = true;
+		return new DatabaseException("Error: Connection to the server was lost: " + e.getMessage(), e);
+	}
+
+	private static IOException unexpected(Protocol.Frame frame) {
+		return new IOException("Unexpected message type " + frame.getType());
+	}
+
+
+
+
+	//Rows of a query read from the socket a batch at a time
+	private class RemoteRows implements Operator {
+
+		private final int columnCount;
+		private Protocol.Frame batch;
+		private int left;
+		private boolean done;
+
+		RemoteRows(int columnCount) {
+			this.columnCount = columnCount;
+		}
+
+		@Override
+		public void open() {
+		}
+
+		@Override
+		public List<String> next() throws IOException {
+
+			while(left == 0) {
+				if(done)
+					return null;
+				Protocol.Frame frame = Protocol.read(in);
+				if(frame == null) {
+					broken = true;
+					throw new IOException("Server closed the connection");
+				}
+				if(frame.getType() == Protocol.ROWS_END) {
+					finish();
+					return null;
+				}
+				if(frame.getType() == Protocol.ERROR) {
+					finish();
+					throw new IOException(frame.readString());
+				}
+				if(frame.getType() != Protocol.ROW_BATCH) {
+					broken = true;
+					throw unexpected(frame);
+				}
+				batch = frame;
+				left = frame.readInt();
+			}
+
+			List<String> row = new ArrayList<>(columnCount);
+			for(int i=0;i<columnCount;i++)
+				row.add(batch.readString());
+			left--;
+			return row;
+		}
+
+		private void finish() {
+			done = true;
+			batch = null;
+			if(openRows == this)
+				openRows = null;
+		}
+
+		//the rest of the rows are read when the next statement starts, so closing never blocks
+		@Override
+		public void close() {
+		}
+	}
+
+}
@@ -0,0 +1,73 @@
+package com.minidb;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+//A fixed number of Clients to one server shared by the threads of an application.
+//borrow() gives an idle client, opens a new one while there are fewer than size, or waits up to
+//-Dminidb.client.poolTimeout ms (default 30000) for one to be released. A client whose
+//connection failed is closed on release instead of being reused.
+public class ClientPool implements AutoCloseable {
+
+	private static final long timeout = Long.getLong("minidb.client.poolTimeout", 30000);
+
+	private final String host;
+	private final int port;
+	private final Semaphore available;
+	private final ConcurrentLinkedQueue<Client> idle = new ConcurrentLinkedQueue<>();
+	private volatile boolean closed;
+
+	public ClientPool(String host, int port, int size) {
+		this.host = host;
+		this.port = port;
+		this.available = new Semaphore(size, true);
+	}
+
+	public Client borrow() throws DatabaseException {
+
+		if(closed)
+			throw new DatabaseException("Error: Pool is closed");
+		try {
+			if(!available.tryAcquire(timeout, TimeUnit.MILLISECONDS))
+				throw new DatabaseException("Error: No connection available after " + timeout + " ms");
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DatabaseException("Error: Interrupted waiting for a connection", e);
+		}
+
+		try {
+			Client client;
+			while((client = idle.poll()) != null) {
+				if(client.isUsable())
+					return client;
+			}
+			return new Client(host, port);
+		}
+		catch(DatabaseException | RuntimeException e) {
+			available.release();
+			throw e;
+		}
+	}
+
+	//Gives the client back, it mustn't be used after
+	public void release(Client client) {
+
+		if(client.isUsable() && !closed)
+			idle.offer(client);
+		else
+			client.close();
+		available.release();
+	}
+
+	@Override
+	public void close() {
+
+		closed = true;
+		Client client;
+		while((client = idle.poll()) != null)
+			client.close();
+	}
+
+}
@@ -0,0 +1,44 @@
+package com.minidb;
+
+//Immutable description of a column of a table
+public class Column {
+
+	private final String name;
+	private final DataType type;
+	private final int index;
+	private final boolean primaryKey;
+
+	public Column(String name, DataType type, int index) {
+		this(name, type, index, false);
+	}
+
+	public Column(String name, DataType type, int index, boolean primaryKey) {
+		this.name = name;
+		this.type = type;
+		this.index = index;
+		this.primaryKey = primaryKey;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public DataType getType() {
+		return type;
+	}
+
+	//Position of the column in the rows of the table
+	public int getIndex() {
+		return index;
+	}
+
+	public boolean isPrimaryKey() {
+		return primaryKey;
+	}
+
+	@Override
+	public String toString() {
+		return name + " " + type + (primaryKey ? " PRIMARY KEY" : "");
+	}
+
+}
@@ -0,0 +1,245 @@
+package com.minidb;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+//Encodes the values of one column of a row group into a block of a columnar table, and back.
+//INT blocks are bit-packed, as offsets from the smallest value or as deltas from the previous
+//value (ids, dates and other growing columns), whichever is smaller. TEXT blocks keep every
+//distinct value once in a dictionary followed by the bit-packed code of each row, unless most
+//values are distinct, then the values follow each other.
+public class ColumnCodec {
+
+	private static final byte PACKED = 0, DELTA = 1, DICTIONARY = 2, PLAIN = 3;
+
+
+
+
+	public static byte[] encodeInts(int[] values, int count) {
+
+		long min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+		long minDelta = Long.MAX_VALUE, maxDelta = Long.MIN_VALUE;
+		for(int i=0;i<count;i++) {
+			min = Math.min(min, values[i]);
+			max = Math.max(max, values[i]);
+			if(i > 0) {
+				long delta = (long) values[i] - values[i-1];
+				minDelta = Math.min(minDelta, delta);
+				maxDelta = Math.max(maxDelta, delta);
+			}
+		}
+		if(count < 2)
+			minDelta = maxDelta = 0;
+
+		int width = bits(max - min), deltaWidth = bits(maxDelta - minDelta);
+		if(count > 0 && packedSize(count - 1, deltaWidth) + 8 < packedSize(count, width)) {
+			ByteBuffer out = ByteBuffer.allocate(1 + 4 + 8 + 1 + packedSize(count - 1, deltaWidth));
+			out.put(DELTA).putInt(values[0]).putLong(minDelta).put((byte) deltaWidth);
+			long[] deltas = new long[count - 1];
+			for(int i=1;i<count;i++)
+				deltas[i-1] = (long) values[i] - values[i-1] - minDelta;
+			pack(out, deltas, count - 1, deltaWidth);
+			return out.array();
+		}
+
+		ByteBuffer out = ByteBuffer.allocate(1 + 4 + 1 + packedSize(count, width));
+		out.put(PACKED).putInt(count == 0 ? 0 : (int) min).put((byte) width);
+		long[] offsets = new long[count];
+		for(int i=0;i<count;i++)
+			offsets[i] = values[i] - min;
+		pack(out, offsets, count, width);
+		return out.array();
+	}
+
+	public static byte[] encodeTexts(String[] values, int count) {
+
+		Map<String, Integer> codes = new LinkedHashMap<>();
+		byte[][] texts = new byte[count][];
+		int plainSize = 0, dictionarySize = 0;
+		for(int i=0;i<count;i++) {
+			texts[i] = values[i].getBytes(StandardCharsets.UTF_8);
+			if(texts[i].length > 0xFFFF)
+				throw new IllegalArgumentException("TEXT value is too long (" + texts[i].length + " bytes)");
+			plainSize += 2 + texts[i].length;
+			if(codes.putIfAbsent(values[i], codes.size()) == null)
+				dictionarySize += 2 + texts[i].length;
+		}
+		int width = bits(codes.size() - 1);
+		dictionarySize += 4 + 1 + packedSize(count, width);
+
+		if(plainSize <= dictionarySize) {
+			ByteBuffer out = ByteBuffer.allocate(1 + plainSize);
+			out.put(PLAIN);
+			for(byte[] text: texts)
+				out.putShort((short) text.length).put(text);
+			return out.array();
+		}
+
+		ByteBuffer out = ByteBuffer.allocate(1 + dictionarySize);
+		out.put(DICTIONARY).putInt(codes.size());
+		for(String value: codes.keySet()) {
+			byte[] text = value.getBytes(StandardCharsets.UTF_8);
+			out.putShort((short) text.length).put(text);
+		}
+		out.put((byte) width);
+		long[] rowCodes = new long[count];
+		for(int i=0;i<count;i++)
+			rowCodes[i] = codes.get(values[i]);
+		pack(out, rowCodes, count, width);
+		return out.array();
+	}
+
+
+
+
+	//The block of count rows read back
+	public static Block decode(ByteBuffer block, DataType type, int count) {
+
+		byte encoding = block.get(0);
+		block.position(1);
+		if(encoding == PACKED || encoding == DELTA) {
+			ByteBuffer fields = ByteBuffer.allocate(count * 4);
+			if(encoding == PACKED) {
+				int min = block.getInt();
+				long[] offsets = unpack(block, count, block.get());
+				for(int i=0;i<count;i++)
+					fields.putInt(i * 4, (int) (min + offsets[i]));
+			}
+			else {
+				int value = block.getInt();
+				long minDelta = block.getLong();
+				long[] deltas = unpack(block, count - 1, block.get());
+				fields.putInt(0, value);
+				for(int i=1;i<count;i++) {
+					value = (int) (value + deltas[i-1] + minDelta);
+					fields.putInt(i * 4, value);
+				}
+			}
+			return new Block(fields, null, null);
+		}
+		if(type != DataType.TEXT || encoding != DICTIONARY && encoding != PLAIN)
+			throw new IllegalStateException("Unknown " + type + " block encoding " + encoding);
+
+		int entries = encoding == DICTIONARY ? block.getInt() : count;
+		int[] entryOffsets = new int[entries];
+		for(int i=0;i<entries;i++) {
+			entryOffsets[i] = block.position();
+			block.position(block.position() + 2 + (block.getShort(block.position()) & 0xFFFF));
+		}
+		int[] codes = null;
+		if(encoding == DICTIONARY) {
+			long[] packed = unpack(block, count, block.get());
+			codes = new int[count];
+			for(int i=0;i<count;i++)
+				codes[i] = (int) packed[i];
+		}
+		return new Block(block, entryOffsets, codes);
+	}
+
+	//A decoded block. Its fields are laid out like in a record, 4 byte INT and length prefixed
+	//TEXT, so a RecordView tests them in place. The text of a dictionary value is built once
+	public static class Block {
+
+		private final ByteBuffer fields;
+		//TEXT: offset of each value in fields, of each dictionary entry with codes
+		private final int[] entryOffsets;
+		private final int[] codes;
+		private final String[] texts;
+
+		private Block(ByteBuffer fields, int[] entryOffsets, int[] codes) {
+			this.fields = fields;
+			this.entryOffsets = entryOffsets;
+			this.codes = codes;
+			this.texts = entryOffsets == null ? null : new String[entryOffsets.length];
+		}
+
+		public ByteBuffer getFields() {
+			return fields;
+		}
+
+		//Offset in getFields() of the field of the row
+		public int getOffset(int row) {
+			return entryOffsets == null ? row * 4 : entryOffsets[entry(row)];
+		}
+
+		public String getText(int row) {
+
+			if(entryOffsets == null)
+				return Integer.toString(fields.getInt(row * 4));
+			int entry = entry(row);
+			if(texts[entry] == null) {
+				int offset = entryOffsets[entry];
+				byte[] text = new byte[fields.getShort(offset) & 0xFFFF];
+				for(int i=0;i<text.length;i++)
+					text[i] = fields.get(offset + 2 + i);
+				texts[entry] = new String(text, StandardCharsets.UTF_8);
+			}
+			return texts[entry];
+		}
+
+		private int entry(int row) {
+			return codes == null ? row : codes[row];
+		}
+	}
+
+
+
+
+	//Bits needed to store values from 0 to max
+	private static int bits(long max) {
+		return max <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(max);
+	}
+
+	private static int packedSize(int count, int width) {
+		return (int) (((long) count * width + 63) / 64) * 8;
+	}
+
+	//The low width bits of each value, packed into longs. Widths are below 64: INT offsets take
+	//at most 32 bits and deltas 33
+	private static void pack(ByteBuffer out, long[] values, int count, int width) {
+
+		if(width == 0)
+			return;
+		long word = 0;
+		int bits = 0;
+		for(int i=0;i<count;i++) {
+			long value = values[i];
+			word |= value << bits;
+			bits += width;
+			if(bits >= 64) {
+				out.putLong(word);
+				bits -= 64;
+				word = bits == 0 ? 0 : value >>> (width - bits);
+			}
+		}
+		if(bits > 0)
+			out.putLong(word);
+	}
+
+	private static long[] unpack(ByteBuffer in, int count, int width) {
+
+		long[] values = new long[Math.max(count, 0)];
+		if(width == 0)
+			return values;
+		long mask = (1L << width) - 1;
+		long word = 0;
+		int bits = 0;
+		for(int i=0;i<count;i++) {
+			if(bits >= width) {
+				values[i] = word & mask;
+				word >>>= width;
+				bits -= width;
+			}
+			else {
+				long next = in.getLong();
+				values[i] = (word | next << bits) & mask;
+				word = next >>> (width - bits);
+				bits = 64 - (width - bits);
+			}
+		}
+		return values;
+	}
+
+}
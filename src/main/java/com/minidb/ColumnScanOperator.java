@@ -0,0 +1,163 @@
+package com.minidb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+//Reads the rows of a columnar table one group at a time, then the rows of its tail.
+//Only the blocks of the columns of the WHERE clause and of the result are read and decoded.
+//The WHERE clause is tested on the decoded fields through a RecordView, and text is only built
+//for the rows it keeps. The scan reads the groups of the manifest it was opened with, the
+//writers never change them (see ColumnStore). The row id of a row is its group and its
+//position in the group, the tail comes after the last group.
+public class ColumnScanOperator implements Operator {
+
+	private final TableSchema schema;
+	private final Predicate<RecordView> predicate;
+	private final int[] colIndexes;
+	//columns of the result and of the WHERE clause
+	private final int[] readColumns;
+	private final RecordView record;
+
+	private ColumnStore.Manifest manifest;
+	private FileChannel[] channels;
+	private int nextGroup;
+	private final List<List<String>> groupRows = new ArrayList<>();
+	private final List<RowId> groupRowIds = new ArrayList<>();
+	private int position;
+
+	//Reads the rows matching where (every row when null) with the columns of colIndexes (every
+	//column when null). Throws IllegalArgumentException for a column of where the table doesn't have
+	public ColumnScanOperator(TableSchema schema, Condition where, int[] colIndexes) {
+
+		this.schema = schema;
+		this.predicate = where == null ? null : where.recordPredicate(schema);
+		this.colIndexes = colIndexes;
+		this.record = new RecordView(schema.getColumnTypes());
+
+		Set<Integer> columns = new LinkedHashSet<>();
+		for(int i=0;i<(colIndexes == null ? schema.size() : colIndexes.length);i++)
+			columns.add(colIndexes == null ? i : colIndexes[i]);
+		if(where != null) {
+			for(String column: where.columns())
+				columns.add(schema.indexOf(column));
+		}
+		readColumns = new int[columns.size()];
+		int i = 0;
+		for(int column: columns)
+			readColumns[i++] = column;
+	}
+
+	@Override
+	public void open() throws IOException {
+
+		close();
+		String tableName = schema.getTableName();
+		manifest = ColumnStore.getManifest(tableName);
+		channels = new FileChannel[schema.size() + 1];
+		try {
+			for(int column: readColumns)
+				channels[column] = FileChannel.open(ColumnStore.columnFile(tableName, manifest.generation, column).toPath(), StandardOpenOption.READ);
+			channels[schema.size()] = FileChannel.open(ColumnStore.tailFile(tableName, manifest.generation).toPath(), StandardOpenOption.READ);
+		}
+		catch(IOException e) {
+			close();
+			throw e;
+		}
+		nextGroup = 0;
+	}
+
+	@Override
+	public List<String> next() throws IOException {
+
+		while(position == groupRows.size()) {
+			if(manifest == null || nextGroup > manifest.getGroupCount())
+				return null;
+			groupRows.clear();
+			groupRowIds.clear();
+			position = 0;
+			if(nextGroup < manifest.getGroupCount())
+				readGroup(nextGroup++);
+			else
+				readTail(nextGroup++);
+		}
+		return groupRows.get(position++);
+	}
+
+	private void readGroup(int index) throws IOException {
+
+		ColumnStore.Group group = manifest.getGroup(index);
+		ColumnCodec.Block[] blocks = new ColumnCodec.Block[schema.size()];
+		for(int column: readColumns)
+			blocks[column] = ColumnCodec.decode(ColumnStore.readBlock(channels[column], group, column), schema.getColumnTypes().get(column), group.getRows());
+
+		int width = colIndexes == null ? schema.size() : colIndexes.length;
+		for(int row=0;row<group.getRows();row++) {
+			if(group.isDeleted(row))
+				continue;
+			if(predicate != null) {
+				for(int column: readColumns)
+					record.setField(column, blocks[column].getFields(), blocks[column].getOffset(row));
+				if(!predicate.test(record))
+					continue;
+			}
+			List<String> values = new ArrayList<>(width);
+			for(int i=0;i<width;i++)
+				values.add(blocks[colIndexes == null ? i : colIndexes[i]].getText(row));
+			groupRows.add(values);
+			groupRowIds.add(new RowId(index, row));
+		}
+	}
+
+	private void readTail(int index) throws IOException {
+
+		if(manifest.getTailRows() == 0)
+			return;
+		ByteBuffer records = ColumnStore.readTail(channels[schema.size()], manifest);
+		for(int row=0;row<manifest.getTailRows();row++) {
+			int length = records.getInt();
+			int offset = records.position();
+			records.position(offset + length);
+			if(manifest.isTailDeleted(row))
+				continue;
+			record.reset(records, offset);
+			if(predicate == null || predicate.test(record)) {
+				groupRows.add(record.decode(colIndexes));
+				groupRowIds.add(new RowId(index, row));
+			}
+		}
+	}
+
+	@Override
+	public RowId getRowId() {
+		return position == 0 ? null : groupRowIds.get(position - 1);
+	}
+
+	@Override
+	public void close() {
+
+		if(channels != null) {
+			for(FileChannel channel: channels) {
+				try {
+					if(channel != null)
+						channel.close();
+				}
+				catch(IOException e) {
+					//only read from, nothing is lost
+				}
+			}
+		}
+		channels = null;
+		manifest = null;
+		groupRows.clear();
+		groupRowIds.clear();
+		position = 0;
+	}
+
+}
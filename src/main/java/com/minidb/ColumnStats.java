@@ -0,0 +1,302 @@
+package com.minidb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+//Statistics of one column collected by ANALYZE: the nulls, the distinct values (exact when every
+//value fits in the sample, a HyperLogLog estimate otherwise), the minimum and maximum and an
+//equi-depth histogram. The histogram is BUCKETS + 1 bounds taken from a sorted sample of the values,
+//each bucket between two bounds holding the same share of the values, so a range of values is
+//estimated by the buckets it covers whatever the spread of the values.
+//
+//The fractions returned are of all the rows of the table, nulls included. A null ColumnStats
+//(a column without statistics) gets the default fractions.
+public class ColumnStats {
+
+	private static final int BUCKETS = 64;
+	//values kept for the histogram, chosen uniformly (reservoir sampling)
+	private static final int SAMPLE = 30000;
+
+	//fractions used without statistics
+	static final double DEFAULT_EQUAL = 0.005;
+	static final double DEFAULT_RANGE = 1.0 / 3;
+	static final double DEFAULT_LIKE = 0.1;
+	static final long DEFAULT_DISTINCT = 200;
+
+	private final DataType type;
+	private final long rows;
+	private final long nulls;
+	private final long distinct;
+	//null when every value is null
+	private final String min;
+	private final String max;
+	private final List<String> bounds;
+
+	public ColumnStats(DataType type, long rows, long nulls, long distinct, String min, String max, List<String> bounds) {
+		this.type = type;
+		this.rows = rows;
+		this.nulls = nulls;
+		this.distinct = distinct;
+		this.min = min;
+		this.max = max;
+		this.bounds = Collections.unmodifiableList(new ArrayList<>(bounds));
+	}
+
+	public DataType getType() {
+		return type;
+	}
+
+	public long getNulls() {
+		return nulls;
+	}
+
+	public long getDistinct() {
+		return distinct;
+	}
+
+	public String getMin() {
+		return min;
+	}
+
+	public String getMax() {
+		return max;
+	}
+
+	public List<String> getBounds() {
+		return bounds;
+	}
+
+
+
+
+	//Collects the statistics of a column from its values, one at a time
+	public static class Collector {
+
+		private final DataType type;
+		private final HyperLogLog sketch = new HyperLogLog();
+		private final List<String> sample = new ArrayList<>();
+		private final Random random = new Random(1);
+		private long rows, nulls;
+		private String min, max;
+
+		public Collector(DataType type) {
+			this.type = type;
+		}
+
+		public void add(String value) {
+
+			rows++;
+			if(value == null) {
+				nulls++;
+				return;
+			}
+			sketch.add(value);
+			Comparator<String> order = order(type);
+			if(min == null || order.compare(value, min) < 0)
+				min = value;
+			if(max == null || order.compare(value, max) > 0)
+				max = value;
+
+			long seen = rows - nulls;
+			if(sample.size() < SAMPLE)
+				sample.add(value);
+			else {
+				long slot = (long) (random.nextDouble() * seen);
+				if(slot < SAMPLE)
+					sample.set((int) slot, value);
+			}
+		}
+
+		public ColumnStats build() {
+
+			sample.sort(order(type));
+			long values = rows - nulls;
+			long distinct;
+			if(values == sample.size()) {
+				//every value is in the sample
+				distinct = 0;
+				for(int i=0;i<sample.size();i++) {
+					if(i == 0 || !sample.get(i).equals(sample.get(i - 1)))
+						distinct++;
+				}
+			}
+			else
+				distinct = Math.max(1, Math.min(values, sketch.estimate()));
+
+			List<String> bounds = new ArrayList<>();
+			if(!sample.isEmpty()) {
+				for(int b=0;b<=BUCKETS;b++)
+					bounds.add(sample.get((int) ((long) b * (sample.size() - 1) / BUCKETS)));
+				bounds.set(0, min);
+				bounds.set(BUCKETS, max);
+			}
+			return new ColumnStats(type, rows, nulls, distinct, min, max, bounds);
+		}
+	}
+
+	private static Comparator<String> order(DataType type) {
+		return type::compare;
+	}
+
+
+
+
+	//Fraction of the rows with a value
+	private double valued() {
+		return rows == 0 ? 0 : (double) (rows - nulls) / rows;
+	}
+
+	//The literal as a value of the column, null when no value of the column can equal it
+	private String value(Object literal) {
+
+		if(type == DataType.TEXT)
+			return literal.toString();
+		Long key = Condition.key(type, literal);
+		return key == null ? null : type.fromKey(key);
+	}
+
+	//Where the value lies on the line the bounds of a typed column are interpolated on
+	private double position(String value) {
+		return type == DataType.DOUBLE ? Double.parseDouble(value) : type.key(value);
+	}
+
+	//Fraction of the values below value in the histogram, from the buckets under it and the part of
+	//its bucket below it: interpolated between the bounds of a typed column, half of it for TEXT
+	private double histogramBelow(String value) {
+
+		if(bounds.isEmpty())
+			return 0;
+		Comparator<String> order = order(type);
+		if(order.compare(value, bounds.get(0)) <= 0)
+			return 0;
+		if(order.compare(value, bounds.get(BUCKETS)) > 0)
+			return 1;
+		int bucket = 0;
+		while(bucket < BUCKETS - 1 && order.compare(bounds.get(bucket + 1), value) < 0)
+			bucket++;
+		double part = 0.5;
+		if(type != DataType.TEXT) {
+			double low = position(bounds.get(bucket)), high = position(bounds.get(bucket + 1));
+			part = high > low ? Math.min(1, (position(value) - low) / (high - low)) : 1;
+		}
+		return (bucket + part) / BUCKETS;
+	}
+
+	private double equal(String value) {
+
+		if(min == null || distinct == 0)
+			return 0;
+		Comparator<String> order = order(type);
+		if(order.compare(value, min) < 0 || order.compare(value, max) > 0)
+			return 0;
+		//a value taking several bounds fills the buckets between them
+		int repeated = -1;
+		for(String bound: bounds) {
+			if(bound.equals(value))
+				repeated++;
+		}
+		return valued() * Math.max(1.0 / distinct, (double) repeated / BUCKETS);
+	}
+
+	private double below(String value, boolean inclusive) {
+
+		//INT, BIGINT and TIMESTAMP keys are whole numbers, value <= n is value < n + 1
+		if(inclusive && (type == DataType.INT || type == DataType.BIGINT || type == DataType.TIMESTAMP)) {
+			long key = type.key(value);
+			if(key < (type == DataType.INT ? Integer.MAX_VALUE : Long.MAX_VALUE))
+				return valued() * histogramBelow(type.fromKey(key + 1));
+		}
+		double below = valued() * histogramBelow(value);
+		return Math.min(valued(), inclusive ? below + equal(value) : below);
+	}
+
+
+
+
+	//column = literal
+	public static double equal(ColumnStats stats, Object literal) {
+
+		if(stats == null)
+			return DEFAULT_EQUAL;
+		String value = stats.value(literal);
+		return value == null ? 0 : stats.equal(value);
+	}
+
+	//column != literal
+	public static double notEqual(ColumnStats stats, Object literal) {
+
+		if(stats == null)
+			return 1 - DEFAULT_EQUAL;
+		String value = stats.value(literal);
+		return stats.valued() - (value == null ? 0 : stats.equal(value));
+	}
+
+	//column < literal, column <= literal when inclusive
+	public static double below(ColumnStats stats, Object literal, boolean inclusive) {
+
+		if(stats == null)
+			return DEFAULT_RANGE;
+		String value = stats.value(literal);
+		return value == null ? 0 : stats.below(value, inclusive);
+	}
+
+	//column > literal, column >= literal when inclusive
+	public static double above(ColumnStats stats, Object literal, boolean inclusive) {
+
+		if(stats == null)
+			return DEFAULT_RANGE;
+		String value = stats.value(literal);
+		return value == null ? 0 : Math.max(0, stats.valued() - stats.below(value, !inclusive));
+	}
+
+	//column BETWEEN low AND high
+	public static double between(ColumnStats stats, Object low, Object high) {
+
+		if(stats == null)
+			return DEFAULT_RANGE * DEFAULT_RANGE;
+		String from = stats.value(low), to = stats.value(high);
+		if(from == null || to == null)
+			return 0;
+		return Math.max(0, stats.below(to, true) - stats.below(from, false));
+	}
+
+	//column of a typed type with its key in range (see Condition.keyRange()), or outside of it
+	public static double keys(ColumnStats stats, long[] range, boolean outside) {
+
+		if(range == null)
+			return 0;
+		double inside = 0;
+		if(range[0] <= range[1]) {
+			String low = stats.type.fromKey(range[0]), high = stats.type.fromKey(range[1]);
+			inside = range[0] == range[1] ? stats.equal(low) : Math.max(0, stats.below(high, true) - stats.below(low, false));
+		}
+		return outside ? Math.max(0, stats.valued() - inside) : inside;
+	}
+
+	//column LIKE pattern: a pattern without wildcards is an equality, one starting with text is the
+	//range of the values starting with it
+	public static double like(ColumnStats stats, String pattern) {
+
+		int wildcard = 0;
+		while(wildcard < pattern.length() && pattern.charAt(wildcard) != '%' && pattern.charAt(wildcard) != '_')
+			wildcard++;
+		if(stats == null || stats.type != DataType.TEXT)
+			return wildcard == pattern.length() ? DEFAULT_EQUAL : DEFAULT_LIKE;
+		if(wildcard == pattern.length())
+			return stats.equal(pattern);
+		if(wildcard == 0)
+			return DEFAULT_LIKE * stats.valued();
+		String prefix = pattern.substring(0, wildcard);
+		return Math.max(0, stats.below(prefix + Character.MAX_VALUE, false) - stats.below(prefix, false));
+	}
+
+	//Distinct values of the column among rows rows
+	public static double distinct(ColumnStats stats, double rows) {
+		long distinct = stats == null ? DEFAULT_DISTINCT : Math.max(1, stats.distinct);
+		return Math.max(1, Math.min(rows, distinct));
+	}
+
+}
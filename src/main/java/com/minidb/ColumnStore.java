@@ -0,0 +1,640 @@
+package com.minidb;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Storage of the tables created WITH (storage = columnar), for reports reading a few columns of
+//wide tables. Every column has its own file in data/tables/<table>.cols/, so a scan only reads
+//the files of the columns it uses (see ColumnScanOperator).
+//
+//The rows are stored in groups of GROUP_ROWS rows, each column of a group encoded as one block
+//(see ColumnCodec). Rows that don't fill a group yet are appended as records to a tail file,
+//and encoded as a group once the tail holds GROUP_ROWS rows. DELETE marks the rows deleted,
+//UPDATE deletes the rows and appends their new values, VACUUM writes the files again without
+//the deleted rows.
+//
+//The manifest lists the groups, where their blocks are and which rows are deleted. The files
+//are only appended to, and a change is done once the files are synced and a new manifest
+//replaced the old one: after a crash the table is what the last manifest says, the bytes
+//written after it are cut off when the table is opened. A scan reads the manifest it started
+//with, the writers (one at a time, under the write lock of the table) never change the bytes it
+//points to. Columnar tables have no index or PRIMARY KEY, their changes aren't written to the
+//write ahead log, and they can't be changed inside a transaction started by BEGIN.
+public class ColumnStore {
+
+	private static final String table_dir = "data" + File.separator + "tables";
+	public static final int GROUP_ROWS = 4096;
+	private static final int MAGIC = 0x4D434F4C;  //MCOL
+
+	//manifests of the tables opened so far
+	private static final ConcurrentMap<String, Manifest> manifests = new ConcurrentHashMap<>();
+	//bytes of blocks and tails read by the scans, for SHOW BUFFER POOL
+	private static final AtomicLong bytesRead = new AtomicLong();
+
+	//Groups and tail of a table, never changed: a change saves a new manifest
+	public static class Manifest {
+
+		//number in the names of the files, a VACUUM writes the next one
+		final int generation;
+		final List<Group> groups;
+		//the records of the tail are between tailStart and tailEnd of the tail file
+		final long tailStart;
+		final long tailEnd;
+		final int tailRows;
+		final BitSet tailDeleted;
+
+		Manifest(int generation, List<Group> groups, long tailStart, long tailEnd, int tailRows, BitSet tailDeleted) {
+			this.generation = generation;
+			this.groups = Collections.unmodifiableList(new ArrayList<>(groups));
+			this.tailStart = tailStart;
+			this.tailEnd = tailEnd;
+			this.tailRows = tailRows;
+			this.tailDeleted = tailDeleted;
+		}
+
+		public int getGroupCount() {
+			return groups.size();
+		}
+
+		public Group getGroup(int index) {
+			return groups.get(index);
+		}
+
+		public int getTailRows() {
+			return tailRows;
+		}
+
+		public boolean isTailDeleted(int row) {
+			return tailDeleted.get(row);
+		}
+
+		//Rows not deleted
+		public long getRowCount() {
+			long rows = tailRows - tailDeleted.cardinality();
+			for(Group group: groups)
+				rows += group.rows - group.deleted.cardinality();
+			return rows;
+		}
+	}
+
+	//Where the blocks of one group are in the column files
+	public static class Group {
+
+		final int rows;
+		final long[] offsets;
+		final int[] lengths;
+		final BitSet deleted;
+
+		Group(int rows, long[] offsets, int[] lengths, BitSet deleted) {
+			this.rows = rows;
+			this.offsets = offsets;
+			this.lengths = lengths;
+			this.deleted = deleted;
+		}
+
+		public int getRows() {
+			return rows;
+		}
+
+		public boolean isDeleted(int row) {
+			return deleted.get(row);
+		}
+	}
+
+
+
+
+	private static File directory(String tableName) {
+		return new File(table_dir + File.separator + tableName + ".cols");
+	}
+
+	private static File manifestFile(String tableName) {
+		return new File(directory(tableName), "manifest");
+	}
+
+	public static File columnFile(String tableName, int generation, int column) {
+		return new File(directory(tableName), generation + "." + column + ".col");
+	}
+
+	public static File tailFile(String tableName, int generation) {
+		return new File(directory(tableName), generation + ".tail");
+	}
+
+	public static long getBytesRead() {
+		return bytesRead.get();
+	}
+
+	//Bytes of the files of the table, to compare its size with other tables
+	public static long getSize(String tableName) {
+
+		long size = 0;
+		File[] files = directory(tableName).listFiles();
+		if(files != null) {
+			for(File file: files)
+				size += file.length();
+		}
+		return size;
+	}
+
+
+
+
+	//The folder of a new table, with an empty manifest
+	public static boolean create(TableSchema schema) {
+
+		String tableName = schema.getTableName();
+		File directory = directory(tableName);
+		if(directory.exists()) {
+			Messages.error("\nError: Table files for '" + tableName + "' already exist.");
+			return false;
+		}
+		try {
+			if(!directory.mkdirs())
+				throw new IOException("Can't create the folder " + directory.getPath());
+			Manifest manifest = new Manifest(1, Collections.<Group>emptyList(), 0, 0, 0, new BitSet());
+			try(Writer writer = new Writer(schema, manifest)) {
+				writer.commit();
+			}
+			return true;
+		}
+		catch(IOException e) {
+			Messages.error("\nError creating the table files: " + e.getMessage());
+			return false;
+		}
+	}
+
+	public static boolean drop(String tableName) {
+
+		manifests.remove(tableName);
+		File directory = directory(tableName);
+		File[] files = directory.listFiles();
+		boolean dropped = true;
+		if(files != null) {
+			for(File file: files)
+				dropped &= file.delete();
+		}
+		return (!directory.exists() || directory.delete()) && dropped;
+	}
+
+	//The current manifest of the table, read from its file the first time
+	public static Manifest getManifest(String tableName) throws IOException {
+
+		Manifest manifest = manifests.get(tableName);
+		if(manifest != null)
+			return manifest;
+		synchronized(ColumnStore.class) {
+			manifest = manifests.get(tableName);
+			if(manifest == null) {
+				manifest = open(tableName);
+				manifests.put(tableName, manifest);
+			}
+			return manifest;
+		}
+	}
+
+	//Reads the manifest and cuts off what was written after it: the end of the files of an
+	//unfinished change, and the files of another generation left by an unfinished VACUUM
+	private static Manifest open(String tableName) throws IOException {
+
+		Manifest manifest = readManifest(tableName);
+		File[] files = directory(tableName).listFiles();
+		if(files != null) {
+			for(File file: files) {
+				if(!file.getName().equals("manifest") && !file.getName().startsWith(manifest.generation + "."))
+					file.delete();
+			}
+		}
+		int columns = 0;
+		for(Group group: manifest.groups)
+			columns = Math.max(columns, group.offsets.length);
+		for(int column=0;column<columns;column++) {
+			long end = 0;
+			for(Group group: manifest.groups)
+				end = Math.max(end, group.offsets[column] + group.lengths[column]);
+			truncate(columnFile(tableName, manifest.generation, column), end);
+		}
+		truncate(tailFile(tableName, manifest.generation), manifest.tailEnd);
+		return manifest;
+	}
+
+	private static void truncate(File file, long length) throws IOException {
+
+		if(!file.exists() || file.length() <= length)
+			return;
+		try(RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(length);
+		}
+	}
+
+
+
+
+	//INSERT and LOAD DATA: the rows are added to the tail, a full tail is encoded as a group.
+	//checked rows were already validated, the others are skipped with a message when invalid.
+	//Returns the number of rows added, -1 on error
+	public static long append(TableSchema schema, Iterator<List<String>> rows, boolean checked) {
+
+		if(!checkWritable(schema.getTableName()))
+			return -1;
+		long added = 0, rowNo = 0, skipped = 0;
+		try(Writer writer = new Writer(schema, getManifest(schema.getTableName()))) {
+			while(rows.hasNext()) {
+				List<String> values = rows.next();
+				rowNo++;
+				String error = checked ? null : TableManager.checkRow(schema, values, false);
+				if(error == null && !checked) {
+					try {
+						RowCodec.encode(values, schema.getColumnTypes());
+					}
+					catch(IllegalArgumentException e) {
+						error = e.getMessage();
+					}
+				}
+				if(error != null) {
+					if(skipped++ < TableManager.MAX_REPORTED_ERRORS)
+						Messages.warning("Skipping row " + rowNo + ": " + error);
+					continue;
+				}
+				writer.add(values);
+				added++;
+			}
+			writer.commit();
+		}
+		catch(IOException | RuntimeException e) {
+			Messages.error("\nError writing to the column files: " + e.getMessage());
+			return -1;
+		}
+		if(skipped > TableManager.MAX_REPORTED_ERRORS)
+			Messages.warning((skipped - TableManager.MAX_REPORTED_ERRORS) + " more rows skipped");
+		return added;
+	}
+
+	//DELETE: the rows are marked deleted, their space is reclaimed by VACUUM
+	public static boolean delete(TableSchema schema, List<RowId> rowIds) {
+		return update(schema, rowIds, Collections.<List<String>>emptyList());
+	}
+
+	//UPDATE: the rows are deleted and their new values appended, the row ids change
+	public static boolean update(TableSchema schema, List<RowId> rowIds, List<List<String>> newRows) {
+
+		if(!checkWritable(schema.getTableName()))
+			return false;
+		try(Writer writer = new Writer(schema, getManifest(schema.getTableName()))) {
+			for(RowId rowId: rowIds)
+				writer.delete(rowId);
+			for(List<String> row: newRows)
+				writer.add(row);
+			writer.commit();
+			return true;
+		}
+		catch(IOException | RuntimeException e) {
+			Messages.error("Error writing to the column files: " + e.getMessage());
+			return false;
+		}
+	}
+
+	//VACUUM: writes the rows that aren't deleted to the files of the next generation, then
+	//deletes the old files. Called under the exclusive lock of the table, no scan is reading them.
+	//Returns the number of bytes reclaimed, -1 on error
+	public static long vacuum(TableSchema schema) {
+
+		String tableName = schema.getTableName();
+		try {
+			Manifest old = getManifest(tableName);
+			long before = filesLength(tableName);
+			Manifest empty = new Manifest(old.generation + 1, Collections.<Group>emptyList(), 0, 0, 0, new BitSet());
+			try(Writer writer = new Writer(schema, empty)) {
+				Operator scan = new ColumnScanOperator(schema, null, null);
+				scan.open();
+				try {
+					List<String> row;
+					while((row = scan.next()) != null)
+						writer.add(row);
+				}
+				finally {
+					scan.close();
+				}
+				writer.commit();
+			}
+			File[] files = directory(tableName).listFiles();
+			if(files != null) {
+				for(File file: files) {
+					if(file.getName().startsWith(old.generation + "."))
+						file.delete();
+				}
+			}
+			return before - filesLength(tableName);
+		}
+		catch(IOException | RuntimeException e) {
+			Messages.error("Error vacuuming table '" + tableName + "': " + e.getMessage());
+			return -1;
+		}
+	}
+
+	private static long filesLength(String tableName) {
+
+		long length = 0;
+		File[] files = directory(tableName).listFiles();
+		if(files != null) {
+			for(File file: files)
+				length += file.length();
+		}
+		return length;
+	}
+
+	//The changes of a columnar table aren't undone by a ROLLBACK, so they can't wait for one
+	private static boolean checkWritable(String tableName) {
+
+		Transaction tx = TransactionManager.current();
+		if(tx != null && tx.isExplicit()) {
+			Messages.error("Error: Columnar table '" + tableName + "' can't be changed inside a transaction, COMMIT or ROLLBACK first");
+			return false;
+		}
+		return true;
+	}
+
+
+
+
+	//Block of a column of a group, read from the column file
+	public static ByteBuffer readBlock(FileChannel channel, Group group, int column) throws IOException {
+		bytesRead.addAndGet(group.lengths[column]);
+		return read(channel, group.offsets[column], group.lengths[column]);
+	}
+
+	//The records of the tail, each one after its 4 byte length
+	public static ByteBuffer readTail(FileChannel channel, Manifest manifest) throws IOException {
+		bytesRead.addAndGet(manifest.tailEnd - manifest.tailStart);
+		return read(channel, manifest.tailStart, (int) (manifest.tailEnd - manifest.tailStart));
+	}
+
+	private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while(buffer.hasRemaining()) {
+			if(channel.read(buffer, position + buffer.position()) < 0)
+				throw new IOException("Column file ends before its block at " + position);
+		}
+		buffer.clear();
+		return buffer;
+	}
+
+
+
+
+	//Adds rows to the files of the generation of a manifest, and deletes rows. Nothing is seen
+	//by the scans until commit() saves the new manifest
+	private static class Writer implements Closeable {
+
+		private final TableSchema schema;
+		private final int generation;
+		private final List<Group> groups;
+		private final FileChannel[] columns;
+		private final FileChannel tail;
+		private long tailStart;
+		private long tailEnd;
+		private int tailRows;
+		private final BitSet tailDeleted;
+		//rows added to the tail by commit(), or encoded with the tail once it has GROUP_ROWS rows
+		private final List<List<String>> pending = new ArrayList<>();
+
+		Writer(TableSchema schema, Manifest manifest) throws IOException {
+
+			this.schema = schema;
+			this.generation = manifest.generation;
+			this.groups = new ArrayList<>(manifest.groups);
+			this.tailStart = manifest.tailStart;
+			this.tailEnd = manifest.tailEnd;
+			this.tailRows = manifest.tailRows;
+			this.tailDeleted = (BitSet) manifest.tailDeleted.clone();
+
+			String tableName = schema.getTableName();
+			columns = new FileChannel[schema.size()];
+			FileChannel tailChannel = null;
+			try {
+				for(int column=0;column<columns.length;column++)
+					columns[column] = open(columnFile(tableName, generation, column));
+				tailChannel = open(tailFile(tableName, generation));
+			}
+			catch(IOException e) {
+				for(FileChannel channel: columns) {
+					if(channel != null)
+						channel.close();
+				}
+				throw e;
+			}
+			tail = tailChannel;
+		}
+
+		private static FileChannel open(File file) throws IOException {
+			return FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		}
+
+		void add(List<String> row) throws IOException {
+
+			pending.add(row);
+			if(tailRows - tailDeleted.cardinality() + pending.size() == GROUP_ROWS) {
+				List<List<String>> rows = tailRows();
+				rows.addAll(pending);
+				writeGroup(rows);
+				pending.clear();
+				tailStart = tailEnd;
+				tailRows = 0;
+				tailDeleted.clear();
+			}
+		}
+
+		void delete(RowId rowId) throws IOException {
+
+			int index = rowId.getPageId(), row = rowId.getSlot();
+			if(index == groups.size() && row < tailRows && !tailDeleted.get(row)) {
+				tailDeleted.set(row);
+				return;
+			}
+			if(index >= groups.size() || row >= groups.get(index).rows || groups.get(index).deleted.get(row))
+				throw new IOException("Row " + rowId + " was already deleted");
+			Group group = groups.get(index);
+			BitSet deleted = (BitSet) group.deleted.clone();
+			deleted.set(row);
+			groups.set(index, new Group(group.rows, group.offsets, group.lengths, deleted));
+		}
+
+		//Rows of the tail that aren't deleted
+		private List<List<String>> tailRows() throws IOException {
+
+			List<List<String>> rows = new ArrayList<>();
+			ByteBuffer records = read(tail, tailStart, (int) (tailEnd - tailStart));
+			for(int row=0;row<tailRows;row++) {
+				byte[] record = new byte[records.getInt()];
+				records.get(record);
+				if(!tailDeleted.get(row))
+					rows.add(RowCodec.decode(record, schema.getColumnTypes()));
+			}
+			return rows;
+		}
+
+		private void writeGroup(List<List<String>> rows) throws IOException {
+
+			int count = rows.size();
+			long[] offsets = new long[columns.length];
+			int[] lengths = new int[columns.length];
+			for(int column=0;column<columns.length;column++) {
+				byte[] block;
+				if(schema.getColumnTypes().get(column) == DataType.INT) {
+					int[] values = new int[count];
+					for(int i=0;i<count;i++)
+						values[i] = Integer.parseInt(rows.get(i).get(column).trim());
+					block = ColumnCodec.encodeInts(values, count);
+				}
+				else {
+					String[] values = new String[count];
+					for(int i=0;i<count;i++)
+						values[i] = rows.get(i).get(column);
+					block = ColumnCodec.encodeTexts(values, count);
+				}
+				offsets[column] = columns[column].size();
+				lengths[column] = block.length;
+				write(columns[column], ByteBuffer.wrap(block), offsets[column]);
+			}
+			groups.add(new Group(count, offsets, lengths, new BitSet()));
+		}
+
+		private static void write(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+			while(buffer.hasRemaining())
+				channel.write(buffer, position + buffer.position());
+		}
+
+		//Appends the pending rows to the tail, syncs the files and saves the manifest
+		void commit() throws IOException {
+
+			if(!pending.isEmpty()) {
+				ByteArrayOutputStream records = new ByteArrayOutputStream();
+				DataOutputStream out = new DataOutputStream(records);
+				for(List<String> row: pending) {
+					byte[] record = RowCodec.encode(row, schema.getColumnTypes());
+					out.writeInt(record.length);
+					out.write(record);
+				}
+				write(tail, ByteBuffer.wrap(records.toByteArray()), tailEnd);
+				tailEnd += records.size();
+				tailRows += pending.size();
+				pending.clear();
+			}
+			for(FileChannel channel: columns)
+				channel.force(false);
+			tail.force(false);
+
+			Manifest manifest = new Manifest(generation, groups, tailStart, tailEnd, tailRows, (BitSet) tailDeleted.clone());
+			writeManifest(schema.getTableName(), manifest);
+			manifests.put(schema.getTableName(), manifest);
+		}
+
+		@Override
+		public void close() throws IOException {
+
+			for(FileChannel channel: columns)
+				channel.close();
+			tail.close();
+		}
+	}
+
+
+
+
+	//Written next to the old manifest, synced, then renamed over it
+	private static void writeManifest(String tableName, Manifest manifest) throws IOException {
+
+		File file = manifestFile(tableName);
+		File tmpFile = new File(file.getPath() + ".tmp");
+		try(FileOutputStream stream = new FileOutputStream(tmpFile);
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+			out.writeInt(MAGIC);
+			out.writeInt(manifest.generation);
+			out.writeLong(manifest.tailStart);
+			out.writeLong(manifest.tailEnd);
+			out.writeInt(manifest.tailRows);
+			writeBits(out, manifest.tailDeleted);
+			out.writeInt(manifest.groups.size());
+			for(Group group: manifest.groups) {
+				out.writeInt(group.rows);
+				out.writeInt(group.offsets.length);
+				for(int column=0;column<group.offsets.length;column++) {
+					out.writeLong(group.offsets[column]);
+					out.writeInt(group.lengths[column]);
+				}
+				writeBits(out, group.deleted);
+			}
+			out.flush();
+			stream.getFD().sync();
+		}
+		Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static Manifest readManifest(String tableName) throws IOException {
+
+		File file = manifestFile(tableName);
+		if(!file.exists())
+			throw new IOException("Table files for '" + tableName + "' do not exist");
+		try(DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file.toPath())))) {
+			if(in.readInt() != MAGIC)
+				throw new IOException("Not a columnar table manifest: " + file.getPath());
+			int generation = in.readInt();
+			long tailStart = in.readLong();
+			long tailEnd = in.readLong();
+			int tailRows = in.readInt();
+			BitSet tailDeleted = readBits(in);
+			int groupCount = in.readInt();
+			List<Group> groups = new ArrayList<>(groupCount);
+			for(int i=0;i<groupCount;i++) {
+				int rows = in.readInt();
+				int columns = in.readInt();
+				long[] offsets = new long[columns];
+				int[] lengths = new int[columns];
+				for(int column=0;column<columns;column++) {
+					offsets[column] = in.readLong();
+					lengths[column] = in.readInt();
+				}
+				groups.add(new Group(rows, offsets, lengths, readBits(in)));
+			}
+			return new Manifest(generation, groups, tailStart, tailEnd, tailRows, tailDeleted);
+		}
+	}
+
+	private static void writeBits(DataOutputStream out, BitSet bits) throws IOException {
+
+		long[] words = bits.toLongArray();
+		out.writeInt(words.length);
+		for(long word: words)
+			out.writeLong(word);
+	}
+
+	private static BitSet readBits(DataInputStream in) throws IOException {
+
+		long[] words = new long[in.readInt()];
+		for(int i=0;i<words.length;i++)
+			words[i] = in.readLong();
+		return BitSet.valueOf(words);
+	}
+
+}
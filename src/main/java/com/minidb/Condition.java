@@ -0,0 +1,961 @@
+package com.minidb;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+//WHERE clause of a statement, as parsed: tests of a column against literals
+//combined with AND and OR. compile() turns it into a predicate on the rows of a table,
+//resolving the columns and converting the literals to the column types once, so a row
+//is tested without any parsing of the clause. compileRecord() does the same for records
+//still in their page bytes, comparing typed fields by their keys (see DataType) and TEXT fields
+//as UTF-8 bytes. A test of a typed column is a range of keys (see keyRange()): numbers are compared
+//as numbers whatever their types, so an INT column is below 7.5 up to 7 and never equal to it.
+//A literal that isn't a value of the column type, like 'x' for an INT column, matches no row.
+//A null field, the right side of a LEFT JOIN without a match, matches no test.
+public abstract class Condition {
+
+	//Predicate on the rows of the table, throws IllegalArgumentException for a column the table doesn't have
+	public abstract Predicate<List<String>> compile(TableSchema schema);
+
+	//Same predicate on the records of the table, true for the same rows
+	public abstract Predicate<RecordView> compileRecord(TableSchema schema);
+
+	//Rough cost of testing one row, the cheapest parts of an AND or OR are tested first
+	public abstract int cost(TableSchema schema);
+
+	//Estimated fraction of the rows the condition is true for, from the statistics of the columns
+	//it tests by name (see ColumnStats), the default fractions for a column missing from columns
+	public abstract double selectivity(Map<String, ColumnStats> columns);
+
+	//Copy of the condition with the ? replaced by the values, in order
+	public abstract Condition bind(List<Object> values);
+
+	//Copy of the condition with each column name replaced by names.apply(name)
+	public abstract Condition withColumns(Function<String, String> names);
+
+	//last compiled predicates and the schema they were compiled for
+	private volatile Compiled<List<String>> compiled;
+	private volatile Compiled<RecordView> compiledRecord;
+
+	private static class Compiled<T> {
+		final TableSchema schema;
+		final Predicate<T> predicate;
+
+		Compiled(TableSchema schema, Predicate<T> predicate) {
+			this.schema = schema;
+			this.predicate = predicate;
+		}
+	}
+
+	//The compiled predicate, only compiled again when the schema of the table changed.
+	//Schemas are immutable so a new schema object means the columns or indexes changed
+	public Predicate<List<String>> predicate(TableSchema schema) {
+
+		Compiled<List<String>> last = compiled;
+		if(last == null || last.schema != schema) {
+			last = new Compiled<>(schema, compile(schema));
+			compiled = last;
+		}
+		return last.predicate;
+	}
+
+	//The compiled record predicate, kept like predicate()
+	public Predicate<RecordView> recordPredicate(TableSchema schema) {
+
+		Compiled<RecordView> last = compiledRecord;
+		if(last == null || last.schema != schema) {
+			last = new Compiled<>(schema, compileRecord(schema));
+			compiledRecord = last;
+		}
+		return last.predicate;
+	}
+
+	//Columns the condition tests, in the order they appear
+	public Set<String> columns() {
+
+		Set<String> columns = new LinkedHashSet<>();
+		addColumns(columns);
+		return columns;
+	}
+
+	protected abstract void addColumns(Set<String> columns);
+
+	//The parts that must all be true for the condition to be true
+	public List<Condition> conjuncts() {
+		return Collections.singletonList(this);
+	}
+
+
+
+
+	//column op literal, the literal is a String or a number or boolean of the parser (see Parser.literal())
+	public static class Comparison extends Condition {
+
+		public enum Op {
+			EQ("="), NE("!="), LT("<"), LE("<="), GT(">"), GE(">=");
+
+			private final String symbol;
+
+			Op(String symbol) {
+				this.symbol = symbol;
+			}
+
+			public String getSymbol() {
+				return symbol;
+			}
+
+			public static Op fromSymbol(String symbol) {
+				if(symbol.equals("<>"))
+					return NE;
+				for(Op op: values()) {
+					if(op.symbol.equals(symbol))
+						return op;
+				}
+				return null;
+			}
+
+			//Whether the result of a compareTo satisfies the operator
+			public boolean test(int cmp) {
+				switch(this) {
+					case EQ: return cmp == 0;
+					case NE: return cmp != 0;
+					case LT: return cmp < 0;
+					case LE: return cmp <= 0;
+					case GT: return cmp > 0;
+					default: return cmp >= 0;
+				}
+			}
+		}
+
+		private final String column;
+		private final Op op;
+		private final Object value;
+
+		public Comparison(String column, Op op, Object value) {
+			this.column = column;
+			this.op = op;
+			this.value = value;
+		}
+
+		public String getColumn() {
+			return column;
+		}
+
+		public Op getOp() {
+			return op;
+		}
+
+		public Object getValue() {
+			return value;
+		}
+
+		@Override
+		public Predicate<List<String>> compile(TableSchema schema) {
+
+			int index = columnIndex(schema, column);
+			DataType type = schema.getColumns().get(index).getType();
+
+			//typed columns are compared by their keys, TEXT columns as strings
+			if(type != DataType.TEXT) {
+				long[] range = keyRange(type);
+				if(range == null)
+					return row -> false;	//not a value of the type, no row can match
+				long min = range[0], max = range[1];
+				boolean inside = op != Op.NE;
+				return row -> {
+					try {
+						if(row.get(index) == null)
+							return false;
+						long key = type.key(row.get(index));
+						return (key >= min && key <= max) == inside;
+					}
+					catch(IllegalArgumentException e) {
+						return false;
+					}
+				};
+			}
+			String text = value.toString();
+			if(op == Op.EQ)
+				return row -> text.equals(row.get(index));
+			return row -> row.get(index) != null && op.test(row.get(index).compareTo(text));
+		}
+
+		@Override
+		public Predicate<RecordView> compileRecord(TableSchema schema) {
+
+			int index = columnIndex(schema, column);
+			DataType type = schema.getColumns().get(index).getType();
+			if(type != DataType.TEXT) {
+				long[] range = keyRange(type);
+				if(range == null)
+					return record -> false;
+				long min = range[0], max = range[1];
+				boolean inside = op != Op.NE;
+				return record -> {
+					long key = record.getKey(index);
+					return (key >= min && key <= max) == inside;
+				};
+			}
+			byte[] text = utf8(value);
+			if(op == Op.EQ)
+				return record -> record.textEquals(index, text);
+			if(op == Op.NE)
+				return record -> !record.textEquals(index, text);
+			return record -> op.test(record.compareText(index, text));
+		}
+
+		//Keys of the values of a column of the type the comparison is true for, see keyRange().
+		//NE is true outside the range of EQ
+		public long[] keyRange(DataType type) {
+			return Condition.keyRange(type, op == Op.NE ? Op.EQ : op, value);
+		}
+
+		@Override
+		public int cost(TableSchema schema) {
+			return typeCost(schema, column);
+		}
+
+		@Override
+		public double selectivity(Map<String, ColumnStats> columns) {
+
+			ColumnStats stats = columns.get(column);
+			if(stats != null && stats.getType() != DataType.TEXT)
+				return ColumnStats.keys(stats, keyRange(stats.getType()), op == Op.NE);
+			switch(op) {
+				case EQ: return ColumnStats.equal(stats, value);
+				case NE: return ColumnStats.notEqual(stats, value);
+				case LT: return ColumnStats.below(stats, value, false);
+				case LE: return ColumnStats.below(stats, value, true);
+				case GT: return ColumnStats.above(stats, value, false);
+				default: return ColumnStats.above(stats, value, true);
+			}
+		}
+
+		@Override
+		protected void addColumns(Set<String> columns) {
+			columns.add(column);
+		}
+
+		@Override
+		public Condition bind(List<Object> values) {
+			return new Comparison(column, op, Statement.bindValue(value, values));
+		}
+
+		@Override
+		public Condition withColumns(Function<String, String> names) {
+			return new Comparison(names.apply(column), op, value);
+		}
+
+		@Override
+		public String toString() {
+			return column + " " + op.getSymbol() + " " + quote(value);
+		}
+	}
+
+
+
+
+	//column BETWEEN low AND high, both ends included
+	public static class Between extends Condition {
+
+		private final String column;
+		private final Object low;
+		private final Object high;
+
+		public Between(String column, Object low, Object high) {
+			this.column = column;
+			this.low = low;
+			this.high = high;
+		}
+
+		public String getColumn() {
+			return column;
+		}
+
+		public Object getLow() {
+			return low;
+		}
+
+		public Object getHigh() {
+			return high;
+		}
+
+		@Override
+		public Predicate<List<String>> compile(TableSchema schema) {
+
+			int index = columnIndex(schema, column);
+			DataType type = schema.getColumns().get(index).getType();
+			if(type != DataType.TEXT) {
+				long[] range = keyRange(type);
+				if(range == null)
+					return row -> false;
+				long min = range[0], max = range[1];
+				return row -> {
+					try {
+						if(row.get(index) == null)
+							return false;
+						long key = type.key(row.get(index));
+						return key >= min && key <= max;
+					}
+					catch(IllegalArgumentException e) {
+						return false;
+					}
+				};
+			}
+			String min = low.toString(), max = high.toString();
+			return row -> row.get(index) != null && row.get(index).compareTo(min) >= 0 && row.get(index).compareTo(max) <= 0;
+		}
+
+		@Override
+		public Predicate<RecordView> compileRecord(TableSchema schema) {
+
+			int index = columnIndex(schema, column);
+			DataType type = schema.getColumns().get(index).getType();
+			if(type != DataType.TEXT) {
+				long[] range = keyRange(type);
+				if(range == null)
+					return record -> false;
+				long min = range[0], max = range[1];
+				return record -> {
+					long key = record.getKey(index);
+					return key >= min && key <= max;
+				};
+			}
+			byte[] min = utf8(low), max = utf8(high);
+			return record -> record.compareText(index, min) >= 0 && record.compareText(index, max) <= 0;
+		}
+
+		//Keys of the values of a column of the type between low and high, see keyRange()
+		public long[] keyRange(DataType type) {
+
+			long[] from = Condition.keyRange(type, Comparison.Op.GE, low), to = Condition.keyRange(type, Comparison.Op.LE, high);
+			if(from == null || to == null)
+				return null;
+			return new long[] { from[0], to[1] };
+		}
+
+		@Override
+		public int cost(TableSchema schema) {
+			return typeCost(schema, column) + 1;
+		}
+
+		@Override
+		public double selectivity(Map<String, ColumnStats> columns) {
+
+			ColumnStats stats = columns.get(column);
+			if(stats != null && stats.getType() != DataType.TEXT)
+				return ColumnStats.keys(stats, keyRange(stats.getType()), false);
+			return ColumnStats.between(stats, low, high);
+		}
+
+		@Override
+		protected void addColumns(Set<String> columns) {
+			columns.add(column);
+		}
+
+		@Override
+		public Condition bind(List<Object> values) {
+			return new Between(column, Statement.bindValue(low, values), Statement.bindValue(high, values));
+		}
+
+		@Override
+		public Condition withColumns(Function<String, String> names) {
+			return new Between(names.apply(column), low, high);
+		}
+
+		@Override
+		public String toString() {
+			return column + " BETWEEN " + quote(low) + " AND " + quote(high);
+		}
+	}
+
+
+
+
+	//column IN (literal, literal...)
+	public static class In extends Condition {
+
+		private final String column;
+		private final List<Object> values;
+
+		public In(String column, List<Object> values) {
+			this.column = column;
+			this.values = Collections.unmodifiableList(new ArrayList<>(values));
+		}
+
+		public String getColumn() {
+			return column;
+		}
+
+		public List<Object> getValues() {
+			return values;
+		}
+
+		@Override
+		public Predicate<List<String>> compile(TableSchema schema) {
+
+			int index = columnIndex(schema, column);
+			DataType type = schema.getColumns().get(index).getType();
+			if(type != DataType.TEXT) {
+				//sorted keys, searched without boxing
+				long[] sorted = sortedKeys(type);
+				return row -> {
+					try {
+						return row.get(index) != null && Arrays.binarySearch(sorted, type.key(row.get(index))) >= 0;
+					}
+					catch(IllegalArgumentException e) {
+						return false;
+					}
+				};
+			}
+			Set<String> texts = new HashSet<>();
+			for(Object value: values)
+				texts.add(value.toString());
+			return row -> texts.contains(row.get(index));
+		}
+
+		@Override
+		public Predicate<RecordView> compileRecord(TableSchema schema) {
+
+			int index = columnIndex(schema, column);
+			DataType type = schema.getColumns().get(index).getType();
+			if(type != DataType.TEXT) {
+				long[] sorted = sortedKeys(type);
+				return record -> Arrays.binarySearch(sorted, record.getKey(index)) >= 0;
+			}
+			//a short list is compared byte by byte, a long one looked up in a set
+			if(values.size() > 8) {
+				Set<String> texts = new HashSet<>();
+				for(Object value: values)
+					texts.add(value.toString());
+				return record -> texts.contains(record.getString(index));
+			}
+			byte[][] texts = new byte[values.size()][];
+			for(int i=0;i<texts.length;i++)
+				texts[i] = utf8(values.get(i));
+			return record -> {
+				for(byte[] text: texts) {
+					if(record.textEquals(index, text))
+						return true;
+				}
+				return false;
+			};
+		}
+
+		//Keys of the values of the type equal to a value of the list, sorted
+		public long[] sortedKeys(DataType type) {
+
+			long[] keys = new long[values.size()];
+			int count = 0;
+			for(Object value: values) {
+				long[] range = keyRange(type, Comparison.Op.EQ, value);
+				if(range != null && range[0] == range[1])
+					keys[count++] = range[0];
+			}
+			long[] sorted = Arrays.copyOf(keys, count);
+			Arrays.sort(sorted);
+			return sorted;
+		}
+
+		@Override
+		public int cost(TableSchema schema) {
+			return typeCost(schema, column) + 1;
+		}
+
+		//one equality per distinct value
+		@Override
+		public double selectivity(Map<String, ColumnStats> columns) {
+
+			ColumnStats stats = columns.get(column);
+			double selectivity = 0;
+			for(Object value: new LinkedHashSet<>(values)) {
+				if(stats != null && stats.getType() != DataType.TEXT)
+					selectivity += ColumnStats.keys(stats, keyRange(stats.getType(), Comparison.Op.EQ, value), false);
+				else
+					selectivity += ColumnStats.equal(stats, value);
+			}
+			return Math.min(1, selectivity);
+		}
+
+		@Override
+		protected void addColumns(Set<String> columns) {
+			columns.add(column);
+		}
+
+		@Override
+		public Condition bind(List<Object> values) {
+			List<Object> bound = new ArrayList<>(this.values.size());
+			for(Object value: this.values)
+				bound.add(Statement.bindValue(value, values));
+			return new In(column, bound);
+		}
+
+		@Override
+		public Condition withColumns(Function<String, String> names) {
+			return new In(names.apply(column), values);
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder text = new StringBuilder(column + " IN (");
+			for(int i=0;i<values.size();i++)
+				text.append(i == 0 ? "" : ", ").append(quote(values.get(i)));
+			return text.append(")").toString();
+		}
+	}
+
+
+
+
+	//column LIKE 'pattern', % matches any text and _ any one character
+	public static class Like extends Condition {
+
+		private final String column;
+		private final Object pattern;
+
+		public Like(String column, Object pattern) {
+			this.column = column;
+			this.pattern = pattern;
+		}
+
+		@Override
+		public Predicate<List<String>> compile(TableSchema schema) {
+
+			int index = columnIndex(schema, column);
+			String pattern = this.pattern.toString();
+			//the common shapes avoid the regex: 'abc', 'abc%', '%abc' and '%abc%'
+			String inner = inner(pattern);
+			if(inner != null) {
+				boolean anyStart = pattern.startsWith("%");
+				boolean anyEnd = pattern.length() > inner.length() + (anyStart ? 1 : 0);
+				if(anyStart && anyEnd)
+					return row -> row.get(index) != null && row.get(index).contains(inner);
+				if(anyEnd)
+					return row -> row.get(index) != null && row.get(index).startsWith(inner);
+				if(anyStart)
+					return row -> row.get(index) != null && row.get(index).endsWith(inner);
+				return row -> inner.equals(row.get(index));
+			}
+			Pattern compiled = regex(pattern);
+			return row -> row.get(index) != null && compiled.matcher(row.get(index)).matches();
+		}
+
+		@Override
+		public Predicate<RecordView> compileRecord(TableSchema schema) {
+
+			int index = columnIndex(schema, column);
+			if(schema.getColumns().get(index).getType() != DataType.TEXT) {
+				//a typed field has no text to match bytes with, rare enough to test on the row
+				Predicate<List<String>> predicate = compile(schema);
+				return record -> predicate.test(record.decode(null));
+			}
+			String pattern = this.pattern.toString();
+			String inner = inner(pattern);
+			if(inner != null) {
+				byte[] text = utf8(inner);
+				boolean anyStart = pattern.startsWith("%");
+				boolean anyEnd = pattern.length() > inner.length() + (anyStart ? 1 : 0);
+				if(anyStart && anyEnd)
+					return record -> record.textContains(index, text);
+				if(anyEnd)
+					return record -> record.textStartsWith(index, text);
+				if(anyStart)
+					return record -> record.textEndsWith(index, text);
+				return record -> record.textEquals(index, text);
+			}
+			Pattern compiled = regex(pattern);
+			return record -> compiled.matcher(record.getString(index)).matches();
+		}
+
+		//The text between the % of the shapes 'abc', 'abc%', '%abc' and '%abc%', null for another shape
+		private static String inner(String pattern) {
+
+			if(pattern.indexOf('_') != -1)
+				return null;
+			boolean anyStart = pattern.startsWith("%");
+			boolean anyEnd = pattern.length() > (anyStart ? 1 : 0) && pattern.endsWith("%");
+			String inner = pattern.substring(anyStart ? 1 : 0, pattern.length() - (anyEnd ? 1 : 0));
+			return inner.indexOf('%') == -1 ? inner : null;
+		}
+
+		private static Pattern regex(String pattern) {
+
+			StringBuilder regex = new StringBuilder();
+			StringBuilder literal = new StringBuilder();
+			for(char c: pattern.toCharArray()) {
+				if(c == '%' || c == '_') {
+					if(literal.length() > 0)
+						regex.append(Pattern.quote(literal.toString()));
+					literal.setLength(0);
+					regex.append(c == '%' ? ".*" : ".");
+				}
+				else
+					literal.append(c);
+			}
+			if(literal.length() > 0)
+				regex.append(Pattern.quote(literal.toString()));
+			return Pattern.compile(regex.toString(), Pattern.DOTALL);
+		}
+
+		@Override
+		public int cost(TableSchema schema) {
+			return 4;
+		}
+
+		@Override
+		public double selectivity(Map<String, ColumnStats> columns) {
+			return ColumnStats.like(columns.get(column), pattern.toString());
+		}
+
+		@Override
+		protected void addColumns(Set<String> columns) {
+			columns.add(column);
+		}
+
+		@Override
+		public Condition bind(List<Object> values) {
+			return new Like(column, Statement.bindValue(pattern, values));
+		}
+
+		@Override
+		public Condition withColumns(Function<String, String> names) {
+			return new Like(names.apply(column), pattern);
+		}
+
+		@Override
+		public String toString() {
+			return column + " LIKE " + quote(pattern);
+		}
+	}
+
+
+
+
+	//Every part is true
+	public static class And extends Condition {
+
+		private final List<Condition> parts;
+
+		public And(List<Condition> parts) {
+			this.parts = Collections.unmodifiableList(new ArrayList<>(parts));
+		}
+
+		@Override
+		public List<Condition> conjuncts() {
+			return parts;
+		}
+
+		@Override
+		public int cost(TableSchema schema) {
+			return totalCost(parts, schema);
+		}
+
+		//the parts are taken as independent
+		@Override
+		public double selectivity(Map<String, ColumnStats> columns) {
+
+			double selectivity = 1;
+			for(Condition part: parts)
+				selectivity *= part.selectivity(columns);
+			return selectivity;
+		}
+
+		@Override
+		public Predicate<List<String>> compile(TableSchema schema) {
+
+			List<Predicate<List<String>>> predicates = compileAll(parts, schema);
+			return row -> {
+				for(Predicate<List<String>> predicate: predicates) {
+					if(!predicate.test(row))
+						return false;
+				}
+				return true;
+			};
+		}
+
+		@Override
+		public Predicate<RecordView> compileRecord(TableSchema schema) {
+
+			List<Predicate<RecordView>> predicates = compileAllRecords(parts, schema);
+			return record -> {
+				for(Predicate<RecordView> predicate: predicates) {
+					if(!predicate.test(record))
+						return false;
+				}
+				return true;
+			};
+		}
+
+		@Override
+		protected void addColumns(Set<String> columns) {
+			for(Condition part: parts)
+				part.addColumns(columns);
+		}
+
+		@Override
+		public Condition bind(List<Object> values) {
+			return new And(bindAll(parts, values));
+		}
+
+		@Override
+		public Condition withColumns(Function<String, String> names) {
+			return new And(renameAll(parts, names));
+		}
+
+		@Override
+		public String toString() {
+			return join(parts, " AND ");
+		}
+	}
+
+
+
+
+	//At least one part is true
+	public static class Or extends Condition {
+
+		private final List<Condition> parts;
+
+		public Or(List<Condition> parts) {
+			this.parts = Collections.unmodifiableList(new ArrayList<>(parts));
+		}
+
+		@Override
+		public int cost(TableSchema schema) {
+			return totalCost(parts, schema);
+		}
+
+		@Override
+		public double selectivity(Map<String, ColumnStats> columns) {
+
+			double none = 1;
+			for(Condition part: parts)
+				none *= 1 - part.selectivity(columns);
+			return 1 - none;
+		}
+
+		@Override
+		public Predicate<List<String>> compile(TableSchema schema) {
+
+			List<Predicate<List<String>>> predicates = compileAll(parts, schema);
+			return row -> {
+				for(Predicate<List<String>> predicate: predicates) {
+					if(predicate.test(row))
+						return true;
+				}
+				return false;
+			};
+		}
+
+		@Override
+		public Predicate<RecordView> compileRecord(TableSchema schema) {
+
+			List<Predicate<RecordView>> predicates = compileAllRecords(parts, schema);
+			return record -> {
+				for(Predicate<RecordView> predicate: predicates) {
+					if(predicate.test(record))
+						return true;
+				}
+				return false;
+			};
+		}
+
+		@Override
+		protected void addColumns(Set<String> columns) {
+			for(Condition part: parts)
+				part.addColumns(columns);
+		}
+
+		@Override
+		public Condition bind(List<Object> values) {
+			return new Or(bindAll(parts, values));
+		}
+
+		@Override
+		public Condition withColumns(Function<String, String> names) {
+			return new Or(renameAll(parts, names));
+		}
+
+		@Override
+		public String toString() {
+			return join(parts, " OR ");
+		}
+	}
+
+
+
+
+	//The literal as an INT, null if it isn't one
+	public static Integer toInt(Object value) {
+
+		if(value instanceof Integer)
+			return (Integer) value;
+		try {
+			return Integer.parseInt(value.toString().trim());
+		}
+		catch(NumberFormatException e) {
+			return null;
+		}
+	}
+
+	//The literal as the key of a value of the type, null if it isn't one
+	static Long key(DataType type, Object literal) {
+		try {
+			return type.key(literal.toString());
+		}
+		catch(IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	//The keys of the values of a typed column for which "column op literal" is true, as { min, max },
+	//min > max when there are none. null when the literal isn't a value of the type, it matches no row.
+	//A number is compared exactly with the numbers of the column, not as the nearest double: for an INT
+	//or BIGINT column a number between two values, and for a DOUBLE column a number between two doubles,
+	//like a BIGINT past 2^53, selects the values on its side of it
+	public static long[] keyRange(DataType type, Comparison.Op op, Object literal) {
+
+		//the first key not below the literal and the last key not above it, the key of the literal when it is a value
+		BigInteger low, high;
+		BigDecimal number = type.isNumeric() ? number(literal) : null;
+		if(type == DataType.INT || type == DataType.BIGINT) {
+			if(number == null)
+				return null;
+			low = number.setScale(0, RoundingMode.CEILING).toBigInteger();
+			high = number.setScale(0, RoundingMode.FLOOR).toBigInteger();
+		}
+		else if(type == DataType.DOUBLE) {
+			if(number == null)
+				return null;
+			double nearest = number.doubleValue();
+			int side = new BigDecimal(nearest).compareTo(number);
+			low = BigInteger.valueOf(DataType.toKey(side < 0 ? Math.nextUp(nearest) : nearest));
+			high = BigInteger.valueOf(DataType.toKey(side > 0 ? Math.nextDown(nearest) : nearest));
+		}
+		else {
+			Long key = key(type, literal);
+			if(key == null)
+				return null;
+			low = high = BigInteger.valueOf(key);
+		}
+
+		BigInteger first = BigInteger.valueOf(type.minKey()), last = BigInteger.valueOf(type.maxKey());
+		BigInteger min = first, max = last;
+		switch(op) {
+			case LT: max = low.subtract(BigInteger.ONE); break;
+			case LE: max = high; break;
+			case GT: min = high.add(BigInteger.ONE); break;
+			case GE: min = low; break;
+			default: min = low; max = high; break;
+		}
+		min = min.max(first);
+		max = max.min(last);
+		if(min.compareTo(max) > 0)
+			return new long[] { 1, 0 };
+		return new long[] { min.longValue(), max.longValue() };
+	}
+
+	//The number the literal writes, null if it isn't a finite number
+	private static BigDecimal number(Object literal) {
+
+		if(key(DataType.DOUBLE, literal) == null)
+			return null;
+		try {
+			return new BigDecimal(literal.toString().trim());
+		}
+		catch(NumberFormatException e) {
+			return null;
+		}
+	}
+
+	private static int columnIndex(TableSchema schema, String column) {
+
+		int index = schema.indexOf(column);
+		if(index == -1)
+			throw new IllegalArgumentException("Column '" + column + "' does not exist in table '" + schema.getTableName() + "'");
+		return index;
+	}
+
+	//INT tests parse the field, TEXT tests compare strings
+	private static int typeCost(TableSchema schema, String column) {
+		int index = schema.indexOf(column);
+		return index != -1 && schema.getColumns().get(index).getType() == DataType.TEXT ? 2 : 1;
+	}
+
+	private static int totalCost(List<Condition> parts, TableSchema schema) {
+		int cost = 0;
+		for(Condition part: parts)
+			cost += part.cost(schema);
+		return cost;
+	}
+
+	private static List<Condition> bindAll(List<Condition> parts, List<Object> values) {
+		List<Condition> bound = new ArrayList<>(parts.size());
+		for(Condition part: parts)
+			bound.add(part.bind(values));
+		return bound;
+	}
+
+	private static List<Condition> renameAll(List<Condition> parts, Function<String, String> names) {
+		List<Condition> renamed = new ArrayList<>(parts.size());
+		for(Condition part: parts)
+			renamed.add(part.withColumns(names));
+		return renamed;
+	}
+
+	//The predicates of the parts, cheapest first so AND and OR stop as early and cheaply as they can
+	private static List<Predicate<List<String>>> compileAll(List<Condition> parts, TableSchema schema) {
+
+		List<Condition> ordered = new ArrayList<>(parts);
+		ordered.sort(Comparator.comparingInt(part -> part.cost(schema)));
+		List<Predicate<List<String>>> predicates = new ArrayList<>();
+		for(Condition part: ordered)
+			predicates.add(part.compile(schema));
+		return predicates;
+	}
+
+	private static List<Predicate<RecordView>> compileAllRecords(List<Condition> parts, TableSchema schema) {
+
+		List<Condition> ordered = new ArrayList<>(parts);
+		ordered.sort(Comparator.comparingInt(part -> part.cost(schema)));
+		List<Predicate<RecordView>> predicates = new ArrayList<>();
+		for(Condition part: ordered)
+			predicates.add(part.compileRecord(schema));
+		return predicates;
+	}
+
+	private static byte[] utf8(Object value) {
+		return value.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static String quote(Object value) {
+		return value instanceof String ? "'" + ((String) value).replace("'", "''") + "'" : String.valueOf(value);
+	}
+
+	private static String join(List<Condition> parts, String separator) {
+
+		StringBuilder text = new StringBuilder();
+		for(Condition part: parts) {
+			if(text.length() > 0)
+				text.append(separator);
+			//an OR inside an AND keeps its parentheses
+			text.append(part instanceof Or && separator.equals(" AND ") ? "(" + part + ")" : part.toString());
+		}
+		return text.toString();
+	}
+
+}
@@ -0,0 +1,327 @@
+package com.minidb;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+//A session on the database, for applications that run statements without the REPL.
+//Statements are given as SQL text with ? for the values, queries return a ResultSet and
+//the other statements the number of rows they changed. Errors are thrown as a
+//DatabaseException with the message the REPL would print. Get one with MiniDB.connect().
+//
+//Outside of BEGIN each statement runs in a transaction of its own, committed when it ends.
+//After BEGIN the statements share one transaction until COMMIT or ROLLBACK, a statement
+//that fails is rolled back alone. A connection runs one statement at a time, from any thread: the
+//table locks of its results and transaction belong to the connection (see LockManager), so a
+//transaction can be committed, or a result closed, on another thread than the one that started it.
+public class Connection implements AutoCloseable {
+
+	//statements of PREPARE by name
+	private final Map<String, Statement> prepared = new ConcurrentHashMap<>();
+	private volatile List<String> warnings = Collections.emptyList();
+	private volatile boolean closed;
+	//started by BEGIN, null in autocommit
+	private Transaction transaction;
+	//changed by SET
+	private final Settings settings = new Settings();
+
+	Connection() {
+	}
+
+	Settings getSettings() {
+		return settings;
+	}
+
+
+
+
+	//Runs a SELECT, SHOW or DESC, the ? of the statement are replaced by the params in order
+	public ResultSet executeQuery(String sql, Object... params) throws DatabaseException {
+
+		Result result = execute(sql, Arrays.asList(params));
+		if(!result.isQuery())
+			throw new DatabaseException("Error: Statement doesn't return rows, use executeUpdate()");
+		return new ResultSet(result);
+	}
+
+	//Runs any other statement, returns the number of rows inserted, updated or deleted
+	public long executeUpdate(String sql, Object... params) throws DatabaseException {
+
+		Result result = execute(sql, Arrays.asList(params));
+		if(result.isQuery()) {
+			result.close();
+			throw new DatabaseException("Error: Statement returns rows, use executeQuery()");
+		}
+		return result.getUpdateCount();
+	}
+
+	//Parses the statement once, to run it many times with different values
+	public PreparedQuery prepare(String sql) throws DatabaseException {
+
+		checkOpen();
+		return new PreparedQuery(this, parse(sql));
+	}
+
+	//What the last statement reported without failing, like the rows skipped by a LOAD DATA
+	public List<String> getWarnings() {
+		return warnings;
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		prepared.clear();
+		if(transaction != null) {
+			try {
+				TransactionManager.rollback(transaction);
+			}
+			catch(IOException e) {
+				Messages.error("Error: Can't roll back the transaction: " + e.getMessage());
+			}
+			transaction = null;
+		}
+	}
+
+	//True between BEGIN and COMMIT or ROLLBACK
+	public boolean inTransaction() {
+		return transaction != null;
+	}
+
+
+
+
+	//Runs one statement, the parsed statement comes from the plan cache when the same text was run before
+	Result execute(String sql, List<Object> params) throws DatabaseException {
+
+		checkOpen();
+		return execute(parse(sql), params);
+	}
+
+	//Runs a parsed statement collecting what the managers report, their errors make the DatabaseException
+	Result execute(Statement statement, List<Object> params) throws DatabaseException {
+
+		checkOpen();
+		Messages.Collected previous = Messages.startCollecting();
+		Settings.attach(settings);
+		LockManager.attach(this);
+		try {
+			return run(statement, params);
+		}
+		catch(RuntimeException e) {
+			throw new DatabaseException("Error: " + e.getMessage(), e);
+		}
+		finally {
+			LockManager.attach(null);
+			Settings.attach(null);
+			warnings = Collections.unmodifiableList(new ArrayList<>(Messages.stopCollecting(previous).warnings));
+		}
+	}
+
+	private Result run(Statement statement, List<Object> params) throws DatabaseException {
+
+		if(params.size() != statement.getParameterCount())
+			throw new DatabaseException("Error: Expected " + statement.getParameterCount() + " parameter(s), got " + params.size());
+		try {
+			statement = statement.bind(params);
+		}
+		catch(IllegalArgumentException e) {
+			throw new DatabaseException("Error: " + e.getMessage());
+		}
+
+		if(statement instanceof Statement.Prepare)
+			return prepare((Statement.Prepare) statement);
+		if(statement instanceof Statement.Execute)
+			return execute((Statement.Execute) statement);
+		if(statement instanceof Statement.Deallocate)
+			return deallocate((Statement.Deallocate) statement);
+		if(statement instanceof Statement.Set)
+			return set((Statement.Set) statement);
+		if(statement instanceof Statement.Begin)
+			return begin();
+		if(statement instanceof Statement.Commit)
+			return commit();
+		if(statement instanceof Statement.Rollback)
+			return rollback();
+		return runInTransaction(statement);
+	}
+
+	//Runs the statement in the transaction of BEGIN or in one of its own. A query keeps the snapshot
+	//it read with, so its rows stay the same after the commit
+	private Result runInTransaction(Statement statement) throws DatabaseException {
+
+		Transaction tx = transaction;
+		if(tx != null && isDefinition(statement))
+			throw new DatabaseException("Error: " + statement.getClass().getSimpleName() + " can't run inside a transaction, COMMIT or ROLLBACK first");
+		if(tx == null)
+			tx = TransactionManager.begin(false);
+
+		TransactionManager.attach(tx);
+		int savepoint = TransactionManager.savepoint(tx);
+		try {
+			String tableName = changedTable(statement);
+			if(tableName != null && !TransactionManager.lockTable(tx, tableName)) {
+				String errors = Messages.collectedErrors();
+				throw new DatabaseException(errors != null ? errors : "Error: Can't lock table '" + tableName + "'");
+			}
+			Result result = Executor.execute(statement);
+			if(!tx.isExplicit())
+				TransactionManager.commit(tx);
+			return result;
+		}
+		catch(DatabaseException | RuntimeException e) {
+			undo(tx, savepoint);
+			throw e;
+		}
+		catch(IOException e) {
+			undo(tx, savepoint);
+			throw new DatabaseException("Error: " + e.getMessage(), e);
+		}
+		finally {
+			TransactionManager.attach(null);
+		}
+	}
+
+	//Rolls back what the failed statement changed, all of its transaction in autocommit
+	private void undo(Transaction tx, int savepoint) {
+
+		if(tx.isEnded())
+			return;
+		try {
+			if(tx.isExplicit())
+				TransactionManager.rollbackTo(tx, savepoint);
+			else
+				TransactionManager.rollback(tx);
+		}
+		catch(IOException e) {
+			Messages.error("Error: Can't roll back the statement: " + e.getMessage());
+		}
+	}
+
+	//Table the statement changes rows of, locked until the transaction ends
+	private static String changedTable(Statement statement) {
+
+		if(statement instanceof Statement.Insert)
+			return ((Statement.Insert) statement).getTableName();
+		if(statement instanceof Statement.LoadData)
+			return ((Statement.LoadData) statement).getTableName();
+		if(statement instanceof Statement.Update)
+			return ((Statement.Update) statement).getTableName();
+		if(statement instanceof Statement.Delete)
+			return ((Statement.Delete) statement).getTableName();
+		return null;
+	}
+
+	//Statements that change the tables themselves, they aren't undone by a rollback
+	private static boolean isDefinition(Statement statement) {
+		return statement instanceof Statement.CreateTable || statement instanceof Statement.CreateIndex
+				|| statement instanceof Statement.DropIndex || statement instanceof Statement.DropTable
+				|| statement instanceof Statement.Vacuum;
+	}
+
+	private static Statement parse(String sql) throws DatabaseException {
+
+		try {
+			return PlanCache.parse(sql);
+		}
+		catch(SyntaxException e) {
+			throw new DatabaseException("Syntax Error: " + e.getMessage(), e);
+		}
+	}
+
+	private void checkOpen() throws DatabaseException {
+		if(closed)
+			throw new DatabaseException("Error: Connection is closed");
+	}
+
+
+
+
+	//PREPARE name AS statement;
+	private Result prepare(Statement.Prepare statement) {
+
+		prepared.put(statement.getName(), statement.getStatement());
+		return Result.update(0, "Statement '" + statement.getName() + "' prepared with " + statement.getStatement().getParameterCount() + " parameter(s)");
+	}
+
+	//EXECUTE name(val1, val2...);
+	private Result execute(Statement.Execute statement) throws DatabaseException {
+
+		Statement preparedStatement = prepared.get(statement.getName());
+		if(preparedStatement == null)
+			throw new DatabaseException("Error: No prepared statement named '" + statement.getName() + "'");
+		return run(preparedStatement, statement.getValues());
+	}
+
+	//DEALLOCATE name;
+	private Result deallocate(Statement.Deallocate statement) throws DatabaseException {
+
+		if(prepared.remove(statement.getName()) == null)
+			throw new DatabaseException("Error: No prepared statement named '" + statement.getName() + "'");
+		return Result.update(0, "Statement '" + statement.getName() + "' deallocated");
+	}
+
+
+
+
+	//SET name = value;
+	private Result set(Statement.Set statement) throws DatabaseException {
+
+		try {
+			settings.set(statement.getName(), statement.getValue());
+		}
+		catch(IllegalArgumentException e) {
+			throw new DatabaseException("Error: " + e.getMessage());
+		}
+		return Result.update(0, statement.getName().toUpperCase() + " set to " + statement.getValue().toUpperCase());
+	}
+
+	//BEGIN;
+	private Result begin() throws DatabaseException {
+
+		if(transaction != null)
+			throw new DatabaseException("Error: A transaction is already in progress");
+		transaction = TransactionManager.begin(true);
+		return Result.update(0, "Transaction started");
+	}
+
+	//COMMIT;
+	private Result commit() throws DatabaseException {
+
+		Transaction tx = transaction;
+		if(tx == null)
+			throw new DatabaseException("Error: No transaction in progress");
+		transaction = null;
+		try {
+			TransactionManager.commit(tx);
+		}
+		catch(IOException e) {
+			throw new DatabaseException("Error: Transaction rolled back, can't commit: " + e.getMessage(), e);
+		}
+		return Result.update(0, "Transaction committed");
+	}
+
+	//ROLLBACK;
+	private Result rollback() throws DatabaseException {
+
+		Transaction tx = transaction;
+		if(tx == null)
+			throw new DatabaseException("Error: No transaction in progress");
+		transaction = null;
+		try {
+			TransactionManager.rollback(tx);
+		}
+		catch(IOException e) {
+			throw new DatabaseException("Error: " + e.getMessage(), e);
+		}
+		return Result.update(0, "Transaction rolled back");
+	}
+
+}
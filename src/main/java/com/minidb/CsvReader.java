@@ -0,0 +1,108 @@
+package com.minidb;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+//Reads the rows of a CSV file one at a time, for LOAD DATA.
+//Fields are separated by commas, a field in double quotes can hold commas, line breaks
+//and "" for a quote. Unquoted fields are trimmed and empty lines are skipped.
+public class CsvReader implements Iterator<List<String>>, Closeable {
+
+	private final BufferedReader reader;
+	private List<String> nextRow;
+
+	public CsvReader(File file) throws IOException {
+		this.reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8), 1 << 16);
+		this.nextRow = readRow();
+	}
+
+	@Override
+	public boolean hasNext() {
+		return nextRow != null;
+	}
+
+	@Override
+	public List<String> next() {
+
+		if(nextRow == null)
+			throw new NoSuchElementException();
+		List<String> row = nextRow;
+		try {
+			nextRow = readRow();
+		}
+		catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return row;
+	}
+
+	private List<String> readRow() throws IOException {
+
+		String line;
+		do {
+			line = reader.readLine();
+			if(line == null)
+				return null;
+		} while(line.trim().isEmpty());
+
+		List<String> row = new ArrayList<>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false, wasQuoted = false;
+		int i = 0;
+		while(true) {
+			if(i == line.length()) {
+				if(!quoted)
+					break;
+				//a quoted field goes on on the next line
+				line = reader.readLine();
+				if(line == null)
+					throw new IOException("Unterminated quoted field at the end of the file");
+				field.append('\n');
+				i = 0;
+				continue;
+			}
+
+			char c = line.charAt(i++);
+			if(quoted) {
+				if(c != '"')
+					field.append(c);
+				else if(i < line.length() && line.charAt(i) == '"') {
+					field.append('"');
+					i++;
+				}
+				else
+					quoted = false;
+			}
+			else if(c == '"' && field.toString().trim().isEmpty()) {
+				field.setLength(0);
+				quoted = true;
+				wasQuoted = true;
+			}
+			else if(c == ',') {
+				row.add(wasQuoted ? field.toString() : field.toString().trim());
+				field.setLength(0);
+				wasQuoted = false;
+			}
+			else if(!wasQuoted || !Character.isWhitespace(c))
+				field.append(c);
+		}
+		row.add(wasQuoted ? field.toString() : field.toString().trim());
+		return row;
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+
+}
@@ -0,0 +1,213 @@
+package com.minidb;
+
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+//Column types supported by the tables.
+//Values move through the rows as text in the canonical form of their type (see parse()), so two
+//equal values always have the same text. Every type but TEXT has a key: a long ordered like the
+//values, which is what a record stores in a fixed width field and what records, index keys and
+//aggregates compare, so a typed value is compared as a number without being parsed again.
+//The ordinal of a type is written in the index files, new types go at the end.
+public enum DataType {
+
+	INT(4),
+	TEXT(-1),
+	BIGINT(8),
+	DOUBLE(8),
+	BOOLEAN(1),
+	TIMESTAMP(8);
+
+	//yyyy-MM-dd[( |T)HH:mm[:ss[.SSS]]]
+	private static final Pattern TIMESTAMP_FORMAT = Pattern.compile("(\\d{4})-(\\d{2})-(\\d{2})(?:[ T](\\d{2}):(\\d{2})(?::(\\d{2})(?:\\.(\\d{1,3}))?)?)?");
+
+	//keys of the first and last TIMESTAMP written with a 4 digit year
+	private static final long MIN_TIMESTAMP = LocalDateTime.of(0, 1, 1, 0, 0).toEpochSecond(ZoneOffset.UTC) * 1000;
+	private static final long MAX_TIMESTAMP = LocalDateTime.of(9999, 12, 31, 23, 59, 59).toEpochSecond(ZoneOffset.UTC) * 1000 + 999;
+
+	private final int width;
+
+	DataType(int width) {
+		this.width = width;
+	}
+
+	//Returns the type for a name like "int" or "TEXT", null if the type is unknown
+	public static DataType fromName(String name) {
+		for(DataType type: values()) {
+			if(type.name().equalsIgnoreCase(name))
+				return type;
+		}
+		return null;
+	}
+
+	//Bytes of a field of the type in a record, -1 for TEXT which is length prefixed
+	public int getWidth() {
+		return width;
+	}
+
+	//Whether SUM and AVG take the type
+	public boolean isNumeric() {
+		return this == INT || this == BIGINT || this == DOUBLE;
+	}
+
+
+
+
+	//The value in the canonical form of the type: INT and BIGINT without sign or leading zeros,
+	//DOUBLE as Double.toString() writes it, BOOLEAN true or false, TIMESTAMP yyyy-MM-dd HH:mm:ss
+	//with the milliseconds when there are some. Throws IllegalArgumentException when the value
+	//isn't one of the type
+	public String parse(String value) {
+		return this == TEXT ? value : fromKey(key(value));
+	}
+
+	//Key of a value of the type, throws IllegalArgumentException when the value isn't one of the type.
+	//INT, BIGINT and BOOLEAN (0 or 1) are their own key, TIMESTAMP the milliseconds since 1970 UTC,
+	//DOUBLE the bits of the double with the negative numbers flipped to order them
+	public long key(String value) {
+
+		String text = value.trim();
+		switch(this) {
+			case INT:
+				return Integer.parseInt(text);
+			case BIGINT:
+				return Long.parseLong(text);
+			case DOUBLE:
+				if(!isDecimal(text) || Double.isInfinite(Double.parseDouble(text)))
+					throw new IllegalArgumentException("Not a DOUBLE: '" + value + "'");
+				return toKey(Double.parseDouble(text));
+			case BOOLEAN:
+				if(text.equalsIgnoreCase("true") || text.equals("1"))
+					return 1;
+				if(text.equalsIgnoreCase("false") || text.equals("0"))
+					return 0;
+				throw new IllegalArgumentException("Not a BOOLEAN: '" + value + "'");
+			case TIMESTAMP:
+				return timestamp(text);
+			default:
+				throw new IllegalArgumentException("TEXT values have no key");
+		}
+	}
+
+	//The canonical text of the value with the key
+	public String fromKey(long key) {
+
+		switch(this) {
+			case INT:
+			case BIGINT:
+				return Long.toString(key);
+			case DOUBLE:
+				return Double.toString(toDouble(key));
+			case BOOLEAN:
+				return key == 0 ? "false" : "true";
+			case TIMESTAMP:
+				LocalDateTime time = LocalDateTime.ofEpochSecond(Math.floorDiv(key, 1000), 0, ZoneOffset.UTC);
+				int millis = (int) Math.floorMod(key, 1000);
+				String text = String.format("%04d-%02d-%02d %02d:%02d:%02d", time.getYear(), time.getMonthValue(), time.getDayOfMonth(),
+						time.getHour(), time.getMinute(), time.getSecond());
+				return millis == 0 ? text : text + String.format(".%03d", millis);
+			default:
+				throw new IllegalArgumentException("TEXT values have no key");
+		}
+	}
+
+	//Smallest key of a value of the type
+	public long minKey() {
+
+		switch(this) {
+			case INT:
+				return Integer.MIN_VALUE;
+			case DOUBLE:
+				return toKey(-Double.MAX_VALUE);
+			case BOOLEAN:
+				return 0;
+			case TIMESTAMP:
+				return MIN_TIMESTAMP;
+			default:
+				return Long.MIN_VALUE;
+		}
+	}
+
+	//Largest key of a value of the type
+	public long maxKey() {
+
+		switch(this) {
+			case INT:
+				return Integer.MAX_VALUE;
+			case DOUBLE:
+				return toKey(Double.MAX_VALUE);
+			case BOOLEAN:
+				return 1;
+			case TIMESTAMP:
+				return MAX_TIMESTAMP;
+			default:
+				return Long.MAX_VALUE;
+		}
+	}
+
+	//Order of two values of the type in their canonical text, parsing both. Operators comparing a
+	//value many times take its key once instead (see RowOrder). INT values are compared as longs, and
+	//the text of a TIMESTAMP or BOOLEAN sorts like its value
+	public int compare(String a, String b) {
+
+		switch(this) {
+			case INT:
+			case BIGINT:
+				return Long.compare(Long.parseLong(a), Long.parseLong(b));
+			case DOUBLE:
+				return Double.compare(Double.parseDouble(a), Double.parseDouble(b));
+			default:
+				return a.compareTo(b);
+		}
+	}
+
+
+
+
+	//Key of a DOUBLE: the bits of a negative double grow with its magnitude, flipping all but the sign
+	//orders them, and 0.0 and -0.0 are one value
+	public static long toKey(double value) {
+		long bits = Double.doubleToLongBits(value == 0 ? 0.0 : value);
+		return bits < 0 ? bits ^ Long.MAX_VALUE : bits;
+	}
+
+	public static double toDouble(long key) {
+		return Double.longBitsToDouble(key < 0 ? key ^ Long.MAX_VALUE : key);
+	}
+
+	//Whether the text only has the characters of a decimal number, Double.parseDouble() also reads NaN,
+	//Infinity, hexadecimal and a d or f suffix. Checked by hand as it runs for each value keyed
+	private static boolean isDecimal(String text) {
+
+		for(int i=0;i<text.length();i++) {
+			char c = text.charAt(i);
+			if((c < '0' || c > '9') && c != '.' && c != '-' && c != '+' && c != 'e' && c != 'E')
+				return false;
+		}
+		return true;
+	}
+
+	private static long timestamp(String text) {
+
+		Matcher matcher = TIMESTAMP_FORMAT.matcher(text);
+		if(!matcher.matches())
+			throw new IllegalArgumentException("Not a TIMESTAMP: '" + text + "', expected yyyy-MM-dd HH:mm:ss");
+		try {
+			LocalDateTime time = LocalDateTime.of(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)), Integer.parseInt(matcher.group(3)),
+					field(matcher.group(4)), field(matcher.group(5)), field(matcher.group(6)));
+			String millis = matcher.group(7) == null ? "0" : (matcher.group(7) + "00").substring(0, 3);
+			return time.toEpochSecond(ZoneOffset.UTC) * 1000 + Integer.parseInt(millis);
+		}
+		catch(DateTimeException e) {
+			throw new IllegalArgumentException("Not a TIMESTAMP: '" + text + "', " + e.getMessage());
+		}
+	}
+
+	private static int field(String digits) {
+		return digits == null ? 0 : Integer.parseInt(digits);
+	}
+
+}
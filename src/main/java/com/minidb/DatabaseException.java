@@ -0,0 +1,16 @@
+package com.minidb;
+
+//A statement run through a Connection failed, the message is the one the REPL would print
+public class DatabaseException extends Exception {
+
+	private static final long serialVersionUID = 1L;
+
+	public DatabaseException(String message) {
+		super(message);
+	}
+
+	public DatabaseException(String message, Throwable cause) {
+		super(message, cause);
+	}
+
+}
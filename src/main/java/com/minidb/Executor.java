@@ -0,0 +1,1404 @@
+package com.minidb;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+
+//Runs parsed statements with the managers and returns their Result instead of printing it.
+//Errors are thrown as a DatabaseException, with the messages the managers reported while
+//the statement ran (see Messages). Used by Connection, so by the REPL and embedded callers.
+public class Executor {
+
+	//The statement must be bound, PREPARE and EXECUTE are handled by the Connection
+	public static Result execute(Statement statement) throws DatabaseException {
+
+		try {
+			if(statement instanceof Statement.CreateTable)
+				return createTable((Statement.CreateTable) statement);
+			if(statement instanceof Statement.CreateIndex)
+				return createIndex((Statement.CreateIndex) statement);
+			if(statement instanceof Statement.DropIndex)
+				return dropIndex((Statement.DropIndex) statement);
+			if(statement instanceof Statement.Insert)
+				return insert((Statement.Insert) statement);
+			if(statement instanceof Statement.LoadData)
+				return loadData((Statement.LoadData) statement);
+			if(statement instanceof Statement.Select)
+				return select((Statement.Select) statement, null);
+			if(statement instanceof Statement.Explain)
+				return explain((Statement.Explain) statement);
+			if(statement instanceof Statement.DropTable)
+				return dropTable((Statement.DropTable) statement);
+			if(statement instanceof Statement.Show)
+				return show((Statement.Show) statement);
+			if(statement instanceof Statement.Describe)
+				return describe((Statement.Describe) statement);
+			if(statement instanceof Statement.Delete)
+				return delete((Statement.Delete) statement);
+			if(statement instanceof Statement.Update)
+				return update((Statement.Update) statement);
+			if(statement instanceof Statement.Vacuum)
+				return vacuum((Statement.Vacuum) statement);
+			if(statement instanceof Statement.Analyze)
+				return analyze((Statement.Analyze) statement);
+		}
+		catch(IOException e) {
+			throw new DatabaseException("Error: " + e.getMessage(), e);
+		}
+		throw new DatabaseException("Error: " + statement.getClass().getSimpleName() + " can't be run here");
+	}
+
+	//Error for a manager call that failed, with what the manager reported
+	private static DatabaseException failed(String fallback) {
+
+		String errors = Messages.collectedErrors();
+		return new DatabaseException(errors != null ? errors : fallback);
+	}
+
+	private static void lockShared(String tableName) throws DatabaseException {
+		if(!LockManager.lockShared(tableName))
+			throw failed("Error: Can't lock table '" + tableName + "'");
+	}
+
+	private static void lockWrite(String tableName) throws DatabaseException {
+		if(!LockManager.lockWrite(tableName))
+			throw failed("Error: Can't lock table '" + tableName + "'");
+	}
+
+	private static void lockExclusive(String tableName) throws DatabaseException {
+		if(!LockManager.lockExclusive(tableName))
+			throw failed("Error: Can't lock table '" + tableName + "'");
+	}
+
+	//Snapshot of the transaction running the statement, null without one
+	private static TransactionManager.Snapshot snapshot() {
+		Transaction tx = TransactionManager.current();
+		return tx == null ? null : TransactionManager.snapshot(tx);
+	}
+
+	private static TableSchema schema(String tableName) throws DatabaseException {
+
+		TableSchema schema = MetaManager.getSchema(tableName);
+		if(schema == null)
+			throw failed("Error: Table '" + tableName + "' not exists!");
+		return schema;
+	}
+
+	//For EXPLAIN (explain isn't null): wraps the operator of a step of the plan, whose inputs are the
+	//last inputs steps built, in a step counting its rows. explain keeps the steps not read by another yet
+	private static Operator step(Deque<ExplainOperator> explain, Operator plan, String description, double estimate, int inputs) {
+
+		if(explain == null)
+			return plan;
+		List<ExplainOperator> steps = new ArrayList<>();
+		for(int i=0;i<inputs;i++)
+			steps.add(0, explain.pop());
+		ExplainOperator step = new ExplainOperator(plan, description, estimate, steps);
+		explain.push(step);
+		return step;
+	}
+
+	//Estimated rows of the last step built, 0 without EXPLAIN
+	private static double estimate(Deque<ExplainOperator> explain) {
+		return explain == null || explain.isEmpty() ? 0 : explain.peek().getEstimate();
+	}
+
+
+
+
+	//CREATE TABLE tableName (col1 col1Type [PRIMARY KEY], col2 col2Type, ...) [WITH (storage = columnar)];
+	private static Result createTable(Statement.CreateTable statement) throws DatabaseException {
+
+		String tableName = statement.getTableName();
+		lockExclusive(tableName);
+		try {
+			if(!MetaManager.createTable(tableName, statement.getColumns(), statement.getPrimaryKey(), statement.isColumnar()) || !TableManager.createTableFile(tableName))
+				throw failed("Error creating the table '" + tableName + "'");
+		}
+		finally {
+			LockManager.unlockExclusive(tableName);
+		}
+		return Result.update(0, "Table '" + tableName + "' created successfully!");
+	}
+
+	//CREATE INDEX indexName ON tableName(colName);
+	private static Result createIndex(Statement.CreateIndex statement) throws DatabaseException {
+
+		String indexName = statement.getIndexName();
+		if(!IndexManager.createIndex(indexName, statement.getTableName(), statement.getColumnName()))
+			throw failed("Error creating the index '" + indexName + "'");
+		return Result.update(0, "Index '" + indexName + "' created successfully!");
+	}
+
+	//DROP INDEX indexName;
+	private static Result dropIndex(Statement.DropIndex statement) throws DatabaseException {
+
+		String indexName = statement.getIndexName();
+		if(!IndexManager.dropIndex(indexName))
+			throw failed("Error dropping the index '" + indexName + "'");
+		return Result.update(0, "Index '" + indexName + "' dropped successfully!");
+	}
+
+	//DROP TABLE tableName;
+	private static Result dropTable(Statement.DropTable statement) throws DatabaseException {
+
+		String tableName = statement.getTableName();
+		if(!TableManager.dropTable(tableName))
+			throw failed("Error: Table '" + tableName + "' does not exist or could not be deleted.");
+		return Result.update(0, "Table '" + tableName + "' dropped successfully!");
+	}
+
+
+
+
+	//INSERT INTO tableName VALUES (col1val, col2val,...), (col1val, col2val,...)...;
+	private static Result insert(Statement.Insert statement) throws DatabaseException {
+
+		String tableName = statement.getTableName();
+		List<List<String>> rows = new ArrayList<>();
+		for(List<Object> literals: statement.getRows()) {
+			List<String> row = new ArrayList<>(literals.size());
+			for(Object literal: literals)
+				row.add(literal.toString());
+			rows.add(row);
+		}
+
+		if(rows.size() == 1) {
+			if(!TableManager.insertRow(tableName, rows.get(0), false))
+				throw failed("Error inserting the row");
+			return Result.update(1, "Row inserted in '" + tableName + "' successfully");
+		}
+		long inserted = TableManager.insertRows(tableName, rows, false);
+		if(inserted < 0)
+			throw failed("Error inserting the rows");
+		return Result.update(inserted, inserted + " rows inserted in '" + tableName + "' successfully");
+	}
+
+	//LOAD DATA 'file.csv' INTO TABLE tableName;
+	private static Result loadData(Statement.LoadData statement) throws DatabaseException, IOException {
+
+		File file = loadFile(statement.getFileName());
+		String tableName = statement.getTableName();
+		if(!file.isFile())
+			throw new DatabaseException("Error: File '" + file.getPath() + "' does not exist");
+
+		long start = System.nanoTime();
+		try(CsvReader reader = new CsvReader(file)) {
+			long loaded = TableManager.loadRows(tableName, reader);
+			if(loaded < 0)
+				throw failed("Error loading '" + file.getPath() + "'");
+			return Result.update(loaded, String.format("%d rows loaded into '%s' in %.2f s", loaded, tableName, (System.nanoTime() - start) / 1e9));
+		}
+	}
+
+
+
+
+	//The file of a LOAD DATA. A session restricted by the server only reads the files in its
+	//directory, a relative name is taken from there, so a client can't read the other files of the host
+	private static File loadFile(String name) throws DatabaseException, IOException {
+
+		Settings settings = Settings.current();
+		if(!settings.isLoadRestricted())
+			return new File(name);
+		File directory = settings.getLoadDirectory();
+		if(directory == null)
+			throw new DatabaseException("Error: LOAD DATA is disabled on server connections");
+
+		File file = new File(name);
+		if(!file.isAbsolute())
+			file = new File(directory, name);
+		if(!file.getCanonicalPath().startsWith(directory.getCanonicalPath() + File.separator))
+			throw new DatabaseException("Error: LOAD DATA can only read files in '" + directory.getPath() + "'");
+		return file;
+	}
+
+
+
+
+	//SELECT * FROM tableName;
+	//WHERE colName = colValue
+	//GROUP BY col1, col2... with COUNT(*), COUNT(col), SUM(col), AVG(col), MIN(col), MAX(col)
+	//ORDER BY col1 [ASC | DESC], ...
+	//LIMIT n [OFFSET m]
+	//The rows are the ones of the snapshot of the transaction, the writers don't wait for them.
+	//The table stays locked shared until the rows are closed, so it isn't dropped or vacuumed under them.
+	//For EXPLAIN each step of the plan counts its rows (see step)
+	private static Result select(Statement.Select statement, Deque<ExplainOperator> explain) throws DatabaseException, IOException {
+
+		if(!statement.getJoins().isEmpty())
+			return selectJoin(statement, explain);
+		String tableName = statement.getTableName();
+		lockShared(tableName);
+		TransactionManager.Snapshot snapshot = TransactionManager.openSnapshot();
+		boolean opened = false;
+		try {
+			Result result = select(statement, tableName, snapshot, explain);
+			opened = true;
+			return result;
+		}
+		finally {
+			if(!opened) {
+				TransactionManager.closeSnapshot(snapshot);
+				LockManager.unlockShared(tableName);
+			}
+		}
+	}
+
+	private static Result select(Statement.Select statement, String tableName, TransactionManager.Snapshot snapshot, Deque<ExplainOperator> explain) throws DatabaseException, IOException {
+
+		Condition where = statement.getWhere();
+		TableSchema schema = schema(tableName);
+		String name = statement.getAlias() != null ? statement.getAlias() : tableName;
+		if(where != null && hasQualified(where.columns()))
+			where = where.withColumns(col -> unqualified(col, name));
+
+		//a grouped SELECT reads the columns it groups and aggregates
+		List<String> newCols = new ArrayList<>();
+		List<String> groupBy = null, items = null;
+		if(statement.isGrouped()) {
+			groupBy = new ArrayList<>();
+			for(String col: statement.getGroupBy())
+				groupBy.add(column(schema, unqualified(col, name)));
+			items = new ArrayList<>();
+			for(String col: groupedColumns(statement))
+				items.add(col == null ? null : column(schema, unqualified(col, name)));
+			newCols = groupInputs(statement, groupBy, items);
+		}
+		else if(statement.getColumns() == null)
+			newCols.addAll(schema.getColumnNames());
+		else {
+			for(String col: statement.getColumns())
+				newCols.add(column(schema, unqualified(col, name)));
+		}
+
+		//ORDER BY columns that aren't selected are read too, and dropped once the rows are sorted
+		List<String> headers = statement.isGrouped() ? statement.getColumns() : new ArrayList<>(newCols);
+		int[] orderKeys = new int[statement.getOrderBy().size()];
+		for(int k=0;k<orderKeys.length;k++) {
+			Statement.Order order = statement.getOrderBy().get(k);
+			String key = order.getColumn() == null || headers.contains(order.getColumn()) ? null : column(schema, unqualified(order.getColumn(), name));
+			orderKeys[k] = orderPosition(statement, order, headers, statement.isGrouped() ? items : newCols, key);
+			if(orderKeys[k] == -1) {
+				if(statement.isGrouped())
+					throw new DatabaseException("Error: ORDER BY " + order.getColumn() + " must be one of the selected columns");
+				newCols.add(key);
+				orderKeys[k] = newCols.size() - 1;
+			}
+		}
+
+		int[] colIndex = new int[newCols.size()];
+		List<DataType> types = new ArrayList<>();
+		for(int i=0;i<newCols.size();i++) {
+			colIndex[i] = schema.indexOf(newCols.get(i));
+			types.add(schema.getColumns().get(colIndex[i]).getType());
+		}
+
+		//scan -> filter -> project [-> aggregate] [-> sort] -> limit, the rows are read as the caller asks for them
+		Operator plan;
+		long rowCount = where == null ? countAll(statement, schema, snapshot) : -1;
+		if(rowCount >= 0) {
+			plan = new ValuesOperator(Collections.singletonList(Collections.nCopies(items.size(), Long.toString(rowCount))));
+			plan = step(explain, plan, "Row count of " + tableName + " from statistics", 1, 0);
+			types = Collections.nCopies(items.size(), DataType.INT);
+		}
+		else {
+			boolean firstRows = !statement.isGrouped() && orderKeys.length == 0 && statement.getLimit() >= 0;
+			plan = scanRows(tableName, schema, where, colIndex, firstRows ? statement.getOffset() + statement.getLimit() : -1, snapshot, explain);
+			if(statement.isGrouped()) {
+				List<DataType> groupedTypes = new ArrayList<>();
+				plan = aggregate(statement, plan, newCols, types, groupBy, items, groupedTypes, TableStats.columns(tableName), explain);
+				types = groupedTypes;
+			}
+		}
+		plan = sort(statement, plan, orderKeys, types, explain);
+		if(!statement.isGrouped() && newCols.size() > headers.size()) {
+			plan = new ProjectOperator(plan, firstColumns(headers.size()));
+			types = types.subList(0, headers.size());
+		}
+		plan = new TransactionManager.SnapshotScan(plan, snapshot);
+		plan = new LockManager.SharedScan(plan, tableName);
+		plan = limit(statement, plan, explain);
+		plan.open();
+
+		String emptyMessage = where == null ? "No rows found!" : "No rows selected for WHERE " + where;
+		return Result.query(headers, types, plan, emptyMessage);
+	}
+
+	//The column, failing if the table doesn't have it
+	private static String column(TableSchema schema, String col) throws DatabaseException {
+		if(schema.indexOf(col) == -1)
+			throw new DatabaseException("Column '" + col + "' does not exist in table '" + schema.getTableName() + "'!");
+		return col;
+	}
+
+	//SELECT COUNT(*)[, COUNT(*)...] FROM tableName; is answered by the row count of the table
+	//statistics as the snapshot sees it, without reading a row. -1 for another SELECT, or when the snapshot must count the rows
+	private static long countAll(Statement.Select statement, TableSchema schema, TransactionManager.Snapshot snapshot) throws IOException {
+
+		if(statement.getAggregates() == null || !statement.getGroupBy().isEmpty())
+			return -1;
+		for(Statement.Aggregate aggregate: statement.getAggregates()) {
+			if(aggregate == null || aggregate.getFunction() != Statement.Aggregate.Function.COUNT || aggregate.getColumn() != null)
+				return -1;
+		}
+		return TableStats.rowCount(schema, snapshot);
+	}
+
+	private static boolean hasQualified(Collection<String> columns) {
+
+		for(String column: columns) {
+			if(column.indexOf('.') != -1)
+				return true;
+		}
+		return false;
+	}
+
+	//The column without "name." in front, unchanged if it is qualified with another name
+	private static String unqualified(String column, String name) {
+		return column.startsWith(name + ".") ? column.substring(name.length() + 1) : column;
+	}
+
+
+
+
+	//SELECT ... FROM a [alias] [INNER | LEFT [OUTER]] JOIN b [alias] ON a.x = b.y ... [WHERE condition] [GROUP BY ...] [ORDER BY ...] [LIMIT n [OFFSET m]];
+	//Every table is locked shared and read in one snapshot until the rows are closed, like a SELECT
+	//of one table. The tables are locked in name order so two joins never wait for each other
+	private static Result selectJoin(Statement.Select statement, Deque<ExplainOperator> explain) throws DatabaseException, IOException {
+
+		Set<String> tables = new TreeSet<>();
+		tables.add(statement.getTableName());
+		for(Statement.Join join: statement.getJoins())
+			tables.add(join.getTableName());
+
+		List<String> locked = new ArrayList<>();
+		TransactionManager.Snapshot snapshot = null;
+		boolean opened = false;
+		try {
+			for(String tableName: tables) {
+				lockShared(tableName);
+				locked.add(tableName);
+			}
+			snapshot = TransactionManager.openSnapshot();
+			Result result = selectJoin(statement, locked, snapshot, explain);
+			opened = true;
+			return result;
+		}
+		finally {
+			if(!opened) {
+				if(snapshot != null)
+					TransactionManager.closeSnapshot(snapshot);
+				for(String tableName: locked)
+					LockManager.unlockShared(tableName);
+			}
+		}
+	}
+
+	//A table of a join, with the columns read from it and the WHERE conditions tested while it is scanned
+	private static class JoinSource {
+
+		final String name;
+		final TableSchema schema;
+		//null for the table after FROM
+		final Statement.Join join;
+		//columns of the table read, in the order they are in the joined rows
+		final List<Integer> columns = new ArrayList<>();
+		Condition where;
+		//position of its first column in the joined rows
+		int offset;
+		//estimated rows read from it, after its WHERE conditions
+		double rows;
+
+		JoinSource(String name, TableSchema schema, Statement.Join join) {
+			this.name = name;
+			this.schema = schema;
+			this.join = join;
+		}
+
+		void use(int column) {
+			if(!columns.contains(column))
+				columns.add(column);
+		}
+
+		//The column named name.column
+		String column(int column) {
+			return name + "." + schema.getColumnNames().get(column);
+		}
+
+		//Position of the column in the joined rows
+		int position(int column) {
+			return offset + columns.indexOf(column);
+		}
+
+		int[] columnIndexes() {
+			int[] indexes = new int[columns.size()];
+			for(int i=0;i<indexes.length;i++)
+				indexes[i] = columns.get(i);
+			return indexes;
+		}
+
+		//Bytes of its files, the smaller input of a join is the one kept in memory
+		long size() {
+			return schema.isColumnar() ? ColumnStore.getSize(schema.getTableName()) : TableManager.getTableFile(schema.getTableName()).length();
+		}
+	}
+
+	//The table and column a column of the statement is: name.col for the table with that name or
+	//alias, col for the only table having a column col
+	private static int[] resolve(List<JoinSource> sources, String column) throws DatabaseException {
+
+		int dot = column.indexOf('.');
+		if(dot != -1) {
+			String name = column.substring(0, dot), col = column.substring(dot + 1);
+			for(int i=0;i<sources.size();i++) {
+				if(sources.get(i).name.equals(name)) {
+					int index = sources.get(i).schema.indexOf(col);
+					if(index == -1)
+						throw new DatabaseException("Column '" + col + "' does not exist in table '" + sources.get(i).schema.getTableName() + "'!");
+					return new int[] { i, index };
+				}
+			}
+			throw new DatabaseException("Error: Unknown table '" + name + "' in column '" + column + "'");
+		}
+
+		int[] found = null;
+		for(int i=0;i<sources.size();i++) {
+			int index = sources.get(i).schema.indexOf(column);
+			if(index != -1) {
+				if(found != null)
+					throw new DatabaseException("Error: Column '" + column + "' is in '" + sources.get(found[0]).name + "' and '" + sources.get(i).name + "', write it as table.column");
+				found = new int[] { i, index };
+			}
+		}
+		if(found == null)
+			throw new DatabaseException("Column '" + column + "' does not exist in the joined tables!");
+		return found;
+	}
+
+	//Type the values of two join keys are compared as: their type, BIGINT for INT and BIGINT, DOUBLE for
+	//a whole number type and DOUBLE (still compared exactly, see RowOrder), TEXT when one of them is TEXT.
+	//Other types have no value in common
+	private static DataType keyType(DataType left, DataType right, String leftColumn, String rightColumn) throws DatabaseException {
+
+		if(left == right)
+			return left;
+		if(left == DataType.TEXT || right == DataType.TEXT)
+			return DataType.TEXT;
+		if(left.isNumeric() && right.isNumeric())
+			return left == DataType.DOUBLE || right == DataType.DOUBLE ? DataType.DOUBLE : DataType.BIGINT;
+		throw new DatabaseException("Error: Can't join " + left + " column '" + leftColumn + "' with " + right + " column '" + rightColumn + "'");
+	}
+
+	//The ON equalities between the table at index and the tables joined, as { joined table, its column, index, column of index }
+	private static List<int[]> joinKeys(List<int[]> equalities, List<Integer> joined, int index) {
+
+		List<int[]> keys = new ArrayList<>();
+		for(int[] equality: equalities) {
+			if(equality[2] == index && joined.contains(equality[0]))
+				keys.add(equality);
+			else if(equality[0] == index && joined.contains(equality[2]))
+				keys.add(new int[] { equality[2], equality[3], equality[0], equality[1] });
+		}
+		return keys;
+	}
+
+	//Estimated rows of joining leftRows rows of the tables joined with the table of the keys (see joinKeys)
+	private static double joinRows(List<JoinSource> sources, Map<String, ColumnStats> columnStats, double leftRows, List<int[]> keys) {
+
+		JoinSource right = sources.get(keys.get(0)[2]);
+		double[] leftDistinct = new double[keys.size()], rightDistinct = new double[keys.size()];
+		for(int k=0;k<keys.size();k++) {
+			leftDistinct[k] = ColumnStats.distinct(columnStats.get(sources.get(keys.get(k)[0]).column(keys.get(k)[1])), leftRows);
+			rightDistinct[k] = ColumnStats.distinct(columnStats.get(right.column(keys.get(k)[3])), right.rows);
+		}
+		return Planner.joinRows(leftRows, right.rows, leftDistinct, rightDistinct);
+	}
+
+	//The column as table.column, with the name or alias of its table
+	private static String qualified(List<JoinSource> sources, String column) throws DatabaseException {
+		int[] resolved = resolve(sources, column);
+		JoinSource source = sources.get(resolved[0]);
+		return source.name + "." + source.schema.getColumnNames().get(resolved[1]);
+	}
+
+	private static Result selectJoin(Statement.Select statement, List<String> tables, TransactionManager.Snapshot snapshot, Deque<ExplainOperator> explain) throws DatabaseException, IOException {
+
+		List<JoinSource> sources = new ArrayList<>();
+		String first = statement.getTableName();
+		sources.add(new JoinSource(statement.getAlias() != null ? statement.getAlias() : first, schema(first), null));
+		for(Statement.Join join: statement.getJoins()) {
+			String name = join.getAlias() != null ? join.getAlias() : join.getTableName();
+			for(JoinSource source: sources) {
+				if(source.name.equals(name))
+					throw new DatabaseException("Error: Table name '" + name + "' is used twice, give one of them an alias");
+			}
+			sources.add(new JoinSource(name, schema(join.getTableName()), join));
+		}
+
+		//selected columns, a column in several tables is named table.column when all are selected
+		List<int[]> selected = new ArrayList<>();
+		List<String> headers = new ArrayList<>();
+		List<String> groupBy = null, items = null, inputs = null;
+		if(statement.isGrouped()) {
+			//a grouped SELECT reads the columns it groups and aggregates, named table.column
+			groupBy = new ArrayList<>();
+			for(String col: statement.getGroupBy())
+				groupBy.add(qualified(sources, col));
+			items = new ArrayList<>();
+			for(String col: groupedColumns(statement))
+				items.add(col == null ? null : qualified(sources, col));
+			inputs = groupInputs(statement, groupBy, items);
+			for(String col: inputs)
+				selected.add(resolve(sources, col));
+			headers = statement.getColumns();
+		}
+		else if(statement.getColumns() == null) {
+			Set<String> seen = new HashSet<>(), repeated = new HashSet<>();
+			for(JoinSource source: sources) {
+				for(String col: source.schema.getColumnNames()) {
+					if(!seen.add(col))
+						repeated.add(col);
+				}
+			}
+			for(int i=0;i<sources.size();i++) {
+				JoinSource source = sources.get(i);
+				for(int col=0;col<source.schema.size();col++) {
+					String colName = source.schema.getColumnNames().get(col);
+					selected.add(new int[] { i, col });
+					headers.add(repeated.contains(colName) ? source.name + "." + colName : colName);
+				}
+			}
+		}
+		else {
+			for(String col: statement.getColumns()) {
+				selected.add(resolve(sources, col));
+				headers.add(col);
+			}
+		}
+
+		//ORDER BY columns that aren't selected are read too, and dropped once the rows are sorted
+		List<String> outputs = items;
+		if(!statement.isGrouped()) {
+			outputs = new ArrayList<>();
+			for(int[] column: selected)
+				outputs.add(sources.get(column[0]).name + "." + sources.get(column[0]).schema.getColumnNames().get(column[1]));
+		}
+		int[] orderKeys = new int[statement.getOrderBy().size()];
+		for(int k=0;k<orderKeys.length;k++) {
+			Statement.Order order = statement.getOrderBy().get(k);
+			String key = order.getColumn() == null || headers.contains(order.getColumn()) ? null : qualified(sources, order.getColumn());
+			orderKeys[k] = orderPosition(statement, order, headers, outputs, key);
+			if(orderKeys[k] == -1) {
+				if(statement.isGrouped())
+					throw new DatabaseException("Error: ORDER BY " + order.getColumn() + " must be one of the selected columns");
+				selected.add(resolve(sources, key));
+				outputs.add(key);
+				orderKeys[k] = selected.size() - 1;
+			}
+		}
+
+		//ON: each equality compares a column of the joined table with one of a table before it
+		List<List<int[]>> leftKeys = new ArrayList<>(), rightKeys = new ArrayList<>();
+		for(int i=1;i<sources.size();i++) {
+			Statement.Join join = sources.get(i).join;
+			List<int[]> lefts = new ArrayList<>(), rights = new ArrayList<>();
+			for(int k=0;k<join.getLeftColumns().size();k++) {
+				int[] a = resolve(sources, join.getLeftColumns().get(k)), b = resolve(sources, join.getRightColumns().get(k));
+				if(a[0] == i && b[0] < i) {
+					int[] swap = a;
+					a = b;
+					b = swap;
+				}
+				if(b[0] != i || a[0] >= i)
+					throw new DatabaseException("Error: JOIN " + sources.get(i).name + " ON " + join.getLeftColumns().get(k) + " = " + join.getRightColumns().get(k)
+							+ " must compare a column of '" + sources.get(i).name + "' with a column of a table before it");
+				lefts.add(a);
+				rights.add(b);
+			}
+			leftKeys.add(lefts);
+			rightKeys.add(rights);
+		}
+
+		//WHERE: a condition on one table is tested while the table is scanned, unless the table is
+		//LEFT joined, its missing rows would not be kept. The other conditions are tested on the joined rows
+		List<Condition> residual = new ArrayList<>();
+		List<Set<Integer>> residualSources = new ArrayList<>();
+		if(statement.getWhere() != null) {
+			for(Condition part: statement.getWhere().conjuncts()) {
+				Set<Integer> parts = new HashSet<>();
+				Map<String, int[]> columns = new HashMap<>();
+				for(String col: part.columns()) {
+					int[] column = resolve(sources, col);
+					columns.put(col, column);
+					parts.add(column[0]);
+				}
+				int only = parts.iterator().next();
+				JoinSource source = sources.get(only);
+				if(parts.size() == 1 && (source.join == null || !source.join.isLeft())) {
+					Condition pushed = part.withColumns(col -> source.schema.getColumnNames().get(columns.get(col)[1]));
+					source.where = source.where == null ? pushed : new Condition.And(Arrays.asList(source.where, pushed));
+				}
+				else {
+					residual.add(part.withColumns(col -> {
+						int[] column = columns.get(col);
+						return sources.get(column[0]).name + "." + sources.get(column[0]).schema.getColumnNames().get(column[1]);
+					}));
+					for(int[] column: columns.values())
+						sources.get(column[0]).use(column[1]);
+				}
+			}
+		}
+
+		//the columns read from each table
+		for(int[] column: selected)
+			sources.get(column[0]).use(column[1]);
+		for(int i=0;i<leftKeys.size();i++) {
+			for(int[] column: leftKeys.get(i))
+				sources.get(column[0]).use(column[1]);
+			for(int[] column: rightKeys.get(i))
+				sources.get(column[0]).use(column[1]);
+		}
+
+		//the ON equalities as { table, column, table, column }, each tested when the later of its tables is joined
+		List<int[]> equalities = new ArrayList<>();
+		for(int i=0;i<leftKeys.size();i++) {
+			for(int k=0;k<leftKeys.get(i).size();k++) {
+				int[] a = leftKeys.get(i).get(k), b = rightKeys.get(i).get(k);
+				equalities.add(new int[] { a[0], a[1], b[0], b[1] });
+			}
+		}
+
+		//the statistics of the columns named table.column, and the rows of each table after its WHERE conditions
+		boolean analyzed = true, inner = true;
+		Map<String, ColumnStats> columnStats = new HashMap<>();
+		for(JoinSource source: sources) {
+			source.rows = TableStats.estimateRows(source.schema) * TableStats.selectivity(source.schema, source.where);
+			analyzed &= TableStats.getAnalysis(source.schema.getTableName()) != null;
+			inner &= source.join == null || !source.join.isLeft();
+			for(Map.Entry<String, ColumnStats> entry: TableStats.columns(source.schema.getTableName()).entrySet())
+				columnStats.put(source.name + "." + entry.getKey(), entry.getValue());
+		}
+
+		//the order the tables are joined in: once every table was analyzed, an inner join starts from the
+		//table with the fewest rows and joins the table giving the fewest rows next. Otherwise as written
+		List<Integer> order = new ArrayList<>();
+		if(analyzed && inner) {
+			int start = 0;
+			for(int i=1;i<sources.size();i++) {
+				if(sources.get(i).rows < sources.get(start).rows)
+					start = i;
+			}
+			order.add(start);
+			double rows = sources.get(start).rows;
+			while(order.size() < sources.size()) {
+				int next = -1;
+				double nextRows = 0;
+				for(int i=0;i<sources.size();i++) {
+					List<int[]> keys = joinKeys(equalities, order, i);
+					if(order.contains(i) || keys.isEmpty())
+						continue;
+					double joined = joinRows(sources, columnStats, rows, keys);
+					if(next == -1 || joined < nextRows) {
+						next = i;
+						nextRows = joined;
+					}
+				}
+				order.add(next);
+				rows = nextRows;
+			}
+		}
+		else {
+			for(int i=0;i<sources.size();i++)
+				order.add(i);
+		}
+
+		//the positions of the columns in the joined rows, the tables in the order they are joined
+		List<Column> joinedColumns = new ArrayList<>();
+		int offset = 0;
+		for(int i: order) {
+			JoinSource source = sources.get(i);
+			source.offset = offset;
+			for(int column: source.columns)
+				joinedColumns.add(new Column(source.column(column), source.schema.getColumnTypes().get(column), offset++));
+		}
+
+		//the first table joined with each next one in turn
+		JoinSource firstSource = sources.get(order.get(0));
+		Operator plan = scanRows(firstSource.schema.getTableName(), firstSource.schema, firstSource.where, firstSource.columnIndexes(), -1, snapshot, explain);
+		long leftSize = firstSource.size();
+		double leftRows = firstSource.rows;
+		List<Integer> joined = new ArrayList<>(order.subList(0, 1));
+		long memory = Settings.current().getWorkMemory();
+		for(int n=1;n<order.size();n++) {
+			JoinSource source = sources.get(order.get(n));
+			List<int[]> keys = joinKeys(equalities, joined, order.get(n));
+			int[] leftPositions = new int[keys.size()], rightPositions = new int[keys.size()];
+			DataType[] keyTypes = new DataType[keys.size()];
+			StringBuilder on = new StringBuilder();
+			for(int k=0;k<keys.size();k++) {
+				JoinSource left = sources.get(keys.get(k)[0]);
+				leftPositions[k] = left.position(keys.get(k)[1]);
+				rightPositions[k] = source.columns.indexOf(keys.get(k)[3]);
+				keyTypes[k] = keyType(left.schema.getColumnTypes().get(keys.get(k)[1]), source.schema.getColumnTypes().get(keys.get(k)[3]),
+						left.column(keys.get(k)[1]), source.column(keys.get(k)[3]));
+				on.append(k == 0 ? " ON " : " AND ").append(left.column(keys.get(k)[1])).append(" = ").append(source.column(keys.get(k)[3]));
+			}
+			boolean leftOuter = source.join != null && source.join.isLeft();
+			double rows = joinRows(sources, columnStats, leftRows, keys);
+			if(leftOuter)
+				rows = Math.max(rows, leftRows);
+
+			//an index on a key of the table finds its rows for each left row, unless conditions of
+			//the WHERE clause select its rows, then they are read once. With statistics the index is
+			//only used when looking up every left row costs less than a hash join
+			int indexKey = -1;
+			String index = null;
+			for(int k=0;k<keys.size() && indexKey == -1 && source.where == null;k++) {
+				String col = source.schema.getColumnNames().get(keys.get(k)[3]);
+				Column pk = source.schema.getPrimaryKey();
+				if(source.schema.getIndexOn(col) != null || pk != null && pk.getName().equals(col)) {
+					indexKey = k;
+					index = source.schema.getIndexOn(col) != null ? source.schema.getIndexOn(col).getName() : "PRIMARY KEY";
+				}
+			}
+			if(indexKey != -1 && analyzed) {
+				double matches = source.rows / ColumnStats.distinct(columnStats.get(source.column(keys.get(indexKey)[3])), source.rows);
+				if(Planner.indexJoinCost(leftRows, matches) >= Planner.hashJoinCost(Planner.scanCost(source.schema, source.rows), leftRows, source.rows))
+					indexKey = -1;
+			}
+			String kind = leftOuter ? "Left " : "";
+			if(indexKey != -1) {
+				plan = new IndexJoinOperator(plan, TableManager.getTableFile(source.schema.getTableName()), source.schema, source.columnIndexes(), leftPositions, rightPositions, keyTypes, leftOuter, indexKey, snapshot);
+				plan = step(explain, plan, kind + "Index Join " + source.name + " using " + index + on, rows, 1);
+			}
+			else {
+				Operator right = scanRows(source.schema.getTableName(), source.schema, source.where, source.columnIndexes(), -1, snapshot, explain);
+				boolean buildLeft = !leftOuter && (analyzed ? leftRows < source.rows : leftSize < source.size());
+				plan = new HashJoinOperator(plan, right, leftPositions, rightPositions, keyTypes, leftOuter, source.columns.size(), buildLeft, memory);
+				List<String> hashed = new ArrayList<>();
+				for(int i: buildLeft ? joined : Collections.singletonList(order.get(n)))
+					hashed.add(sources.get(i).name);
+				plan = step(explain, plan, kind + "Hash Join" + on + ", hashing " + join(hashed), rows, 2);
+			}
+			leftSize += source.size();
+			leftRows = rows;
+			joined.add(order.get(n));
+		}
+
+		Condition where = residual.isEmpty() ? null : residual.size() == 1 ? residual.get(0) : new Condition.And(residual);
+		if(where != null) {
+			try {
+				plan = new FilterOperator(plan, where.compile(new TableSchema("join", joinedColumns)));
+			}
+			catch(IllegalArgumentException e) {
+				throw new DatabaseException("No rows returned, " + e.getMessage());
+			}
+			plan = step(explain, plan, "Filter WHERE " + where, leftRows * Math.max(0, Math.min(1, where.selectivity(columnStats))), 1);
+		}
+
+		int[] colIndex = new int[selected.size()];
+		List<DataType> types = new ArrayList<>();
+		for(int i=0;i<selected.size();i++) {
+			int[] column = selected.get(i);
+			colIndex[i] = sources.get(column[0]).position(column[1]);
+			types.add(sources.get(column[0]).schema.getColumnTypes().get(column[1]));
+		}
+		plan = new ProjectOperator(plan, colIndex);
+		if(statement.isGrouped()) {
+			List<DataType> groupedTypes = new ArrayList<>();
+			plan = aggregate(statement, plan, inputs, types, groupBy, items, groupedTypes, columnStats, explain);
+			types = groupedTypes;
+		}
+		plan = sort(statement, plan, orderKeys, types, explain);
+		if(!statement.isGrouped() && selected.size() > headers.size()) {
+			plan = new ProjectOperator(plan, firstColumns(headers.size()));
+			types = types.subList(0, headers.size());
+		}
+		plan = new TransactionManager.SnapshotScan(plan, snapshot);
+		for(String tableName: tables)
+			plan = new LockManager.SharedScan(plan, tableName);
+		plan = limit(statement, plan, explain);
+		plan.open();
+
+		String emptyMessage = statement.getWhere() == null ? "No rows found!" : "No rows selected for WHERE " + statement.getWhere();
+		return Result.query(headers, types, plan, emptyMessage);
+	}
+
+
+
+
+	//EXPLAIN SELECT ...; runs the query, reading all its rows, then returns one row per step of its plan
+	//with the rows the planner estimated the step gives and the rows it gave
+	private static Result explain(Statement.Explain statement) throws DatabaseException, IOException {
+
+		Deque<ExplainOperator> steps = new ArrayDeque<>();
+		Result result = select(statement.getSelect(), steps);
+		try {
+			Operator rows = result.getRows();
+			while(rows.next() != null)
+				;
+		}
+		finally {
+			result.close();
+		}
+		return values(Arrays.asList("PLAN", "ESTIMATED ROWS", "ROWS"), steps.peek().describe(), "");
+	}
+
+
+
+
+	//Position of an ORDER BY column in the rows of the SELECT, -1 when it isn't selected. A column
+	//is found by its name in headers, or as key named like the selected columns are in outputs
+	//(key is null when it is a header)
+	private static int orderPosition(Statement.Select statement, Statement.Order order, List<String> headers, List<String> outputs, String key) throws DatabaseException {
+
+		List<Statement.Aggregate> aggregates = statement.getAggregates();
+		if(order.getAggregate() != null) {
+			for(int i=0;aggregates != null && i<aggregates.size();i++) {
+				if(aggregates.get(i) != null && aggregates.get(i).toString().equals(order.getAggregate().toString()))
+					return i;
+			}
+			throw new DatabaseException("Error: ORDER BY " + order.getAggregate() + " must be one of the selected columns");
+		}
+		if(key == null)
+			return headers.indexOf(order.getColumn());
+		for(int i=0;i<outputs.size();i++) {
+			boolean aggregate = aggregates != null && i < aggregates.size() && aggregates.get(i) != null;
+			if(!aggregate && key.equals(outputs.get(i)))
+				return i;
+		}
+		return -1;
+	}
+
+	//ORDER BY: sorts the rows of plan, whose columns have the types given, on the columns at keys.
+	//Each column is compared as its type, the averages as DOUBLE. With a LIMIT only the rows up to it are kept
+	private static Operator sort(Statement.Select statement, Operator plan, int[] keys, List<DataType> types, Deque<ExplainOperator> explain) {
+
+		if(keys.length == 0)
+			return plan;
+		DataType[] keyTypes = new DataType[keys.length];
+		boolean[] descending = new boolean[keys.length];
+		for(int k=0;k<keys.length;k++) {
+			Statement.Aggregate aggregate = statement.getAggregates() == null ? null : statement.getAggregates().get(keys[k]);
+			keyTypes[k] = aggregate != null && aggregate.getFunction() == Statement.Aggregate.Function.AVG ? DataType.DOUBLE : types.get(keys[k]);
+			descending[k] = statement.getOrderBy().get(k).isDescending();
+		}
+		long limit = statement.getLimit() < 0 ? -1 : statement.getOffset() + statement.getLimit();
+		plan = new SortOperator(plan, new RowOrder(keys, keyTypes, descending), limit, Settings.current().getWorkMemory());
+		double rows = estimate(explain);
+		return step(explain, plan, (limit < 0 ? "Sort BY " : "Top-N Sort BY ") + join(statement.getOrderBy()), limit < 0 ? rows : Math.min(rows, limit), 1);
+	}
+
+	//LIMIT n [OFFSET m], the rows past them aren't read
+	private static Operator limit(Statement.Select statement, Operator plan, Deque<ExplainOperator> explain) {
+
+		if(statement.getLimit() < 0)
+			return plan;
+		plan = new LimitOperator(plan, statement.getOffset(), statement.getLimit());
+		double rows = Math.max(0, Math.min(estimate(explain) - statement.getOffset(), statement.getLimit()));
+		return step(explain, plan, "Limit " + statement.getLimit() + (statement.getOffset() > 0 ? " OFFSET " + statement.getOffset() : ""), rows, 1);
+	}
+
+	//The items separated by commas
+	private static String join(Collection<?> items) {
+
+		StringBuilder text = new StringBuilder();
+		for(Object item: items)
+			text.append(text.length() == 0 ? "" : ", ").append(item);
+		return text.toString();
+	}
+
+	//0, 1... count - 1, to keep the first columns of the rows
+	private static int[] firstColumns(int count) {
+		int[] columns = new int[count];
+		for(int i=0;i<count;i++)
+			columns[i] = i;
+		return columns;
+	}
+
+	//SELECT ... [GROUP BY col1, col2...] with aggregates: the selected columns of a grouped SELECT, the
+	//column of an aggregate in place of the aggregate, null for COUNT(*)
+	private static List<String> groupedColumns(Statement.Select statement) throws DatabaseException {
+
+		if(statement.getColumns() == null)
+			throw new DatabaseException("Error: SELECT * can't be used with GROUP BY, name the columns");
+		List<String> columns = new ArrayList<>();
+		for(int i=0;i<statement.getColumns().size();i++) {
+			Statement.Aggregate aggregate = statement.getAggregates() == null ? null : statement.getAggregates().get(i);
+			columns.add(aggregate == null ? statement.getColumns().get(i) : aggregate.getColumn());
+		}
+		return columns;
+	}
+
+	//Columns a grouped SELECT reads: the GROUP BY columns, then the columns of the aggregates
+	private static List<String> groupInputs(Statement.Select statement, List<String> groupBy, List<String> items) {
+
+		Set<String> inputs = new LinkedHashSet<>(groupBy);
+		for(int i=0;i<items.size();i++) {
+			if(statement.getAggregates() != null && statement.getAggregates().get(i) != null && items.get(i) != null)
+				inputs.add(items.get(i));
+		}
+		return new ArrayList<>(inputs);
+	}
+
+	//Groups the rows of plan and computes the aggregates of the SELECT. The rows of plan have the
+	//columns of inputs, with their types. groupBy and items (see groupedColumns) name the columns
+	//the same way. The rows returned have the selected columns, whose types are added to types.
+	//columns has the statistics of the columns by the names of groupBy, to estimate the groups
+	private static Operator aggregate(Statement.Select statement, Operator plan, List<String> inputs, List<DataType> inputTypes,
+			List<String> groupBy, List<String> items, List<DataType> types, Map<String, ColumnStats> columns, Deque<ExplainOperator> explain) throws DatabaseException {
+
+		int[] groupColumns = new int[groupBy.size()];
+		for(int i=0;i<groupColumns.length;i++)
+			groupColumns[i] = inputs.indexOf(groupBy.get(i));
+
+		List<Statement.Aggregate> aggregates = statement.getAggregates() == null
+				? Collections.<Statement.Aggregate>nCopies(items.size(), null) : statement.getAggregates();
+		int count = 0;
+		for(Statement.Aggregate aggregate: aggregates) {
+			if(aggregate != null)
+				count++;
+		}
+		Statement.Aggregate.Function[] functions = new Statement.Aggregate.Function[count];
+		int[] arguments = new int[count];
+		DataType[] argumentTypes = new DataType[count];
+
+		//a result row is the group columns then the aggregates, projected to the selected order
+		int[] colIndex = new int[items.size()];
+		int next = 0;
+		for(int i=0;i<items.size();i++) {
+			Statement.Aggregate aggregate = aggregates.get(i);
+			if(aggregate == null) {
+				int group = groupBy.indexOf(items.get(i));
+				if(group == -1)
+					throw new DatabaseException("Error: Column '" + statement.getColumns().get(i) + "' must be in GROUP BY or in an aggregate");
+				colIndex[i] = group;
+				types.add(inputTypes.get(groupColumns[group]));
+				continue;
+			}
+			Statement.Aggregate.Function function = aggregate.getFunction();
+			int argument = items.get(i) == null ? -1 : inputs.indexOf(items.get(i));
+			DataType type = argument == -1 ? DataType.INT : inputTypes.get(argument);
+			if((function == Statement.Aggregate.Function.SUM || function == Statement.Aggregate.Function.AVG) && !type.isNumeric())
+				throw new DatabaseException("Error: " + aggregate + " needs an INT, BIGINT or DOUBLE column");
+			functions[next] = function;
+			arguments[next] = argument;
+			argumentTypes[next] = type;
+			colIndex[i] = groupColumns.length + next++;
+			if(function == Statement.Aggregate.Function.COUNT)
+				types.add(DataType.INT);
+			else
+				types.add(function == Statement.Aggregate.Function.AVG ? DataType.TEXT : type);
+		}
+
+		plan = new HashAggregateOperator(plan, groupColumns, functions, arguments, argumentTypes, Settings.current().getWorkMemory());
+		if(explain != null) {
+			//a group per distinct key, at most one per row
+			double rows = estimate(explain), groups = 1;
+			for(String col: groupBy)
+				groups *= ColumnStats.distinct(columns.get(col), rows);
+			List<Statement.Aggregate> computed = new ArrayList<>();
+			for(Statement.Aggregate aggregate: aggregates) {
+				if(aggregate != null)
+					computed.add(aggregate);
+			}
+			String description = "Hash Aggregate " + join(computed) + (groupBy.isEmpty() ? "" : " GROUP BY " + join(statement.getGroupBy()));
+			plan = step(explain, plan, description.trim(), groupBy.isEmpty() ? 1 : Math.min(rows, groups), 1);
+		}
+		return new ProjectOperator(plan, colIndex);
+	}
+
+
+
+
+	//Operator reading the rows of the table matching the WHERE clause, as the snapshot sees them,
+	//with only the columns of colIndexes (every column when null).
+	//When one of the ANDed conditions is on an indexed column the index gives the candidate
+	//rows, otherwise the whole table is scanned, on several threads for a big table. A columnar
+	//table only has the columns used read.
+	private static Operator scanRows(String tableName, TableSchema schema, Condition where, int[] colIndexes, TransactionManager.Snapshot snapshot) throws DatabaseException, IOException {
+		return scanRows(tableName, schema, where, colIndexes, -1, snapshot, null);
+	}
+
+	//Same, when only the first rowLimit rows are read (-1 for every row): without a WHERE clause
+	//they are in the first pages, which are read on this thread instead of reading chunks ahead.
+	//Once the table was analyzed the index is only used when its rows cost less to read than the
+	//table (see Planner), and the condition selecting the fewest rows is the one looked up
+	private static Operator scanRows(String tableName, TableSchema schema, Condition where, int[] colIndexes, long rowLimit,
+			TransactionManager.Snapshot snapshot, Deque<ExplainOperator> explain) throws DatabaseException, IOException {
+
+		File tableFile = TableManager.getTableFile(tableName);
+		double tableRows = TableStats.estimateRows(schema), rows = tableRows * TableStats.selectivity(schema, where);
+		String filter = where == null ? "" : " WHERE " + where;
+		if(where != null) {
+			Predicate<List<String>> predicate;
+			try {
+				predicate = where.predicate(schema);
+				where.recordPredicate(schema);
+			}
+			catch(IllegalArgumentException e) {
+				throw new DatabaseException("No rows returned, " + e.getMessage());
+			}
+			if(schema.isColumnar())
+				return step(explain, new ColumnScanOperator(schema, where, colIndexes), "Column Scan " + tableName + filter, rows, 0);
+
+			boolean analyzed = TableStats.getAnalysis(tableName) != null;
+			Condition indexed = null;
+			double indexedRows = 0;
+			for(Condition part: where.conjuncts()) {
+				if(indexUsed(schema, part) == null)
+					continue;
+				double partRows = tableRows * TableStats.selectivity(schema, part);
+				if(indexed == null || analyzed && partRows < indexedRows) {
+					indexed = part;
+					indexedRows = partRows;
+				}
+			}
+			if(indexed != null && (!analyzed || Planner.indexScanCost(indexedRows) < Planner.scanCost(schema, tableRows))) {
+				Operator plan = new FilterOperator(new IndexScanOperator(tableFile, schema, indexLookup(schema, indexed), snapshot), predicate);
+				plan = colIndexes == null ? plan : new ProjectOperator(plan, colIndexes);
+				filter = where.conjuncts().size() > 1 ? filter : "";
+				return step(explain, plan, "Index Scan " + tableName + " using " + indexUsed(schema, indexed) + " (" + indexed + ")" + filter, rows, 0);
+			}
+		}
+		if(schema.isColumnar())
+			return step(explain, new ColumnScanOperator(schema, null, colIndexes), "Column Scan " + tableName, rows, 0);
+		if(rowLimit >= 0 && where == null)
+			return step(explain, new TableScanOperator(tableFile, schema, snapshot, null, colIndexes, 0, Integer.MAX_VALUE), "Scan " + tableName, rows, 0);
+		//the WHERE clause is tested on the record bytes
+		Operator plan = ParallelScanOperator.scan(tableFile, schema, snapshot, where, colIndexes);
+		return step(explain, plan, (plan instanceof ParallelScanOperator ? "Parallel Scan " : "Scan ") + tableName + filter, rows, 0);
+	}
+
+	//Name of the index an indexLookup of the condition would use, null if it can't use one
+	private static String indexUsed(TableSchema schema, Condition part) {
+
+		String column;
+		boolean equality;
+		if(part instanceof Condition.Comparison) {
+			Condition.Comparison comparison = (Condition.Comparison) part;
+			if(comparison.getOp() == Condition.Comparison.Op.NE)
+				return null;
+			column = comparison.getColumn();
+			equality = comparison.getOp() == Condition.Comparison.Op.EQ;
+		}
+		else if(part instanceof Condition.Between) {
+			column = ((Condition.Between) part).getColumn();
+			equality = false;
+		}
+		else if(part instanceof Condition.In) {
+			column = ((Condition.In) part).getColumn();
+			equality = true;
+		}
+		else
+			return null;
+
+		Column pk = schema.getPrimaryKey();
+		if(equality && pk != null && pk.getName().equals(column))
+			return "PRIMARY KEY";
+		IndexInfo index = schema.getIndexOn(column);
+		return index == null ? null : index.getName();
+	}
+
+	//Row ids of the candidate rows for one condition found with an index, null if no index can be used
+	private static List<RowId> indexLookup(TableSchema schema, Condition part) throws IOException {
+
+		//a typed column is looked up by the range of keys its test is true for (see Condition.keyRange())
+		if(part instanceof Condition.Comparison) {
+			Condition.Comparison comparison = (Condition.Comparison) part;
+			DataType type = columnType(schema, comparison.getColumn());
+			if(type != DataType.TEXT)
+				return lookupKeys(schema, comparison.getColumn(), comparison.keyRange(type));
+			return IndexManager.lookup(schema, comparison.getColumn(), comparison.getOp().getSymbol(), comparison.getValue().toString());
+		}
+		if(part instanceof Condition.Between) {
+			Condition.Between between = (Condition.Between) part;
+			DataType type = columnType(schema, between.getColumn());
+			if(type != DataType.TEXT)
+				return lookupKeys(schema, between.getColumn(), between.keyRange(type));
+			return IndexManager.lookupRange(schema, between.getColumn(), between.getLow().toString(), between.getHigh().toString());
+		}
+		if(part instanceof Condition.In) {
+			//one equality lookup per distinct value
+			Condition.In in = (Condition.In) part;
+			DataType type = columnType(schema, in.getColumn());
+			if(type != DataType.TEXT) {
+				Set<RowId> rowIds = new LinkedHashSet<>();
+				for(long key: in.sortedKeys(type)) {
+					List<RowId> found = IndexManager.lookupKeys(schema, in.getColumn(), key, key);
+					if(found == null)
+						return null;
+					rowIds.addAll(found);
+				}
+				return new ArrayList<>(rowIds);
+			}
+			Set<RowId> rowIds = new LinkedHashSet<>();
+			for(Object value: in.getValues()) {
+				List<RowId> found = IndexManager.lookup(schema, in.getColumn(), "=", value.toString());
+				if(found == null)
+					return null;
+				rowIds.addAll(found);
+			}
+			return new ArrayList<>(rowIds);
+		}
+		return null;
+	}
+
+	private static DataType columnType(TableSchema schema, String column) {
+		return schema.getColumns().get(schema.indexOf(column)).getType();
+	}
+
+	//The rows of a range of keys, none for a literal that isn't a value of the column type
+	private static List<RowId> lookupKeys(TableSchema schema, String column, long[] range) throws IOException {
+		return range == null ? new ArrayList<>() : IndexManager.lookupKeys(schema, column, range[0], range[1]);
+	}
+
+	//Rows of the table matching the WHERE clause, read with the same plan as SELECT so an index
+	//is used when it can be, in the snapshot of the transaction. Their row ids are added to rowIds
+	private static List<List<String>> selectRows(String tableName, TableSchema schema, Condition where, List<RowId> rowIds) throws DatabaseException, IOException {
+
+		Operator scan = scanRows(tableName, schema, where, null, snapshot());
+		List<List<String>> rows = new ArrayList<>();
+		scan.open();
+		try {
+			List<String> row;
+			while((row = scan.next()) != null) {
+				rows.add(row);
+				rowIds.add(scan.getRowId());
+			}
+		}
+		finally {
+			scan.close();
+		}
+		return rows;
+	}
+
+
+
+
+	//SHOW TABLES; SHOW BUFFER POOL; SHOW WAL; SHOW SETTINGS;
+	private static Result show(Statement.Show statement) {
+
+		List<String> headers = new ArrayList<>();
+		List<List<String>> rows = new ArrayList<>();
+		switch(statement.getTarget()) {
+			case TABLES:
+				headers.add("TABLES");
+				for(String tableName: MetaManager.showTables())
+					rows.add(Collections.singletonList(tableName));
+				break;
+			case BUFFER_POOL:
+				headers.add("STATISTIC");
+				headers.add("VALUE");
+				rows = BufferPool.getStats();
+				rows.add(Arrays.asList("columnar bytes read", Long.toString(ColumnStore.getBytesRead())));
+				break;
+			case SETTINGS:
+				headers.add("SETTING");
+				headers.add("VALUE");
+				rows = Settings.current().getRows();
+				break;
+			default:
+				headers.add("STATISTIC");
+				headers.add("VALUE");
+				rows = WriteAheadLog.getStats();
+				break;
+		}
+		return values(headers, rows, "No Tables Found!");
+	}
+
+	//DESC tableName;
+	private static Result describe(Statement.Describe statement) throws DatabaseException {
+
+		TableSchema schema = Catalog.get(statement.getTableName());
+		if(schema == null)
+			throw new DatabaseException("Error: Table '" + statement.getTableName() + "' does not exist!");
+
+		List<String> headers = new ArrayList<>();
+		headers.add("COLUMN NAME");
+		headers.add("COLUMN TYPE");
+		List<List<String>> rows = new ArrayList<>();
+		for(Column column: schema.getColumns()) {
+			List<String> row = new ArrayList<>();
+			row.add(column.getName());
+			row.add(column.getType() + (column.isPrimaryKey() ? " PRIMARY KEY" : ""));
+			rows.add(row);
+		}
+		return values(headers, rows, "");
+	}
+
+	//Query result over rows already in memory, every column is TEXT
+	private static Result values(List<String> headers, List<List<String>> rows, String emptyMessage) {
+
+		List<DataType> types = new ArrayList<>();
+		for(int i=0;i<headers.size();i++)
+			types.add(DataType.TEXT);
+		ValuesOperator operator = new ValuesOperator(rows);
+		operator.open();
+		return Result.query(headers, types, operator, emptyMessage);
+	}
+
+
+
+
+	//A PRIMARY KEY can only be set on one row, to a value no other row has
+	private static void checkPrimaryKeyUpdate(TableSchema schema, List<List<String>> filteredRows, String val) throws DatabaseException, IOException {
+
+		Column pk = schema.getPrimaryKey();
+		if(filteredRows.size() > 1)
+			throw new DatabaseException("Error: Can't set PRIMARY KEY '" + pk.getName() + "' to the same value on " + filteredRows.size() + " rows");
+		boolean unchanged = new Condition.Comparison(pk.getName(), Condition.Comparison.Op.EQ, val).compile(schema).test(filteredRows.get(0));
+		if(!unchanged && IndexManager.containsPrimaryKey(schema, val))
+			throw new DatabaseException("Error: Duplicate value '" + val + "' for PRIMARY KEY '" + pk.getName() + "'");
+	}
+
+	//DELETE FROM tableName WHERE colName = colValue;
+	private static Result delete(Statement.Delete statement) throws DatabaseException, IOException {
+
+		String tableName = statement.getTableName();
+		//the rows are selected and changed under the same lock, no other writer changes them in between
+		lockWrite(tableName);
+		try {
+			TableSchema schema = schema(tableName);
+
+			List<RowId> rowIds = new ArrayList<>();
+			List<List<String>> filteredRows = selectRows(tableName, schema, statement.getWhere(), rowIds);
+			if(filteredRows.isEmpty())
+				return Result.update(0, "No rows selected for WHERE " + statement.getWhere());
+			if(!TableManager.deleteRows(tableName, rowIds, filteredRows))
+				throw failed("Error deleting row(s)");
+			return Result.update(filteredRows.size(), filteredRows.size() + " row(s) deleted from table: '" + tableName + "'");
+		}
+		finally {
+			LockManager.unlockWrite(tableName);
+		}
+	}
+
+	//UPDATE tableName SET col1=val1,col2=val2,... WHERE col=val;
+	private static Result update(Statement.Update statement) throws DatabaseException, IOException {
+
+		String tableName = statement.getTableName();
+		lockWrite(tableName);
+		try {
+			TableSchema schema = schema(tableName);
+
+			List<RowId> rowIds = new ArrayList<>();
+			List<List<String>> filteredRows = selectRows(tableName, schema, statement.getWhere(), rowIds);
+			if(filteredRows.isEmpty())
+				return Result.update(0, "No rows selected for WHERE " + statement.getWhere());
+
+			//the SET clause is checked once, then applied to a copy of every selected row
+			List<Integer> setCols = new ArrayList<>();
+			List<String> setVals = new ArrayList<>();
+			for(int i=0;i<statement.getSetColumns().size();i++) {
+
+				String col = statement.getSetColumns().get(i);
+				Object literal = statement.getSetValues().get(i);
+				int colIndex = schema.indexOf(col);
+				if(colIndex == -1)
+					throw new DatabaseException("Column '" + col + "' does not exist in table '" + tableName + "'.");
+				Column column = schema.getColumns().get(colIndex);
+				String val = literal.toString();
+				if(column.getType() != DataType.TEXT) {
+					try {
+						val = column.getType().parse(val);
+					}
+					catch(IllegalArgumentException e) {
+						throw new DatabaseException("Error: Column '" + col + "' expects " + column.getType() + ", got '" + val + "'");
+					}
+				}
+				if(column.isPrimaryKey())
+					checkPrimaryKeyUpdate(schema, filteredRows, val);
+				setCols.add(colIndex);
+				setVals.add(val);
+			}
+
+			List<List<String>> newRows = new ArrayList<>();
+			for(List<String> row: filteredRows) {
+				List<String> newRow = new ArrayList<>(row);
+				for(int i=0;i<setCols.size();i++)
+					newRow.set(setCols.get(i), setVals.get(i));
+				newRows.add(newRow);
+			}
+
+			if(!TableManager.updateRows(tableName, rowIds, filteredRows, newRows))
+				throw failed("Error when updating");
+			return Result.update(filteredRows.size(), filteredRows.size() + " row(s) updated successfully in table '" + tableName + "'!");
+		}
+		finally {
+			LockManager.unlockWrite(tableName);
+		}
+	}
+
+
+
+
+	//ANALYZE [tableName];
+	//Reads every row of the table in a snapshot, like a SELECT, and keeps their statistics for the planner
+	private static Result analyze(Statement.Analyze statement) throws DatabaseException, IOException {
+
+		List<String> tables = new ArrayList<>();
+		if(statement.getTableName() != null) {
+			schema(statement.getTableName());
+			tables.add(statement.getTableName());
+		}
+		else
+			tables.addAll(MetaManager.showTables());
+
+		StringBuilder message = new StringBuilder();
+		for(String tableName: tables) {
+			lockShared(tableName);
+			TransactionManager.Snapshot snapshot = TransactionManager.openSnapshot();
+			try {
+				TableSchema schema = schema(tableName);
+				TableStats.Analysis analysis = TableStats.analyze(schema, scanRows(tableName, schema, null, null, snapshot));
+				if(message.length() > 0)
+					message.append('\n');
+				message.append("Analyzed '" + tableName + "': " + analysis.getRows() + " rows");
+			}
+			finally {
+				TransactionManager.closeSnapshot(snapshot);
+				LockManager.unlockShared(tableName);
+			}
+		}
+		return Result.update(0, message.toString());
+	}
+
+	//VACUUM [tableName];
+	private static Result vacuum(Statement.Vacuum statement) throws DatabaseException {
+
+		List<String> tables = new ArrayList<>();
+		if(statement.getTableName() != null) {
+			schema(statement.getTableName());
+			tables.add(statement.getTableName());
+		}
+		else
+			tables.addAll(MetaManager.showTables());
+
+		StringBuilder message = new StringBuilder();
+		for(String tableName: tables) {
+			long reclaimed = TableManager.vacuum(tableName);
+			if(reclaimed < 0)
+				throw failed("Error vacuuming table '" + tableName + "'");
+			if(message.length() > 0)
+				message.append('\n');
+			message.append("Vacuumed '" + tableName + "': " + reclaimed + " bytes reclaimed");
+		}
+		return Result.update(0, message.toString());
+	}
+
+}
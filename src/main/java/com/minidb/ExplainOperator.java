@@ -0,0 +1,75 @@
+package com.minidb;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+//A step of a plan run by EXPLAIN: counts the rows its operator returns, and keeps what the step
+//does and the rows the planner estimated it would return. inputs are the steps under it, so the
+//steps of a plan form the same tree as its operators
+public class ExplainOperator implements Operator {
+
+	private final Operator operator;
+	private final String description;
+	private final double estimate;
+	private final List<ExplainOperator> inputs;
+	private long rows;
+
+	public ExplainOperator(Operator operator, String description, double estimate, List<ExplainOperator> inputs) {
+		this.operator = operator;
+		this.description = description;
+		this.estimate = estimate;
+		this.inputs = Collections.unmodifiableList(new ArrayList<>(inputs));
+	}
+
+	public double getEstimate() {
+		return estimate;
+	}
+
+	@Override
+	public void open() throws IOException {
+		rows = 0;
+		operator.open();
+	}
+
+	@Override
+	public List<String> next() throws IOException {
+
+		List<String> row = operator.next();
+		if(row != null)
+			rows++;
+		return row;
+	}
+
+	@Override
+	public RowId getRowId() {
+		return operator.getRowId();
+	}
+
+	@Override
+	public void close() {
+		operator.close();
+	}
+
+	//One row per step from this one down: the step indented under the step reading its rows, its
+	//estimated rows and the rows it returned
+	public List<List<String>> describe() {
+		List<List<String>> lines = new ArrayList<>();
+		describe(lines, 0);
+		return lines;
+	}
+
+	private void describe(List<List<String>> lines, int depth) {
+
+		StringBuilder step = new StringBuilder();
+		for(int i=0;i<depth;i++)
+			step.append("  ");
+		step.append(depth == 0 ? "" : "-> ").append(description);
+		lines.add(Arrays.asList(step.toString(), Long.toString(Math.round(estimate)), Long.toString(rows)));
+		for(ExplainOperator input: inputs)
+			input.describe(lines, depth + 1);
+	}
+
+}
@@ -0,0 +1,213 @@
+package com.minidb;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+//Sorts rows that may not fit in memory. Rows are kept in memory with their keys (see RowOrder)
+//until they take more than the memory given, then sorted and written to a run file (see SpillFile).
+//The sorted rows are read back merging the runs, at most MERGE_WAYS files at a time, the keys of a
+//row read from a run taken once. Rows comparing equal keep the order they were added in. Null
+//values are kept, they are the missing side of a LEFT JOIN.
+public class ExternalSorter {
+
+	//runs read at the same time, each with its own read buffer
+	static final int MERGE_WAYS = 64;
+
+	private final RowOrder order;
+	private final long memory;
+	private final List<RowOrder.Keys> rows = new ArrayList<>();
+	private long rowBytes;
+	private final List<File> runs = new ArrayList<>();
+	private long spilledRows;
+
+	public ExternalSorter(RowOrder order, long memory) {
+		this.order = order;
+		this.memory = memory;
+	}
+
+	//Rough bytes a row takes in memory, the strings and the list holding them
+	public static long sizeOf(List<String> row) {
+
+		long bytes = 16 + 8L * row.size();
+		for(String value: row) {
+			if(value != null)
+				bytes += 40 + 2L * value.length();
+		}
+		return bytes;
+	}
+
+
+
+
+	public void add(List<String> row) throws IOException {
+		add(order.keys(row));
+	}
+
+	//Adds a row whose keys were taken with the order of the sorter
+	public void add(RowOrder.Keys keys) throws IOException {
+
+		rows.add(keys);
+		rowBytes += sizeOf(keys.row) + 8L * keys.keys.length;
+		if(rowBytes > memory)
+			spill();
+	}
+
+	//Rows written to run files so far
+	public long getSpilledRows() {
+		return spilledRows;
+	}
+
+	//The rows added, sorted. The operator deletes the run files when it is closed
+	public Operator sorted() throws IOException {
+
+		rows.sort(order::compare);
+		if(runs.isEmpty())
+			return new ValuesOperator(rowsOf(rows));
+		if(!rows.isEmpty())
+			spill();
+		while(runs.size() > MERGE_WAYS) {
+			//the first runs are merged into one in their place, so equal rows keep their order
+			List<File> first = new ArrayList<>(runs.subList(0, MERGE_WAYS));
+			runs.subList(0, MERGE_WAYS).clear();
+			MergeOperator merge = new MergeOperator(first, order);
+			try {
+				merge.open();
+				runs.add(0, writeRun(merge));
+			}
+			finally {
+				merge.close();
+			}
+		}
+		List<File> last = new ArrayList<>(runs);
+		runs.clear();
+		return new MergeOperator(last, order);
+	}
+
+	//Deletes the run files of a sorter whose rows aren't read
+	public void discard() {
+
+		for(File run: runs)
+			run.delete();
+		runs.clear();
+		rows.clear();
+	}
+
+	private void spill() throws IOException {
+
+		rows.sort(order::compare);
+		ValuesOperator sorted = new ValuesOperator(rowsOf(rows));
+		sorted.open();
+		runs.add(writeRun(sorted));
+		spilledRows += rows.size();
+		rows.clear();
+		rowBytes = 0;
+	}
+
+
+
+
+	private static List<List<String>> rowsOf(List<RowOrder.Keys> keys) {
+
+		List<List<String>> rows = new ArrayList<>(keys.size());
+		for(RowOrder.Keys row: keys)
+			rows.add(row.row);
+		return rows;
+	}
+
+	//A run file with the rows of the operator, see SpillFile
+	private static File writeRun(Operator rows) throws IOException {
+
+		File run = SpillFile.create("sort");
+		try(DataOutputStream out = SpillFile.output(run)) {
+			List<String> row;
+			while((row = rows.next()) != null)
+				SpillFile.writeRow(out, row);
+		}
+		catch(IOException e) {
+			run.delete();
+			throw e;
+		}
+		return run;
+	}
+
+
+
+
+	//Merges sorted runs, the run files are deleted when it is closed
+	private static class MergeOperator implements Operator {
+
+		private final List<File> runs;
+		private final RowOrder order;
+		private final List<DataInputStream> inputs = new ArrayList<>();
+		//the next row of each run not yet returned, equal rows come from the earlier run first
+		private PriorityQueue<Head> heads;
+
+		private static class Head {
+			final int run;
+			RowOrder.Keys row;
+
+			Head(int run, RowOrder.Keys row) {
+				this.run = run;
+				this.row = row;
+			}
+		}
+
+		MergeOperator(List<File> runs, RowOrder order) {
+			this.runs = runs;
+			this.order = order;
+		}
+
+		@Override
+		public void open() throws IOException {
+
+			heads = new PriorityQueue<>(Math.max(1, runs.size()), (a, b) -> {
+				int cmp = order.compare(a.row, b.row);
+				return cmp != 0 ? cmp : Integer.compare(a.run, b.run);
+			});
+			for(int i=0;i<runs.size();i++) {
+				DataInputStream in = SpillFile.input(runs.get(i));
+				inputs.add(in);
+				List<String> row = SpillFile.readRow(in);
+				if(row != null)
+					heads.add(new Head(i, order.keys(row)));
+			}
+		}
+
+		@Override
+		public List<String> next() throws IOException {
+
+			Head head = heads.poll();
+			if(head == null)
+				return null;
+			List<String> row = head.row.row;
+			List<String> next = SpillFile.readRow(inputs.get(head.run));
+			if(next != null) {
+				head.row = order.keys(next);
+				heads.add(head);
+			}
+			return row;
+		}
+
+		@Override
+		public void close() {
+
+			for(DataInputStream in: inputs) {
+				try {
+					in.close();
+				}
+				catch(IOException e) {
+					//only read from
+				}
+			}
+			inputs.clear();
+			for(File run: runs)
+				run.delete();
+		}
+	}
+
+}
@@ -0,0 +1,44 @@
+package com.minidb;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Predicate;
+
+//Passes on the rows of its child matching the predicate
+public class FilterOperator implements Operator {
+
+	private final Operator child;
+	private final Predicate<List<String>> predicate;
+
+	public FilterOperator(Operator child, Predicate<List<String>> predicate) {
+		this.child = child;
+		this.predicate = predicate;
+	}
+
+	@Override
+	public void open() throws IOException {
+		child.open();
+	}
+
+	@Override
+	public List<String> next() throws IOException {
+
+		List<String> row;
+		while((row = child.next()) != null) {
+			if(predicate.test(row))
+				return row;
+		}
+		return null;
+	}
+
+	@Override
+	public RowId getRowId() {
+		return child.getRowId();
+	}
+
+	@Override
+	public void close() {
+		child.close();
+	}
+
+}
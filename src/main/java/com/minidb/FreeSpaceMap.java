@@ -0,0 +1,95 @@
+package com.minidb;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+//Free space of the pages of a table, so inserts and moved rows reuse the space left by deletes.
+//Stored in data/tables/<tableName>.fsm, one byte per page holding the usable space / 16,
+//read and written through the buffer pool.
+//
+//The map is only a hint and isn't logged: a page is always checked before a record is put in it,
+//and a page whose space was never recorded just isn't offered until VACUUM records it.
+public class FreeSpaceMap {
+
+	private static final int UNIT = 16;
+	//pages with less free space than this are skipped for good by the search cursor
+	private static final int MIN_USEFUL = 128 / UNIT;
+	//entries looked at by one search before giving up and using the end of the table
+	private static final int MAX_PROBES = 64;
+
+	//per table, no page before the cursor has MIN_USEFUL free bytes
+	private static final Map<String, Integer> cursors = new HashMap<>();
+
+
+
+
+	public static File mapFile(File tableFile) {
+		return new File(tableFile.getPath().replaceAll("\\.tbl$", "") + ".fsm");
+	}
+
+	//Records the usable space of a page after it changed
+	public static synchronized void update(File tableFile, int pageId, int freeBytes) throws IOException {
+
+		File file = mapFile(tableFile);
+		int mapPage = pageId / Page.PAGE_SIZE;
+		while(BufferPool.getPageCount(file) <= mapPage) {
+			int newPage = BufferPool.appendPage(file, new byte[Page.PAGE_SIZE]);
+			BufferPool.unpinPage(file, newPage, true);
+		}
+
+		int hint = Math.min(255, freeBytes / UNIT);
+		byte[] data = BufferPool.fetchPage(file, mapPage);
+		boolean changed = (data[pageId % Page.PAGE_SIZE] & 0xFF) != hint;
+		data[pageId % Page.PAGE_SIZE] = (byte) hint;
+		BufferPool.unpinPage(file, mapPage, changed);
+
+		Integer cursor = cursors.get(tableFile.getPath());
+		if(hint >= MIN_USEFUL && cursor != null && pageId < cursor)
+			cursors.put(tableFile.getPath(), pageId);
+	}
+
+	//A page among the first pageCount that should have room for needed bytes, -1 if none was found
+	public static synchronized int find(File tableFile, int needed, int pageCount) throws IOException {
+
+		File file = mapFile(tableFile);
+		int entries = Math.min(pageCount, BufferPool.getPageCount(file) * Page.PAGE_SIZE);
+		int cursor = cursors.containsKey(tableFile.getPath()) ? cursors.get(tableFile.getPath()) : 0;
+
+		int found = -1;
+		boolean advancing = true;
+		for(int pageId=cursor, probes=0; pageId<entries && probes<MAX_PROBES; pageId++, probes++) {
+			int hint = hint(file, pageId);
+			if(hint * UNIT >= needed) {
+				found = pageId;
+				break;
+			}
+			if(advancing && hint < MIN_USEFUL)
+				cursor = pageId + 1;
+			else
+				advancing = false;
+		}
+		cursors.put(tableFile.getPath(), cursor);
+		return found;
+	}
+
+	private static int hint(File file, int pageId) throws IOException {
+
+		int mapPage = pageId / Page.PAGE_SIZE;
+		byte[] data = BufferPool.fetchPage(file, mapPage);
+		int hint = data[pageId % Page.PAGE_SIZE] & 0xFF;
+		BufferPool.unpinPage(file, mapPage, false);
+		return hint;
+	}
+
+	//Forgets the map of a table being dropped or rewritten
+	public static synchronized void drop(File tableFile) {
+
+		File file = mapFile(tableFile);
+		BufferPool.discardFile(file);
+		file.delete();
+		cursors.remove(tableFile.getPath());
+	}
+
+}
@@ -0,0 +1,315 @@
+package com.minidb;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+//Groups the rows of its input on the group columns in a hash table and computes COUNT, SUM, AVG,
+//MIN and MAX for each group. A group keeps its state in arrays: per aggregate a long count of the
+//values and a long for the sum (the key of the sum for DOUBLE, see DataType) or the key of the
+//minimum/maximum, and a String for the minimum/maximum of a TEXT column, so adding a row to a
+//group boxes nothing.
+//
+//When the groups take more than the memory given, the groups of the table are written to
+//PARTITIONS spill files by the hash of their key, and the table starts empty. Once the input is
+//read each partition is read back and its partial groups merged on their own; a partition still
+//too big is partitioned again with another hash.
+//
+//A result row is the group columns followed by the aggregates. Without group columns there is one
+//row even without input rows, with a COUNT of 0 and null for the other aggregates.
+public class HashAggregateOperator implements Operator {
+
+	static final int PARTITIONS = 16;
+	//partitions written by a partition, past this depth the groups stay in memory
+	private static final int MAX_DEPTH = 4;
+
+	private final Operator input;
+	private final int[] groupColumns;
+	private final Statement.Aggregate.Function[] functions;
+	//position of the column of each aggregate in the input rows, -1 for COUNT(*)
+	private final int[] arguments;
+	//per aggregate, the type of its column
+	private final DataType[] types;
+	private final long memory;
+	//positions of the group columns in a partial group read from a partition
+	private final int[] partialKeys;
+
+	private Map<Object, Group> table;
+	private long tableBytes;
+	private Iterator<Map.Entry<Object, Group>> results;
+	//partitions not merged yet
+	private final Deque<Partition> partitions = new ArrayDeque<>();
+	private long spilledGroups;
+
+	//State of one group: numbers[2 * i] is the count of aggregate i, numbers[2 * i + 1] its sum or the key of its minimum/maximum
+	private static class Group {
+		final long[] numbers;
+		final String[] texts;
+
+		Group(int aggregates) {
+			numbers = new long[2 * aggregates];
+			texts = new String[aggregates];
+		}
+	}
+
+	private static class Partition {
+		final File file;
+		final int depth;
+
+		Partition(File file, int depth) {
+			this.file = file;
+			this.depth = depth;
+		}
+	}
+
+	public HashAggregateOperator(Operator input, int[] groupColumns, Statement.Aggregate.Function[] functions, int[] arguments, DataType[] types, long memory) {
+		this.input = input;
+		this.groupColumns = groupColumns;
+		this.functions = functions;
+		this.arguments = arguments;
+		this.types = types;
+		this.memory = memory;
+		this.partialKeys = new int[groupColumns.length];
+		for(int i=0;i<partialKeys.length;i++)
+			partialKeys[i] = i;
+	}
+
+	//Groups written to partitions so far
+	public long getSpilledGroups() {
+		return spilledGroups;
+	}
+
+	@Override
+	public void open() throws IOException {
+
+		partitions.clear();
+		spilledGroups = 0;
+		input.open();
+		readGroups(null, 0);
+		if(groupColumns.length == 0 && table.isEmpty())
+			table.put(Collections.emptyList(), new Group(functions.length));
+		results = table.entrySet().iterator();
+	}
+
+	@Override
+	public List<String> next() throws IOException {
+
+		while(!results.hasNext()) {
+			Partition partition = partitions.poll();
+			if(partition == null)
+				return null;
+			readGroups(partition.file, partition.depth);
+			results = table.entrySet().iterator();
+		}
+		Map.Entry<Object, Group> entry = results.next();
+		Group group = entry.getValue();
+		List<String> row = new ArrayList<>(groupColumns.length + functions.length);
+		row.addAll(keyValues(entry.getKey()));
+		for(int i=0;i<functions.length;i++) {
+			long count = group.numbers[2 * i], value = group.numbers[2 * i + 1];
+			if(functions[i] == Statement.Aggregate.Function.COUNT)
+				row.add(Long.toString(count));
+			else if(count == 0)
+				row.add(null);
+			else if(functions[i] == Statement.Aggregate.Function.AVG) {
+				BigDecimal sum = types[i] == DataType.DOUBLE ? BigDecimal.valueOf(DataType.toDouble(value)) : BigDecimal.valueOf(value);
+				row.add(sum.divide(BigDecimal.valueOf(count), 4, RoundingMode.HALF_UP).stripTrailingZeros().toPlainString());
+			}
+			else if(functions[i] == Statement.Aggregate.Function.SUM && types[i] != DataType.DOUBLE)
+				row.add(Long.toString(value));
+			else if(types[i] != DataType.TEXT)
+				row.add(types[i].fromKey(value));
+			else
+				row.add(group.texts[i]);
+		}
+		return row;
+	}
+
+	@Override
+	public void close() {
+
+		try {
+			input.close();
+		}
+		finally {
+			for(Partition partition: partitions)
+				partition.file.delete();
+			partitions.clear();
+			table = null;
+			results = null;
+		}
+	}
+
+
+
+
+	//Reads the input rows (partition null) or the partial groups of a partition into a new table.
+	//Each time the table takes more than the memory, its groups are written to partitions one level deeper
+	private void readGroups(File partition, int depth) throws IOException {
+
+		table = new HashMap<>();
+		tableBytes = 0;
+		File[] files = null;
+		DataOutputStream[] outputs = null;
+		DataInputStream in = partition == null ? null : SpillFile.input(partition);
+		boolean done = false;
+		try {
+			List<String> row;
+			while((row = in == null ? input.next() : SpillFile.readRow(in)) != null) {
+				Object key = JoinOperator.hashKey(row, in == null ? groupColumns : partialKeys);
+				Group group = table.get(key);
+				if(group == null) {
+					group = new Group(functions.length);
+					table.put(key, group);
+					tableBytes += 64 + 24L * functions.length + ExternalSorter.sizeOf(keyValues(key));
+				}
+				if(in == null)
+					add(group, row);
+				else
+					merge(group, row);
+
+				if(tableBytes > memory && depth < MAX_DEPTH && groupColumns.length > 0) {
+					if(files == null) {
+						files = new File[PARTITIONS];
+						outputs = new DataOutputStream[PARTITIONS];
+					}
+					spill(files, outputs, depth + 1);
+				}
+			}
+			if(files != null)
+				spill(files, outputs, depth + 1);
+			done = true;
+		}
+		finally {
+			if(in != null) {
+				in.close();
+				partition.delete();
+			}
+			if(outputs != null) {
+				for(DataOutputStream out: outputs) {
+					if(out != null)
+						out.close();
+				}
+				for(File file: files) {
+					if(file != null) {
+						if(done)
+							partitions.push(new Partition(file, depth + 1));
+						else
+							file.delete();
+					}
+				}
+			}
+		}
+	}
+
+	//Writes the groups of the table to their partition and empties it
+	private void spill(File[] files, DataOutputStream[] outputs, int depth) throws IOException {
+
+		for(Map.Entry<Object, Group> entry: table.entrySet()) {
+			int hash = Objects.hashCode(entry.getKey()) ^ depth * 0x9E3779B9;
+			hash *= 0x85EBCA6B;
+			hash ^= hash >>> 15;
+			int p = Math.floorMod(hash, PARTITIONS);
+			if(outputs[p] == null) {
+				files[p] = SpillFile.create("group");
+				outputs[p] = SpillFile.output(files[p]);
+			}
+			SpillFile.writeRow(outputs[p], partial(entry.getKey(), entry.getValue()));
+		}
+		spilledGroups += table.size();
+		table.clear();
+		tableBytes = 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<String> keyValues(Object key) {
+		if(groupColumns.length == 1)
+			return Collections.singletonList((String) key);
+		return (List<String>) key;
+	}
+
+	//A group as written to a partition: its key, then the count, number and text of each aggregate
+	private List<String> partial(Object key, Group group) {
+
+		List<String> row = new ArrayList<>(groupColumns.length + 3 * functions.length);
+		row.addAll(keyValues(key));
+		for(int i=0;i<functions.length;i++) {
+			row.add(Long.toString(group.numbers[2 * i]));
+			row.add(Long.toString(group.numbers[2 * i + 1]));
+			row.add(group.texts[i]);
+		}
+		return row;
+	}
+
+
+
+
+	private void add(Group group, List<String> row) {
+
+		for(int i=0;i<functions.length;i++) {
+			if(arguments[i] == -1) {
+				group.numbers[2 * i]++;
+				continue;
+			}
+			String value = row.get(arguments[i]);
+			if(value == null)
+				continue;
+			boolean parsed = types[i] != DataType.TEXT && functions[i] != Statement.Aggregate.Function.COUNT;
+			accumulate(group, i, 1, parsed ? types[i].key(value) : 0, value);
+		}
+	}
+
+	private void merge(Group group, List<String> partial) {
+
+		for(int i=0;i<functions.length;i++) {
+			int position = groupColumns.length + 3 * i;
+			long count = Long.parseLong(partial.get(position));
+			if(count > 0)
+				accumulate(group, i, count, Long.parseLong(partial.get(position + 1)), partial.get(position + 2));
+		}
+	}
+
+	//Adds count values to aggregate i of the group, with their sum or the key of their minimum/maximum, or their TEXT minimum/maximum
+	private void accumulate(Group group, int i, long count, long number, String text) {
+
+		long[] numbers = group.numbers;
+		boolean first = numbers[2 * i] == 0;
+		switch(functions[i]) {
+		case SUM:
+		case AVG:
+			if(types[i] == DataType.DOUBLE)
+				numbers[2 * i + 1] = DataType.toKey(DataType.toDouble(numbers[2 * i + 1]) + DataType.toDouble(number));
+			else
+				numbers[2 * i + 1] += number;
+			break;
+		case MIN:
+			if(types[i] != DataType.TEXT && (first || number < numbers[2 * i + 1]))
+				numbers[2 * i + 1] = number;
+			else if(types[i] == DataType.TEXT && (first || text.compareTo(group.texts[i]) < 0))
+				group.texts[i] = text;
+			break;
+		case MAX:
+			if(types[i] != DataType.TEXT && (first || number > numbers[2 * i + 1]))
+				numbers[2 * i + 1] = number;
+			else if(types[i] == DataType.TEXT && (first || text.compareTo(group.texts[i]) > 0))
+				group.texts[i] = text;
+			break;
+		default:
+			break;
+		}
+		numbers[2 * i] += count;
+	}
+
+}
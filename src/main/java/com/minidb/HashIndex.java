@@ -0,0 +1,380 @@
+package com.minidb;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+//Disk based extendible hash index mapping a key to row ids, used for the PRIMARY KEY.
+//
+//<name>.hidx holds the header (page 0) and the bucket pages.
+//  header : magic(4) keyType(1) globalDepth(1)
+//  bucket : localDepth(1) count(2) nextOverflow(4) then count * (key, pageId(4), slot(2))
+//<name>.hdir holds the directory, 1024 bucket page ids per page. It is also kept in memory
+//so a lookup reads a single bucket page.
+//
+//A full bucket is split in two, doubling the directory when its local depth reaches the
+//global depth. A bucket whose entries all have the same hash can't be split, it gets an
+//overflow page instead.
+public class HashIndex {
+
+	private static final int MAGIC = 0xDB4A0001;
+	private static final int MAX_DEPTH = 24;
+	private static final int DIR_ENTRIES_PER_PAGE = Page.PAGE_SIZE / 4;
+
+	private static final int BUCKET_HEADER_SIZE = 7;
+	private static final int ROW_ID_SIZE = 6;
+
+	private static class Bucket {
+		int pageId;
+		int localDepth;
+		int next = -1;
+		List<Object> keys = new ArrayList<>();
+		List<RowId> rowIds = new ArrayList<>();
+	}
+
+	private final File file;
+	private final File dirFile;
+	private final DataType keyType;
+	private int globalDepth;
+	private int[] directory;
+
+
+
+
+	private HashIndex(File file, DataType keyType) {
+		this.file = file;
+		this.dirFile = directoryFile(file);
+		this.keyType = keyType;
+	}
+
+	//Creates an empty index with one bucket, replacing the files if they exist
+	public static HashIndex create(File file, DataType keyType) throws IOException {
+
+		HashIndex index = new HashIndex(file, keyType);
+		for(File f: new File[] { file, index.dirFile }) {
+			BufferPool.discardFile(f);
+			if(f.exists() && !f.delete())
+				throw new IOException("Could not replace index file " + f.getPath());
+			if(!f.createNewFile())
+				throw new IOException("Could not create index file " + f.getPath());
+		}
+
+		int headerId = BufferPool.appendPage(file, new byte[Page.PAGE_SIZE]);
+		BufferPool.unpinPage(file, headerId, true);
+
+		Bucket bucket = index.newBucket(0);
+		index.writeBucket(bucket);
+		index.globalDepth = 0;
+		index.directory = new int[] { bucket.pageId };
+		index.writeHeader();
+		index.writeDirectory(0, 1);
+		return index;
+	}
+
+	public static HashIndex open(File file) throws IOException {
+
+		byte[] data = BufferPool.fetchPage(file, 0);
+		HashIndex index;
+		try {
+			ByteBuffer buffer = ByteBuffer.wrap(data);
+			if(buffer.getInt(0) != MAGIC)
+				throw new IOException(file.getPath() + " is not a hash index file");
+			index = new HashIndex(file, DataType.values()[buffer.get(4)]);
+			index.globalDepth = buffer.get(5);
+		}
+		finally {
+			BufferPool.unpinPage(file, 0, false);
+		}
+
+		index.directory = new int[1 << index.globalDepth];
+		for(int i=0;i<index.directory.length;i+=DIR_ENTRIES_PER_PAGE) {
+			int pageId = i / DIR_ENTRIES_PER_PAGE;
+			ByteBuffer buffer = ByteBuffer.wrap(BufferPool.fetchPage(index.dirFile, pageId));
+			for(int j=0;j<DIR_ENTRIES_PER_PAGE && i+j<index.directory.length;j++)
+				index.directory[i+j] = buffer.getInt(j * 4);
+			BufferPool.unpinPage(index.dirFile, pageId, false);
+		}
+		return index;
+	}
+
+	public static File directoryFile(File file) {
+		return new File(file.getPath().replaceAll("\\.hidx$", "") + ".hdir");
+	}
+
+	private void writeHeader() throws IOException {
+
+		byte[] data = BufferPool.fetchPage(file, 0);
+		synchronized(data) {
+			ByteBuffer buffer = ByteBuffer.wrap(data);
+			buffer.putInt(0, MAGIC);
+			buffer.put(4, (byte) keyType.ordinal());
+			buffer.put(5, (byte) globalDepth);
+		}
+		BufferPool.unpinPage(file, 0, true);
+	}
+
+	//Writes the directory entries [from, to) to the directory file, adding pages when it grew
+	private void writeDirectory(int from, int to) throws IOException {
+
+		int neededPages = (directory.length + DIR_ENTRIES_PER_PAGE - 1) / DIR_ENTRIES_PER_PAGE;
+		while(BufferPool.getPageCount(dirFile) < neededPages) {
+			int pageId = BufferPool.appendPage(dirFile, new byte[Page.PAGE_SIZE]);
+			BufferPool.unpinPage(dirFile, pageId, true);
+		}
+
+		int i = from;
+		while(i < to) {
+			int pageId = i / DIR_ENTRIES_PER_PAGE;
+			byte[] data = BufferPool.fetchPage(dirFile, pageId);
+			synchronized(data) {
+				ByteBuffer buffer = ByteBuffer.wrap(data);
+				for(;i<to && i/DIR_ENTRIES_PER_PAGE == pageId;i++)
+					buffer.putInt((i % DIR_ENTRIES_PER_PAGE) * 4, directory[i]);
+			}
+			BufferPool.unpinPage(dirFile, pageId, true);
+		}
+	}
+
+	public DataType getKeyType() {
+		return keyType;
+	}
+
+
+
+
+	//Converts a column value to the key stored in the index, the same key as BPlusTree.toKey()
+	public Object toKey(String value) {
+		if(keyType == DataType.INT)
+			return Integer.parseInt(value.trim());
+		if(keyType != DataType.TEXT)
+			return keyType.key(value);
+		return value;
+	}
+
+	//Spreads the bits of hashCode() so the low bits used by the directory are well mixed
+	private static int hash(Object key) {
+		int h = key.hashCode();
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+
+	private int keySize(Object key) {
+		if(keyType == DataType.INT)
+			return 4;
+		if(keyType != DataType.TEXT)
+			return 8;
+		return 2 + ((String) key).getBytes(StandardCharsets.UTF_8).length;
+	}
+
+
+
+
+	private Bucket newBucket(int localDepth) throws IOException {
+
+		Bucket bucket = new Bucket();
+		bucket.localDepth = localDepth;
+		bucket.pageId = BufferPool.appendPage(file, new byte[Page.PAGE_SIZE]);
+		BufferPool.unpinPage(file, bucket.pageId, true);
+		return bucket;
+	}
+
+	private Bucket readBucket(int pageId) throws IOException {
+
+		byte[] data = BufferPool.fetchPage(file, pageId);
+		try {
+			ByteBuffer buffer = ByteBuffer.wrap(data);
+			Bucket bucket = new Bucket();
+			bucket.pageId = pageId;
+			bucket.localDepth = buffer.get();
+			int count = buffer.getShort() & 0xFFFF;
+			bucket.next = buffer.getInt();
+			for(int i=0;i<count;i++) {
+				if(keyType == DataType.INT)
+					bucket.keys.add(buffer.getInt());
+				else if(keyType != DataType.TEXT)
+					bucket.keys.add(buffer.getLong());
+				else {
+					byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+					buffer.get(bytes);
+					bucket.keys.add(new String(bytes, StandardCharsets.UTF_8));
+				}
+				bucket.rowIds.add(new RowId(buffer.getInt(), buffer.getShort() & 0xFFFF));
+			}
+			return bucket;
+		}
+		finally {
+			BufferPool.unpinPage(file, pageId, false);
+		}
+	}
+
+	private void writeBucket(Bucket bucket) throws IOException {
+
+		byte[] data = BufferPool.fetchPage(file, bucket.pageId);
+		//latched so the buffer pool doesn't write the page in the middle of the change
+		synchronized(data) {
+			Arrays.fill(data, (byte) 0);
+			ByteBuffer buffer = ByteBuffer.wrap(data);
+			buffer.put((byte) bucket.localDepth);
+			buffer.putShort((short) bucket.keys.size());
+			buffer.putInt(bucket.next);
+			for(int i=0;i<bucket.keys.size();i++) {
+				Object key = bucket.keys.get(i);
+				if(keyType == DataType.INT)
+					buffer.putInt((Integer) key);
+				else if(keyType != DataType.TEXT)
+					buffer.putLong((Long) key);
+				else {
+					byte[] bytes = ((String) key).getBytes(StandardCharsets.UTF_8);
+					buffer.putShort((short) bytes.length);
+					buffer.put(bytes);
+				}
+				buffer.putInt(bucket.rowIds.get(i).getPageId());
+				buffer.putShort((short) bucket.rowIds.get(i).getSlot());
+			}
+		}
+		BufferPool.unpinPage(file, bucket.pageId, true);
+	}
+
+	private int bucketSize(Bucket bucket) {
+		int size = BUCKET_HEADER_SIZE;
+		for(Object key: bucket.keys)
+			size += keySize(key) + ROW_ID_SIZE;
+		return size;
+	}
+
+
+
+
+	public List<RowId> search(Object key) throws IOException {
+
+		List<RowId> result = new ArrayList<>();
+		int pageId = directory[hash(key) & ((1 << globalDepth) - 1)];
+		while(pageId != -1) {
+			Bucket bucket = readBucket(pageId);
+			for(int i=0;i<bucket.keys.size();i++) {
+				if(bucket.keys.get(i).equals(key))
+					result.add(bucket.rowIds.get(i));
+			}
+			pageId = bucket.next;
+		}
+		return result;
+	}
+
+	public boolean contains(Object key) throws IOException {
+		return !search(key).isEmpty();
+	}
+
+
+
+
+	public void insert(Object key, RowId rowId) throws IOException {
+
+		if(keySize(key) + ROW_ID_SIZE > Page.PAGE_SIZE - BUCKET_HEADER_SIZE)
+			throw new IllegalArgumentException("Value is too long to be indexed");
+
+		while(true) {
+			int dirIndex = hash(key) & ((1 << globalDepth) - 1);
+			Bucket bucket = readBucket(directory[dirIndex]);
+
+			//room in the bucket or one of its overflow pages
+			Bucket last = bucket;
+			for(Bucket b = bucket; b != null; b = b.next == -1 ? null : readBucket(b.next)) {
+				last = b;
+				if(bucketSize(b) + keySize(key) + ROW_ID_SIZE <= Page.PAGE_SIZE) {
+					b.keys.add(key);
+					b.rowIds.add(rowId);
+					writeBucket(b);
+					return;
+				}
+			}
+
+			if(bucket.next == -1 && bucket.localDepth < MAX_DEPTH && hasDistinctHashes(bucket)) {
+				splitBucket(bucket);
+				continue;
+			}
+
+			Bucket overflow = newBucket(bucket.localDepth);
+			overflow.keys.add(key);
+			overflow.rowIds.add(rowId);
+			writeBucket(overflow);
+			last.next = overflow.pageId;
+			writeBucket(last);
+			return;
+		}
+	}
+
+	private boolean hasDistinctHashes(Bucket bucket) {
+		for(Object key: bucket.keys) {
+			if(hash(key) != hash(bucket.keys.get(0)))
+				return true;
+		}
+		return false;
+	}
+
+	private void splitBucket(Bucket bucket) throws IOException {
+
+		if(bucket.localDepth == globalDepth) {
+			//double the directory, the new half points to the same buckets
+			int[] newDirectory = Arrays.copyOf(directory, directory.length * 2);
+			System.arraycopy(directory, 0, newDirectory, directory.length, directory.length);
+			directory = newDirectory;
+			globalDepth++;
+			writeDirectory(directory.length / 2, directory.length);
+			writeHeader();
+		}
+
+		int bit = 1 << bucket.localDepth;
+		Bucket sibling = newBucket(bucket.localDepth + 1);
+		bucket.localDepth++;
+
+		List<Object> keys = new ArrayList<>(bucket.keys);
+		List<RowId> rowIds = new ArrayList<>(bucket.rowIds);
+		bucket.keys.clear();
+		bucket.rowIds.clear();
+		for(int i=0;i<keys.size();i++) {
+			Bucket target = (hash(keys.get(i)) & bit) == 0 ? bucket : sibling;
+			target.keys.add(keys.get(i));
+			target.rowIds.add(rowIds.get(i));
+		}
+		writeBucket(bucket);
+		writeBucket(sibling);
+
+		for(int i=0;i<directory.length;i++) {
+			if(directory[i] == bucket.pageId && (i & bit) != 0) {
+				directory[i] = sibling.pageId;
+				writeDirectory(i, i + 1);
+			}
+		}
+	}
+
+
+
+
+	//Removes the entry, returns false if it wasn't in the index
+	public boolean delete(Object key, RowId rowId) throws IOException {
+
+		int pageId = directory[hash(key) & ((1 << globalDepth) - 1)];
+		while(pageId != -1) {
+			Bucket bucket = readBucket(pageId);
+			for(int i=0;i<bucket.keys.size();i++) {
+				if(bucket.keys.get(i).equals(key) && bucket.rowIds.get(i).equals(rowId)) {
+					bucket.keys.remove(i);
+					bucket.rowIds.remove(i);
+					writeBucket(bucket);
+					return true;
+				}
+			}
+			pageId = bucket.next;
+		}
+		return false;
+	}
+
+}
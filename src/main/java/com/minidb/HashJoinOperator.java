@@ -0,0 +1,146 @@
+package com.minidb;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//Joins two inputs by loading the rows of the build input in a hash table on their keys, then
+//looking up the key of each row of the other input. The planner builds the smaller input, but a
+//LEFT join always builds the right one so every left row is looked up.
+//When the build rows take more than the memory given, both inputs are sorted on disk with an
+//ExternalSorter and joined by a MergeJoinOperator instead, the rows come in key order then.
+public class HashJoinOperator extends JoinOperator {
+
+	private final Operator right;
+	private final boolean buildLeft;
+	private final long memory;
+
+	private Map<Object, List<List<String>>> table;
+	private Operator merge;
+	private List<String> probeRow;
+	private List<List<String>> matches;
+	private int matchPosition;
+
+	public HashJoinOperator(Operator left, Operator right, int[] leftKeys, int[] rightKeys, DataType[] keyTypes, boolean leftOuter, int rightWidth, boolean buildLeft, long memory) {
+		super(left, leftKeys, rightKeys, keyTypes, leftOuter, rightWidth);
+		if(buildLeft && leftOuter)
+			throw new IllegalArgumentException("A LEFT join builds the right input");
+		this.right = right;
+		this.buildLeft = buildLeft;
+		this.memory = memory;
+	}
+
+	//Whether the build rows didn't fit in memory and the inputs were sorted instead
+	public boolean isSpilled() {
+		return merge != null;
+	}
+
+	@Override
+	public void open() throws IOException {
+
+		merge = null;
+		matches = null;
+		left.open();
+		right.open();
+		Operator build = buildLeft ? left : right;
+		int[] buildKeys = buildLeft ? leftKeys : rightKeys;
+		RowOrder buildOrder = buildLeft ? leftOrder : rightOrder;
+
+		table = new HashMap<>();
+		long bytes = 0;
+		List<String> row;
+		while((row = build.next()) != null) {
+			//a null key matches nothing, and an unmatched build row is never returned
+			if(hasNullKey(row, buildKeys))
+				continue;
+			table.computeIfAbsent(buildOrder.hashKey(buildOrder.keys(row)), key -> new ArrayList<>(1)).add(row);
+			bytes += ExternalSorter.sizeOf(row);
+			if(bytes > memory) {
+				sortMerge();
+				return;
+			}
+		}
+	}
+
+	//Sorts the rows read so far and the rest of both inputs, then merges them
+	private void sortMerge() throws IOException {
+
+		Operator build = buildLeft ? left : right, probe = buildLeft ? right : left;
+
+		ExternalSorter buildSorter = new ExternalSorter(buildLeft ? leftOrder : rightOrder, memory);
+		ExternalSorter probeSorter = new ExternalSorter(buildLeft ? rightOrder : leftOrder, memory);
+		Operator sortedBuild = null, sortedProbe = null;
+		try {
+			for(List<List<String>> rows: table.values()) {
+				for(List<String> row: rows)
+					buildSorter.add(row);
+			}
+			table = null;
+			List<String> row;
+			while((row = build.next()) != null)
+				buildSorter.add(row);
+			sortedBuild = buildSorter.sorted();
+			while((row = probe.next()) != null)
+				probeSorter.add(row);
+			sortedProbe = probeSorter.sorted();
+		}
+		catch(IOException | RuntimeException e) {
+			buildSorter.discard();
+			probeSorter.discard();
+			if(sortedBuild != null)
+				sortedBuild.close();
+			throw e;
+		}
+
+		Operator sortedLeft = buildLeft ? sortedBuild : sortedProbe, sortedRight = buildLeft ? sortedProbe : sortedBuild;
+		merge = new MergeJoinOperator(sortedLeft, sortedRight, leftKeys, rightKeys, keyTypes, leftOuter, rightWidth);
+		merge.open();
+	}
+
+	@Override
+	public List<String> next() throws IOException {
+
+		if(merge != null)
+			return merge.next();
+		Operator probe = buildLeft ? right : left;
+		int[] probeKeys = buildLeft ? rightKeys : leftKeys;
+		RowOrder probeOrder = buildLeft ? rightOrder : leftOrder;
+		while(true) {
+			if(matches != null && matchPosition < matches.size()) {
+				List<String> match = matches.get(matchPosition++);
+				return buildLeft ? concat(match, probeRow) : concat(probeRow, match);
+			}
+			probeRow = probe.next();
+			if(probeRow == null)
+				return null;
+			matches = hasNullKey(probeRow, probeKeys) ? null : table.get(probeOrder.hashKey(probeOrder.keys(probeRow)));
+			matchPosition = 0;
+			if(matches == null && leftOuter)
+				return unmatched(probeRow);
+		}
+	}
+
+	@Override
+	public void close() {
+
+		try {
+			if(merge != null)
+				merge.close();
+		}
+		finally {
+			merge = null;
+			table = null;
+			matches = null;
+			probeRow = null;
+			try {
+				left.close();
+			}
+			finally {
+				right.close();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,60 @@
+package com.minidb;
+
+//Estimates the number of distinct values seen in a fixed memory (HyperLogLog): each value is
+//hashed to 64 bits, the first BITS bits pick a register which keeps the longest run of leading
+//zeros seen in the rest. 2^BITS registers of one byte give a standard error of about 1.6%.
+public class HyperLogLog {
+
+	private static final int BITS = 12;
+	private static final int REGISTERS = 1 << BITS;
+
+	private final byte[] registers = new byte[REGISTERS];
+
+
+
+
+	public void add(String value) {
+
+		long hash = hash(value);
+		int register = (int) (hash >>> (64 - BITS));
+		//the bit set past the register bits ends the run when every other bit is zero
+		int zeros = Long.numberOfLeadingZeros(hash << BITS | 1L << (BITS - 1)) + 1;
+		if(zeros > registers[register])
+			registers[register] = (byte) zeros;
+	}
+
+	//Distinct values added so far
+	public long estimate() {
+
+		double sum = 0;
+		int empty = 0;
+		for(byte register: registers) {
+			sum += 1.0 / (1L << register);
+			if(register == 0)
+				empty++;
+		}
+		double alpha = 0.7213 / (1 + 1.079 / REGISTERS);
+		double estimate = alpha * REGISTERS * REGISTERS / sum;
+		//few values leave registers empty, counting them is closer then
+		if(estimate <= 2.5 * REGISTERS && empty > 0)
+			estimate = REGISTERS * Math.log((double) REGISTERS / empty);
+		return Math.round(estimate);
+	}
+
+	//FNV-1a over the chars, then the finalizer of MurmurHash3 to spread close values over every bit
+	static long hash(String value) {
+
+		long hash = 0xcbf29ce484222325L;
+		for(int i=0;i<value.length();i++) {
+			hash ^= value.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+}
@@ -0,0 +1,28 @@
+package com.minidb;
+
+//Immutable description of an index stored in the catalog
+public class IndexInfo {
+
+	private final String name;
+	private final String tableName;
+	private final String columnName;
+
+	public IndexInfo(String name, String tableName, String columnName) {
+		this.name = name;
+		this.tableName = tableName;
+		this.columnName = columnName;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getTableName() {
+		return tableName;
+	}
+
+	public String getColumnName() {
+		return columnName;
+	}
+
+}
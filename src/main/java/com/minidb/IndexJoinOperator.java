@@ -0,0 +1,106 @@
+package com.minidb;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+//Joins each left row with the rows of a table found by an index on one of the right key
+//columns (index nested loop), so the table is never scanned whole. The rows are read in the
+//snapshot like an IndexScanOperator reads them, and their keys are checked again since the
+//index has the newest values.
+public class IndexJoinOperator extends JoinOperator {
+
+	private final File tableFile;
+	private final TableSchema schema;
+	//columns of the table in the right rows
+	private final int[] columns;
+	//key looked up in the index, and its column
+	private final int indexKey;
+	private final String indexColumn;
+	private final DataType indexType;
+	private final TransactionManager.Snapshot snapshot;
+
+	private List<String> current;
+	private final List<List<String>> matches = new ArrayList<>();
+	private int matchPosition;
+
+	public IndexJoinOperator(Operator left, File tableFile, TableSchema schema, int[] columns, int[] leftKeys, int[] rightKeys, DataType[] keyTypes, boolean leftOuter, int indexKey, TransactionManager.Snapshot snapshot) {
+		super(left, leftKeys, rightKeys, keyTypes, leftOuter, columns.length);
+		this.tableFile = tableFile;
+		this.schema = schema;
+		this.columns = columns;
+		this.indexKey = indexKey;
+		this.indexColumn = schema.getColumnNames().get(columns[rightKeys[indexKey]]);
+		this.indexType = schema.getColumnTypes().get(columns[rightKeys[indexKey]]);
+		this.snapshot = snapshot;
+	}
+
+	@Override
+	public void open() throws IOException {
+
+		left.open();
+		matches.clear();
+		current = null;
+	}
+
+	@Override
+	public List<String> next() throws IOException {
+
+		while(true) {
+			if(matchPosition < matches.size())
+				return concat(current, matches.get(matchPosition++));
+
+			current = left.next();
+			if(current == null)
+				return null;
+			matches.clear();
+			matchPosition = 0;
+			if(!hasNullKey(current, leftKeys))
+				lookup();
+			if(matches.isEmpty() && leftOuter)
+				return unmatched(current);
+		}
+	}
+
+	//The rows of the table matching the current left row. A typed key is looked up as the key of the
+	//value of the index column equal to it, the left key can be of another type (see Condition.keyRange())
+	private void lookup() throws IOException {
+
+		String value = current.get(leftKeys[indexKey]);
+		List<RowId> rowIds;
+		if(indexType != DataType.TEXT) {
+			long[] range = Condition.keyRange(indexType, Condition.Comparison.Op.EQ, value);
+			if(range == null || range[0] > range[1])
+				return;
+			rowIds = IndexManager.lookupKeys(schema, indexColumn, range[0], range[1]);
+		}
+		else
+			rowIds = IndexManager.lookup(schema, indexColumn, "=", value);
+		Operator scan = new IndexScanOperator(tableFile, schema, rowIds, snapshot);
+		scan.open();
+		try {
+			RowOrder.Keys keys = leftOrder.keys(current);
+			List<String> row;
+			while((row = scan.next()) != null) {
+				List<String> values = new ArrayList<>(columns.length);
+				for(int column: columns)
+					values.add(row.get(column));
+				if(leftOrder.compare(keys, rightOrder.keys(values)) == 0)
+					matches.add(values);
+			}
+		}
+		finally {
+			scan.close();
+		}
+	}
+
+	@Override
+	public void close() {
+
+		left.close();
+		matches.clear();
+		current = null;
+	}
+
+}
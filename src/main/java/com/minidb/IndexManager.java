@@ -0,0 +1,479 @@
+package com.minidb;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+//Creates, maintains and searches the indexes of the tables.
+//Every B+tree index is stored in data/indexes/<indexName>.idx,
+//the hash index of a PRIMARY KEY in data/indexes/<tableName>.hidx and .hdir
+//
+//Readers search the indexes while a writer of the table changes them, so the indexes of a table
+//are latched: any number of searches run together, a change to the entries runs alone. The latch
+//is held for one search or one row, a node split is never seen half done.
+public class IndexManager {
+
+	private static final String index_dir = "data" + File.separator + "indexes";
+
+	//trees already opened, by index name
+	private static final Map<String, BPlusTree> trees = new HashMap<>();
+	//primary key indexes already opened, by table name
+	private static final Map<String, HashIndex> primaryIndexes = new HashMap<>();
+	//latch of the indexes of each table, by table name
+	private static final ConcurrentMap<String, ReentrantReadWriteLock> latches = new ConcurrentHashMap<>();
+
+	private static ReentrantReadWriteLock latchOf(TableSchema schema) {
+		return latches.computeIfAbsent(schema.getTableName(), name -> new ReentrantReadWriteLock());
+	}
+
+
+
+
+	private static File indexFile(String indexName) {
+		return new File(index_dir + File.separator + indexName + ".idx");
+	}
+
+	private static synchronized BPlusTree getTree(IndexInfo index) throws IOException {
+
+		BPlusTree tree = trees.get(index.getName());
+		if(tree == null) {
+			tree = BPlusTree.open(indexFile(index.getName()));
+			trees.put(index.getName(), tree);
+		}
+		return tree;
+	}
+
+
+
+
+	private static File primaryKeyFile(String tableName) {
+		return new File(index_dir + File.separator + tableName + ".hidx");
+	}
+
+	private static synchronized HashIndex getPrimaryIndex(TableSchema schema) throws IOException {
+
+		HashIndex index = primaryIndexes.get(schema.getTableName());
+		if(index == null) {
+			index = HashIndex.open(primaryKeyFile(schema.getTableName()));
+			primaryIndexes.put(schema.getTableName(), index);
+		}
+		return index;
+	}
+
+	//Creates the empty hash index of a new table with a PRIMARY KEY
+	public static void createPrimaryKeyIndex(TableSchema schema) throws IOException {
+
+		if(schema.getPrimaryKey() == null)
+			return;
+		discardPrimaryIndex(schema.getTableName());
+		HashIndex index = HashIndex.create(primaryKeyFile(schema.getTableName()), schema.getPrimaryKey().getType());
+		synchronized(IndexManager.class) {
+			primaryIndexes.put(schema.getTableName(), index);
+		}
+	}
+
+	private static synchronized void discardPrimaryIndex(String tableName) {
+		primaryIndexes.remove(tableName);
+		File file = primaryKeyFile(tableName);
+		BufferPool.discardFile(file);
+		BufferPool.discardFile(HashIndex.directoryFile(file));
+	}
+
+	//Checks in O(1) whether a row already has this PRIMARY KEY value
+	public static boolean containsPrimaryKey(TableSchema schema, String value) throws IOException {
+
+		HashIndex index = getPrimaryIndex(schema);
+		Lock latch = latchOf(schema).readLock();
+		latch.lock();
+		try {
+			return index.contains(index.toKey(value));
+		}
+		finally {
+			latch.unlock();
+		}
+	}
+
+
+
+
+	//CREATE INDEX: builds the tree from the rows already in the table
+	public static boolean createIndex(String indexName, String tableName, String columnName) {
+
+		if(!LockManager.lockExclusive(tableName))
+			return false;
+		try {
+			return createIndexLocked(indexName, tableName, columnName);
+		}
+		finally {
+			LockManager.unlockExclusive(tableName);
+		}
+	}
+
+	private static boolean createIndexLocked(String indexName, String tableName, String columnName) {
+
+		TableSchema schema = MetaManager.getSchema(tableName);
+		if(schema == null)
+			return false;
+		if(schema.isColumnar()) {
+			Messages.error("Error: Columnar table '" + tableName + "' can't be indexed");
+			return false;
+		}
+
+		Column column = schema.getColumn(columnName);
+		if(column == null) {
+			Messages.error("Error: Column '" + columnName + "' does not exist in table '" + tableName + "'");
+			return false;
+		}
+		if(Catalog.findIndex(indexName) != null) {
+			Messages.error("Error: Index '" + indexName + "' already exists!");
+			return false;
+		}
+		IndexInfo existing = schema.getIndexOn(columnName);
+		if(existing != null) {
+			Messages.error("Error: Column '" + columnName + "' is already indexed by '" + existing.getName() + "'");
+			return false;
+		}
+
+		IndexInfo index = new IndexInfo(indexName, tableName, columnName);
+		try {
+			buildTree(index, column);
+		}
+		catch(IOException | IllegalArgumentException e) {
+			Messages.error("Error building the index: " + e.getMessage());
+			discardTree(indexName);
+			indexFile(indexName).delete();
+			return false;
+		}
+
+		return MetaManager.addIndex(index);
+	}
+
+	private static void buildTree(IndexInfo index, Column column) throws IOException {
+
+		discardTree(index.getName());
+		BPlusTree tree = BPlusTree.create(indexFile(index.getName()), column.getType());
+
+		List<RowId> rowIds = new ArrayList<>();
+		List<List<String>> rows = TableManager.readAllRows(index.getTableName(), rowIds);
+		insertSorted(tree, rows, column.getIndex(), rowIds);
+
+		synchronized(IndexManager.class) {
+			trees.put(index.getName(), tree);
+		}
+	}
+
+	private static synchronized void discardTree(String indexName) {
+		trees.remove(indexName);
+		BufferPool.discardFile(indexFile(indexName));
+	}
+
+
+
+
+	//DROP INDEX
+	public static boolean dropIndex(String indexName) {
+
+		IndexInfo index = Catalog.findIndex(indexName);
+		if(index == null) {
+			Messages.error("Error: Index '" + indexName + "' does not exist!");
+			return false;
+		}
+
+		if(!LockManager.lockExclusive(index.getTableName()))
+			return false;
+		try {
+			discardTree(indexName);
+			indexFile(indexName).delete();
+			return MetaManager.removeIndex(index);
+		}
+		finally {
+			LockManager.unlockExclusive(index.getTableName());
+		}
+	}
+
+	//Deletes the index files of a table being dropped
+	public static void dropIndexes(TableSchema schema) {
+
+		for(IndexInfo index: schema.getIndexes()) {
+			discardTree(index.getName());
+			indexFile(index.getName()).delete();
+		}
+		if(schema.getPrimaryKey() != null) {
+			discardPrimaryIndex(schema.getTableName());
+			File file = primaryKeyFile(schema.getTableName());
+			file.delete();
+			HashIndex.directoryFile(file).delete();
+		}
+	}
+
+
+
+
+	//Adds the new row to every index of the table
+	public static void insertEntries(TableSchema schema, List<String> values, RowId rowId) throws IOException {
+
+		Lock latch = latchOf(schema).writeLock();
+		latch.lock();
+		try {
+			insertEntriesLatched(schema, values, rowId);
+		}
+		finally {
+			latch.unlock();
+		}
+	}
+
+	private static void insertEntriesLatched(TableSchema schema, List<String> values, RowId rowId) throws IOException {
+
+		for(IndexInfo index: schema.getIndexes()) {
+			BPlusTree tree = getTree(index);
+			tree.insert(tree.toKey(values.get(schema.indexOf(index.getColumnName()))), rowId);
+		}
+		Column pk = schema.getPrimaryKey();
+		if(pk != null) {
+			HashIndex index = getPrimaryIndex(schema);
+			index.insert(index.toKey(values.get(pk.getIndex())), rowId);
+		}
+	}
+
+	//Adds the rows of a bulk insert to every index of the table. The entries of each tree are
+	//sorted first so the inserts walk the leaves in order and each node is read once
+	public static void insertEntries(TableSchema schema, List<List<String>> rows, List<RowId> rowIds) throws IOException {
+
+		Lock latch = latchOf(schema).writeLock();
+		latch.lock();
+		try {
+			insertEntriesLatched(schema, rows, rowIds);
+		}
+		finally {
+			latch.unlock();
+		}
+	}
+
+	private static void insertEntriesLatched(TableSchema schema, List<List<String>> rows, List<RowId> rowIds) throws IOException {
+		
+		for(IndexInfo index: schema.getIndexes())
+			insertSorted(getTree(index), rows, schema.indexOf(index.getColumnName()), rowIds);
+		Column pk = schema.getPrimaryKey();
+		if(pk != null) {
+			HashIndex index = getPrimaryIndex(schema);
+			for(int i=0;i<rows.size();i++)
+				index.insert(index.toKey(rows.get(i).get(pk.getIndex())), rowIds.get(i));
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static void insertSorted(BPlusTree tree, List<List<String>> rows, int col, List<RowId> rowIds) throws IOException {
+		
+		Integer[] order = new Integer[rows.size()];
+		Object[] keys = new Object[rows.size()];
+		for(int i=0;i<order.length;i++) {
+			order[i] = i;
+			keys[i] = tree.toKey(rows.get(i).get(col));
+		}
+		Arrays.sort(order, (a, b) -> {
+			int cmp = ((Comparable<Object>) keys[a]).compareTo(keys[b]);
+			return cmp != 0 ? cmp : rowIds.get(a).compareTo(rowIds.get(b));
+		});
+		for(int i: order)
+			tree.insert(keys[i], rowIds.get(i));
+	}
+	
+	//Removes the entries of a deleted row from every index of the table
+	public static void deleteEntries(TableSchema schema, List<String> values, RowId rowId) throws IOException {
+
+		Lock latch = latchOf(schema).writeLock();
+		latch.lock();
+		try {
+			deleteEntriesLatched(schema, values, rowId);
+		}
+		finally {
+			latch.unlock();
+		}
+	}
+
+	private static void deleteEntriesLatched(TableSchema schema, List<String> values, RowId rowId) throws IOException {
+		
+		for(IndexInfo index: schema.getIndexes()) {
+			BPlusTree tree = getTree(index);
+			tree.delete(tree.toKey(values.get(schema.indexOf(index.getColumnName()))), rowId);
+		}
+		Column pk = schema.getPrimaryKey();
+		if(pk != null) {
+			HashIndex index = getPrimaryIndex(schema);
+			index.delete(index.toKey(values.get(pk.getIndex())), rowId);
+		}
+	}
+	
+	//Moves the entries of an updated row whose indexed value changed, the row id stays the same
+	public static void updateEntries(TableSchema schema, List<String> oldValues, List<String> newValues, RowId rowId) throws IOException {
+
+		Lock latch = latchOf(schema).writeLock();
+		latch.lock();
+		try {
+			updateEntriesLatched(schema, oldValues, newValues, rowId);
+		}
+		finally {
+			latch.unlock();
+		}
+	}
+
+	private static void updateEntriesLatched(TableSchema schema, List<String> oldValues, List<String> newValues, RowId rowId) throws IOException {
+		
+		for(IndexInfo index: schema.getIndexes()) {
+			int col = schema.indexOf(index.getColumnName());
+			BPlusTree tree = getTree(index);
+			Object oldKey = tree.toKey(oldValues.get(col));
+			Object newKey = tree.toKey(newValues.get(col));
+			if(!oldKey.equals(newKey)) {
+				tree.delete(oldKey, rowId);
+				tree.insert(newKey, rowId);
+			}
+		}
+		Column pk = schema.getPrimaryKey();
+		if(pk != null) {
+			HashIndex index = getPrimaryIndex(schema);
+			Object oldKey = index.toKey(oldValues.get(pk.getIndex()));
+			Object newKey = index.toKey(newValues.get(pk.getIndex()));
+			if(!oldKey.equals(newKey)) {
+				index.delete(oldKey, rowId);
+				index.insert(newKey, rowId);
+			}
+		}
+	}
+
+	//Rebuilds every index of the table, needed after the table file was rewritten and the row ids changed
+	public static void rebuildIndexes(TableSchema schema) {
+
+		for(IndexInfo index: schema.getIndexes()) {
+			try {
+				buildTree(index, schema.getColumn(index.getColumnName()));
+			}
+			catch(IOException | IllegalArgumentException e) {
+				Messages.error("Error rebuilding the index '" + index.getName() + "': " + e.getMessage());
+			}
+		}
+
+		Column pk = schema.getPrimaryKey();
+		if(pk != null) {
+			try {
+				createPrimaryKeyIndex(schema);
+				HashIndex index = getPrimaryIndex(schema);
+				List<RowId> rowIds = new ArrayList<>();
+				List<List<String>> rows = TableManager.readAllRows(schema.getTableName(), rowIds);
+				for(int i=0;i<rows.size();i++)
+					index.insert(index.toKey(rows.get(i).get(pk.getIndex())), rowIds.get(i));
+			}
+			catch(IOException | IllegalArgumentException e) {
+				Messages.error("Error rebuilding the primary key index of '" + schema.getTableName() + "': " + e.getMessage());
+			}
+		}
+	}
+
+
+
+
+	//Row ids of the rows matching "column op value" found with an index,
+	//null when the column isn't indexed or the operator can't use the index.
+	//Equality on the PRIMARY KEY goes to the hash index.
+	public static List<RowId> lookup(TableSchema schema, String columnName, String op, String value) throws IOException {
+
+		Lock latch = latchOf(schema).readLock();
+		latch.lock();
+		try {
+			return lookupLatched(schema, columnName, op, value);
+		}
+		finally {
+			latch.unlock();
+		}
+	}
+
+	private static List<RowId> lookupLatched(TableSchema schema, String columnName, String op, String value) throws IOException {
+
+		Column pk = schema.getPrimaryKey();
+		if(pk != null && pk.getName().equals(columnName) && op.equals("=")) {
+			HashIndex hashIndex = getPrimaryIndex(schema);
+			try {
+				return hashIndex.search(hashIndex.toKey(value));
+			}
+			catch(IllegalArgumentException e) {
+				return new ArrayList<>();
+			}
+		}
+
+		IndexInfo index = schema.getIndexOn(columnName);
+		if(index == null)
+			return null;
+
+		BPlusTree tree = getTree(index);
+		Object key;
+		try {
+			key = tree.toKey(value);
+		}
+		catch(IllegalArgumentException e) {
+			return new ArrayList<>();  //not a value of the column type, no row can match
+		}
+
+		switch(op) {
+			case "=":  return tree.search(key);
+			case "<":  return tree.range(null, false, key, false);
+			case "<=": return tree.range(null, false, key, true);
+			case ">":  return tree.range(key, false, null, false);
+			case ">=": return tree.range(key, true, null, false);
+			default:   return null;
+		}
+	}
+
+	//Row ids of the rows with min <= key <= max for a typed column (see Condition.keyRange()) found with an index,
+	//null when the column isn't indexed. One key of the PRIMARY KEY goes to the hash index
+	public static List<RowId> lookupKeys(TableSchema schema, String columnName, long min, long max) throws IOException {
+
+		Lock latch = latchOf(schema).readLock();
+		latch.lock();
+		try {
+			Column pk = schema.getPrimaryKey();
+			boolean primary = pk != null && pk.getName().equals(columnName);
+			IndexInfo index = schema.getIndexOn(columnName);
+			if(min > max && (primary || index != null))
+				return new ArrayList<>();
+			if(primary && min == max)
+				return getPrimaryIndex(schema).search(BPlusTree.toKey(pk.getType(), min));
+			if(index == null)
+				return null;
+			BPlusTree tree = getTree(index);
+			return tree.range(BPlusTree.toKey(tree.getKeyType(), min), true, BPlusTree.toKey(tree.getKeyType(), max), true);
+		}
+		finally {
+			latch.unlock();
+		}
+	}
+
+	//Row ids of the rows with low <= column <= high found with a B+tree index, null when the column has none
+	public static List<RowId> lookupRange(TableSchema schema, String columnName, String low, String high) throws IOException {
+
+		IndexInfo index = schema.getIndexOn(columnName);
+		if(index == null)
+			return null;
+
+		BPlusTree tree = getTree(index);
+		Lock latch = latchOf(schema).readLock();
+		latch.lock();
+		try {
+			return tree.range(tree.toKey(low), true, tree.toKey(high), true);
+		}
+		catch(IllegalArgumentException e) {
+			return new ArrayList<>();
+		}
+		finally {
+			latch.unlock();
+		}
+	}
+
+}
@@ -0,0 +1,66 @@
+package com.minidb;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+//Reads the rows found by an index lookup, in file order so each page is fetched once.
+//With a snapshot the rows are the ones the snapshot sees, and the rows with versions are read
+//too: the index has the newest values, the snapshot may see a row under an older one. The
+//operator above must check the condition again.
+public class IndexScanOperator implements Operator {
+
+	private final File tableFile;
+	private final String tableName;
+	private final List<DataType> types;
+	private final TransactionManager.Snapshot snapshot;
+	private final List<RowId> rowIds;
+	private int position;
+
+	public IndexScanOperator(File tableFile, TableSchema schema, List<RowId> rowIds) {
+		this(tableFile, schema, rowIds, null);
+	}
+
+	//A null snapshot reads the rows as they are
+	public IndexScanOperator(File tableFile, TableSchema schema, List<RowId> rowIds, TransactionManager.Snapshot snapshot) {
+		this.tableFile = tableFile;
+		this.tableName = schema.getTableName();
+		this.types = schema.getColumnTypes();
+		this.snapshot = snapshot;
+		this.rowIds = new ArrayList<>(rowIds);
+	}
+
+	@Override
+	public void open() throws IOException {
+		TreeSet<RowId> sorted = new TreeSet<>(rowIds);
+		sorted.addAll(TransactionManager.changedRows(snapshot, tableName));
+		rowIds.clear();
+		rowIds.addAll(sorted);
+		position = 0;
+	}
+
+	@Override
+	public List<String> next() throws IOException {
+
+		while(position < rowIds.size()) {
+			RowId rowId = rowIds.get(position++);
+			byte[] record = TableManager.readRecord(tableFile, rowId);
+			List<String> row = TransactionManager.visible(snapshot, tableName, rowId, record == null ? null : RowCodec.decode(record, types));
+			if(row != null)
+				return row;
+		}
+		return null;
+	}
+
+	@Override
+	public RowId getRowId() {
+		return position == 0 ? null : rowIds.get(position - 1);
+	}
+
+	@Override
+	public void close() {
+	}
+
+}
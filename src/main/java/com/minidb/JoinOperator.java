@@ -0,0 +1,74 @@
+package com.minidb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+//Base of the operators joining the rows of a left input with the rows of a right input having
+//equal keys. A joined row is the left row followed by the right row. A LEFT join also gives each
+//left row without a match once, with nulls for the right columns. A null key matches nothing.
+//Keys are compared as the type given for each, by the keys of their values taken once per row
+//(see RowOrder).
+public abstract class JoinOperator implements Operator {
+
+	protected final Operator left;
+	//positions of the keys in the left and the right rows, same count
+	protected final int[] leftKeys;
+	protected final int[] rightKeys;
+	//per key, the type its values are compared as
+	protected final DataType[] keyTypes;
+	//order of the left and of the right rows by their keys, with the same types
+	protected final RowOrder leftOrder;
+	protected final RowOrder rightOrder;
+	protected final boolean leftOuter;
+	protected final int rightWidth;
+
+	protected JoinOperator(Operator left, int[] leftKeys, int[] rightKeys, DataType[] keyTypes, boolean leftOuter, int rightWidth) {
+		this.left = left;
+		this.leftKeys = leftKeys;
+		this.rightKeys = rightKeys;
+		this.keyTypes = keyTypes;
+		this.leftOrder = new RowOrder(leftKeys, keyTypes);
+		this.rightOrder = leftOrder.at(rightKeys);
+		this.leftOuter = leftOuter;
+		this.rightWidth = rightWidth;
+	}
+
+
+
+
+	protected static List<String> concat(List<String> leftRow, List<String> rightRow) {
+
+		List<String> row = new ArrayList<>(leftRow.size() + rightRow.size());
+		row.addAll(leftRow);
+		row.addAll(rightRow);
+		return row;
+	}
+
+	//The left row of a LEFT join without a match
+	protected List<String> unmatched(List<String> leftRow) {
+		return concat(leftRow, Collections.<String>nCopies(rightWidth, null));
+	}
+
+	protected static boolean hasNullKey(List<String> row, int[] keys) {
+
+		for(int key: keys) {
+			if(row.get(key) == null)
+				return true;
+		}
+		return false;
+	}
+
+	//The key of the row to look up in a hash table: its value for one key column, a list of the values otherwise
+	protected static Object hashKey(List<String> row, int[] keys) {
+
+		if(keys.length == 1)
+			return row.get(keys[0]);
+		String[] values = new String[keys.length];
+		for(int i=0;i<keys.length;i++)
+			values[i] = row.get(keys[i]);
+		return Arrays.asList(values);
+	}
+
+}
@@ -0,0 +1,72 @@
+package com.minidb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//Splits a SQL statement into tokens in one pass over its characters.
+//Quoted text is kept as one STRING token, so commas, parentheses, operators and
+//keywords inside quotes are part of the value. A quote is doubled to be part of the text.
+public class Lexer {
+
+	public static List<Token> tokenize(String sql) throws SyntaxException {
+
+		List<Token> tokens = new ArrayList<>();
+		int i = 0, n = sql.length();
+		while(i < n) {
+			char c = sql.charAt(i);
+			int start = i;
+
+			if(Character.isWhitespace(c)) {
+				i++;
+			}
+			else if(Character.isLetter(c) || c == '_') {
+				while(i < n && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '_'))
+					i++;
+				tokens.add(new Token(Token.Type.WORD, sql.substring(start, i), start));
+			}
+			else if(c >= '0' && c <= '9') {
+				while(i < n && sql.charAt(i) >= '0' && sql.charAt(i) <= '9')
+					i++;
+				Token.Type type = Token.Type.INT;
+				if(i+1 < n && sql.charAt(i) == '.' && sql.charAt(i+1) >= '0' && sql.charAt(i+1) <= '9') {
+					type = Token.Type.DECIMAL;
+					i++;
+					while(i < n && sql.charAt(i) >= '0' && sql.charAt(i) <= '9')
+						i++;
+				}
+				tokens.add(new Token(type, sql.substring(start, i), start));
+			}
+			else if(c == '\'' || c == '"') {
+				StringBuilder text = new StringBuilder();
+				i++;
+				while(true) {
+					if(i == n)
+						throw new SyntaxException("Unterminated quoted text starting at position " + start, start);
+					char d = sql.charAt(i++);
+					if(d != c)
+						text.append(d);
+					else if(i < n && sql.charAt(i) == c) {
+						text.append(c);
+						i++;
+					}
+					else
+						break;
+				}
+				tokens.add(new Token(Token.Type.STRING, text.toString(), start));
+			}
+			else if((c == '<' || c == '>' || c == '!') && i+1 < n && sql.charAt(i+1) == '=' || c == '<' && i+1 < n && sql.charAt(i+1) == '>') {
+				i += 2;
+				tokens.add(new Token(Token.Type.SYMBOL, sql.substring(start, i), start));
+			}
+			else if("(),;*=<>-?.".indexOf(c) != -1) {
+				i++;
+				tokens.add(new Token(Token.Type.SYMBOL, String.valueOf(c), start));
+			}
+			else
+				throw new SyntaxException("Unexpected character '" + c + "' at position " + start, start);
+		}
+		tokens.add(new Token(Token.Type.END, "", n));
+		return tokens;
+	}
+
+}
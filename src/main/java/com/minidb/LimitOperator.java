@@ -0,0 +1,60 @@
+package com.minidb;
+
+import java.io.IOException;
+import java.util.List;
+
+//Skips the first offset rows then stops after limit rows, the child isn't read any further
+public class LimitOperator implements Operator {
+
+	private final Operator child;
+	private final long offset;
+	private final long limit;
+	private long count;
+	private boolean skipped;
+
+	public LimitOperator(Operator child, long limit) {
+		this(child, 0, limit);
+	}
+
+	public LimitOperator(Operator child, long offset, long limit) {
+		this.child = child;
+		this.offset = offset;
+		this.limit = limit;
+	}
+
+	@Override
+	public void open() throws IOException {
+		count = 0;
+		skipped = false;
+		child.open();
+	}
+
+	@Override
+	public List<String> next() throws IOException {
+
+		if(count >= limit)
+			return null;
+		if(!skipped) {
+			skipped = true;
+			for(long i=0;i<offset;i++) {
+				if(child.next() == null)
+					return null;
+			}
+		}
+		List<String> row = child.next();
+		if(row != null)
+			count++;
+		return row;
+	}
+
+	@Override
+	public RowId getRowId() {
+		return child.getRowId();
+	}
+
+	@Override
+	public void close() {
+		child.close();
+	}
+
+}
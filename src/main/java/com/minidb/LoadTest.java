@@ -0,0 +1,154 @@
+package com.minidb;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Measures the server under many concurrent clients:
+//	java -cp app.jar com.minidb.LoadTest [threads] [seconds] [host port]
+//Without a host a server is started in this process on the loopback interface.
+//Each thread borrows a client from a ClientPool and runs prepared point SELECTs on the primary
+//key, with one UPDATE for every READS_PER_WRITE reads, then prints throughput and latencies.
+public class LoadTest {
+
+	private static final String TABLE = "loadtest";
+	private static final int ROWS = 10000;
+	private static final int READS_PER_WRITE = 4;
+
+	public static void main(String[] args) throws Exception {
+
+		int threads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+		int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		Server server = null;
+		String host;
+		int port;
+		if(args.length > 3) {
+			host = args[2];
+			port = Integer.parseInt(args[3]);
+		}
+		else {
+			server = new Server(InetAddress.getLoopbackAddress(), 0);
+			server.start();
+			host = InetAddress.getLoopbackAddress().getHostAddress();
+			port = server.getPort();
+		}
+
+		try(ClientPool pool = new ClientPool(host, port, threads)) {
+			setup(pool);
+			System.out.println("Running " + threads + " clients for " + seconds + " s against " + host + ":" + port);
+			report(run(pool, threads, seconds * 1000L), seconds);
+			Client client = pool.borrow();
+			client.executeUpdate("DROP TABLE " + TABLE);
+			pool.release(client);
+		}
+		finally {
+			if(server != null) {
+				server.close();
+				MiniDB.shutdown();
+			}
+		}
+	}
+
+	private static void setup(ClientPool pool) throws DatabaseException {
+
+		Client client = pool.borrow();
+		try {
+			try {
+				client.executeUpdate("DROP TABLE " + TABLE);
+			}
+			catch(DatabaseException e) {
+				//wasn't there
+			}
+			client.executeUpdate("CREATE TABLE " + TABLE + " (id INT PRIMARY KEY, name TEXT, visits INT)");
+			StringBuilder insert = new StringBuilder();
+			for(int id=0;id<ROWS;id++) {
+				insert.append(insert.length() == 0 ? "INSERT INTO " + TABLE + " VALUES " : ", ");
+				insert.append("(" + id + ", 'user" + id + "', 0)");
+				if(insert.length() > 64 * 1024 || id == ROWS-1) {
+					client.executeUpdate(insert.toString());
+					insert.setLength(0);
+				}
+			}
+		}
+		finally {
+			pool.release(client);
+		}
+	}
+
+	//Latencies in microseconds of every statement run, per thread
+	private static long[][] run(ClientPool pool, int threads, long millis) throws InterruptedException {
+
+		long[][] latencies = new long[threads][];
+		AtomicLong errors = new AtomicLong();
+		long end = System.currentTimeMillis() + millis;
+		Thread[] workers = new Thread[threads];
+		for(int t=0;t<threads;t++) {
+			final int thread = t;
+			workers[t] = new Thread(() -> {
+				long[] times = new long[1 << 16];
+				int count = 0;
+				try {
+					Client client = pool.borrow();
+					Client.Prepared select = client.prepare("SELECT name, visits FROM " + TABLE + " WHERE id = ?");
+					Client.Prepared update = client.prepare("UPDATE " + TABLE + " SET visits = ? WHERE id = ?");
+					ThreadLocalRandom random = ThreadLocalRandom.current();
+					while(System.currentTimeMillis() < end) {
+						int id = random.nextInt(ROWS);
+						long start = System.nanoTime();
+						try {
+							if(count % (READS_PER_WRITE + 1) == READS_PER_WRITE)
+								update.executeUpdate(random.nextInt(1000), id);
+							else {
+								try(ResultSet rows = select.executeQuery(id)) {
+									while(rows.next());
+								}
+							}
+						}
+						catch(DatabaseException e) {
+							errors.incrementAndGet();
+							if(!client.isUsable())
+								break;
+						}
+						if(count == times.length)
+							times = Arrays.copyOf(times, times.length * 2);
+						times[count++] = (System.nanoTime() - start) / 1000;
+					}
+					pool.release(client);
+				}
+				catch(DatabaseException e) {
+					System.err.println(Color.RED + e.getMessage() + Color.RESET);
+				}
+				latencies[thread] = Arrays.copyOf(times, count);
+			});
+			workers[t].start();
+		}
+		for(Thread worker: workers)
+			worker.join();
+		if(errors.get() > 0)
+			System.err.println(Color.RED + errors.get() + " statements failed" + Color.RESET);
+		return latencies;
+	}
+
+	private static void report(long[][] latencies, int seconds) {
+
+		int total = 0;
+		for(long[] times: latencies)
+			total += times.length;
+		long[] all = new long[total];
+		int pos = 0;
+		for(long[] times: latencies) {
+			System.arraycopy(times, 0, all, pos, times.length);
+			pos += times.length;
+		}
+		Arrays.sort(all);
+		if(total == 0) {
+			System.err.println(Color.RED + "No statement completed" + Color.RESET);
+			return;
+		}
+
+		System.out.println(Color.GREEN + total + " statements, " + (total / seconds) + " per second" + Color.RESET);
+		System.out.println("latency us: p50 " + all[total / 2] + ", p95 " + all[(int) (total * 0.95)] + ", p99 " + all[(int) (total * 0.99)] + ", max " + all[total - 1]);
+	}
+
+}
@@ -0,0 +1,247 @@
+package com.minidb;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+//Locks of the tables, so statements can run on many threads at once. A table has three modes:
+//  shared     SELECT, held until its rows are closed so the table isn't dropped under them
+//  write      INSERT, UPDATE, DELETE, LOAD: shared, plus the writer lock of the table. Writers run
+//             one at a time on a table but don't wait for the readers, who read a snapshot
+//             (see TransactionManager). A transaction keeps it until it ends
+//  exclusive  VACUUM, DROP, CREATE/DROP INDEX: waits for the readers and writers and runs alone
+//Statements on different tables don't wait for each other. A statement waits at most
+//-Dminidb.lock.timeout ms (default 10000) for a lock, then it fails instead of hanging.
+//
+//The locks belong to an owner, not to a thread: the Connection running the statement (see attach()),
+//the thread itself when the managers are called without one. So a transaction started on one
+//thread can be committed on another, and the rows of a SELECT closed on another thread. The locks
+//are reentrant: a statement taking a lock its owner already holds doesn't wait. An owner with an
+//open result or transaction on a table can't take it exclusive until they end, the statement
+//fails at once rather than deadlocking.
+//
+//The pages themselves are latched while they are changed (see BufferPool), so the buffer pool
+//never writes a page to the disk half changed.
+public class LockManager {
+
+	private static final long timeout = Long.getLong("minidb.lock.timeout", 10000);
+
+	private static final ConcurrentMap<String, TableLock> locks = new ConcurrentHashMap<>();
+	private static final ThreadLocal<Object> owner = new ThreadLocal<>();
+
+	//The locks of a table and their owners, guarded by its monitor. The shared holds count the ones
+	//taken with the writer lock and under the exclusive lock too
+	private static class TableLock {
+		final Map<Object, Integer> shared = new HashMap<>();
+		Object writer;
+		int writerHolds;
+		Object exclusive;
+		int exclusiveHolds;
+		//owners waiting to take it exclusive, no other owner takes it shared meanwhile so they don't starve
+		int exclusiveWaiting;
+	}
+
+	private static TableLock lockOf(String tableName) {
+		return locks.computeIfAbsent(tableName, name -> new TableLock());
+	}
+
+	//Owner of the locks this thread takes
+	public static Object owner() {
+		Object session = owner.get();
+		return session == null ? Thread.currentThread() : session;
+	}
+
+	//Set by the Connection while it runs a statement, null to detach it
+	static void attach(Object session) {
+		if(session == null)
+			owner.remove();
+		else
+			owner.set(session);
+	}
+
+
+
+
+	//Locks the table for reading, false with an error if it timed out
+	public static boolean lockShared(String tableName) {
+
+		TableLock lock = lockOf(tableName);
+		Object owner = owner();
+		synchronized(lock) {
+			//an owner already holding the table must not queue behind the others
+			boolean holds = lock.shared.containsKey(owner) || lock.exclusive == owner;
+			if(!await(tableName, lock, () -> (lock.exclusive == null || lock.exclusive == owner) && (holds || lock.exclusiveWaiting == 0)))
+				return false;
+			lock.shared.merge(owner, 1, Integer::sum);
+			return true;
+		}
+	}
+
+	public static void unlockShared(String tableName) {
+		unlockShared(tableName, owner());
+	}
+
+	public static void unlockShared(String tableName, Object owner) {
+
+		TableLock lock = lockOf(tableName);
+		synchronized(lock) {
+			Integer holds = lock.shared.get(owner);
+			if(holds == null)
+				throw new IllegalStateException("Table '" + tableName + "' is not locked by " + owner);
+			if(holds == 1)
+				lock.shared.remove(owner);
+			else
+				lock.shared.put(owner, holds - 1);
+			lock.notifyAll();
+		}
+	}
+
+	//Locks the table for changing its rows, false with an error if it timed out
+	public static boolean lockWrite(String tableName) {
+
+		if(!lockShared(tableName))
+			return false;
+		TableLock lock = lockOf(tableName);
+		Object owner = owner();
+		synchronized(lock) {
+			if(await(tableName, lock, () -> lock.writer == null || lock.writer == owner)) {
+				lock.writer = owner;
+				lock.writerHolds++;
+				return true;
+			}
+		}
+		unlockShared(tableName, owner);
+		return false;
+	}
+
+	public static void unlockWrite(String tableName) {
+		unlockWrite(tableName, owner());
+	}
+
+	public static void unlockWrite(String tableName, Object owner) {
+
+		TableLock lock = lockOf(tableName);
+		synchronized(lock) {
+			if(lock.writer != owner)
+				throw new IllegalStateException("Table '" + tableName + "' is not locked for writing by " + owner);
+			if(--lock.writerHolds == 0)
+				lock.writer = null;
+		}
+		unlockShared(tableName, owner);
+	}
+
+	//Locks the table for changing it alone, false with an error if it timed out or its owner is using it
+	public static boolean lockExclusive(String tableName) {
+
+		TableLock lock = lockOf(tableName);
+		Object owner = owner();
+		synchronized(lock) {
+			if(lock.exclusive != owner && lock.shared.containsKey(owner)) {
+				Messages.error("Error: Table '" + tableName + "' is used by an open result or transaction, close or end it first");
+				return false;
+			}
+			lock.exclusiveWaiting++;
+			boolean locked;
+			try {
+				locked = await(tableName, lock, () -> lock.exclusive == owner || lock.exclusive == null && lock.shared.isEmpty());
+			}
+			finally {
+				lock.exclusiveWaiting--;
+				lock.notifyAll();
+			}
+			if(locked) {
+				lock.exclusive = owner;
+				lock.exclusiveHolds++;
+			}
+			return locked;
+		}
+	}
+
+	public static void unlockExclusive(String tableName) {
+
+		TableLock lock = lockOf(tableName);
+		Object owner = owner();
+		synchronized(lock) {
+			if(lock.exclusive != owner)
+				throw new IllegalStateException("Table '" + tableName + "' is not locked exclusive by " + owner);
+			if(--lock.exclusiveHolds == 0)
+				lock.exclusive = null;
+			lock.notifyAll();
+		}
+	}
+
+	//Waits on the monitor of the lock, held by the caller, until it is free for the owner
+	private static boolean await(String tableName, TableLock lock, BooleanSupplier free) {
+
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+		try {
+			while(!free.getAsBoolean()) {
+				long left = deadline - System.nanoTime();
+				if(left <= 0) {
+					Messages.error("Error: Timed out after " + timeout + " ms waiting for a lock on table '" + tableName + "'");
+					return false;
+				}
+				TimeUnit.NANOSECONDS.timedWait(lock, left);
+			}
+			return true;
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			Messages.error("Error: Interrupted waiting for a lock on table '" + tableName + "'");
+			return false;
+		}
+	}
+
+
+
+
+	//An operator that unlocks the table it reads when it is closed, for the rows of a SELECT.
+	//It can be closed on any thread
+	public static class SharedScan implements Operator {
+
+		private final Operator child;
+		private final String tableName;
+		private final Object owner = owner();
+		private boolean locked = true;
+
+		//the table must already be locked shared by the owner of this thread
+		public SharedScan(Operator child, String tableName) {
+			this.child = child;
+			this.tableName = tableName;
+		}
+
+		@Override
+		public void open() throws IOException {
+			child.open();
+		}
+
+		@Override
+		public List<String> next() throws IOException {
+			return child.next();
+		}
+
+		@Override
+		public RowId getRowId() {
+			return child.getRowId();
+		}
+
+		@Override
+		public void close() {
+			try {
+				child.close();
+			}
+			finally {
+				if(locked) {
+					locked = false;
+					unlockShared(tableName, owner);
+				}
+			}
+		}
+	}
+
+}
@@ -1,17 +1,25 @@
 package com.minidb;
+import java.util.Arrays;
+
 import org.fusesource.jansi.AnsiConsole;
 
 public class Main {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
 
 	AnsiConsole.systemInstall();
-        
+
         StorageManager.initializeStorage();
-        
+
+        //--server [port] [--bind address] serves the database over TCP instead of the terminal
+        if(args.length > 0 && args[0].equals("--server")) {
+            Server.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
         REPL repl = new REPL();
         repl.run();
 
 	AnsiConsole.systemUninstall();
 
     }
-}
\ No newline at end of file
+}
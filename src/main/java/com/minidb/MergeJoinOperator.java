@@ -0,0 +1,96 @@
+package com.minidb;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+//Joins two inputs sorted by their keys (see RowOrder) in one pass over each, the keys of each row
+//taken once.
+//The right rows with the key of the current left row are kept in memory, so the left rows
+//with the same key are joined with them without reading the right input again.
+public class MergeJoinOperator extends JoinOperator {
+
+	private final Operator right;
+	//next right row not in the group yet
+	private RowOrder.Keys rightRow;
+	//right rows with the key of the last left row, and the keys of the first of them
+	private final List<List<String>> group = new ArrayList<>();
+	private RowOrder.Keys groupKeys;
+	private List<String> current;
+	private int groupPosition;
+
+	public MergeJoinOperator(Operator left, Operator right, int[] leftKeys, int[] rightKeys, DataType[] keyTypes, boolean leftOuter, int rightWidth) {
+		super(left, leftKeys, rightKeys, keyTypes, leftOuter, rightWidth);
+		this.right = right;
+	}
+
+	@Override
+	public void open() throws IOException {
+
+		left.open();
+		right.open();
+		rightRow = nextRight();
+		group.clear();
+		current = null;
+	}
+
+	@Override
+	public List<String> next() throws IOException {
+
+		while(true) {
+			if(current != null) {
+				if(groupPosition < group.size())
+					return concat(current, group.get(groupPosition++));
+				current = null;
+			}
+
+			List<String> row = left.next();
+			if(row == null)
+				return null;
+			if(hasNullKey(row, leftKeys)) {
+				if(leftOuter)
+					return unmatched(row);
+				continue;
+			}
+			RowOrder.Keys keys = leftOrder.keys(row);
+			if(group.isEmpty() || leftOrder.compare(keys, groupKeys) != 0) {
+				group.clear();
+				while(rightRow != null && (hasNullKey(rightRow.getRow(), rightKeys) || leftOrder.compare(keys, rightRow) > 0))
+					rightRow = nextRight();
+				groupKeys = rightRow;
+				while(rightRow != null && leftOrder.compare(keys, rightRow) == 0) {
+					group.add(rightRow.getRow());
+					rightRow = nextRight();
+				}
+			}
+			if(group.isEmpty()) {
+				if(leftOuter)
+					return unmatched(row);
+				continue;
+			}
+			current = row;
+			groupPosition = 0;
+		}
+	}
+
+	private RowOrder.Keys nextRight() throws IOException {
+		List<String> row = right.next();
+		return row == null ? null : rightOrder.keys(row);
+	}
+
+	@Override
+	public void close() {
+
+		try {
+			left.close();
+		}
+		finally {
+			right.close();
+			group.clear();
+			groupKeys = null;
+			rightRow = null;
+			current = null;
+		}
+	}
+
+}
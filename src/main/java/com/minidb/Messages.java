@@ -0,0 +1,79 @@
+package com.minidb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//Messages of the managers for the user.
+//By default they are printed in color, errors in red and the rest in green. While a Connection
+//runs a statement the messages of its thread are collected instead, so an embedded caller gets
+//the errors in a DatabaseException and nothing is printed.
+public class Messages {
+
+	private static final ThreadLocal<Collected> collected = new ThreadLocal<>();
+
+	//errors and warnings of the statement running on a thread
+	static class Collected {
+		final List<String> errors = new ArrayList<>();
+		final List<String> warnings = new ArrayList<>();
+	}
+
+
+
+
+	public static void error(String message) {
+
+		Collected messages = collected.get();
+		if(messages != null)
+			messages.errors.add(message.trim());
+		else
+			System.err.println(Color.RED + message + Color.RESET);
+	}
+
+	//Something the user should know about a statement that still succeeded
+	public static void warning(String message) {
+
+		Collected messages = collected.get();
+		if(messages != null)
+			messages.warnings.add(message.trim());
+		else
+			System.err.println(Color.RED + message + Color.RESET);
+	}
+
+	public static void info(String message) {
+
+		if(collected.get() == null)
+			System.out.println(Color.GREEN + message + Color.RESET);
+	}
+
+
+
+
+	//Collects the messages of this thread until stopCollecting(), returns the previous collection
+	static Collected startCollecting() {
+
+		Collected previous = collected.get();
+		collected.set(new Collected());
+		return previous;
+	}
+
+	//The collected messages, previous is what startCollecting() returned
+	static Collected stopCollecting(Collected previous) {
+
+		Collected messages = collected.get();
+		if(previous == null)
+			collected.remove();
+		else
+			collected.set(previous);
+		return messages;
+	}
+
+	//The errors collected so far on this thread joined in one message, null if there are none
+	static String collectedErrors() {
+
+		Collected messages = collected.get();
+		if(messages == null || messages.errors.isEmpty())
+			return null;
+		return String.join("\n", messages.errors);
+	}
+
+}
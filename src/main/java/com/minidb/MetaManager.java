@@ -6,7 +6,6 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Scanner;
 import java.util.List;
 
 public class MetaManager {
@@ -15,131 +14,150 @@ public class MetaManager {
 	
 	//Storing the metadata of the tables
 	public static boolean createTable(String tableName, LinkedHashMap<String,String> columns) {
+		return createTable(tableName, columns, null);
+	}
+	
+	//primaryKey is the name of the PRIMARY KEY column, null for no primary key
+	public static boolean createTable(String tableName, LinkedHashMap<String,String> columns, String primaryKey) {
+		return createTable(tableName, columns, primaryKey, false);
+	}
+	
+	//columnar stores the table one column per file, such a table has no PRIMARY KEY
+	public static boolean createTable(String tableName, LinkedHashMap<String,String> columns, String primaryKey, boolean columnar) {
+		
+		if(!LockManager.lockExclusive(tableName))
+			return false;
+		try {
+			return createTableLocked(tableName, columns, primaryKey, columnar);
+		}
+		finally {
+			LockManager.unlockExclusive(tableName);
+		}
+	}
+	
+	private static boolean createTableLocked(String tableName, LinkedHashMap<String,String> columns, String primaryKey, boolean columnar) {
 		
 		File metaFile = new File(catalog_dir + File.separator + tableName + ".meta");
 		if(metaFile.exists()) {
-			System.err.println(Color.RED + "Error: Table '" + tableName + "' already exists!" + Color.RESET);
+			Messages.error("Error: Table '" + tableName + "' already exists!");
 			return false;
 		}
 		
-		try(FileWriter writer = new FileWriter(metaFile)) {
-			for(Map.Entry<String, String> entry: columns.entrySet()) {
-				writer.write(entry.getKey() + " " + entry.getValue() + "\n");
+		List<Column> schemaColumns = new ArrayList<>();
+		for(Map.Entry<String, String> entry: columns.entrySet()) {
+			DataType type = DataType.fromName(entry.getValue());
+			if(type == null) {
+				Messages.error("Error: Unknown type '" + entry.getValue() + "' for column '" + entry.getKey() + "'");
+				return false;
+			}
+			//the blocks of a columnar table are bit-packed ints or dictionary encoded text
+			if(columnar && type != DataType.INT && type != DataType.TEXT) {
+				Messages.error("Error: A columnar table only has INT and TEXT columns, '" + entry.getKey() + "' is " + type);
+				return false;
 			}
-			System.out.println(Color.GREEN + "Table '" + tableName + "' created!" + Color.RESET);
-			return true;
+			schemaColumns.add(new Column(entry.getKey(), type, schemaColumns.size(), entry.getKey().equals(primaryKey)));
+		}
+		if(primaryKey != null && !columns.containsKey(primaryKey)) {
+			Messages.error("Error: PRIMARY KEY column '" + primaryKey + "' is not a column of the table");
+			return false;
+		}
+		if(primaryKey != null && columnar) {
+			Messages.error("Error: A columnar table can't have a PRIMARY KEY");
+			return false;
+		}
+		
+		TableSchema schema = new TableSchema(tableName, schemaColumns, new ArrayList<>(), columnar);
+		try {
+			writeMetaFile(schema);
 		}
 		catch(IOException e) {
-			System.err.println(Color.RED + "Error creating the table: " + e.getMessage() + Color.RESET);
+			Messages.error("Error creating the table: " + e.getMessage());
 			return false;
 		}
+		
+		Catalog.put(schema);
+		PlanCache.invalidate(tableName);
+		Messages.info("Table '" + tableName + "' created!");
+		return true;
 	}
 	
 	
 	
-	//Loading the metadata of the tables
-	public static LinkedHashMap<String,String> loadTable(String tableName) {
+	//One "columnName columnType [PRIMARY KEY]" line per column followed by one "INDEX indexName columnName" line per index,
+	//and "STORAGE COLUMNAR" for a columnar table
+	private static void writeMetaFile(TableSchema schema) throws IOException {
 		
-		File metaFile = new File(catalog_dir + File.separator + tableName + ".meta");
-		
-		if(!metaFile.exists()) {
-			System.err.println(Color.RED + "\nError: Table '" + tableName + "' not exists!" + Color.RESET);
-			return null;
-		}
-		
-		LinkedHashMap<String,String> columns = new LinkedHashMap<>();
-		try(Scanner scanner = new Scanner(metaFile)) {
-			
-			while(scanner.hasNextLine()) {
-				String line = scanner.nextLine().trim();
-				if(line.isEmpty()) continue;
-				
-				String[] parts = line.split("\\s+");
-				if(parts.length == 2) 
-					columns.put(parts[0], parts[1]);  //columnName and columnType
+		File metaFile = new File(catalog_dir + File.separator + schema.getTableName() + ".meta");
+		try(FileWriter writer = new FileWriter(metaFile)) {
+			for(Column column: schema.getColumns()) {
+				writer.write(column + "\n");
+			}
+			if(schema.isColumnar())
+				writer.write("STORAGE COLUMNAR\n");
+			for(IndexInfo index: schema.getIndexes()) {
+				writer.write("INDEX " + index.getName() + " " + index.getColumnName() + "\n");
 			}
-			//System.out.println("Loaded schema for table: " + tableName);
-		}	
-		catch(Exception e) {
-			System.err.println(Color.RED + "\nError reading the table schema: " + e.getMessage() + Color.RESET);
 		}
-		return columns;
 	}
 	
 	
 	
-	//listing all the tables in the catalog folder
-	public static List<String> showTables() {
-		List<String> tables = new ArrayList<>();
-		File catalogDir = new File("data" + File.separator + "catalog");
+	//Records a new index of a table in the catalog
+	public static boolean addIndex(IndexInfo index) {
 		
-		File[] files = catalogDir.listFiles(); //listFiles() will give all the files so filter it!
-		if(files!=null) {
-			for(File file: files) {
-				if(file.getName().endsWith(".meta")) {
-					String tableName = file.getName().replace(".meta","");
-					tables.add(tableName);			
-				}
-			}
+		TableSchema schema = Catalog.get(index.getTableName());
+		if(schema == null)
+			return false;
+		
+		TableSchema newSchema = schema.withIndex(index);
+		try {
+			writeMetaFile(newSchema);
+		}
+		catch(IOException e) {
+			Messages.error("Error saving the index '" + index.getName() + "': " + e.getMessage());
+			return false;
 		}
-		return tables;
+		Catalog.put(newSchema);
+		PlanCache.invalidate(index.getTableName());
+		return true;
 	}
 	
 	
 	
-	//listing the columns in the table
-	public static void describeTable(String tableName) {
-		File metaFile = new File("data" + File.separator + "catalog" + File.separator + tableName + ".meta");
-		
-		if(!metaFile.exists()) {
-			System.err.println(Color.RED + "Error: Table '" + tableName + "' does not exist!" + Color.RESET);
-			return;
-		}
+	public static boolean removeIndex(IndexInfo index) {
 		
+		TableSchema schema = Catalog.get(index.getTableName());
+		if(schema == null)
+			return false;
 		
-		List<String[]> rows = new ArrayList<>();
-		try(Scanner scanner = new Scanner(metaFile)){
-			while(scanner.hasNextLine()) {
-				
-				String col = scanner.nextLine().trim();
-				if(col.isEmpty())
-					continue;
-				
-				String[] parts = col.split("\\s+");
-				rows.add(parts);
-			}
-			
-			int col1Length = 11; //"COLUMN NAME" = 11
-			int col2Length = 11; //"COLUMN TYPE" = 11
-			for(String[] row: rows) {
-				col1Length = Math.max(col1Length, row[0].length());
-				col2Length = Math.max(col2Length, row[1].length());
-			}
-			
-			System.out.println(Color.CYAN + "Table: " + tableName + Color.RESET);
-			printBorder(col1Length,col2Length);
-			System.out.printf("| %-" + col1Length + "s | %-" + col2Length + "s |\n", "COLUMN NAME", "COLUMN TYPE");
-			printBorder(col1Length,col2Length);
-			for(String[] row: rows)
-				System.out.printf("| %-" + col1Length + "s | %-" + col2Length + "s |\n", row[0], row[1]);
-			printBorder(col1Length,col2Length);
-			
+		TableSchema newSchema = schema.withoutIndex(index.getName());
+		try {
+			writeMetaFile(newSchema);
 		}
-		catch(Exception e) {
-			System.err.println(Color.RED + "Error reading table schema: " + e.getMessage() + Color.RESET);
+		catch(IOException e) {
+			Messages.error("Error removing the index '" + index.getName() + "': " + e.getMessage());
+			return false;
 		}
-		
+		Catalog.put(newSchema);
+		PlanCache.invalidate(index.getTableName());
+		return true;
 	}
-	private static void printBorder(int col1Length, int col2Length) {
-		
-		System.out.print("+");
-		for(int i=0;i<col1Length+2;i++)
-			System.out.print("-");
-		System.out.print("+");
-		for(int i=0;i<col2Length+2;i++)
-			System.out.print("-");
-		System.out.println("+");
+	
+	
+	
+	//Schema of the table from the catalog, the .meta file is only read at startup
+	public static TableSchema getSchema(String tableName) {
 		
+		TableSchema schema = Catalog.get(tableName);
+		if(schema == null)
+			Messages.error("\nError: Table '" + tableName + "' not exists!");
+		return schema;
+	}
+	
+	
+	
+	//listing all the tables in the catalog
+	public static List<String> showTables() {
+		return Catalog.getTableNames();
 	}
 }
-
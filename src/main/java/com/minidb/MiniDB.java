@@ -0,0 +1,25 @@
+package com.minidb;
+
+//Entry point for applications embedding the database, the data is kept under ./data like for the REPL.
+//
+//	try(Connection connection = MiniDB.connect();
+//		ResultSet rows = connection.executeQuery("SELECT name FROM users WHERE id = ?", 1)) {
+//		while(rows.next())
+//			System.out.println(rows.getString("name"));
+//	}
+//	MiniDB.shutdown();
+public class MiniDB {
+
+	//A new connection, the storage is initialized and recovered on the first one
+	public static Connection connect() {
+
+		StorageManager.ensureInitialized();
+		return new Connection();
+	}
+
+	//Checkpoints the log and closes the files, call it once no connection is used anymore
+	public static void shutdown() {
+		StorageManager.shutdown();
+	}
+
+}
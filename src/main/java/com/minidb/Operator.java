@@ -0,0 +1,24 @@
+package com.minidb;
+
+import java.io.IOException;
+import java.util.List;
+
+//A step of a query plan (Volcano / iterator model).
+//Rows are pulled one at a time from the top operator, which pulls them from its child,
+//so a query never needs the whole table in memory.
+public interface Operator {
+
+	void open() throws IOException;
+
+	//Next row, null when there are no more rows
+	List<String> next() throws IOException;
+
+	//Row id of the row last returned by next(), so UPDATE and DELETE act on exactly the rows
+	//that were selected. Null when the row doesn't come straight from a table
+	default RowId getRowId() {
+		return null;
+	}
+
+	void close();
+
+}
@@ -0,0 +1,334 @@
+package com.minidb;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+//A fixed size slotted page of a .tbl file.
+//The header and the slot directory grow from the start of the page,
+//the records grow backwards from the end of the page.
+//
+// +--------+-------+--------------+-----+------------+--------------------+
+// | header | slot0 | slot1 ...    | --> | free space | <-- ... rec1 | rec0 |
+// +--------+-------+--------------+-----+------------+--------------------+
+//
+//header : magic(4) slotCount(2) freeSpaceEnd(2) lsn(8)
+//lsn is the log sequence number of the last write ahead log record applied to the page
+//slot   : offset(2) flags+length(2), the length takes the low 12 bits
+//
+//A deleted record leaves a tombstone slot (offset 0) so the row ids of the other records
+//don't change, the slot is reused by the next insert. A record that grew too big for its page
+//is moved to another page: its slot becomes a FORWARD stub holding the new row id, and the
+//moved record is flagged MOVED and starts with the row id of its home slot.
+//The space freed by deletes and updates is reclaimed by compacting the page.
+public class Page {
+
+	public static final int PAGE_SIZE = 4096;
+	public static final int MAGIC = 0xDB0C0001;
+
+	public static final int HEADER_SIZE = 16;
+	public static final int SLOT_SIZE = 4;
+	public static final int MAX_RECORD_SIZE = PAGE_SIZE - HEADER_SIZE - SLOT_SIZE;
+
+	public static final int FORWARD = 0x8000;
+	public static final int MOVED = 0x4000;
+	private static final int LENGTH_MASK = 0x0FFF;
+	//size of a row id stored in a FORWARD stub or before a MOVED record.
+	//Records are never smaller, so a record can always be replaced by a stub in place
+	public static final int ROW_ID_SIZE = 6;
+
+	private static final int MAGIC_OFFSET = 0;
+	private static final int SLOT_COUNT_OFFSET = 4;
+	private static final int FREE_END_OFFSET = 6;
+	private static final int LSN_OFFSET = 8;
+
+	private final byte[] data;
+	private final ByteBuffer buffer;
+
+
+
+
+	//Creates an empty page
+	public Page() {
+		this.data = new byte[PAGE_SIZE];
+		this.buffer = ByteBuffer.wrap(data);
+		buffer.putInt(MAGIC_OFFSET, MAGIC);
+		setSlotCount(0);
+		setFreeSpaceEnd(PAGE_SIZE);
+	}
+
+	//Wraps the bytes of a page read from the disk
+	public Page(byte[] data) {
+		if(data.length != PAGE_SIZE)
+			throw new IllegalArgumentException("Page must be " + PAGE_SIZE + " bytes, got " + data.length);
+		this.data = data;
+		this.buffer = ByteBuffer.wrap(data);
+	}
+
+	//Reads a page in place, like a page of a mapped file, starting at index 0 of the buffer.
+	//Only the methods reading the page can be used
+	public Page(ByteBuffer buffer) {
+		if(buffer.capacity() != PAGE_SIZE)
+			throw new IllegalArgumentException("Page must be " + PAGE_SIZE + " bytes, got " + buffer.capacity());
+		this.data = null;
+		this.buffer = buffer;
+	}
+
+
+
+
+	public static boolean isPage(byte[] data) {
+		return data.length >= 4 && ByteBuffer.wrap(data).getInt(MAGIC_OFFSET) == MAGIC;
+	}
+
+	public byte[] getData() {
+		return data;
+	}
+
+	public ByteBuffer getBuffer() {
+		return buffer;
+	}
+
+	public int getSlotCount() {
+		return buffer.getShort(SLOT_COUNT_OFFSET) & 0xFFFF;
+	}
+
+	private void setSlotCount(int count) {
+		buffer.putShort(SLOT_COUNT_OFFSET, (short) count);
+	}
+
+	private int freeSpaceEnd() {
+		return buffer.getShort(FREE_END_OFFSET) & 0xFFFF;
+	}
+
+	private void setFreeSpaceEnd(int end) {
+		buffer.putShort(FREE_END_OFFSET, (short) end);
+	}
+
+	public long getLsn() {
+		return buffer.getLong(LSN_OFFSET);
+	}
+
+	public void setLsn(long lsn) {
+		buffer.putLong(LSN_OFFSET, lsn);
+	}
+
+	//Bytes available between the slot directory and the records
+	public int getFreeSpace() {
+		return freeSpaceEnd() - (HEADER_SIZE + getSlotCount() * SLOT_SIZE);
+	}
+
+	//Free bytes once the page is compacted, counting the space left by deleted and shrunk records
+	public int getUsableSpace() {
+		int used = HEADER_SIZE + getSlotCount() * SLOT_SIZE;
+		for(int slot=0;slot<getSlotCount();slot++)
+			used += length(slot);
+		return PAGE_SIZE - used;
+	}
+
+	public boolean canFit(int recordLength) {
+		return canSet(freeSlot(), recordLength);
+	}
+
+	//Whether the slot can hold a record of this length, compacting the page if needed
+	public boolean canSet(int slot, int recordLength) {
+		int size = Math.max(recordLength, ROW_ID_SIZE);
+		int needed = size + (slot == getSlotCount() ? SLOT_SIZE : 0);
+		return size <= MAX_RECORD_SIZE && getUsableSpace() + length(slot) >= needed;
+	}
+
+
+
+
+	private int slotPos(int slot) {
+		return HEADER_SIZE + slot * SLOT_SIZE;
+	}
+
+	private int offset(int slot) {
+		return buffer.getShort(slotPos(slot)) & 0xFFFF;
+	}
+
+	//Bytes used by the record of the slot, 0 for a tombstone or a new slot
+	private int length(int slot) {
+		if(slot >= getSlotCount())
+			return 0;
+		return buffer.getShort(slotPos(slot) + 2) & LENGTH_MASK;
+	}
+
+	private void setSlot(int slot, int offset, int flags, int length) {
+		buffer.putShort(slotPos(slot), (short) offset);
+		buffer.putShort(slotPos(slot) + 2, (short) (flags | length));
+	}
+
+	public boolean isDeleted(int slot) {
+		checkSlot(slot);
+		return offset(slot) == 0;
+	}
+
+	public int getFlags(int slot) {
+		checkSlot(slot);
+		return buffer.getShort(slotPos(slot) + 2) & ~LENGTH_MASK & 0xFFFF;
+	}
+
+	private void checkSlot(int slot) {
+		if(slot < 0 || slot >= getSlotCount())
+			throw new IndexOutOfBoundsException("Slot " + slot + " does not exist in page");
+	}
+
+	//Rows stored in the page: the slots that are neither a tombstone nor a FORWARD stub
+	public int getRowCount() {
+		int rows = 0;
+		for(int slot=0;slot<getSlotCount();slot++) {
+			if(offset(slot) != 0 && (getFlags(slot) & FORWARD) == 0)
+				rows++;
+		}
+		return rows;
+	}
+
+	//First tombstone slot, or a new slot at the end
+	public int freeSlot() {
+		for(int slot=0;slot<getSlotCount();slot++) {
+			if(offset(slot) == 0)
+				return slot;
+		}
+		return getSlotCount();
+	}
+
+
+
+
+	//Adds the record to the page and returns its slot number, -1 if the page is full
+	public int insertRecord(byte[] record) {
+
+		int slot = freeSlot();
+		return setRecord(slot, record, 0) ? slot : -1;
+	}
+
+	//Stores the record in the slot, replacing what it held. The slot can be a tombstone or the
+	//next new slot. The record is written in place when it isn't longer, otherwise in the free
+	//space, compacting the page first if needed. Returns false if the page is too full
+	public boolean setRecord(int slot, byte[] record, int flags) {
+
+		if(slot < 0 || slot > getSlotCount())
+			throw new IndexOutOfBoundsException("Slot " + slot + " does not exist in page");
+		if(!canSet(slot, record.length))
+			return false;
+		if(record.length < ROW_ID_SIZE)
+			record = Arrays.copyOf(record, ROW_ID_SIZE);
+
+		if(slot == getSlotCount()) {
+			setSlotCount(slot + 1);
+			setSlot(slot, 0, 0, 0);
+		}
+		else if(record.length <= length(slot)) {
+			System.arraycopy(record, 0, data, offset(slot), record.length);
+			setSlot(slot, offset(slot), flags, record.length);
+			return true;
+		}
+		else
+			setSlot(slot, 0, 0, 0);
+
+		if(getFreeSpace() < record.length)
+			packRecords(getSlotCount());
+		int offset = freeSpaceEnd() - record.length;
+		System.arraycopy(record, 0, data, offset, record.length);
+		setSlot(slot, offset, flags, record.length);
+		setFreeSpaceEnd(offset);
+		return true;
+	}
+
+	//Turns the slot into a tombstone, its space is reclaimed when the page is compacted
+	public void deleteRecord(int slot) {
+		checkSlot(slot);
+		setSlot(slot, 0, 0, 0);
+	}
+
+	//Moves the records to the end of the page so the free space is in one piece,
+	//the tombstones at the end of the slot directory are dropped
+	public void compact() {
+
+		int count = getSlotCount();
+		while(count > 0 && offset(count - 1) == 0)
+			count--;
+		packRecords(count);
+	}
+
+	private void packRecords(int count) {
+
+		byte[] copy = data.clone();
+		ByteBuffer old = ByteBuffer.wrap(copy);
+		int end = PAGE_SIZE;
+		for(int slot=0;slot<count;slot++) {
+			int pos = slotPos(slot);
+			int offset = old.getShort(pos) & 0xFFFF;
+			if(offset == 0)
+				continue;
+			int length = old.getShort(pos + 2) & LENGTH_MASK;
+			end -= length;
+			System.arraycopy(copy, offset, data, end, length);
+			buffer.putShort(pos, (short) end);
+		}
+		setSlotCount(count);
+		setFreeSpaceEnd(end);
+	}
+
+
+
+
+	//Raw bytes of the slot: the record, a FORWARD stub or a MOVED record with its home row id
+	public byte[] getRecord(int slot) {
+
+		checkSlot(slot);
+		if(offset(slot) == 0)
+			throw new IllegalStateException("Slot " + slot + " was deleted");
+		return copy(offset(slot), length(slot));
+	}
+
+	//Row stored in the slot as seen by a scan: the record without the home row id of a MOVED record,
+	//null for a tombstone or a FORWARD stub, whose row is read where it was moved
+	public byte[] getRow(int slot) {
+
+		checkSlot(slot);
+		int offset = getRowOffset(slot);
+		return offset == -1 ? null : copy(offset, getRowLength(slot));
+	}
+
+	//Where the row of getRow() starts in the page, -1 for a tombstone or a FORWARD stub
+	public int getRowOffset(int slot) {
+
+		checkSlot(slot);
+		int offset = offset(slot);
+		if(offset == 0 || (getFlags(slot) & FORWARD) != 0)
+			return -1;
+		return offset + ((getFlags(slot) & MOVED) != 0 ? ROW_ID_SIZE : 0);
+	}
+
+	//Length of the row of getRow(), padding included
+	public int getRowLength(int slot) {
+		return length(slot) - ((getFlags(slot) & MOVED) != 0 ? ROW_ID_SIZE : 0);
+	}
+
+	private byte[] copy(int offset, int length) {
+
+		byte[] bytes = new byte[length];
+		if(data != null)
+			System.arraycopy(data, offset, bytes, 0, length);
+		else {
+			ByteBuffer view = buffer.duplicate();
+			view.position(offset);
+			view.get(bytes);
+		}
+		return bytes;
+	}
+
+	//Row id stored in a FORWARD stub or at the start of a MOVED record
+	public RowId getLinkedRowId(int slot) {
+		ByteBuffer record = ByteBuffer.wrap(getRecord(slot));
+		return new RowId(record.getInt(), record.getShort() & 0xFFFF);
+	}
+
+	//Bytes of a FORWARD stub, and the prefix of a MOVED record
+	public static byte[] rowIdBytes(RowId rowId) {
+		return ByteBuffer.allocate(ROW_ID_SIZE).putInt(rowId.getPageId()).putShort((short) rowId.getSlot()).array();
+	}
+
+}
@@ -0,0 +1,190 @@
+package com.minidb;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+//Reads a table on several threads. The pages are cut into chunks (-Dminidb.parallel.chunkPages,
+//default 32 pages), each chunk is scanned, filtered and projected by a TableScanOperator run by a task of a ForkJoinPool
+//shared by every query, and kept in memory until next() gets to it. At most parallelism chunks
+//are read ahead of the caller, so a LIMIT stops the scan early and a big table is never in
+//memory whole. ORDERED returns the chunks in page order, the rows come as a TableScanOperator
+//would give them, UNORDERED returns each chunk as soon as it is read.
+public class ParallelScanOperator implements Operator {
+
+	public static final int CHUNK_PAGES = Math.max(1, Integer.getInteger("minidb.parallel.chunkPages", 32));
+	private static final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+	private final File tableFile;
+	private final TableSchema schema;
+	private final TransactionManager.Snapshot snapshot;
+	private final Condition where;
+	private final int[] colIndexes;
+	private final int parallelism;
+	private final boolean ordered;
+	private final int chunkPages;
+
+	private int pageCount;
+	private int nextPage;
+	//chunks being read, in page order
+	private final Deque<Future<Chunk>> pending = new ArrayDeque<>();
+	private CompletionService<Chunk> completed;
+	private Chunk chunk;
+	private int position;
+	private volatile boolean closed;
+
+	//Rows of one chunk and their row ids
+	private static class Chunk {
+		final List<List<String>> rows = new ArrayList<>();
+		final List<RowId> rowIds = new ArrayList<>();
+	}
+
+	//A null where keeps every row, null colIndexes every column
+	public ParallelScanOperator(File tableFile, TableSchema schema, TransactionManager.Snapshot snapshot, Condition where,
+			int[] colIndexes, int parallelism, Settings.ScanOrder order, int chunkPages) {
+		//compiled here, so a column the table doesn't have fails before any task runs
+		if(where != null) {
+			where.predicate(schema);
+			where.recordPredicate(schema);
+		}
+		this.tableFile = tableFile;
+		this.schema = schema;
+		this.snapshot = snapshot;
+		this.where = where;
+		this.colIndexes = colIndexes;
+		this.parallelism = parallelism;
+		this.ordered = order == Settings.ScanOrder.ORDERED;
+		this.chunkPages = chunkPages;
+	}
+
+	//Scan of the whole table filtered and projected, on several threads when the settings of the
+	//session allow it and the table has at least two chunks, otherwise on the calling thread
+	public static Operator scan(File tableFile, TableSchema schema, TransactionManager.Snapshot snapshot, Condition where,
+			int[] colIndexes) throws IOException {
+
+		Settings settings = Settings.current();
+		if(settings.getParallelism() > 1 && BufferPool.getPageCount(tableFile) >= 2 * CHUNK_PAGES)
+			return new ParallelScanOperator(tableFile, schema, snapshot, where, colIndexes, settings.getParallelism(), settings.getScanOrder(), CHUNK_PAGES);
+		return new TableScanOperator(tableFile, schema, snapshot, where, colIndexes, 0, Integer.MAX_VALUE);
+	}
+
+
+
+
+	@Override
+	public void open() throws IOException {
+
+		pageCount = BufferPool.getPageCount(tableFile);
+		nextPage = 0;
+		pending.clear();
+		completed = new ExecutorCompletionService<>(pool);
+		chunk = null;
+		position = 0;
+		closed = false;
+		while(pending.size() < parallelism && submit())
+			;
+	}
+
+	@Override
+	public List<String> next() throws IOException {
+
+		while(chunk == null || position == chunk.rows.size()) {
+			if(pending.isEmpty())
+				return null;
+			chunk = take();
+			position = 0;
+			submit();
+		}
+		return chunk.rows.get(position++);
+	}
+
+	@Override
+	public RowId getRowId() {
+		return chunk == null || position == 0 ? null : chunk.rowIds.get(position - 1);
+	}
+
+	//Stops the tasks and waits for them, no page is read once the scan is closed
+	@Override
+	public void close() {
+
+		closed = true;
+		for(Future<Chunk> task: pending) {
+			try {
+				task.get();
+			}
+			catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+			catch(ExecutionException e) {
+				//the scan is over, its error doesn't matter anymore
+			}
+		}
+		pending.clear();
+		chunk = null;
+	}
+
+
+
+
+	//Starts reading the next chunk, false when every chunk was started
+	private boolean submit() {
+
+		if(nextPage >= pageCount)
+			return false;
+		int firstPage = nextPage;
+		int endPage = Math.min(pageCount, firstPage + chunkPages);
+		nextPage = endPage;
+		pending.add(completed.submit(() -> read(firstPage, endPage)));
+		return true;
+	}
+
+	//The next chunk: the first one started when ordered, the first one read otherwise
+	private Chunk take() throws IOException {
+
+		try {
+			Future<Chunk> task = ordered ? pending.peekFirst() : completed.take();
+			pending.remove(task);
+			return task.get();
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Scan of '" + schema.getTableName() + "' interrupted");
+		}
+		catch(ExecutionException e) {
+			if(e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			if(e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IOException(e.getCause());
+		}
+	}
+
+	//Runs on a thread of the pool
+	private Chunk read(int firstPage, int endPage) throws IOException {
+
+		Chunk chunk = new Chunk();
+		TableScanOperator scan = new TableScanOperator(tableFile, schema, snapshot, where, colIndexes, firstPage, endPage);
+		scan.open();
+		try {
+			List<String> row;
+			while(!closed && (row = scan.next()) != null) {
+				chunk.rows.add(row);
+				chunk.rowIds.add(scan.getRowId());
+			}
+		}
+		finally {
+			scan.close();
+		}
+		return chunk;
+	}
+
+}
@@ -0,0 +1,549 @@
+package com.minidb;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+//Recursive descent parser turning the tokens of one statement into a Statement.
+//Keywords are matched in any case, names keep the case they were written in.
+public class Parser {
+
+	//words that can follow the table name of a SELECT
+	private static final String[] CLAUSE_KEYWORDS = { "JOIN", "INNER", "LEFT", "ON", "WHERE", "GROUP", "ORDER", "LIMIT" };
+
+	private final List<Token> tokens;
+	private int pos;
+	//? seen so far
+	private int parameters;
+
+	private Parser(List<Token> tokens) {
+		this.tokens = tokens;
+	}
+
+	public static Statement parse(String sql) throws SyntaxException {
+
+		Parser parser = new Parser(Lexer.tokenize(sql));
+		Statement statement = parser.statement();
+		parser.acceptSymbol(";");
+		if(parser.peek().getType() != Token.Type.END)
+			throw parser.error("end of statement");
+		//the ? of PREPARE belong to the prepared statement
+		if(!(statement instanceof Statement.Prepare))
+			statement.parameterCount = parser.parameters;
+		return statement;
+	}
+
+
+
+
+	private Statement statement() throws SyntaxException {
+
+		Token first = peek();
+		if(accept("CREATE")) {
+			if(accept("TABLE"))
+				return createTable();
+			expect("INDEX");
+			return createIndex();
+		}
+		if(accept("DROP")) {
+			if(accept("TABLE"))
+				return new Statement.DropTable(name("table name"));
+			expect("INDEX");
+			return new Statement.DropIndex(name("index name"));
+		}
+		if(accept("INSERT"))
+			return insert();
+		if(accept("LOAD"))
+			return loadData();
+		if(accept("SELECT"))
+			return select();
+		if(accept("UPDATE"))
+			return update();
+		if(accept("DELETE"))
+			return delete();
+		if(accept("SHOW"))
+			return show();
+		if(accept("DESC") || accept("DESCRIBE"))
+			return new Statement.Describe(name("table name"));
+		if(accept("VACUUM"))
+			return new Statement.Vacuum(peek().getType() == Token.Type.WORD ? name("table name") : null);
+		if(accept("ANALYZE"))
+			return new Statement.Analyze(peek().getType() == Token.Type.WORD ? name("table name") : null);
+		if(accept("EXPLAIN")) {
+			expect("SELECT");
+			return new Statement.Explain((Statement.Select) select());
+		}
+		if(accept("PREPARE"))
+			return prepare();
+		if(accept("EXECUTE"))
+			return execute();
+		if(accept("DEALLOCATE")) {
+			accept("PREPARE");
+			return new Statement.Deallocate(name("statement name"));
+		}
+		if(accept("BEGIN")) {
+			acceptTransaction();
+			return new Statement.Begin();
+		}
+		if(accept("START")) {
+			expect("TRANSACTION");
+			return new Statement.Begin();
+		}
+		if(accept("COMMIT")) {
+			acceptTransaction();
+			return new Statement.Commit();
+		}
+		if(accept("ROLLBACK")) {
+			acceptTransaction();
+			return new Statement.Rollback();
+		}
+		if(accept("SET"))
+			return set();
+		throw new SyntaxException("Unrecognized command " + first, first.getPosition());
+	}
+
+	//the optional word after BEGIN, COMMIT and ROLLBACK
+	private void acceptTransaction() {
+		if(!accept("TRANSACTION"))
+			accept("WORK");
+	}
+
+	//SET name [= | TO] value, the value is a word, a number or quoted text
+	private Statement set() throws SyntaxException {
+
+		String name = name("setting name");
+		if(!acceptSymbol("="))
+			accept("TO");
+		Token value = next();
+		boolean negative = value.isSymbol("-");
+		if(negative)
+			value = next();
+		if(value.getType() != Token.Type.WORD && value.getType() != Token.Type.INT && value.getType() != Token.Type.STRING || negative && value.getType() != Token.Type.INT)
+			throw error(value, "a value for " + name);
+		return new Statement.Set(name, negative ? "-" + value.getText() : value.getText());
+	}
+
+	private Statement createTable() throws SyntaxException {
+
+		String tableName = name("table name");
+		expectSymbol("(");
+		LinkedHashMap<String, String> columns = new LinkedHashMap<>();
+		String primaryKey = null;
+		do {
+			Token columnToken = peek();
+			String column = name("column name");
+			String type = name("column type");
+			if(columns.containsKey(column))
+				throw new SyntaxException("Duplicate column '" + column + "'", columnToken.getPosition());
+			if(accept("PRIMARY")) {
+				expect("KEY");
+				if(primaryKey != null)
+					throw new SyntaxException("A table can only have one PRIMARY KEY", columnToken.getPosition());
+				primaryKey = column;
+			}
+			columns.put(column, type.toUpperCase());
+		} while(acceptSymbol(","));
+		expectSymbol(")");
+		boolean columnar = false;
+		if(accept("WITH")) {
+			//WITH (storage = columnar | row)
+			expectSymbol("(");
+			expect("STORAGE");
+			expectSymbol("=");
+			if(accept("COLUMNAR"))
+				columnar = true;
+			else if(!accept("ROW"))
+				throw error(peek(), "COLUMNAR or ROW");
+			expectSymbol(")");
+		}
+		return new Statement.CreateTable(tableName, columns, primaryKey, columnar);
+	}
+
+	private Statement createIndex() throws SyntaxException {
+
+		String indexName = name("index name");
+		expect("ON");
+		String tableName = name("table name");
+		expectSymbol("(");
+		String columnName = name("column name");
+		expectSymbol(")");
+		return new Statement.CreateIndex(indexName, tableName, columnName);
+	}
+
+	private Statement insert() throws SyntaxException {
+
+		expect("INTO");
+		String tableName = name("table name");
+		accept("VALUES");
+		List<List<Object>> rows = new ArrayList<>();
+		do {
+			expectSymbol("(");
+			List<Object> row = new ArrayList<>();
+			do {
+				row.add(literal());
+			} while(acceptSymbol(","));
+			expectSymbol(")");
+			rows.add(row);
+		} while(acceptSymbol(","));
+		return new Statement.Insert(tableName, rows);
+	}
+
+	private Statement loadData() throws SyntaxException {
+
+		expect("DATA");
+		accept("INFILE");
+		Token file = next();
+		if(file.getType() != Token.Type.STRING)
+			throw error(file, "a quoted file name");
+		expect("INTO");
+		expect("TABLE");
+		return new Statement.LoadData(file.getText(), name("table name"));
+	}
+
+	private Statement select() throws SyntaxException {
+
+		List<String> columns = null;
+		List<Statement.Aggregate> aggregates = new ArrayList<>();
+		if(!acceptSymbol("*")) {
+			columns = new ArrayList<>();
+			do {
+				Statement.Aggregate aggregate = aggregate();
+				aggregates.add(aggregate);
+				if(aggregate == null)
+					columns.add(column());
+				else if(accept("AS") || peek().getType() == Token.Type.WORD && !peek().is("FROM"))
+					columns.add(name("alias"));
+				else
+					columns.add(aggregate.toString());
+			} while(acceptSymbol(","));
+		}
+		expect("FROM");
+		String tableName = name("table name");
+		String alias = alias();
+		List<Statement.Join> joins = new ArrayList<>();
+		while(true) {
+			//[INNER] JOIN | LEFT [OUTER] JOIN table [alias] ON col = col [AND col = col]...
+			boolean left = false;
+			if(accept("LEFT")) {
+				accept("OUTER");
+				left = true;
+				expect("JOIN");
+			}
+			else if(accept("INNER"))
+				expect("JOIN");
+			else if(!accept("JOIN"))
+				break;
+			String joinTable = name("table name");
+			String joinAlias = alias();
+			expect("ON");
+			List<String> leftColumns = new ArrayList<>(), rightColumns = new ArrayList<>();
+			do {
+				leftColumns.add(column());
+				expectSymbol("=");
+				rightColumns.add(column());
+			} while(accept("AND"));
+			joins.add(new Statement.Join(joinTable, joinAlias, left, leftColumns, rightColumns));
+		}
+		Condition where = accept("WHERE") ? condition() : null;
+		List<String> groupBy = new ArrayList<>();
+		if(accept("GROUP")) {
+			expect("BY");
+			do {
+				groupBy.add(column());
+			} while(acceptSymbol(","));
+		}
+		List<Statement.Order> orderBy = new ArrayList<>();
+		if(accept("ORDER")) {
+			//ORDER BY col | aggregate [ASC | DESC], ...
+			expect("BY");
+			do {
+				Statement.Aggregate aggregate = aggregate();
+				String column = aggregate == null ? column() : null;
+				boolean descending = accept("DESC");
+				if(!descending)
+					accept("ASC");
+				orderBy.add(new Statement.Order(column, aggregate, descending));
+			} while(acceptSymbol(","));
+		}
+		long limit = -1, offset = 0;
+		if(accept("LIMIT")) {
+			limit = rowCount();
+			if(accept("OFFSET"))
+				offset = rowCount();
+		}
+		if(aggregates.stream().allMatch(aggregate -> aggregate == null))
+			aggregates = null;
+		return new Statement.Select(columns, aggregates, tableName, alias, joins, where, groupBy, orderBy, limit, offset);
+	}
+
+	//Number of rows of LIMIT and OFFSET
+	private int rowCount() throws SyntaxException {
+
+		Token count = next();
+		if(count.getType() != Token.Type.INT)
+			throw error(count, "a row count");
+		return parseInt(count);
+	}
+
+	//COUNT(*) | FUNCTION(column) selected by a SELECT, null when the next column isn't one.
+	//Function names aren't reserved either, a word is a function when ( follows it
+	private Statement.Aggregate aggregate() throws SyntaxException {
+
+		Token token = peek();
+		if(token.getType() != Token.Type.WORD || !tokens.get(pos + 1).isSymbol("("))
+			return null;
+		Statement.Aggregate.Function function;
+		try {
+			function = Statement.Aggregate.Function.valueOf(token.getText().toUpperCase());
+		}
+		catch(IllegalArgumentException e) {
+			throw new SyntaxException("Unknown function " + token.getText(), token.getPosition());
+		}
+		pos += 2;
+		String column = null;
+		if(function != Statement.Aggregate.Function.COUNT || !acceptSymbol("*"))
+			column = column();
+		expectSymbol(")");
+		return new Statement.Aggregate(function, column);
+	}
+
+	//[AS] alias after a table name, null without one. Keywords aren't reserved, so a word
+	//starting the next clause isn't taken as an alias
+	private String alias() throws SyntaxException {
+
+		if(accept("AS"))
+			return name("alias");
+		Token token = peek();
+		if(token.getType() != Token.Type.WORD)
+			return null;
+		for(String keyword: CLAUSE_KEYWORDS) {
+			if(token.is(keyword))
+				return null;
+		}
+		return name("alias");
+	}
+
+	private Statement update() throws SyntaxException {
+
+		String tableName = name("table name");
+		expect("SET");
+		List<String> setColumns = new ArrayList<>();
+		List<Object> setValues = new ArrayList<>();
+		do {
+			setColumns.add(name("column name"));
+			expectSymbol("=");
+			setValues.add(literal());
+		} while(acceptSymbol(","));
+		expect("WHERE");
+		return new Statement.Update(tableName, setColumns, setValues, condition());
+	}
+
+	private Statement delete() throws SyntaxException {
+
+		expect("FROM");
+		String tableName = name("table name");
+		expect("WHERE");
+		return new Statement.Delete(tableName, condition());
+	}
+
+	private Statement prepare() throws SyntaxException {
+
+		String name = name("statement name");
+		expect("AS");
+		Token first = peek();
+		if(first.is("PREPARE") || first.is("EXECUTE") || first.is("DEALLOCATE"))
+			throw error(first, "a statement to prepare");
+		Statement statement = statement();
+		statement.parameterCount = parameters;
+		return new Statement.Prepare(name, statement);
+	}
+
+	private Statement execute() throws SyntaxException {
+
+		String name = name("statement name");
+		List<Object> values = new ArrayList<>();
+		if(acceptSymbol("(") && !acceptSymbol(")")) {
+			do {
+				values.add(literal());
+			} while(acceptSymbol(","));
+			expectSymbol(")");
+		}
+		return new Statement.Execute(name, values);
+	}
+
+	private Statement show() throws SyntaxException {
+
+		if(accept("TABLES"))
+			return new Statement.Show(Statement.Show.Target.TABLES);
+		if(accept("WAL"))
+			return new Statement.Show(Statement.Show.Target.WAL);
+		if(accept("SETTINGS"))
+			return new Statement.Show(Statement.Show.Target.SETTINGS);
+		expect("BUFFER");
+		expect("POOL");
+		return new Statement.Show(Statement.Show.Target.BUFFER_POOL);
+	}
+
+
+
+
+	//condition := and (OR and)*
+	private Condition condition() throws SyntaxException {
+
+		List<Condition> parts = new ArrayList<>();
+		do {
+			parts.add(and());
+		} while(accept("OR"));
+		return parts.size() == 1 ? parts.get(0) : new Condition.Or(parts);
+	}
+
+	//and := primary (AND primary)*, nested ANDs are flattened
+	private Condition and() throws SyntaxException {
+
+		List<Condition> parts = new ArrayList<>();
+		do {
+			Condition part = primary();
+			if(part instanceof Condition.And)
+				parts.addAll(part.conjuncts());
+			else
+				parts.add(part);
+		} while(accept("AND"));
+		return parts.size() == 1 ? parts.get(0) : new Condition.And(parts);
+	}
+
+	//primary := ( condition ) | column op literal | column BETWEEN literal AND literal
+	//         | column IN ( literal, ... ) | column LIKE 'pattern'
+	private Condition primary() throws SyntaxException {
+
+		if(acceptSymbol("(")) {
+			Condition condition = condition();
+			expectSymbol(")");
+			return condition;
+		}
+		String column = column();
+		if(accept("BETWEEN")) {
+			Object low = literal();
+			expect("AND");
+			return new Condition.Between(column, low, literal());
+		}
+		if(accept("IN")) {
+			expectSymbol("(");
+			List<Object> values = new ArrayList<>();
+			do {
+				values.add(literal());
+			} while(acceptSymbol(","));
+			expectSymbol(")");
+			return new Condition.In(column, values);
+		}
+		if(accept("LIKE"))
+			return new Condition.Like(column, literal());
+		Token opToken = next();
+		Condition.Comparison.Op op = opToken.getType() == Token.Type.SYMBOL ? Condition.Comparison.Op.fromSymbol(opToken.getText()) : null;
+		if(op == null)
+			throw error(opToken, "one of = != < <= > >= BETWEEN IN LIKE");
+		return new Condition.Comparison(column, op, literal());
+	}
+
+	//column := name | table.name, the table is a table name or alias of the SELECT
+	private String column() throws SyntaxException {
+
+		String name = name("column name");
+		if(acceptSymbol("."))
+			return name + "." + name("column name");
+		return name;
+	}
+
+	//An Integer for a number, a Long for one past the INT range, a Double for a number with a
+	//fraction, a Boolean for TRUE or FALSE, a String for quoted text, a Parameter for ?
+	private Object literal() throws SyntaxException {
+
+		Token token = next();
+		if(token.getType() == Token.Type.STRING)
+			return token.getText();
+		if(token.isSymbol("?"))
+			return new Statement.Parameter(parameters++);
+		if(token.is("TRUE") || token.is("FALSE"))
+			return Boolean.valueOf(token.getText().toLowerCase());
+		boolean negative = token.isSymbol("-");
+		if(negative)
+			token = next();
+		if(token.getType() == Token.Type.DECIMAL) {
+			double number = Double.parseDouble(token.getText());
+			return negative ? -number : number;
+		}
+		if(token.getType() != Token.Type.INT)
+			throw error(token, "a number, quoted text, TRUE, FALSE or ?");
+		long number;
+		try {
+			number = Long.parseLong(token.getText());
+		}
+		catch(NumberFormatException e) {
+			throw new SyntaxException("Number " + token.getText() + " is too large for a BIGINT", token.getPosition());
+		}
+		number = negative ? -number : number;
+		return number == (int) number ? (Object) (int) number : (Object) number;
+	}
+
+	private static int parseInt(Token token) throws SyntaxException {
+		try {
+			return Integer.parseInt(token.getText());
+		}
+		catch(NumberFormatException e) {
+			throw new SyntaxException("Number " + token.getText() + " is too large for an INT", token.getPosition());
+		}
+	}
+
+
+
+
+	private Token peek() {
+		return tokens.get(pos);
+	}
+
+	private Token next() {
+		Token token = tokens.get(pos);
+		if(token.getType() != Token.Type.END)
+			pos++;
+		return token;
+	}
+
+	private boolean accept(String keyword) {
+		if(!peek().is(keyword))
+			return false;
+		pos++;
+		return true;
+	}
+
+	private boolean acceptSymbol(String symbol) {
+		if(!peek().isSymbol(symbol))
+			return false;
+		pos++;
+		return true;
+	}
+
+	private void expect(String keyword) throws SyntaxException {
+		if(!accept(keyword))
+			throw error(keyword);
+	}
+
+	private void expectSymbol(String symbol) throws SyntaxException {
+		if(!acceptSymbol(symbol))
+			throw error("'" + symbol + "'");
+	}
+
+	private String name(String what) throws SyntaxException {
+		Token token = next();
+		if(token.getType() != Token.Type.WORD)
+			throw error(token, what);
+		return token.getText();
+	}
+
+	private SyntaxException error(String expected) {
+		return error(peek(), expected);
+	}
+
+	private static SyntaxException error(Token found, String expected) {
+		return new SyntaxException("Expected " + expected + " but found " + found + " at position " + found.getPosition(), found.getPosition());
+	}
+
+}
@@ -0,0 +1,110 @@
+package com.minidb;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+//Parsed statements by SQL text, so a statement run again isn't lexed and parsed again.
+//The text is normalized first: runs of spaces outside quotes become one space and the
+//final ; is dropped. The least recently used entry is evicted past -Dminidb.planCache.size
+//entries (default 256). A statement keeps its compiled WHERE predicate while the schema of
+//its tables doesn't change, and creating, altering or dropping a table, or an index on it, removes
+//the entries of every statement reading or changing it, joined or not.
+public class PlanCache {
+
+	private static final int capacity = Integer.getInteger("minidb.planCache.size", 256);
+	//longer statements, like big multi-row INSERTs, are rarely run twice and aren't kept
+	private static final int MAX_SQL_LENGTH = 4096;
+
+	private static final LinkedHashMap<String, Statement> statements = new LinkedHashMap<String, Statement>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Statement> eldest) {
+			return size() > capacity;
+		}
+	};
+
+	private static long hits, misses;
+
+
+
+
+	//The parsed statement, from the cache when the same text was parsed before
+	public static Statement parse(String sql) throws SyntaxException {
+
+		if(sql.length() > MAX_SQL_LENGTH)
+			return Parser.parse(sql);
+
+		String key = normalize(sql);
+		synchronized(PlanCache.class) {
+			Statement statement = statements.get(key);
+			if(statement != null) {
+				hits++;
+				return statement;
+			}
+			misses++;
+		}
+
+		Statement statement = Parser.parse(sql);
+		synchronized(PlanCache.class) {
+			statements.put(key, statement);
+		}
+		return statement;
+	}
+
+	//Drops the statements on a table whose schema changed
+	public static synchronized void invalidate(String tableName) {
+
+		Iterator<Statement> it = statements.values().iterator();
+		while(it.hasNext()) {
+			if(it.next().getTableNames().contains(tableName))
+				it.remove();
+		}
+	}
+
+	public static synchronized void clear() {
+		statements.clear();
+	}
+
+	public static synchronized long getHits() {
+		return hits;
+	}
+
+	public static synchronized long getMisses() {
+		return misses;
+	}
+
+	public static synchronized int size() {
+		return statements.size();
+	}
+
+
+
+
+	static String normalize(String sql) {
+
+		StringBuilder text = new StringBuilder(sql.length());
+		char quote = 0;
+		boolean space = false;
+		for(int i=0;i<sql.length();i++) {
+			char c = sql.charAt(i);
+			if(quote == 0 && Character.isWhitespace(c)) {
+				space = true;
+				continue;
+			}
+			if(space && text.length() > 0)
+				text.append(' ');
+			space = false;
+			if(quote == 0 && (c == '\'' || c == '"'))
+				quote = c;
+			else if(c == quote)
+				quote = 0;	//a doubled quote closes and opens again
+			text.append(c);
+		}
+		if(quote == 0 && text.length() > 0 && text.charAt(text.length()-1) == ';')
+			text.setLength(text.length()-1);
+		return text.toString().trim();
+	}
+
+}
@@ -0,0 +1,58 @@
+package com.minidb;
+
+import java.io.IOException;
+
+//Cost model of the plans of a SELECT, in pages read: reading a page of a table costs 1 and handling
+//a row a fraction of that. The costs only compare the plans of one query, they aren't times.
+//
+//The Executor picks with them when every table of the query was analyzed (see TableStats): a full
+//scan or an index for a WHERE clause, the order the tables of an inner join are joined in, an
+//index nested loop or a hash join for each table and the side of a hash join kept in memory.
+public class Planner {
+
+	//testing or copying one row
+	static final double ROW_COST = 0.01;
+	//going down an index to the first row found
+	static final double INDEX_COST = 3;
+	//hashing a row into the hash table of a join, or probing it
+	static final double HASH_ROW_COST = 0.02;
+
+
+
+
+	//Pages of the table
+	public static double pages(TableSchema schema) throws IOException {
+		return Math.max(1, Math.ceil((double) TableStats.size(schema) / Page.PAGE_SIZE));
+	}
+
+	//Reading every page of the table and testing its rows
+	public static double scanCost(TableSchema schema, double rows) throws IOException {
+		return pages(schema) + rows * ROW_COST;
+	}
+
+	//Finding rows with an index, each read from its own page
+	public static double indexScanCost(double rows) {
+		return INDEX_COST + rows * (1 + ROW_COST);
+	}
+
+	//Finding the rows of a table for each left row with an index, matches rows for each
+	public static double indexJoinCost(double leftRows, double matches) {
+		return leftRows * indexScanCost(matches);
+	}
+
+	//Scanning the right table once, with the cost of scanning it, then hashing or probing every row
+	public static double hashJoinCost(double rightScanCost, double leftRows, double rightRows) {
+		return rightScanCost + (leftRows + rightRows) * HASH_ROW_COST;
+	}
+
+	//Rows of an equi-join: each key is taken as independent and its values on the side with fewer of
+	//them as all found on the other side, so a key keeps 1 / distinct values of the pairs of rows
+	public static double joinRows(double leftRows, double rightRows, double[] leftDistinct, double[] rightDistinct) {
+
+		double rows = leftRows * rightRows;
+		for(int k=0;k<leftDistinct.length;k++)
+			rows /= Math.max(1, Math.max(leftDistinct[k], rightDistinct[k]));
+		return rows;
+	}
+
+}
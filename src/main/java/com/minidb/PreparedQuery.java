@@ -0,0 +1,43 @@
+package com.minidb;
+
+import java.util.Arrays;
+import java.util.List;
+
+//A statement parsed once by Connection.prepare(), run with new values for its ? each time
+public class PreparedQuery {
+
+	private final Connection connection;
+	private final Statement statement;
+
+	PreparedQuery(Connection connection, Statement statement) {
+		this.connection = connection;
+		this.statement = statement;
+	}
+
+	public int getParameterCount() {
+		return statement.getParameterCount();
+	}
+
+	public ResultSet executeQuery(Object... params) throws DatabaseException {
+
+		Result result = execute(Arrays.asList(params));
+		if(!result.isQuery())
+			throw new DatabaseException("Error: Statement doesn't return rows, use executeUpdate()");
+		return new ResultSet(result);
+	}
+
+	public long executeUpdate(Object... params) throws DatabaseException {
+
+		Result result = execute(Arrays.asList(params));
+		if(result.isQuery()) {
+			result.close();
+			throw new DatabaseException("Error: Statement returns rows, use executeQuery()");
+		}
+		return result.getUpdateCount();
+	}
+
+	Result execute(List<Object> params) throws DatabaseException {
+		return connection.execute(statement, params);
+	}
+
+}
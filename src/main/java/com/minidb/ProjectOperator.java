@@ -0,0 +1,45 @@
+package com.minidb;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+//Keeps only the selected columns of each row, in the selected order
+public class ProjectOperator implements Operator {
+
+	private final Operator child;
+	private final int[] colIndexes;
+
+	public ProjectOperator(Operator child, int[] colIndexes) {
+		this.child = child;
+		this.colIndexes = colIndexes;
+	}
+
+	@Override
+	public void open() throws IOException {
+		child.open();
+	}
+
+	@Override
+	public List<String> next() throws IOException {
+
+		List<String> row = child.next();
+		if(row == null)
+			return null;
+		List<String> newRow = new ArrayList<>(colIndexes.length);
+		for(int index: colIndexes)
+			newRow.add(row.get(index));
+		return newRow;
+	}
+
+	@Override
+	public RowId getRowId() {
+		return child.getRowId();
+	}
+
+	@Override
+	public void close() {
+		child.close();
+	}
+
+}
@@ -0,0 +1,222 @@
+package com.minidb;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+//Wire protocol between Server and Client.
+//Every message is a frame: int length of what follows, byte type, then the payload. Ints and longs
+//are big endian, strings are an int byte length and UTF-8 bytes, a length of -1 for a null value. A parameter is a byte tag
+//(PARAM_INT, PARAM_TEXT) and its value.
+//
+//	client                                   server
+//	QUERY sql, params                  ->    ROW_HEADER then ROW_BATCH... ROWS_END, or UPDATE_COUNT, or ERROR
+//	PREPARE sql                        ->    PREPARED id, parameter count, or ERROR
+//	EXECUTE id, params                 ->    like QUERY
+//	CLOSE_STATEMENT id                 ->    UPDATE_COUNT
+//	QUIT                               ->    (connection closed)
+//
+//The rows of a query are sent in batches of up to -Dminidb.server.batchRows rows, the client reads
+//a batch when it needs more rows. A client reading slowly fills the socket buffers and the server
+//waits for it instead of buffering the rows.
+public class Protocol {
+
+	//client messages
+	public static final byte QUERY = 1;
+	public static final byte PREPARE = 2;
+	public static final byte EXECUTE = 3;
+	public static final byte CLOSE_STATEMENT = 4;
+	public static final byte QUIT = 5;
+
+	//server messages
+	public static final byte UPDATE_COUNT = 10;
+	public static final byte ROW_HEADER = 11;
+	public static final byte ROW_BATCH = 12;
+	public static final byte ROWS_END = 13;
+	public static final byte ERROR = 14;
+	public static final byte PREPARED = 15;
+
+	public static final byte PARAM_INT = 0;
+	public static final byte PARAM_TEXT = 1;
+
+	//a bigger frame is a broken or hostile peer, the connection is closed
+	public static final int MAX_FRAME = 16 * 1024 * 1024;
+
+
+
+
+	//A frame read from the stream: its type and a reader over the payload
+	public static class Frame {
+
+		private final byte type;
+		private final byte[] payload;
+		private int pos;
+
+		Frame(byte type, byte[] payload) {
+			this.type = type;
+			this.payload = payload;
+		}
+
+		public byte getType() {
+			return type;
+		}
+
+		public int readInt() throws IOException {
+			check(4);
+			int value = ((payload[pos] & 0xFF) << 24) | ((payload[pos+1] & 0xFF) << 16) | ((payload[pos+2] & 0xFF) << 8) | (payload[pos+3] & 0xFF);
+			pos += 4;
+			return value;
+		}
+
+		public long readLong() throws IOException {
+			return ((long) readInt() << 32) | (readInt() & 0xFFFFFFFFL);
+		}
+
+		public byte readByte() throws IOException {
+			check(1);
+			return payload[pos++];
+		}
+
+		public String readString() throws IOException {
+			int length = readInt();
+			if(length == -1)
+				return null;
+			check(length);
+			String value = new String(payload, pos, length, StandardCharsets.UTF_8);
+			pos += length;
+			return value;
+		}
+
+		public List<Object> readParams() throws IOException {
+
+			int count = readInt();
+			if(count < 0 || count > payload.length)
+				throw new IOException("Malformed frame: " + count + " parameters");
+			List<Object> params = new ArrayList<>(count);
+			for(int i=0;i<count;i++) {
+				byte tag = readByte();
+				if(tag == PARAM_INT)
+					params.add(readInt());
+				else if(tag == PARAM_TEXT)
+					params.add(readString());
+				else
+					throw new IOException("Malformed frame: unknown parameter tag " + tag);
+			}
+			return params;
+		}
+
+		private void check(int length) throws IOException {
+			if(length < 0 || pos + length > payload.length)
+				throw new IOException("Malformed frame of type " + type);
+		}
+	}
+
+
+
+
+	//Builds one frame in memory, write() sends it whole
+	public static class FrameWriter {
+
+		private final byte type;
+		private byte[] buffer = new byte[64];
+		private int length;
+
+		public FrameWriter(byte type) {
+			this.type = type;
+		}
+
+		public FrameWriter writeInt(int value) {
+			ensure(4);
+			buffer[length++] = (byte) (value >>> 24);
+			buffer[length++] = (byte) (value >>> 16);
+			buffer[length++] = (byte) (value >>> 8);
+			buffer[length++] = (byte) value;
+			return this;
+		}
+
+		public FrameWriter writeLong(long value) {
+			writeInt((int) (value >>> 32));
+			return writeInt((int) value);
+		}
+
+		public FrameWriter writeByte(byte value) {
+			ensure(1);
+			buffer[length++] = value;
+			return this;
+		}
+
+		public FrameWriter writeString(String value) {
+			if(value == null)
+				return writeInt(-1);
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			writeInt(bytes.length);
+			ensure(bytes.length);
+			System.arraycopy(bytes, 0, buffer, length, bytes.length);
+			length += bytes.length;
+			return this;
+		}
+
+		//Whole numbers in int range are sent as INT, anything else as its text
+		public FrameWriter writeParams(List<Object> params) {
+			writeInt(params.size());
+			for(Object param: params) {
+				if(param == null)
+					throw new IllegalArgumentException("NULL values are not supported");
+				if(param instanceof Number && !(param instanceof Double || param instanceof Float) && ((Number) param).longValue() == ((Number) param).intValue())
+					writeByte(PARAM_INT).writeInt(((Number) param).intValue());
+				else
+					writeByte(PARAM_TEXT).writeString(param.toString());
+			}
+			return this;
+		}
+
+		//Bytes written so far, to cut row batches by size
+		public int size() {
+			return length;
+		}
+
+		public void write(DataOutputStream out) throws IOException {
+			out.writeInt(length + 1);
+			out.writeByte(type);
+			out.write(buffer, 0, length);
+		}
+
+		private void ensure(int more) {
+			if(length + more > buffer.length) {
+				byte[] bigger = new byte[Math.max(buffer.length * 2, length + more)];
+				System.arraycopy(buffer, 0, bigger, 0, length);
+				buffer = bigger;
+			}
+		}
+	}
+
+
+
+
+	//Next frame of the stream, null if the peer closed the connection between frames
+	public static Frame read(DataInputStream in) throws IOException {
+
+		int length;
+		try {
+			length = in.readInt();
+		}
+		catch(EOFException e) {
+			return null;
+		}
+		if(length < 1 || length > MAX_FRAME)
+			throw new IOException("Malformed frame length " + length);
+		byte type = in.readByte();
+		byte[] payload = new byte[length - 1];
+		in.readFully(payload);
+		return new Frame(type, payload);
+	}
+
+	public static void writeError(DataOutputStream out, String message) throws IOException {
+		new FrameWriter(ERROR).writeString(message).write(out);
+	}
+
+}
@@ -0,0 +1,146 @@
+package com.minidb;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+//A record read in place from the bytes of a page, laid out as RowCodec writes it.
+//The fields are located once per record, then compared as bytes or keys, so a scan only builds
+//Strings for the rows that pass its WHERE clause and only for the columns it returns.
+//The fields of a columnar table are each in the block of their column, setField() points the
+//view at them one by one (see ColumnScanOperator).
+//A scan reuses one view for all its records, a view isn't thread safe.
+public class RecordView {
+
+	private final DataType[] types;
+	private final int[] offsets;
+	private final ByteBuffer[] buffers;
+
+	public RecordView(List<DataType> types) {
+		this.types = types.toArray(new DataType[0]);
+		offsets = new int[this.types.length];
+		buffers = new ByteBuffer[this.types.length];
+	}
+
+	//Points the view at the record starting at offset in the buffer
+	public void reset(ByteBuffer buffer, int offset) {
+
+		int position = offset;
+		for(int i=0;i<types.length;i++) {
+			buffers[i] = buffer;
+			offsets[i] = position;
+			int width = types[i].getWidth();
+			position += width > 0 ? width : 2 + (buffer.getShort(position) & 0xFFFF);
+		}
+	}
+
+	//Points one field at a value laid out like in a record, in a buffer of its own
+	public void setField(int column, ByteBuffer buffer, int offset) {
+		buffers[column] = buffer;
+		offsets[column] = offset;
+	}
+
+
+
+
+	public int getInt(int column) {
+		return buffers[column].getInt(offsets[column]);
+	}
+
+	//The key of a field of a type other than TEXT (see DataType)
+	public long getKey(int column) {
+
+		switch(types[column].getWidth()) {
+			case 4: return buffers[column].getInt(offsets[column]);
+			case 1: return buffers[column].get(offsets[column]);
+			default: return buffers[column].getLong(offsets[column]);
+		}
+	}
+
+	public String getString(int column) {
+
+		if(types[column] == DataType.INT)
+			return Integer.toString(getInt(column));
+		if(types[column] != DataType.TEXT)
+			return types[column].fromKey(getKey(column));
+		int length = textLength(column);
+		byte[] text = new byte[length];
+		ByteBuffer buffer = buffers[column];
+		for(int i=0;i<length;i++)
+			text[i] = buffer.get(offsets[column] + 2 + i);
+		return new String(text, StandardCharsets.UTF_8);
+	}
+
+	//The row as RowCodec.decode() gives it, with only the columns of colIndexes when it isn't null
+	public List<String> decode(int[] colIndexes) {
+
+		int count = colIndexes == null ? types.length : colIndexes.length;
+		List<String> row = new ArrayList<>(count);
+		for(int i=0;i<count;i++)
+			row.add(getString(colIndexes == null ? i : colIndexes[i]));
+		return row;
+	}
+
+
+
+
+	//The TEXT field compared with UTF-8 bytes, ordered like String.compareTo
+	public int compareText(int column, byte[] text) {
+
+		ByteBuffer buffer = buffers[column];
+		int start = offsets[column] + 2;
+		int length = textLength(column);
+		int common = Math.min(length, text.length);
+		for(int i=0;i<common;i++) {
+			int a = buffer.get(start + i) & 0xFF, b = text[i] & 0xFF;
+			if(a != b) {
+				//UTF-8 bytes sort by code point, Strings by UTF-16 unit: U+E000..U+FFFF (lead byte EE, EF)
+				//sort after the surrogate pairs of U+10000 and above (lead byte F0 and above) in a String
+				if(a >= 0xEE && b >= 0xEE && (a >= 0xF0) != (b >= 0xF0))
+					return a >= 0xF0 ? -1 : 1;
+				return a - b;
+			}
+		}
+		return length - text.length;
+	}
+
+	public boolean textEquals(int column, byte[] text) {
+		return textLength(column) == text.length && regionMatches(buffers[column], offsets[column] + 2, text);
+	}
+
+	public boolean textStartsWith(int column, byte[] text) {
+		return textLength(column) >= text.length && regionMatches(buffers[column], offsets[column] + 2, text);
+	}
+
+	public boolean textEndsWith(int column, byte[] text) {
+		int length = textLength(column);
+		return length >= text.length && regionMatches(buffers[column], offsets[column] + 2 + length - text.length, text);
+	}
+
+	//UTF-8 is self synchronizing, a byte match is always a match of whole characters
+	public boolean textContains(int column, byte[] text) {
+
+		int start = offsets[column] + 2;
+		int last = start + textLength(column) - text.length;
+		for(int position=start;position<=last;position++) {
+			if(regionMatches(buffers[column], position, text))
+				return true;
+		}
+		return false;
+	}
+
+	private int textLength(int column) {
+		return buffers[column].getShort(offsets[column]) & 0xFFFF;
+	}
+
+	private static boolean regionMatches(ByteBuffer buffer, int position, byte[] text) {
+
+		for(int i=0;i<text.length;i++) {
+			if(buffer.get(position + i) != text[i])
+				return false;
+		}
+		return true;
+	}
+
+}
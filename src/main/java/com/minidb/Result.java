@@ -0,0 +1,67 @@
+package com.minidb;
+
+import java.util.Collections;
+import java.util.List;
+
+//What running one statement gave: the open operator of the rows for a query, otherwise the
+//number of rows changed. The message is what the REPL prints, for a query only when it has no rows.
+public class Result {
+
+	private final List<String> columns;
+	private final List<DataType> types;
+	private final Operator rows;
+	private final long updateCount;
+	private final String message;
+
+	private Result(List<String> columns, List<DataType> types, Operator rows, long updateCount, String message) {
+		this.columns = columns;
+		this.types = types;
+		this.rows = rows;
+		this.updateCount = updateCount;
+		this.message = message;
+	}
+
+	//rows must already be open
+	public static Result query(List<String> columns, List<DataType> types, Operator rows, String emptyMessage) {
+		return new Result(Collections.unmodifiableList(columns), Collections.unmodifiableList(types), rows, -1, emptyMessage);
+	}
+
+	public static Result update(long updateCount, String message) {
+		return new Result(Collections.<String>emptyList(), Collections.<DataType>emptyList(), null, updateCount, message);
+	}
+
+
+
+
+	public boolean isQuery() {
+		return rows != null;
+	}
+
+	public List<String> getColumns() {
+		return columns;
+	}
+
+	public List<DataType> getTypes() {
+		return types;
+	}
+
+	//null if the statement isn't a query
+	public Operator getRows() {
+		return rows;
+	}
+
+	//Rows inserted, updated or deleted, 0 for other statements and -1 for a query
+	public long getUpdateCount() {
+		return updateCount;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+	public void close() {
+		if(rows != null)
+			rows.close();
+	}
+
+}
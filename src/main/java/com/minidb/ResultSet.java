@@ -0,0 +1,204 @@
+package com.minidb;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+//The rows of a query, read forward only as next() is called so a big result isn't kept in memory.
+//Columns are numbered from 1 like in JDBC. INT columns are read with getInt() or as an Integer
+//from getObject(), BIGINT columns and a SUM with getLong(), DOUBLE with getDouble(), BOOLEAN with
+//getBoolean(), and every column can be read with getString(). The columns
+//of the right table of a LEFT JOIN row without a match are null, getInt() fails on them.
+public class ResultSet implements AutoCloseable {
+
+	private final Result result;
+	private final List<String> columns;
+	private final List<DataType> types;
+	private List<String> row;
+	private boolean closed;
+
+	ResultSet(Result result) {
+		this.result = result;
+		this.columns = result.getColumns();
+		this.types = result.getTypes();
+	}
+
+
+
+
+	//Moves to the next row, false when there are no more rows
+	public boolean next() throws DatabaseException {
+
+		if(closed)
+			throw new DatabaseException("Error: ResultSet is closed");
+		try {
+			row = result.getRows().next();
+		}
+		catch(IOException e) {
+			close();
+			throw new DatabaseException("Error reading the rows: " + e.getMessage(), e);
+		}
+		if(row == null)
+			close();
+		return row != null;
+	}
+
+	public int getColumnCount() {
+		return columns.size();
+	}
+
+	public String getColumnName(int column) {
+		return columns.get(column - 1);
+	}
+
+	public DataType getColumnType(int column) {
+		return types.get(column - 1);
+	}
+
+	//Number of the column with that name, case insensitive
+	public int findColumn(String name) throws DatabaseException {
+
+		for(int i=0;i<columns.size();i++) {
+			if(columns.get(i).equalsIgnoreCase(name))
+				return i + 1;
+		}
+		throw new DatabaseException("Error: No column '" + name + "' in the result");
+	}
+
+
+
+
+	public String getString(int column) throws DatabaseException {
+		return value(column);
+	}
+
+	public String getString(String name) throws DatabaseException {
+		return getString(findColumn(name));
+	}
+
+	public int getInt(int column) throws DatabaseException {
+
+		String value = value(column);
+		if(value == null)
+			throw new DatabaseException("Error: Column '" + getColumnName(column) + "' is NULL");
+		try {
+			return Integer.parseInt(value);
+		}
+		catch(NumberFormatException e) {
+			throw new DatabaseException("Error: Value '" + value + "' of column '" + getColumnName(column) + "' is not an INT");
+		}
+	}
+
+	public int getInt(String name) throws DatabaseException {
+		return getInt(findColumn(name));
+	}
+
+	//For an INT column that can be past the INT range, like the SUM of a column
+	public long getLong(int column) throws DatabaseException {
+
+		String value = value(column);
+		if(value == null)
+			throw new DatabaseException("Error: Column '" + getColumnName(column) + "' is NULL");
+		try {
+			return Long.parseLong(value);
+		}
+		catch(NumberFormatException e) {
+			throw new DatabaseException("Error: Value '" + value + "' of column '" + getColumnName(column) + "' is not a number");
+		}
+	}
+
+	public long getLong(String name) throws DatabaseException {
+		return getLong(findColumn(name));
+	}
+
+	public double getDouble(int column) throws DatabaseException {
+
+		String value = value(column);
+		if(value == null)
+			throw new DatabaseException("Error: Column '" + getColumnName(column) + "' is NULL");
+		try {
+			return Double.parseDouble(value);
+		}
+		catch(NumberFormatException e) {
+			throw new DatabaseException("Error: Value '" + value + "' of column '" + getColumnName(column) + "' is not a number");
+		}
+	}
+
+	public double getDouble(String name) throws DatabaseException {
+		return getDouble(findColumn(name));
+	}
+
+	public boolean getBoolean(int column) throws DatabaseException {
+
+		String value = value(column);
+		if(value == null)
+			throw new DatabaseException("Error: Column '" + getColumnName(column) + "' is NULL");
+		try {
+			return DataType.BOOLEAN.key(value) == 1;
+		}
+		catch(IllegalArgumentException e) {
+			throw new DatabaseException("Error: Value '" + value + "' of column '" + getColumnName(column) + "' is not a BOOLEAN");
+		}
+	}
+
+	public boolean getBoolean(String name) throws DatabaseException {
+		return getBoolean(findColumn(name));
+	}
+
+	//Integer for an INT column (a Long for a SUM past the INT range), Long for BIGINT, Double for DOUBLE,
+	//Boolean for BOOLEAN, LocalDateTime for TIMESTAMP, String otherwise
+	public Object getObject(int column) throws DatabaseException {
+
+		String value = value(column);
+		if(value == null)
+			return null;
+		switch(getColumnType(column)) {
+			case INT:
+				long number = getLong(column);
+				if(number != (int) number)
+					return number;
+				return (int) number;
+			case BIGINT:
+				return getLong(column);
+			case DOUBLE:
+				return getDouble(column);
+			case BOOLEAN:
+				return getBoolean(column);
+			case TIMESTAMP:
+				long millis = DataType.TIMESTAMP.key(value);
+				return LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000), (int) Math.floorMod(millis, 1000) * 1000000, ZoneOffset.UTC);
+			default:
+				return value;
+		}
+	}
+
+	public Object getObject(String name) throws DatabaseException {
+		return getObject(findColumn(name));
+	}
+
+	private String value(int column) throws DatabaseException {
+
+		if(row == null)
+			throw new DatabaseException("Error: No current row, call next() first");
+		if(column < 1 || column > columns.size())
+			throw new DatabaseException("Error: Column " + column + " out of range 1.." + columns.size());
+		return row.get(column - 1);
+	}
+
+
+
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	@Override
+	public void close() {
+		if(!closed) {
+			closed = true;
+			result.close();
+		}
+	}
+
+}
@@ -0,0 +1,74 @@
+package com.minidb;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+//Converts a row to the binary record stored in a page and back.
+//INT fields are stored as 4 byte ints, TEXT fields as a 2 byte length followed by the UTF-8 bytes,
+//the other types as their key (see DataType) in a field of their width.
+public class RowCodec {
+
+	public static byte[] encode(List<String> values, List<DataType> types) {
+
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+
+			for(int i=0;i<types.size();i++) {
+				String value = values.get(i);
+
+				DataType type = types.get(i);
+				if(type == DataType.INT)
+					out.writeInt(Integer.parseInt(value.trim()));
+				else if(type == DataType.BOOLEAN)
+					out.writeByte((int) type.key(value));
+				else if(type != DataType.TEXT)
+					out.writeLong(type.key(value));
+				else {
+					byte[] text = value.getBytes(StandardCharsets.UTF_8);
+					if(text.length > 0xFFFF)
+						throw new IllegalArgumentException("TEXT value is too long (" + text.length + " bytes)");
+					out.writeShort(text.length);
+					out.write(text);
+				}
+			}
+
+			return bytes.toByteArray();
+		}
+		catch(IOException e) {
+			//ByteArrayOutputStream never throws
+			throw new IllegalStateException(e);
+		}
+	}
+
+
+
+
+	public static List<String> decode(byte[] record, List<DataType> types) {
+
+		ByteBuffer buffer = ByteBuffer.wrap(record);
+		List<String> row = new ArrayList<>(types.size());
+
+		for(DataType type: types) {
+			if(type == DataType.INT)
+				row.add(Integer.toString(buffer.getInt()));
+			else if(type == DataType.BOOLEAN)
+				row.add(type.fromKey(buffer.get()));
+			else if(type != DataType.TEXT)
+				row.add(type.fromKey(buffer.getLong()));
+			else {
+				int length = buffer.getShort() & 0xFFFF;
+				row.add(new String(record, buffer.position(), length, StandardCharsets.UTF_8));
+				buffer.position(buffer.position() + length);
+			}
+		}
+
+		return row;
+	}
+
+}
@@ -0,0 +1,51 @@
+package com.minidb;
+
+//Location of a row in its table file: the page and the slot inside the page
+public class RowId implements Comparable<RowId> {
+
+	//Sorts before and after every real row id, used as bounds when searching an index
+	public static final RowId MIN = new RowId(-1, -1);
+	public static final RowId MAX = new RowId(Integer.MAX_VALUE, Integer.MAX_VALUE);
+
+	private final int pageId;
+	private final int slot;
+
+	public RowId(int pageId, int slot) {
+		this.pageId = pageId;
+		this.slot = slot;
+	}
+
+	public int getPageId() {
+		return pageId;
+	}
+
+	public int getSlot() {
+		return slot;
+	}
+
+	@Override
+	public int compareTo(RowId other) {
+		if(pageId != other.pageId)
+			return Integer.compare(pageId, other.pageId);
+		return Integer.compare(slot, other.slot);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if(!(o instanceof RowId))
+			return false;
+		RowId other = (RowId) o;
+		return pageId == other.pageId && slot == other.slot;
+	}
+
+	@Override
+	public int hashCode() {
+		return pageId * 31 + slot;
+	}
+
+	@Override
+	public String toString() {
+		return "(" + pageId + "," + slot + ")";
+	}
+
+}
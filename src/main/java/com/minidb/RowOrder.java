@@ -0,0 +1,154 @@
+package com.minidb;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+//Order of rows by their values at some positions, each compared as a value of its type, ascending or
+//descending. Nulls come after the other values, before them when descending.
+//The values are compared by their keys (see DataType.key()), taken once per row with keys() when the
+//row is added to a sort, a merge or a join, so sorting n rows parses each value once and not in each
+//of the n log n comparisons. INT values are keyed as BIGINT, the SUM of an INT column can be past the
+//INT range. A whole number keyed as DOUBLE, an INT or BIGINT joined with a DOUBLE, keeps what rounding
+//it to a double took off, so it is still compared exactly: 2^53 + 1 isn't equal to the double 2^53.
+public class RowOrder implements Comparator<List<String>> {
+
+	private final int[] positions;
+	private final DataType[] types;
+	private final boolean[] descending;
+
+	//A row with the keys of its values at the positions of an order
+	public static final class Keys {
+		final List<String> row;
+		//the key of each typed value
+		final long[] keys;
+		//the value at each position, compared as is for TEXT
+		final String[] values;
+		//for a whole number keyed as DOUBLE, the number less the double of its key. null when all are 0
+		final long[] rounding;
+
+		private Keys(List<String> row, long[] keys, String[] values, long[] rounding) {
+			this.row = row;
+			this.keys = keys;
+			this.values = values;
+			this.rounding = rounding;
+		}
+
+		private long rounding(int i) {
+			return rounding == null ? 0 : rounding[i];
+		}
+
+		public List<String> getRow() {
+			return row;
+		}
+	}
+
+	public RowOrder(int[] positions, DataType[] types, boolean[] descending) {
+		this.positions = positions;
+		this.types = new DataType[types.length];
+		for(int i=0;i<types.length;i++)
+			this.types[i] = types[i] == DataType.INT ? DataType.BIGINT : types[i];
+		this.descending = descending;
+	}
+
+	public RowOrder(int[] positions, DataType[] types) {
+		this(positions, types, new boolean[positions.length]);
+	}
+
+	//The same order on the values at other positions, to compare the keys of rows of two inputs
+	public RowOrder at(int[] positions) {
+		return new RowOrder(positions, types, descending);
+	}
+
+	//The keys of the row, throws IllegalArgumentException for a value that isn't one of its type
+	public Keys keys(List<String> row) {
+
+		long[] keys = new long[positions.length];
+		String[] values = new String[positions.length];
+		long[] rounding = null;
+		for(int i=0;i<positions.length;i++) {
+			values[i] = row.get(positions[i]);
+			if(values[i] == null || types[i] == DataType.TEXT)
+				continue;
+			Long number = types[i] == DataType.DOUBLE ? whole(values[i]) : null;
+			if(number != null) {
+				double nearest = number;
+				keys[i] = DataType.toKey(nearest);
+				//(long) 2^63 would be Long.MAX_VALUE
+				long off = nearest == 0x1p63 ? number - Long.MAX_VALUE - 1 : number - (long) nearest;
+				if(off != 0) {
+					if(rounding == null)
+						rounding = new long[positions.length];
+					rounding[i] = off;
+				}
+			}
+			else
+				keys[i] = types[i].key(values[i]);
+		}
+		return new Keys(row, keys, values, rounding);
+	}
+
+	//The value as a long when it is written as one, null otherwise: the text of a DOUBLE always has a . or an E
+	private static Long whole(String value) {
+
+		String text = value.trim();
+		for(int i=0;i<text.length();i++) {
+			char c = text.charAt(i);
+			if((c < '0' || c > '9') && (i > 0 || c != '-'))
+				return null;
+		}
+		try {
+			return Long.parseLong(text);
+		}
+		catch(NumberFormatException e) {
+			return null;
+		}
+	}
+
+	public int compare(Keys a, Keys b) {
+
+		for(int i=0;i<positions.length;i++) {
+			String x = a.values[i], y = b.values[i];
+			int cmp;
+			if(x == null || y == null)
+				cmp = x == null ? (y == null ? 0 : 1) : -1;
+			else if(types[i] == DataType.TEXT)
+				cmp = x.compareTo(y);
+			else {
+				cmp = Long.compare(a.keys[i], b.keys[i]);
+				if(cmp == 0)
+					cmp = Long.compare(a.rounding(i), b.rounding(i));
+			}
+			if(cmp != 0)
+				return descending[i] ? -cmp : cmp;
+		}
+		return 0;
+	}
+
+	//Compares two rows taking their keys each time, for rows compared once
+	@Override
+	public int compare(List<String> a, List<String> b) {
+		return compare(keys(a), keys(b));
+	}
+
+	//The keys of the row to look up in a hash table: the key of its one value, a list of them otherwise.
+	//Rows whose values compare equal have equal hash keys
+	public Object hashKey(Keys keys) {
+
+		if(positions.length == 1)
+			return hashValue(keys, 0);
+		Object[] values = new Object[positions.length];
+		for(int i=0;i<positions.length;i++)
+			values[i] = hashValue(keys, i);
+		return Arrays.asList(values);
+	}
+
+	private Object hashValue(Keys keys, int i) {
+
+		if(types[i] == DataType.TEXT)
+			return keys.values[i];
+		long rounding = keys.rounding(i);
+		return rounding == 0 ? (Object) keys.keys[i] : Arrays.asList(keys.keys[i], rounding);
+	}
+
+}
@@ -0,0 +1,320 @@
+package com.minidb;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+//Serves the database over TCP with the binary protocol of Protocol, for applications on other processes.
+//Each client connection is a session with its own Connection, run by a worker of a fixed pool
+//(-Dminidb.server.workers, default 32). Connections waiting for a worker are queued up to
+//-Dminidb.server.queue (default 64), past that a new connection gets a "Server busy" error and is
+//closed, so a burst of clients can't make the server run out of threads or memory.
+//The sessions run their statements in parallel, the tables are locked by LockManager.
+//
+//There is no authentication: anyone who reaches the port runs statements. So the server only
+//listens on the loopback interface unless it is given another address (--bind in main()), and
+//LOAD DATA of a session only reads the files in the directory of -Dminidb.server.loadDir, it is
+//disabled without it.
+public class Server implements AutoCloseable {
+
+	public static final int DEFAULT_PORT = 7070;
+
+	private static final int workers = Integer.getInteger("minidb.server.workers", 32);
+	private static final int queue = Integer.getInteger("minidb.server.queue", 64);
+	private static final int batchRows = Integer.getInteger("minidb.server.batchRows", 256);
+	private static final String loadDir = System.getProperty("minidb.server.loadDir");
+	//a batch is sent early once its values reach this many bytes
+	private static final int BATCH_BYTES = 32 * 1024;
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final ServerSocket serverSocket;
+	private final ThreadPoolExecutor pool;
+	private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+	private final Thread acceptor;
+	private volatile boolean closed;
+
+	//Listens on the port of the address, port 0 picks a free port (see getPort()), null listens on every interface
+	public Server(InetAddress address, int port) throws IOException {
+
+		StorageManager.ensureInitialized();
+		serverSocket = new ServerSocket(port, queue, address);
+		pool = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queue), runnable -> {
+			Thread thread = new Thread(runnable, "minidb-worker");
+			thread.setDaemon(true);
+			return thread;
+		});
+		acceptor = new Thread(this::acceptLoop, "minidb-acceptor");
+		acceptor.setDaemon(true);
+	}
+
+	//Listens on the loopback interface only
+	public Server(int port) throws IOException {
+		this(InetAddress.getLoopbackAddress(), port);
+	}
+
+	public void start() {
+		acceptor.start();
+	}
+
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	public InetAddress getAddress() {
+		return serverSocket.getInetAddress();
+	}
+
+	//Stops accepting, closes the client connections and waits for the running statements to end
+	@Override
+	public void close() {
+
+		closed = true;
+		try {
+			serverSocket.close();
+		}
+		catch(IOException e) {
+			//already closed
+		}
+		for(Socket socket: sockets)
+			closeQuietly(socket);
+		pool.shutdown();
+		try {
+			pool.awaitTermination(10, TimeUnit.SECONDS);
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	//Runs a server until the process is stopped: [port] [--bind address], the address of the interface
+	//to listen on instead of loopback, 0.0.0.0 for every interface
+	public static void main(String[] args) throws IOException {
+
+		int port = DEFAULT_PORT;
+		InetAddress address = InetAddress.getLoopbackAddress();
+		for(int i=0;i<args.length;i++) {
+			if(args[i].equals("--bind") && i + 1 < args.length)
+				address = InetAddress.getByName(args[++i]);
+			else
+				port = Integer.parseInt(args[i]);
+		}
+		Server server = new Server(address, port);
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			server.close();
+			MiniDB.shutdown();
+		}));
+		server.start();
+		System.out.println(Color.CYAN + "MiniDB server listening on " + address.getHostAddress() + ":" + server.getPort() + " (" + workers + " workers)" + Color.RESET);
+		try {
+			server.acceptor.join();
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+
+
+
+	private void acceptLoop() {
+
+		while(!closed) {
+			Socket socket;
+			try {
+				socket = serverSocket.accept();
+				socket.setTcpNoDelay(true);
+			}
+			catch(IOException e) {
+				if(!closed)
+					System.err.println(Color.RED + "Error accepting a connection: " + e.getMessage() + Color.RESET);
+				continue;
+			}
+
+			sockets.add(socket);
+			try {
+				pool.execute(new Session(socket));
+			}
+			catch(RejectedExecutionException e) {
+				try {
+					DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+					Protocol.writeError(out, "Error: Server busy, try again later");
+					out.flush();
+				}
+				catch(IOException ignored) {
+					//the client is gone anyway
+				}
+				sockets.remove(socket);
+				closeQuietly(socket);
+			}
+		}
+	}
+
+	private static void closeQuietly(Socket socket) {
+		try {
+			socket.close();
+		}
+		catch(IOException e) {
+			//nothing left to do
+		}
+	}
+
+
+
+
+	//One client connection, reads a request and writes its response until the client quits
+	private class Session implements Runnable {
+
+		private final Socket socket;
+		private final Connection connection = MiniDB.connect();
+		private final Map<Integer, PreparedQuery> statements = new HashMap<>();
+		private int nextStatementId = 1;
+		private DataOutputStream out;
+
+		Session(Socket socket) {
+			this.socket = socket;
+			connection.getSettings().restrictLoadData(loadDir == null ? null : new File(loadDir));
+		}
+
+		@Override
+		public void run() {
+
+			try {
+				DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+				out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE));
+				Protocol.Frame frame;
+				while(!closed && (frame = Protocol.read(in)) != null && frame.getType() != Protocol.QUIT) {
+					handle(frame);
+					out.flush();
+				}
+			}
+			catch(SocketException e) {
+				//the client or close() closed the connection
+			}
+			catch(IOException e) {
+				if(!closed)
+					System.err.println(Color.RED + "Error on connection " + socket.getRemoteSocketAddress() + ": " + e.getMessage() + Color.RESET);
+			}
+			finally {
+				connection.close();
+				sockets.remove(socket);
+				closeQuietly(socket);
+			}
+		}
+
+		private void handle(Protocol.Frame frame) throws IOException {
+
+			try {
+				switch(frame.getType()) {
+					case Protocol.QUERY: {
+						String sql = frame.readString();
+						List<Object> params = frame.readParams();
+						send(connection.execute(sql, params));
+						break;
+					}
+					case Protocol.PREPARE: {
+						PreparedQuery statement = connection.prepare(frame.readString());
+						int id = nextStatementId++;
+						statements.put(id, statement);
+						new Protocol.FrameWriter(Protocol.PREPARED).writeInt(id).writeInt(statement.getParameterCount()).write(out);
+						break;
+					}
+					case Protocol.EXECUTE: {
+						PreparedQuery statement = statements.get(frame.readInt());
+						List<Object> params = frame.readParams();
+						if(statement == null) {
+							Protocol.writeError(out, "Error: Unknown prepared statement");
+							break;
+						}
+						send(statement.execute(params));
+						break;
+					}
+					case Protocol.CLOSE_STATEMENT:
+						statements.remove(frame.readInt());
+						new Protocol.FrameWriter(Protocol.UPDATE_COUNT).writeLong(0).writeString("").write(out);
+						break;
+					default:
+						Protocol.writeError(out, "Error: Unknown message type " + frame.getType());
+				}
+			}
+			catch(DatabaseException e) {
+				Protocol.writeError(out, e.getMessage());
+			}
+		}
+
+		//The update count, or the rows of a query in batches as they are read from the table
+		private void send(Result result) throws IOException {
+
+			if(!result.isQuery()) {
+				String message = result.getMessage();
+				new Protocol.FrameWriter(Protocol.UPDATE_COUNT).writeLong(result.getUpdateCount()).writeString(message == null ? "" : message).write(out);
+				return;
+			}
+
+			try {
+				List<String> columns = result.getColumns();
+				Protocol.FrameWriter header = new Protocol.FrameWriter(Protocol.ROW_HEADER).writeInt(columns.size());
+				for(int i=0;i<columns.size();i++)
+					header.writeString(columns.get(i)).writeString(result.getTypes().get(i).name());
+				header.write(out);
+
+				List<List<String>> batch = new ArrayList<>();
+				int bytes = 0;
+				while(true) {
+					List<String> row;
+					try {
+						row = result.getRows().next();
+					}
+					catch(IOException e) {
+						Protocol.writeError(out, "Error reading the rows: " + e.getMessage());
+						return;
+					}
+					if(row != null) {
+						batch.add(row);
+						for(String value: row)
+							bytes += (value == null ? 0 : value.length()) + 4;
+					}
+					if(row == null || batch.size() >= batchRows || bytes >= BATCH_BYTES) {
+						if(!batch.isEmpty())
+							writeBatch(batch);
+						batch.clear();
+						bytes = 0;
+					}
+					if(row == null)
+						break;
+				}
+				new Protocol.FrameWriter(Protocol.ROWS_END).write(out);
+			}
+			finally {
+				result.close();
+			}
+		}
+
+		private void writeBatch(List<List<String>> batch) throws IOException {
+
+			Protocol.FrameWriter frame = new Protocol.FrameWriter(Protocol.ROW_BATCH).writeInt(batch.size());
+			for(List<String> row: batch) {
+				for(String value: row)
+					frame.writeString(value);
+			}
+			frame.write(out);
+		}
+	}
+
+}
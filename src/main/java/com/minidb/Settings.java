@@ -0,0 +1,135 @@
+package com.minidb;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+//Settings of a session, changed with SET name = value and listed by SHOW SETTINGS.
+//A Connection keeps its own and attaches them to the thread running its statements, the
+//managers read them with Settings.current(). Without a connection the defaults apply.
+//
+//	PARALLELISM  threads a full table scan uses, 1 scans on the calling thread
+//	             (-Dminidb.parallelism, default the number of cores)
+//	SCAN_ORDER   ORDERED returns the rows of a parallel scan in page order like a serial scan,
+//	             UNORDERED as soon as a thread has read them
+//	WORK_MEMORY  KB of rows a join, or of groups a GROUP BY, keeps in memory before it
+//	             spills them to disk (-Dminidb.workMemory, default 65536)
+//
+//A server session also restricts the files LOAD DATA reads (see Server), this can't be SET.
+public class Settings {
+
+	public enum ScanOrder { ORDERED, UNORDERED }
+
+	private static final int MIN_WORK_MEMORY = 16;
+
+	private static final int DEFAULT_PARALLELISM = Math.max(1, Integer.getInteger("minidb.parallelism", Runtime.getRuntime().availableProcessors()));
+	private static final int DEFAULT_WORK_MEMORY = Math.max(MIN_WORK_MEMORY, Integer.getInteger("minidb.workMemory", 64 * 1024));
+	private static final Settings defaults = new Settings();
+	private static final ThreadLocal<Settings> current = new ThreadLocal<>();
+
+	private volatile int parallelism = DEFAULT_PARALLELISM;
+	private volatile ScanOrder scanOrder = ScanOrder.ORDERED;
+	private volatile int workMemory = DEFAULT_WORK_MEMORY;
+	private volatile boolean loadRestricted;
+	private volatile File loadDirectory;
+
+
+
+
+	//Settings of the session this thread runs a statement of, the defaults without one
+	public static Settings current() {
+		Settings settings = current.get();
+		return settings == null ? defaults : settings;
+	}
+
+	//Set by the Connection while it runs a statement, null to detach them
+	static void attach(Settings settings) {
+		if(settings == null)
+			current.remove();
+		else
+			current.set(settings);
+	}
+
+
+
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	public ScanOrder getScanOrder() {
+		return scanOrder;
+	}
+
+	//WORK_MEMORY in bytes
+	public long getWorkMemory() {
+		return workMemory * 1024L;
+	}
+
+	//LOAD DATA then only reads the files in the directory, no file at all when it is null
+	void restrictLoadData(File directory) {
+		loadDirectory = directory;
+		loadRestricted = true;
+	}
+
+	boolean isLoadRestricted() {
+		return loadRestricted;
+	}
+
+	File getLoadDirectory() {
+		return loadDirectory;
+	}
+
+	//SET name = value; the value is checked before anything changes
+	public void set(String name, String value) {
+
+		switch(name.toUpperCase()) {
+			case "PARALLELISM":
+				int threads;
+				try {
+					threads = Integer.parseInt(value);
+				}
+				catch(NumberFormatException e) {
+					throw new IllegalArgumentException("PARALLELISM must be a number, got '" + value + "'");
+				}
+				if(threads < 1)
+					throw new IllegalArgumentException("PARALLELISM must be at least 1");
+				parallelism = threads;
+				break;
+			case "SCAN_ORDER":
+				try {
+					scanOrder = ScanOrder.valueOf(value.toUpperCase());
+				}
+				catch(IllegalArgumentException e) {
+					throw new IllegalArgumentException("SCAN_ORDER must be one of " + Arrays.toString(ScanOrder.values()) + ", got '" + value + "'");
+				}
+				break;
+			case "WORK_MEMORY":
+				int kilobytes;
+				try {
+					kilobytes = Integer.parseInt(value);
+				}
+				catch(NumberFormatException e) {
+					throw new IllegalArgumentException("WORK_MEMORY must be a number of KB, got '" + value + "'");
+				}
+				if(kilobytes < MIN_WORK_MEMORY)
+					throw new IllegalArgumentException("WORK_MEMORY must be at least " + MIN_WORK_MEMORY + " KB");
+				workMemory = kilobytes;
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown setting '" + name + "', expected PARALLELISM, SCAN_ORDER or WORK_MEMORY");
+		}
+	}
+
+	//Rows of SHOW SETTINGS
+	public List<List<String>> getRows() {
+
+		List<List<String>> rows = new ArrayList<>();
+		rows.add(Arrays.asList("PARALLELISM", Integer.toString(parallelism)));
+		rows.add(Arrays.asList("SCAN_ORDER", scanOrder.toString()));
+		rows.add(Arrays.asList("WORK_MEMORY", Integer.toString(workMemory)));
+		return rows;
+	}
+
+}
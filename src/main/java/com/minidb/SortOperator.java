@@ -0,0 +1,153 @@
+package com.minidb;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+//Sorts the rows of its input, for ORDER BY. With a limit only the first limit rows are wanted
+//(top-N): they are kept in a heap whose top is the last of them, so a row past it is dropped after
+//one comparison. Without a limit, or once the heap takes more than the memory given, the rows go
+//to an ExternalSorter, which sorts them in runs on disk past the memory and merges the runs.
+//The keys of a row are taken once when it is read (see RowOrder). Rows comparing equal keep the
+//order they came in.
+public class SortOperator implements Operator {
+
+	private final Operator input;
+	private final RowOrder order;
+	private final long limit;
+	private final long memory;
+
+	private ExternalSorter sorter;
+	private Operator sorted;
+	private long count;
+
+	//A row of the heap and its position in the input
+	private static class Entry {
+		final RowOrder.Keys row;
+		final long position;
+
+		Entry(RowOrder.Keys row, long position) {
+			this.row = row;
+			this.position = position;
+		}
+	}
+
+	//limit is -1 to sort every row
+	public SortOperator(Operator input, RowOrder order, long limit, long memory) {
+		this.input = input;
+		this.order = order;
+		this.limit = limit;
+		this.memory = memory;
+	}
+
+	//Whether the rows didn't fit in memory and were sorted on disk
+	public boolean isSpilled() {
+		return sorter != null && sorter.getSpilledRows() > 0;
+	}
+
+	@Override
+	public void open() throws IOException {
+
+		count = 0;
+		sorter = null;
+		input.open();
+		try {
+			if(limit >= 0)
+				topN();
+			else {
+				sorter = new ExternalSorter(order, memory);
+				sortRest();
+			}
+		}
+		catch(IOException | RuntimeException e) {
+			if(sorter != null)
+				sorter.discard();
+			throw e;
+		}
+	}
+
+	//Keeps the first limit rows in the heap, the worst of them on top
+	private void topN() throws IOException {
+
+		Comparator<Entry> entryOrder = (a, b) -> {
+			int cmp = order.compare(a.row, b.row);
+			return cmp != 0 ? cmp : Long.compare(a.position, b.position);
+		};
+		PriorityQueue<Entry> heap = new PriorityQueue<>(11, entryOrder.reversed());
+		long bytes = 0, position = 0;
+		List<String> next;
+		while(limit > 0 && (next = input.next()) != null) {
+			RowOrder.Keys row = order.keys(next);
+			if(heap.size() < limit) {
+				heap.add(new Entry(row, position++));
+				bytes += ExternalSorter.sizeOf(next);
+			}
+			else if(order.compare(row, heap.peek().row) < 0) {
+				bytes -= ExternalSorter.sizeOf(heap.poll().row.getRow());
+				heap.add(new Entry(row, position++));
+				bytes += ExternalSorter.sizeOf(next);
+			}
+			else
+				position++;
+
+			if(bytes > memory) {
+				//the limit is too big for the memory, the rows kept so far are sorted with the rest
+				sorter = new ExternalSorter(order, memory);
+				List<Entry> entries = new ArrayList<>(heap);
+				heap = null;
+				entries.sort(entryOrder);
+				for(Entry entry: entries)
+					sorter.add(entry.row);
+				sortRest();
+				return;
+			}
+		}
+
+		List<Entry> entries = new ArrayList<>(heap);
+		entries.sort(entryOrder);
+		List<List<String>> rows = new ArrayList<>(entries.size());
+		for(Entry entry: entries)
+			rows.add(entry.row.getRow());
+		sorted = new ValuesOperator(rows);
+		sorted.open();
+	}
+
+	//Adds the rows left in the input to the sorter and sorts them
+	private void sortRest() throws IOException {
+
+		List<String> row;
+		while((row = input.next()) != null)
+			sorter.add(row);
+		sorted = sorter.sorted();
+		sorted.open();
+	}
+
+	@Override
+	public List<String> next() throws IOException {
+
+		if(limit >= 0 && count >= limit)
+			return null;
+		List<String> row = sorted.next();
+		if(row != null)
+			count++;
+		return row;
+	}
+
+	@Override
+	public void close() {
+
+		try {
+			if(sorted != null)
+				sorted.close();
+		}
+		finally {
+			sorted = null;
+			if(sorter != null)
+				sorter.discard();
+			input.close();
+		}
+	}
+
+}
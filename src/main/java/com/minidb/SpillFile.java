@@ -0,0 +1,83 @@
+package com.minidb;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+//Temporary files in data/tmp holding rows that don't fit in the memory of a query, written by
+//ExternalSorter and HashAggregateOperator. Each row is an int count of values then each value as
+//an int byte length, -1 for null, and its UTF-8 bytes. StorageManager clears data/tmp at startup,
+//the files of a query that didn't end are left there until then.
+//TableStats writes its .stats files in the same format.
+public class SpillFile {
+
+	private static final String tmp_dir = "data" + File.separator + "tmp";
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	//A new empty file, its name starts with prefix
+	public static File create(String prefix) throws IOException {
+
+		File dir = new File(tmp_dir);
+		dir.mkdirs();
+		return File.createTempFile(prefix, ".tmp", dir);
+	}
+
+	public static DataOutputStream output(File file) throws IOException {
+		return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+	}
+
+	public static DataInputStream input(File file) throws IOException {
+		return new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+	}
+
+
+
+
+	public static void writeRow(DataOutputStream out, List<String> row) throws IOException {
+
+		out.writeInt(row.size());
+		for(String value: row) {
+			if(value == null)
+				out.writeInt(-1);
+			else {
+				byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			}
+		}
+	}
+
+	//Next row of the file, null at its end
+	public static List<String> readRow(DataInputStream in) throws IOException {
+
+		int size;
+		try {
+			size = in.readInt();
+		}
+		catch(EOFException e) {
+			return null;
+		}
+		List<String> row = new ArrayList<>(size);
+		for(int i=0;i<size;i++) {
+			int length = in.readInt();
+			if(length < 0)
+				row.add(null);
+			else {
+				byte[] bytes = new byte[length];
+				in.readFully(bytes);
+				row.add(new String(bytes, StandardCharsets.UTF_8));
+			}
+		}
+		return row;
+	}
+
+}
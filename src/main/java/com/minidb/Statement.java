@@ -0,0 +1,763 @@
+package com.minidb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+//A parsed SQL statement, one subclass per kind of statement.
+//Literal values are already typed: an Integer for a number, a String for quoted text,
+//or a Parameter for a ? that gets its value when the statement is bound.
+//Statements are immutable so a cached or prepared statement can be run any number of times.
+public abstract class Statement {
+
+	//number of ? in the statement, set by the parser
+	int parameterCount;
+
+	public int getParameterCount() {
+		return parameterCount;
+	}
+
+	//Table the statement reads or changes, null if it isn't about one table
+	public String getTableName() {
+		return null;
+	}
+
+	//Every table the statement reads or changes, the joined tables too
+	public List<String> getTableNames() {
+		String tableName = getTableName();
+		return tableName == null ? Collections.<String>emptyList() : Collections.singletonList(tableName);
+	}
+
+	//Copy of the statement with the ? replaced by the values, in order
+	public Statement bind(List<Object> values) {
+		return this;
+	}
+
+
+
+
+	//A ? in a statement, index is its position among the ? of the statement
+	public static class Parameter {
+
+		private final int index;
+
+		public Parameter(int index) {
+			this.index = index;
+		}
+
+		public int getIndex() {
+			return index;
+		}
+
+		@Override
+		public String toString() {
+			return "?";
+		}
+	}
+
+	//The literal, or the value of the parameter as an Integer or a String
+	public static Object bindValue(Object literal, List<Object> values) {
+
+		if(!(literal instanceof Parameter))
+			return literal;
+		Object value = values.get(((Parameter) literal).getIndex());
+		if(value == null)
+			throw new IllegalArgumentException("NULL values are not supported");
+		if(value instanceof Integer || value instanceof String)
+			return value;
+		if(value instanceof Number && !(value instanceof Double || value instanceof Float) && ((Number) value).longValue() == ((Number) value).intValue())
+			return ((Number) value).intValue();
+		return value.toString();
+	}
+
+	private static List<Object> bindAll(List<Object> literals, List<Object> values) {
+		List<Object> bound = new ArrayList<>(literals.size());
+		for(Object literal: literals)
+			bound.add(bindValue(literal, values));
+		return bound;
+	}
+
+	//CREATE TABLE tableName (col1 col1Type [PRIMARY KEY], col2 col2Type, ...) [WITH (storage = columnar)];
+	public static class CreateTable extends Statement {
+
+		private final String tableName;
+		private final LinkedHashMap<String, String> columns;
+		private final String primaryKey;
+		private final boolean columnar;
+
+		public CreateTable(String tableName, LinkedHashMap<String, String> columns, String primaryKey) {
+			this(tableName, columns, primaryKey, false);
+		}
+
+		public CreateTable(String tableName, LinkedHashMap<String, String> columns, String primaryKey, boolean columnar) {
+			this.tableName = tableName;
+			this.columns = columns;
+			this.primaryKey = primaryKey;
+			this.columnar = columnar;
+		}
+
+		@Override
+		public String getTableName() {
+			return tableName;
+		}
+
+		//Column name to type name, in the order of the statement
+		public LinkedHashMap<String, String> getColumns() {
+			return columns;
+		}
+
+		//null for no primary key
+		public String getPrimaryKey() {
+			return primaryKey;
+		}
+
+		public boolean isColumnar() {
+			return columnar;
+		}
+	}
+
+
+
+
+	//CREATE INDEX indexName ON tableName(colName);
+	public static class CreateIndex extends Statement {
+
+		private final String indexName;
+		private final String tableName;
+		private final String columnName;
+
+		public CreateIndex(String indexName, String tableName, String columnName) {
+			this.indexName = indexName;
+			this.tableName = tableName;
+			this.columnName = columnName;
+		}
+
+		public String getIndexName() {
+			return indexName;
+		}
+
+		@Override
+		public String getTableName() {
+			return tableName;
+		}
+
+		public String getColumnName() {
+			return columnName;
+		}
+	}
+
+
+
+
+	//DROP INDEX indexName;
+	public static class DropIndex extends Statement {
+
+		private final String indexName;
+
+		public DropIndex(String indexName) {
+			this.indexName = indexName;
+		}
+
+		public String getIndexName() {
+			return indexName;
+		}
+	}
+
+
+
+
+	//DROP TABLE tableName;
+	public static class DropTable extends Statement {
+
+		private final String tableName;
+
+		public DropTable(String tableName) {
+			this.tableName = tableName;
+		}
+
+		@Override
+		public String getTableName() {
+			return tableName;
+		}
+	}
+
+
+
+
+	//INSERT INTO tableName VALUES (col1val, col2val,...), (col1val, col2val,...)...;
+	public static class Insert extends Statement {
+
+		private final String tableName;
+		private final List<List<Object>> rows;
+
+		public Insert(String tableName, List<List<Object>> rows) {
+			this.tableName = tableName;
+			this.rows = Collections.unmodifiableList(new ArrayList<>(rows));
+		}
+
+		@Override
+		public String getTableName() {
+			return tableName;
+		}
+
+		public List<List<Object>> getRows() {
+			return rows;
+		}
+
+		@Override
+		public Statement bind(List<Object> values) {
+			if(parameterCount == 0)
+				return this;
+			List<List<Object>> bound = new ArrayList<>(rows.size());
+			for(List<Object> row: rows)
+				bound.add(bindAll(row, values));
+			return new Insert(tableName, bound);
+		}
+	}
+
+
+
+
+	//LOAD DATA 'file.csv' INTO TABLE tableName;
+	public static class LoadData extends Statement {
+
+		private final String fileName;
+		private final String tableName;
+
+		public LoadData(String fileName, String tableName) {
+			this.fileName = fileName;
+			this.tableName = tableName;
+		}
+
+		public String getFileName() {
+			return fileName;
+		}
+
+		@Override
+		public String getTableName() {
+			return tableName;
+		}
+	}
+
+
+
+
+	//SELECT * | col1, col2... FROM tableName [alias] [[INNER | LEFT [OUTER]] JOIN tableName [alias] ON col = col...]...
+	//[WHERE condition] [GROUP BY col1, col2...] [ORDER BY col1 [ASC | DESC], ...] [LIMIT n [OFFSET m]];
+	//Columns can be written table.col, with the table name or its alias. A selected column can be
+	//an aggregate, COUNT(*) or FUNCTION(col) [[AS] alias]
+	public static class Select extends Statement {
+
+		private final List<String> columns;
+		private final List<Aggregate> aggregates;
+		private final String tableName;
+		private final String alias;
+		private final List<Join> joins;
+		private final Condition where;
+		private final List<String> groupBy;
+		private final List<Order> orderBy;
+		private final long limit;
+		private final long offset;
+
+		public Select(List<String> columns, String tableName, Condition where, long limit) {
+			this(columns, tableName, null, Collections.<Join>emptyList(), where, limit);
+		}
+
+		public Select(List<String> columns, String tableName, String alias, List<Join> joins, Condition where, long limit) {
+			this(columns, null, tableName, alias, joins, where, Collections.<String>emptyList(), Collections.<Order>emptyList(), limit, 0);
+		}
+
+		public Select(List<String> columns, List<Aggregate> aggregates, String tableName, String alias, List<Join> joins, Condition where,
+				List<String> groupBy, List<Order> orderBy, long limit, long offset) {
+			this.columns = columns;
+			this.aggregates = aggregates == null ? null : Collections.unmodifiableList(new ArrayList<>(aggregates));
+			this.tableName = tableName;
+			this.alias = alias;
+			this.joins = Collections.unmodifiableList(new ArrayList<>(joins));
+			this.where = where;
+			this.groupBy = Collections.unmodifiableList(new ArrayList<>(groupBy));
+			this.orderBy = Collections.unmodifiableList(new ArrayList<>(orderBy));
+			this.limit = limit;
+			this.offset = offset;
+		}
+
+		//null for *. The name of an aggregate is its alias, or the aggregate as written
+		public List<String> getColumns() {
+			return columns;
+		}
+
+		//The aggregate of each selected column, null for a column that isn't one.
+		//null when no column is an aggregate
+		public List<Aggregate> getAggregates() {
+			return aggregates;
+		}
+
+		//Whether the rows are grouped: the SELECT has an aggregate or a GROUP BY clause
+		public boolean isGrouped() {
+			return aggregates != null || !groupBy.isEmpty();
+		}
+
+		//Table after FROM
+		@Override
+		public String getTableName() {
+			return tableName;
+		}
+
+		//The table after FROM and the joined tables
+		@Override
+		public List<String> getTableNames() {
+			List<String> tableNames = new ArrayList<>();
+			tableNames.add(tableName);
+			for(Join join: joins)
+				tableNames.add(join.getTableName());
+			return tableNames;
+		}
+
+		//null without one
+		public String getAlias() {
+			return alias;
+		}
+
+		//Tables joined to the one after FROM, in order, empty without a JOIN
+		public List<Join> getJoins() {
+			return joins;
+		}
+
+		//null without a WHERE clause
+		public Condition getWhere() {
+			return where;
+		}
+
+		//Columns of the GROUP BY clause, empty without one
+		public List<String> getGroupBy() {
+			return groupBy;
+		}
+
+		//Columns of the ORDER BY clause, empty without one
+		public List<Order> getOrderBy() {
+			return orderBy;
+		}
+
+		//-1 without a LIMIT clause
+		public long getLimit() {
+			return limit;
+		}
+
+		//Rows skipped before the LIMIT rows, 0 without an OFFSET
+		public long getOffset() {
+			return offset;
+		}
+
+		@Override
+		public Statement bind(List<Object> values) {
+			if(parameterCount == 0)
+				return this;
+			return new Select(columns, aggregates, tableName, alias, joins, where == null ? null : where.bind(values), groupBy, orderBy, limit, offset);
+		}
+	}
+
+	//col [ASC | DESC] or aggregate [ASC | DESC] of an ORDER BY clause
+	public static class Order {
+
+		private final String column;
+		private final Aggregate aggregate;
+		private final boolean descending;
+
+		public Order(String column, Aggregate aggregate, boolean descending) {
+			this.column = column;
+			this.aggregate = aggregate;
+			this.descending = descending;
+		}
+
+		//null for an aggregate
+		public String getColumn() {
+			return column;
+		}
+
+		//null for a column
+		public Aggregate getAggregate() {
+			return aggregate;
+		}
+
+		public boolean isDescending() {
+			return descending;
+		}
+
+		@Override
+		public String toString() {
+			return (aggregate != null ? aggregate.toString() : column) + (descending ? " DESC" : "");
+		}
+	}
+
+	//COUNT(*) | COUNT(col) | SUM(col) | AVG(col) | MIN(col) | MAX(col) selected by a SELECT.
+	//Null values are skipped, SUM and AVG take INT columns
+	public static class Aggregate {
+
+		public enum Function { COUNT, SUM, AVG, MIN, MAX }
+
+		private final Function function;
+		private final String column;
+
+		public Aggregate(Function function, String column) {
+			this.function = function;
+			this.column = column;
+		}
+
+		public Function getFunction() {
+			return function;
+		}
+
+		//null for COUNT(*)
+		public String getColumn() {
+			return column;
+		}
+
+		@Override
+		public String toString() {
+			return function + "(" + (column == null ? "*" : column) + ")";
+		}
+	}
+
+	//[INNER | LEFT [OUTER]] JOIN tableName [alias] ON col = col [AND col = col]... of a SELECT.
+	//The ON columns are in the order they were written, either side can be the joined table
+	public static class Join {
+
+		private final String tableName;
+		private final String alias;
+		private final boolean left;
+		private final List<String> leftColumns;
+		private final List<String> rightColumns;
+
+		public Join(String tableName, String alias, boolean left, List<String> leftColumns, List<String> rightColumns) {
+			this.tableName = tableName;
+			this.alias = alias;
+			this.left = left;
+			this.leftColumns = Collections.unmodifiableList(new ArrayList<>(leftColumns));
+			this.rightColumns = Collections.unmodifiableList(new ArrayList<>(rightColumns));
+		}
+
+		public String getTableName() {
+			return tableName;
+		}
+
+		//null without one
+		public String getAlias() {
+			return alias;
+		}
+
+		//LEFT JOIN, the rows before it are kept when the table has no matching row
+		public boolean isLeft() {
+			return left;
+		}
+
+		//Columns before the = of each equality of ON
+		public List<String> getLeftColumns() {
+			return leftColumns;
+		}
+
+		//Columns after the =, in the same order
+		public List<String> getRightColumns() {
+			return rightColumns;
+		}
+	}
+
+
+
+
+	//UPDATE tableName SET col1=val1, col2=val2... WHERE condition;
+	public static class Update extends Statement {
+
+		private final String tableName;
+		private final List<String> setColumns;
+		private final List<Object> setValues;
+		private final Condition where;
+
+		public Update(String tableName, List<String> setColumns, List<Object> setValues, Condition where) {
+			this.tableName = tableName;
+			this.setColumns = Collections.unmodifiableList(new ArrayList<>(setColumns));
+			this.setValues = Collections.unmodifiableList(new ArrayList<>(setValues));
+			this.where = where;
+		}
+
+		@Override
+		public String getTableName() {
+			return tableName;
+		}
+
+		public List<String> getSetColumns() {
+			return setColumns;
+		}
+
+		//New value of each SET column, in the same order
+		public List<Object> getSetValues() {
+			return setValues;
+		}
+
+		public Condition getWhere() {
+			return where;
+		}
+
+		@Override
+		public Statement bind(List<Object> values) {
+			if(parameterCount == 0)
+				return this;
+			return new Update(tableName, setColumns, bindAll(setValues, values), where.bind(values));
+		}
+	}
+
+
+
+
+	//DELETE FROM tableName WHERE condition;
+	public static class Delete extends Statement {
+
+		private final String tableName;
+		private final Condition where;
+
+		public Delete(String tableName, Condition where) {
+			this.tableName = tableName;
+			this.where = where;
+		}
+
+		@Override
+		public String getTableName() {
+			return tableName;
+		}
+
+		public Condition getWhere() {
+			return where;
+		}
+
+		@Override
+		public Statement bind(List<Object> values) {
+			if(parameterCount == 0)
+				return this;
+			return new Delete(tableName, where.bind(values));
+		}
+	}
+
+
+
+
+	//SHOW TABLES; SHOW BUFFER POOL; SHOW WAL; SHOW SETTINGS;
+	public static class Show extends Statement {
+
+		public enum Target { TABLES, BUFFER_POOL, WAL, SETTINGS }
+
+		private final Target target;
+
+		public Show(Target target) {
+			this.target = target;
+		}
+
+		public Target getTarget() {
+			return target;
+		}
+	}
+
+
+
+
+	//DESC tableName;
+	public static class Describe extends Statement {
+
+		private final String tableName;
+
+		public Describe(String tableName) {
+			this.tableName = tableName;
+		}
+
+		@Override
+		public String getTableName() {
+			return tableName;
+		}
+	}
+
+
+
+
+	//VACUUM [tableName];
+	public static class Vacuum extends Statement {
+
+		private final String tableName;
+
+		public Vacuum(String tableName) {
+			this.tableName = tableName;
+		}
+
+		//null for every table
+		@Override
+		public String getTableName() {
+			return tableName;
+		}
+	}
+
+
+
+
+	//ANALYZE [tableName];
+	public static class Analyze extends Statement {
+
+		private final String tableName;
+
+		public Analyze(String tableName) {
+			this.tableName = tableName;
+		}
+
+		//null for every table
+		@Override
+		public String getTableName() {
+			return tableName;
+		}
+	}
+
+
+
+
+	//EXPLAIN SELECT ...; runs the query and shows its plan, with the rows each step was estimated to give and gave
+	public static class Explain extends Statement {
+
+		private final Select select;
+
+		public Explain(Select select) {
+			this.select = select;
+		}
+
+		public Select getSelect() {
+			return select;
+		}
+
+		@Override
+		public String getTableName() {
+			return select.getTableName();
+		}
+
+		@Override
+		public List<String> getTableNames() {
+			return select.getTableNames();
+		}
+
+		@Override
+		public Statement bind(List<Object> values) {
+			if(parameterCount == 0)
+				return this;
+			return new Explain((Select) select.bind(values));
+		}
+	}
+
+
+
+
+	//PREPARE name AS statement;
+	public static class Prepare extends Statement {
+
+		private final String name;
+		private final Statement statement;
+
+		public Prepare(String name, Statement statement) {
+			this.name = name;
+			this.statement = statement;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public Statement getStatement() {
+			return statement;
+		}
+
+		@Override
+		public List<String> getTableNames() {
+			return statement.getTableNames();
+		}
+	}
+
+
+
+
+	//EXECUTE name[(val1, val2...)];
+	public static class Execute extends Statement {
+
+		private final String name;
+		private final List<Object> values;
+
+		public Execute(String name, List<Object> values) {
+			this.name = name;
+			this.values = Collections.unmodifiableList(new ArrayList<>(values));
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		//Values of the ? of the prepared statement
+		public List<Object> getValues() {
+			return values;
+		}
+
+		@Override
+		public Statement bind(List<Object> values) {
+			if(parameterCount == 0)
+				return this;
+			return new Execute(name, bindAll(this.values, values));
+		}
+	}
+
+
+
+
+	//DEALLOCATE [PREPARE] name;
+	public static class Deallocate extends Statement {
+
+		private final String name;
+
+		public Deallocate(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+
+
+
+
+	//BEGIN [TRANSACTION | WORK]; START TRANSACTION;
+	public static class Begin extends Statement {
+	}
+
+	//COMMIT [TRANSACTION | WORK];
+	public static class Commit extends Statement {
+	}
+
+	//ROLLBACK [TRANSACTION | WORK];
+	public static class Rollback extends Statement {
+	}
+
+
+
+
+	//SET name [= | TO] value;
+	public static class Set extends Statement {
+
+		private final String name;
+		private final String value;
+
+		public Set(String name, String value) {
+			this.name = name;
+			this.value = value;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getValue() {
+			return value;
+		}
+	}
+
+}
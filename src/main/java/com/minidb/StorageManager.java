@@ -7,14 +7,61 @@ public class StorageManager {
 	private static final String data_dir = "data";
 	private static final String catalog_dir = data_dir + File.separator + "catalog";
 	private static final String table_dir = data_dir + File.separator + "tables";
+	private static final String index_dir = data_dir + File.separator + "indexes";
+	private static final String tmp_dir = data_dir + File.separator + "tmp";
+	
+	private static boolean initialized = false;
 	
 	//Used to create dir if they don't exist
-	public static void initializeStorage() {
+	public static synchronized void initializeStorage() {
 		
 		createDirectory(data_dir);
 		createDirectory(catalog_dir);
 		createDirectory(table_dir);
+		createDirectory(index_dir);
+		createDirectory(tmp_dir);
+		clearDirectory(tmp_dir);
 		//System.out.println("Storage directories are initialized!");
+		Catalog.load();
+		WriteAheadLog.recover();
+		upgradeTables();
+		initialized = true;
+		
+	}
+	
+	//Initializes the storage unless it already was, for embedded connections
+	public static synchronized void ensureInitialized() {
+		if(!initialized)
+			initializeStorage();
+	}
+	
+	//Checkpoints the log and writes and closes every file, the storage is initialized again on next use
+	public static synchronized void shutdown() {
+		
+		WriteAheadLog.close();
+		BufferPool.close();
+		initialized = false;
+		
+	}
+	
+	//Converts the tables still stored as pipe delimited text to the paged format
+	private static void upgradeTables() {
+		
+		for(String tableName: MetaManager.showTables()) {
+			if(TableManager.isTextTable(tableName))
+				TableManager.convertTextTable(tableName);
+		}
+		
+	}
+	
+	//Sort runs left by a crash
+	private static void clearDirectory(String path) {
+		
+		File[] files = new File(path).listFiles();
+		if(files != null) {
+			for(File file: files)
+				file.delete();
+		}
 		
 	}
 	
@@ -0,0 +1,20 @@
+package com.minidb;
+
+//A statement that can't be parsed, the message says what was expected and where
+public class SyntaxException extends Exception {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int position;
+
+	public SyntaxException(String message, int position) {
+		super(message);
+		this.position = position;
+	}
+
+	//Offset in the statement where the error was found
+	public int getPosition() {
+		return position;
+	}
+
+}
@@ -1,39 +1,69 @@
 package com.minidb;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
-import java.util.Map;
-import java.util.Scanner;
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.function.Predicate;
 
 public class TableManager {
 
 	private static final String table_dir = "data" + File.separator + "tables";
+	//rows used to compute the column widths when printing a streamed result
+	private static final int WIDTH_SAMPLE_ROWS = 1000;
+	//pages written by a bulk insert between two index updates and commits (4 MB)
+	private static final int BULK_BATCH_PAGES = 1024;
+	//invalid rows of a LOAD DATA reported one by one
+	static final int MAX_REPORTED_ERRORS = 20;
+	
+	public static File getTableFile(String tableName) {
+		return new File(table_dir + File.separator + tableName + ".tbl");
+	}
 	
 	public static boolean createTableFile(String tableName) {
 		
 		File tableFile = new File(table_dir + File.separator + tableName + ".tbl");
+		TableSchema columnar = Catalog.get(tableName);
+		if(columnar != null && columnar.isColumnar())
+			return ColumnStore.create(columnar);
 		
 		if(tableFile.exists()) {
-			 System.err.println(Color.RED + "\nError: Table file for '" + tableName + "' already exists." + Color.RESET);
+			 Messages.error("\nError: Table file for '" + tableName + "' already exists.");
 			 return false;
 		}
 		
 		try {
+			BufferPool.discardFile(tableFile);
+			FreeSpaceMap.drop(tableFile);
+			TransactionManager.forget(tableName);
 			if(tableFile.createNewFile()) {
 				//System.out.println("Created table file at: " + tableFile.getPath());
+				//a replayed log must not add the rows of an older table with the same name
+				WriteAheadLog.logTruncate(tableFile);
+				WriteAheadLog.commit();
+				TableSchema schema = Catalog.get(tableName);
+				if(schema != null)
+					IndexManager.createPrimaryKeyIndex(schema);
 				return true;
 			}
 			else {
-				System.err.println(Color.RED + "\nFailed to create table file for " + tableName + Color.RESET);
+				Messages.error("\nFailed to create table file for " + tableName);
 				return false;
 			}
 		}
 		catch(IOException e) {
-			System.err.println(Color.RED + "\nError creating table file: " + e.getMessage() + Color.RESET);
+			Messages.error("\nError creating table file: " + e.getMessage());
 			return false;
 		}
 		
@@ -43,57 +73,817 @@ public class TableManager {
 	
 	
 	public static boolean insertRow(String tableName, List<String> values) {
+		return insertRow(tableName, values, true);
+	}
+	
+	//quoted is false when the TEXT values were already unquoted by the parser
+	public static boolean insertRow(String tableName, List<String> values, boolean quoted) {
 		
-		LinkedHashMap<String,String> schema = MetaManager.loadTable(tableName);
+		if(!LockManager.lockWrite(tableName))
+			return false;
+		try {
+			return insertRowLocked(tableName, values, quoted);
+		}
+		finally {
+			LockManager.unlockWrite(tableName);
+		}
+	}
+	
+	private static boolean insertRowLocked(String tableName, List<String> values, boolean quoted) {
+		
+		TableSchema schema = MetaManager.getSchema(tableName);
 		if(schema == null)
 			return false;
 		
-		//check column count is equal
-		if(values.size() != schema.size()) {
-			System.err.println(Color.RED + "\nError: Column count mismatch. Expected " + schema.size() + " values" + Color.RESET);
+		String error = checkRow(schema, values, quoted);
+		if(error != null) {
+			Messages.error("\nError: " + error);
+			return false;
+		}
+		
+		//PRIMARY KEY values must be unique
+		Column pk = schema.getPrimaryKey();
+		try {
+			if(pk != null && IndexManager.containsPrimaryKey(schema, values.get(pk.getIndex()))) {
+				Messages.error("\nError: Duplicate value '" + values.get(pk.getIndex()).trim() + "' for PRIMARY KEY '" + pk.getName() + "'");
+				return false;
+			}
+		}
+		catch(IOException e) {
+			Messages.error("\nError reading the primary key index: " + e.getMessage());
+			return false;
+		}
+		
+		
+		if(schema.isColumnar()) {
+			if(ColumnStore.append(schema, Collections.singletonList(values).iterator(), true) < 0)
+				return false;
+			Messages.info("\nRow inserted in '" + tableName + "' successfully");
+			return true;
+		}
+		
+		//Now insert the row in a page of .tbl
+		byte[] record = RowCodec.encode(values, schema.getColumnTypes());
+		if(record.length > Page.MAX_RECORD_SIZE) {
+			Messages.error("\nError: Row is too large to fit in a page (" + record.length + " bytes)");
 			return false;
 		}
+		File tableFile = new File(table_dir + File.separator + tableName + ".tbl");
+		
+		try {
+			RowId rowId = placeRecord(tableFile, record.length, -1);
+			TransactionManager.startChange(tableName, rowId, null, 1, false);
+			insertRecord(tableFile, rowId, record);
+			IndexManager.insertEntries(schema, values, rowId);
+			commit();
+			Messages.info("\nRow inserted in '" + tableName + "' successfully");
+			return true;
+		}
+		catch(IOException e) {
+			Messages.error("\nError writing to table file: " + e.getMessage());
+			return false;
+		}
+	}
+	
+	//Checks the values against the schema, returns the error or null if the row is valid.
+	//Quoted values (from a statement, not from a file) lose their quotes, and typed values are
+	//replaced by their canonical text (see DataType.parse()), so 007 is stored and read as 7
+	static String checkRow(TableSchema schema, List<String> values, boolean quoted) {
+		
+		//check column count is equal
+		if(values.size() != schema.size())
+			return "Column count mismatch. Expected " + schema.size() + " values";
 		
 		//Type validation
 		int i = 0;
-		for(Map.Entry<String,String> entry: schema.entrySet()) {
-			String colType = entry.getValue();
+		for(Column column: schema.getColumns()) {
+			DataType colType = column.getType();
 			String value = values.get(i).trim();
 			
-			if(colType.equalsIgnoreCase("INT")) {
+			if(quoted && colType != DataType.INT && ((value.startsWith("'")) && value.endsWith("'") ||
+					value.startsWith("\"") && value.endsWith("\""))) {
+				values.set(i, value.substring(1, value.length()-1));
+			}
+			if(colType != DataType.TEXT) {
 				try {
-					Integer.parseInt(value);
+					values.set(i, colType.parse(values.get(i)));
 				}
-				catch(NumberFormatException e) {
-					System.err.println(Color.RED + "\nError: Column '" + entry.getKey() + "' expects INT, got '" + value + "'" + Color.RESET);
-					return false;
+				catch(IllegalArgumentException e) {
+					return "Column '" + column.getName() + "' expects " + colType + ", got '" + value + "'";
 				}
 			}
-			else if(colType.equalsIgnoreCase("TEXT")) {
-				if((value.startsWith("'")) && value.endsWith("'") ||
-						value.startsWith("\"") && value.endsWith("\"")) {
-					values.set(i, value.substring(1, value.length()-1));
+			else if(schema.getIndexOn(column.getName()) != null && values.get(i).getBytes(StandardCharsets.UTF_8).length > BPlusTree.MAX_KEY_SIZE)
+				return "Value of indexed column '" + column.getName() + "' is longer than " + BPlusTree.MAX_KEY_SIZE + " bytes";
+			i++;
+		}
+		return null;
+	}
+	
+	
+	
+	
+	//INSERT with several rows: every row is checked first, nothing is written if one is invalid.
+	//Returns the number of rows inserted, -1 on error
+	public static long insertRows(String tableName, List<List<String>> rows) {
+		return insertRows(tableName, rows, true);
+	}
+	
+	public static long insertRows(String tableName, List<List<String>> rows, boolean quoted) {
+		
+		if(!LockManager.lockWrite(tableName))
+			return -1;
+		try {
+			return insertRowsLocked(tableName, rows, quoted);
+		}
+		finally {
+			LockManager.unlockWrite(tableName);
+		}
+	}
+	
+	private static long insertRowsLocked(String tableName, List<List<String>> rows, boolean quoted) {
+		
+		TableSchema schema = MetaManager.getSchema(tableName);
+		if(schema == null)
+			return -1;
+		
+		Column pk = schema.getPrimaryKey();
+		Set<Object> keys = new HashSet<>();
+		try {
+			for(int i=0;i<rows.size();i++) {
+				List<String> values = rows.get(i);
+				String error = checkRow(schema, values, quoted);
+				if(error == null && pk != null && isDuplicateKey(schema, keys, values.get(pk.getIndex())))
+					error = "Duplicate value '" + values.get(pk.getIndex()).trim() + "' for PRIMARY KEY '" + pk.getName() + "'";
+				if(error == null && !schema.isColumnar() && RowCodec.encode(values, schema.getColumnTypes()).length > Page.MAX_RECORD_SIZE)
+					error = "Row is too large to fit in a page";
+				if(error != null) {
+					Messages.error("\nError in row " + (i+1) + ": " + error);
+					return -1;
 				}
 			}
-			i++;
 		}
+		catch(IOException e) {
+			Messages.error("\nError reading the primary key index: " + e.getMessage());
+			return -1;
+		}
+		
+		if(schema.isColumnar())
+			return ColumnStore.append(schema, rows.iterator(), true);
+		return bulkInsert(schema, rows.iterator(), true);
+	}
+	
+	//LOAD DATA: inserts the rows read from a file, the invalid rows are skipped with a message.
+	//Returns the number of rows loaded, -1 on error
+	public static long loadRows(String tableName, Iterator<List<String>> rows) {
+		
+		if(!LockManager.lockWrite(tableName))
+			return -1;
+		try {
+			return loadRowsLocked(tableName, rows);
+		}
+		finally {
+			LockManager.unlockWrite(tableName);
+		}
+	}
+	
+	private static long loadRowsLocked(String tableName, Iterator<List<String>> rows) {
 		
+		TableSchema schema = MetaManager.getSchema(tableName);
+		if(schema == null)
+			return -1;
+		if(schema.isColumnar())
+			return ColumnStore.append(schema, rows, false);
+		return bulkInsert(schema, rows, false);
+	}
+	
+	//Whether the key is already in the table or earlier in the rows being inserted, which are added to keys
+	private static boolean isDuplicateKey(TableSchema schema, Set<Object> keys, String value) throws IOException {
 		
-		//Now insert the row in .tbl
-		String row = String.join("|",values);
-		File tableFile = new File(table_dir + File.separator + tableName + ".tbl");
+		//checked values are in their canonical text, equal keys have equal text
+		return !keys.add(value) || IndexManager.containsPrimaryKey(schema, value);
+	}
+	
+	//The rows first go in the room left in the pages of the table, found like for a single insert and
+	//logged a record per row, so small batches don't start a page each. Once no page has room they are
+	//packed into new pages at the end of the table, a full page logged as one page image instead of a
+	//record per row. The index entries are added sorted, one batch at a time.
+	//checked rows were already validated
+	private static long bulkInsert(TableSchema schema, Iterator<List<String>> rows, boolean checked) {
+		
+		File tableFile = getTableFile(schema.getTableName());
+		Column pk = schema.getPrimaryKey();
+		List<DataType> types = schema.getColumnTypes();
+		
+		Set<Object> keys = new HashSet<>();
+		List<List<String>> batchRows = new ArrayList<>();
+		List<RowId> batchRowIds = new ArrayList<>();
+		long inserted = 0, rowNo = 0, skipped = 0;
+		int batchPages = 0;
+		
+		try {
+			//null while the rows still fit in the pages of the table
+			Page page = null;
+			int pageId = -1;
+			
+			while(rows.hasNext()) {
+				List<String> values = rows.next();
+				rowNo++;
+				
+				byte[] record = null;
+				String error = checked ? null : checkRow(schema, values, false);
+				if(error == null && !checked && pk != null && isDuplicateKey(schema, keys, values.get(pk.getIndex())))
+					error = "Duplicate value '" + values.get(pk.getIndex()).trim() + "' for PRIMARY KEY '" + pk.getName() + "'";
+				if(error == null) {
+					record = RowCodec.encode(values, types);
+					if(record.length > Page.MAX_RECORD_SIZE)
+						error = "Row is too large to fit in a page (" + record.length + " bytes)";
+				}
+				if(error != null) {
+					if(skipped++ < MAX_REPORTED_ERRORS)
+						Messages.warning("Skipping row " + rowNo + ": " + error);
+					continue;
+				}
+				
+				if(page == null) {
+					RowId place = findPlace(tableFile, record.length, -1);
+					if(place != null) {
+						TransactionManager.startChange(schema.getTableName(), place, null, 1, false);
+						insertRecord(tableFile, place, record);
+						batchRows.add(values);
+						batchRowIds.add(place);
+						inserted++;
+						continue;
+					}
+					page = new Page();
+					pageId = BufferPool.getPageCount(tableFile);
+				}
+				
+				int slot = page.insertRecord(record);
+				if(slot == -1) {
+					TransactionManager.startPage(schema.getTableName(), tableFile, pageId, page.getRowCount());
+					writeNewPage(tableFile, pageId, page);
+					page = new Page();
+					pageId++;
+					slot = page.insertRecord(record);
+					
+					//index entries and log are flushed every batch, so a huge load needs bounded memory
+					if(++batchPages == BULK_BATCH_PAGES) {
+						IndexManager.insertEntries(schema, batchRows, batchRowIds);
+						WriteAheadLog.commit();
+						batchRows.clear();
+						batchRowIds.clear();
+						keys.clear();
+						batchPages = 0;
+					}
+				}
+				batchRows.add(values);
+				batchRowIds.add(new RowId(pageId, slot));
+				inserted++;
+			}
+			
+			if(page != null && page.getSlotCount() > 0) {
+				TransactionManager.startPage(schema.getTableName(), tableFile, pageId, page.getRowCount());
+				writeNewPage(tableFile, pageId, page);
+			}
+			IndexManager.insertEntries(schema, batchRows, batchRowIds);
+			commit();
+		}
+		catch(IOException | RuntimeException e) {
+			Messages.error("\nError writing to table file: " + e.getMessage());
+			return -1;
+		}
+		
+		if(skipped > MAX_REPORTED_ERRORS)
+			Messages.warning((skipped - MAX_REPORTED_ERRORS) + " more rows skipped");
+		return inserted;
+	}
+	
+	private static void writeNewPage(File tableFile, int pageId, Page page) throws IOException {
+		
+		page.setLsn(WriteAheadLog.logPageImage(tableFile, pageId, page.getData()));
+		int appended = BufferPool.appendPage(tableFile, page.getData());
+		BufferPool.unpinPage(tableFile, appended, true);
+		if(appended != pageId)
+			throw new IOException("Table file changed during the bulk insert");
+		FreeSpaceMap.update(tableFile, pageId, page.getUsableSpace());
+	}
+	
+	
+	
+	
+	//Adds the record in the place found by placeRecord(). The change is logged before the page is changed
+	private static void insertRecord(File tableFile, RowId place, byte[] record) throws IOException {
+		
+		int pageId = place.getPageId();
+		Page page = new Page(BufferPool.fetchPage(tableFile, pageId));
+		try {
+			TransactionManager.saveSlot(tableFile, pageId, place.getSlot(), page);
+			long lsn = WriteAheadLog.logInsert(tableFile, pageId, record);
+			//latched so the buffer pool doesn't write the page, and no reader reads it, in the middle of the change
+			synchronized(page.getData()) {
+				if(page.insertRecord(record) != place.getSlot())
+					throw new IOException("Page " + pageId + " of " + tableFile.getPath() + " changed during the insert");
+				page.setLsn(lsn);
+			}
+		}
+		finally {
+			BufferPool.unpinPage(tableFile, pageId, true);
+		}
+		FreeSpaceMap.update(tableFile, pageId, page.getUsableSpace());
+	}
+	
+	//Page and slot that can hold a record of this length, found with the free space map, or in the last
+	//page, or in an empty page appended when no page has room.
+	//excludePage is never chosen, it is the page a row is moved out of
+	private static RowId placeRecord(File tableFile, int length, int excludePage) throws IOException {
+		
+		RowId place = findPlace(tableFile, length, excludePage);
+		if(place != null)
+			return place;
+		int pageId = BufferPool.appendPage(tableFile, new Page().getData());
+		BufferPool.unpinPage(tableFile, pageId, true);
+		return new RowId(pageId, 0);
+	}
+	
+	//The place placeRecord() finds in the pages of the table, null when none has room
+	private static RowId findPlace(File tableFile, int length, int excludePage) throws IOException {
+		
+		int pageCount = BufferPool.getPageCount(tableFile);
+		int pageId;
+		while((pageId = FreeSpaceMap.find(tableFile, length + Page.SLOT_SIZE, pageCount)) != -1) {
+			RowId place = tryPage(tableFile, pageId, length, excludePage);
+			if(place != null)
+				return place;
+		}
+		if(pageCount > 0) {
+			RowId place = tryPage(tableFile, pageCount - 1, length, excludePage);
+			if(place != null)
+				return place;
+		}
+		return null;
+	}
+	
+	//The slot of the page the record would go in, null when it doesn't fit. The hint of the page is corrected
+	private static RowId tryPage(File tableFile, int pageId, int length, int excludePage) throws IOException {
+		
+		Page page = new Page(BufferPool.fetchPage(tableFile, pageId));
+		try {
+			if(pageId != excludePage && page.canFit(length))
+				return new RowId(pageId, page.freeSlot());
+		}
+		finally {
+			BufferPool.unpinPage(tableFile, pageId, false);
+		}
+		FreeSpaceMap.update(tableFile, pageId, pageId == excludePage ? 0 : page.getUsableSpace());
+		return null;
+	}
+	
+	//Logs and stores a record in a slot of a page
+	private static void setRecord(File tableFile, int pageId, int slot, byte[] record, int flags) throws IOException {
+		
+		Page page = new Page(BufferPool.fetchPage(tableFile, pageId));
+		boolean changed = false;
+		try {
+			if(!page.canSet(slot, record.length))
+				throw new IOException("Record does not fit in page " + pageId + " of " + tableFile.getPath());
+			TransactionManager.saveSlot(tableFile, pageId, slot, page);
+			long lsn = WriteAheadLog.logUpdate(tableFile, pageId, slot, flags, record);
+			synchronized(page.getData()) {
+				page.setRecord(slot, record, flags);
+				page.setLsn(lsn);
+			}
+			changed = true;
+		}
+		finally {
+			BufferPool.unpinPage(tableFile, pageId, changed);
+		}
+		FreeSpaceMap.update(tableFile, pageId, page.getUsableSpace());
+	}
+	
+	//Logs and deletes the record of a slot
+	private static void deleteRecord(File tableFile, int pageId, int slot) throws IOException {
+		
+		Page page = new Page(BufferPool.fetchPage(tableFile, pageId));
+		try {
+			TransactionManager.saveSlot(tableFile, pageId, slot, page);
+			long lsn = WriteAheadLog.logDelete(tableFile, pageId, slot);
+			synchronized(page.getData()) {
+				page.deleteRecord(slot);
+				page.setLsn(lsn);
+			}
+		}
+		finally {
+			BufferPool.unpinPage(tableFile, pageId, true);
+		}
+		FreeSpaceMap.update(tableFile, pageId, page.getUsableSpace());
+	}
+	
+	
+	
+	
+	//Record of the row, following the FORWARD stub when the row was moved. Null if the row was deleted.
+	//The pages are read latched, a writer may be changing them: when the row moves between the two
+	//reads, the moved copy is gone and null is returned, the version kept by the writer has the row
+	public static byte[] readRecord(File tableFile, RowId rowId) throws IOException {
+		
+		RowId moved;
+		byte[] data = BufferPool.fetchPage(tableFile, rowId.getPageId());
+		try {
+			synchronized(data) {
+				Page page = new Page(data);
+				int slot = rowId.getSlot();
+				if(slot >= page.getSlotCount() || page.isDeleted(slot) || (page.getFlags(slot) & Page.MOVED) != 0)
+					return null;
+				if((page.getFlags(slot) & Page.FORWARD) == 0)
+					return page.getRow(slot);
+				moved = page.getLinkedRowId(slot);
+			}
+		}
+		finally {
+			BufferPool.unpinPage(tableFile, rowId.getPageId(), false);
+		}
+		
+		data = BufferPool.fetchPage(tableFile, moved.getPageId());
+		try {
+			synchronized(data) {
+				Page page = new Page(data);
+				int slot = moved.getSlot();
+				if(slot >= page.getSlotCount() || page.isDeleted(slot) || (page.getFlags(slot) & Page.MOVED) == 0 || !page.getLinkedRowId(slot).equals(rowId))
+					return null;
+				return page.getRow(slot);
+			}
+		}
+		finally {
+			BufferPool.unpinPage(tableFile, moved.getPageId(), false);
+		}
+	}
+	
+	//Copy of the page taken under its latch, for reading while writers change it
+	public static Page readPage(File tableFile, int pageId) throws IOException {
 		
-		try(FileWriter writer = new FileWriter(tableFile,true)) {
-			writer.write(row + "\n");
-			System.out.println(Color.GREEN + "\nRow inserted in '" + tableName + "' successfully" + Color.RESET);
+		byte[] data = BufferPool.fetchPage(tableFile, pageId);
+		try {
+			synchronized(data) {
+				return new Page(data.clone());
+			}
+		}
+		finally {
+			BufferPool.unpinPage(tableFile, pageId, false);
+		}
+	}
+	
+	//Row id a scan reports for the row stored in the slot: its own, or the home slot of a MOVED record
+	public static RowId rowIdOf(Page page, int pageId, int slot) {
+		if((page.getFlags(slot) & Page.MOVED) != 0)
+			return page.getLinkedRowId(slot);
+		return new RowId(pageId, slot);
+	}
+	
+	//Makes the statement durable, unless it runs in a transaction, which waits for the log once when it commits
+	private static void commit() throws IOException {
+		if(TransactionManager.current() == null)
+			WriteAheadLog.commit();
+	}
+	
+	
+	
+	
+	//ROLLBACK of one change of a transaction: the slots it wrote get their old bytes back, newest first,
+	//then the index entries of the row follow. The table is locked by the transaction.
+	//rowId has the slot -1 for a page added by a bulk insert, which is emptied
+	static void undoChange(String tableName, RowId rowId, List<String> before, List<TransactionManager.SlotImage> slots) throws IOException {
+		
+		TableSchema schema = MetaManager.getSchema(tableName);
+		if(schema == null)
+			throw new IOException("Table '" + tableName + "' does not exist");
+		File tableFile = getTableFile(tableName);
+		List<DataType> types = schema.getColumnTypes();
+		
+		List<List<String>> rows = new ArrayList<>();
+		List<RowId> rowIds = new ArrayList<>();
+		if(rowId.getSlot() < 0) {
+			Page page = readPage(tableFile, rowId.getPageId());
+			for(int slot=0;slot<page.getSlotCount();slot++) {
+				byte[] record = page.getRow(slot);
+				if(record != null) {
+					rows.add(RowCodec.decode(record, types));
+					rowIds.add(rowIdOf(page, rowId.getPageId(), slot));
+				}
+			}
+		}
+		else {
+			byte[] record = readRecord(tableFile, rowId);
+			if(record != null) {
+				rows.add(RowCodec.decode(record, types));
+				rowIds.add(rowId);
+			}
+		}
+		
+		for(int i=slots.size()-1;i>=0;i--)
+			restoreSlot(slots.get(i));
+		for(int i=0;i<rows.size();i++)
+			IndexManager.deleteEntries(schema, rows.get(i), rowIds.get(i));
+		if(before != null)
+			IndexManager.insertEntries(schema, before, rowId);
+	}
+	
+	//Writes back what the slot held, logged like any change so a replay redoes it
+	private static void restoreSlot(TransactionManager.SlotImage image) throws IOException {
+		
+		File tableFile = image.getFile();
+		int pageId = image.getPageId();
+		int slot = image.getSlot();
+		Page page = new Page(BufferPool.fetchPage(tableFile, pageId));
+		try {
+			if(image.isNewPage()) {
+				byte[] empty = new Page().getData();
+				long lsn = WriteAheadLog.logPageImage(tableFile, pageId, empty);
+				synchronized(page.getData()) {
+					System.arraycopy(empty, 0, page.getData(), 0, empty.length);
+					page.setLsn(lsn);
+				}
+			}
+			else if(image.getRecord() == null) {
+				if(slot < page.getSlotCount() && !page.isDeleted(slot)) {
+					long lsn = WriteAheadLog.logDelete(tableFile, pageId, slot);
+					synchronized(page.getData()) {
+						page.deleteRecord(slot);
+						page.setLsn(lsn);
+					}
+				}
+			}
+			else {
+				if(!page.canSet(slot, image.getRecord().length))
+					throw new IOException("Old record does not fit in page " + pageId + " of " + tableFile.getPath());
+				long lsn = WriteAheadLog.logUpdate(tableFile, pageId, slot, image.getFlags(), image.getRecord());
+				synchronized(page.getData()) {
+					page.setRecord(slot, image.getRecord(), image.getFlags());
+					page.setLsn(lsn);
+				}
+			}
+		}
+		finally {
+			BufferPool.unpinPage(tableFile, pageId, true);
+		}
+		FreeSpaceMap.update(tableFile, pageId, page.getUsableSpace());
+	}
+	
+	
+	
+	
+	//DELETE: turns the slots of the rows into tombstones and removes their index entries.
+	//Only the pages holding the rows are written
+	public static boolean deleteRows(String tableName, List<RowId> rowIds, List<List<String>> rows) {
+		
+		if(!LockManager.lockWrite(tableName))
+			return false;
+		try {
+			return deleteRowsLocked(tableName, rowIds, rows);
+		}
+		finally {
+			LockManager.unlockWrite(tableName);
+		}
+	}
+	
+	private static boolean deleteRowsLocked(String tableName, List<RowId> rowIds, List<List<String>> rows) {
+		
+		TableSchema schema = MetaManager.getSchema(tableName);
+		if(schema == null)
+			return false;
+		if(schema.isColumnar())
+			return ColumnStore.delete(schema, rowIds);
+		
+		File tableFile = getTableFile(tableName);
+		try {
+			for(int i=0;i<rowIds.size();i++) {
+				TransactionManager.startChange(tableName, rowIds.get(i), rows.get(i), -1, true);
+				deleteRow(tableFile, rowIds.get(i));
+				IndexManager.deleteEntries(schema, rows.get(i), rowIds.get(i));
+			}
+			commit();
 			return true;
 		}
-		catch(IOException e) {
-			System.err.println(Color.RED + "\nError writing to table file: " + e.getMessage() + Color.RESET);
+		catch(IOException | RuntimeException e) {
+			Messages.error("Error deleting the rows: " + e.getMessage());
 			return false;
 		}
 	}
-
+	
+	private static void deleteRow(File tableFile, RowId rowId) throws IOException {
+		
+		RowId moved = null;
+		Page page = new Page(BufferPool.fetchPage(tableFile, rowId.getPageId()));
+		try {
+			if(page.isDeleted(rowId.getSlot()))
+				throw new IOException("Row " + rowId + " was already deleted");
+			if((page.getFlags(rowId.getSlot()) & Page.FORWARD) != 0)
+				moved = page.getLinkedRowId(rowId.getSlot());
+		}
+		finally {
+			BufferPool.unpinPage(tableFile, rowId.getPageId(), false);
+		}
+		
+		if(moved != null)
+			deleteRecord(tableFile, moved.getPageId(), moved.getSlot());
+		deleteRecord(tableFile, rowId.getPageId(), rowId.getSlot());
+	}
+	
+	
+	
+	
+	//UPDATE: rewrites the rows where they are, the row ids don't change so only the entries
+	//of the changed indexed columns are updated. A row that doesn't fit in its page anymore is
+	//moved to another page and its slot forwards to it.
+	//Every new row is checked before anything is written
+	public static boolean updateRows(String tableName, List<RowId> rowIds, List<List<String>> oldRows, List<List<String>> newRows) {
+		
+		if(!LockManager.lockWrite(tableName))
+			return false;
+		try {
+			return updateRowsLocked(tableName, rowIds, oldRows, newRows);
+		}
+		finally {
+			LockManager.unlockWrite(tableName);
+		}
+	}
+	
+	private static boolean updateRowsLocked(String tableName, List<RowId> rowIds, List<List<String>> oldRows, List<List<String>> newRows) {
+		
+		TableSchema schema = MetaManager.getSchema(tableName);
+		if(schema == null)
+			return false;
+		if(schema.isColumnar())
+			return ColumnStore.update(schema, rowIds, newRows);
+		
+		List<byte[]> records = new ArrayList<>();
+		for(List<String> row: newRows) {
+			for(IndexInfo index: schema.getIndexes()) {
+				Column column = schema.getColumn(index.getColumnName());
+				if(column.getType() == DataType.TEXT && row.get(column.getIndex()).getBytes(StandardCharsets.UTF_8).length > BPlusTree.MAX_KEY_SIZE) {
+					Messages.error("Error: Value of indexed column '" + column.getName() + "' is longer than " + BPlusTree.MAX_KEY_SIZE + " bytes");
+					return false;
+				}
+			}
+			byte[] record = RowCodec.encode(row, schema.getColumnTypes());
+			if(record.length + Page.ROW_ID_SIZE > Page.MAX_RECORD_SIZE) {
+				Messages.error("Error: Row is too large to fit in a page (" + record.length + " bytes)");
+				return false;
+			}
+			records.add(record);
+		}
+		
+		File tableFile = getTableFile(tableName);
+		try {
+			for(int i=0;i<rowIds.size();i++) {
+				TransactionManager.startChange(tableName, rowIds.get(i), oldRows.get(i), 0, true);
+				updateRow(tableFile, rowIds.get(i), records.get(i));
+				IndexManager.updateEntries(schema, oldRows.get(i), newRows.get(i), rowIds.get(i));
+			}
+			commit();
+			return true;
+		}
+		catch(IOException | RuntimeException e) {
+			Messages.error("Error updating the rows: " + e.getMessage());
+			return false;
+		}
+	}
+	
+	private static void updateRow(File tableFile, RowId rowId, byte[] record) throws IOException {
+		
+		RowId moved = null;
+		boolean fitsHome;
+		Page page = new Page(BufferPool.fetchPage(tableFile, rowId.getPageId()));
+		try {
+			if(page.isDeleted(rowId.getSlot()))
+				throw new IOException("Row " + rowId + " was deleted");
+			if((page.getFlags(rowId.getSlot()) & Page.FORWARD) != 0)
+				moved = page.getLinkedRowId(rowId.getSlot());
+			fitsHome = page.canSet(rowId.getSlot(), record.length);
+		}
+		finally {
+			BufferPool.unpinPage(tableFile, rowId.getPageId(), false);
+		}
+		
+		//in place, or back home when the page has room again
+		if(fitsHome) {
+			setRecord(tableFile, rowId.getPageId(), rowId.getSlot(), record, 0);
+			if(moved != null)
+				deleteRecord(tableFile, moved.getPageId(), moved.getSlot());
+			return;
+		}
+		
+		byte[] movedRecord = new byte[Page.ROW_ID_SIZE + record.length];
+		System.arraycopy(Page.rowIdBytes(rowId), 0, movedRecord, 0, Page.ROW_ID_SIZE);
+		System.arraycopy(record, 0, movedRecord, Page.ROW_ID_SIZE, record.length);
+		
+		if(moved != null && fits(tableFile, moved, movedRecord.length)) {
+			setRecord(tableFile, moved.getPageId(), moved.getSlot(), movedRecord, Page.MOVED);
+			return;
+		}
+		
+		//the new copy is written before the stub points to it
+		RowId target = placeRecord(tableFile, movedRecord.length, rowId.getPageId());
+		setRecord(tableFile, target.getPageId(), target.getSlot(), movedRecord, Page.MOVED);
+		setRecord(tableFile, rowId.getPageId(), rowId.getSlot(), Page.rowIdBytes(target), Page.FORWARD);
+		if(moved != null)
+			deleteRecord(tableFile, moved.getPageId(), moved.getSlot());
+	}
+	
+	private static boolean fits(File tableFile, RowId rowId, int length) throws IOException {
+		
+		Page page = new Page(BufferPool.fetchPage(tableFile, rowId.getPageId()));
+		try {
+			return page.canSet(rowId.getSlot(), length);
+		}
+		finally {
+			BufferPool.unpinPage(tableFile, rowId.getPageId(), false);
+		}
+	}
+	
+	
+	
+	
+	//VACUUM: brings the moved rows back to their page when it has room again, compacts the pages
+	//holding the space of deleted or shrunk records and records the free space of every page.
+	//Returns the number of bytes made available again, -1 on error
+	public static long vacuum(String tableName) {
+		
+		if(!LockManager.lockExclusive(tableName))
+			return -1;
+		try {
+			return vacuumLocked(tableName);
+		}
+		finally {
+			LockManager.unlockExclusive(tableName);
+		}
+	}
+	
+	private static long vacuumLocked(String tableName) {
+		
+		TableSchema schema = MetaManager.getSchema(tableName);
+		if(schema == null)
+			return -1;
+		if(schema.isColumnar())
+			return ColumnStore.vacuum(schema);
+		
+		File tableFile = getTableFile(tableName);
+		long reclaimed = 0;
+		try {
+			int pageCount = BufferPool.getPageCount(tableFile);
+			for(int pageId=0;pageId<pageCount;pageId++) {
+				
+				for(int slot: forwardedSlots(tableFile, pageId)) {
+					RowId rowId = new RowId(pageId, slot);
+					byte[] record = readRecord(tableFile, rowId);
+					if(fits(tableFile, rowId, record.length))
+						updateRow(tableFile, rowId, record);
+				}
+				
+				Page page = new Page(BufferPool.fetchPage(tableFile, pageId));
+				boolean changed = false;
+				try {
+					int before = page.getFreeSpace();
+					boolean trailingTombstone = page.getSlotCount() > 0 && page.isDeleted(page.getSlotCount() - 1);
+					if(before < page.getUsableSpace() || trailingTombstone) {
+						long lsn = WriteAheadLog.logCompact(tableFile, pageId);
+						synchronized(page.getData()) {
+							page.compact();
+							page.setLsn(lsn);
+						}
+						changed = true;
+						reclaimed += page.getFreeSpace() - before;
+					}
+				}
+				finally {
+					BufferPool.unpinPage(tableFile, pageId, changed);
+				}
+				FreeSpaceMap.update(tableFile, pageId, page.getUsableSpace());
+			}
+			WriteAheadLog.commit();
+			return reclaimed;
+		}
+		catch(IOException | RuntimeException e) {
+			Messages.error("Error vacuuming table '" + tableName + "': " + e.getMessage());
+			return -1;
+		}
+	}
+	
+	private static List<Integer> forwardedSlots(File tableFile, int pageId) throws IOException {
+		
+		List<Integer> slots = new ArrayList<>();
+		Page page = new Page(BufferPool.fetchPage(tableFile, pageId));
+		try {
+			for(int slot=0;slot<page.getSlotCount();slot++) {
+				if(!page.isDeleted(slot) && (page.getFlags(slot) & Page.FORWARD) != 0)
+					slots.add(slot);
+			}
+		}
+		finally {
+			BufferPool.unpinPage(tableFile, pageId, false);
+		}
+		return slots;
+	}
+	
 	
 	
 	
@@ -106,7 +896,7 @@ public class TableManager {
 			colLengths[i] = headers.get(i).length();
 		for(List<String> row: rows) {
 			for(int i=0;i<headers.size();i++)
-				colLengths[i] = Math.max(colLengths[i], row.get(i).length());
+				colLengths[i] = Math.max(colLengths[i], text(row.get(i)).length());
 		}
 		
 		printBorder(colLengths);
@@ -117,48 +907,124 @@ public class TableManager {
 		printBorder(colLengths);
 
 	}
+	
+	//Prints the rows coming out of an operator without keeping them all in memory.
+	//The column widths are computed from the first rows, a later longer value just widens its own line.
+	//Returns the number of rows printed, nothing is printed when there are none.
+	public static long displayTable(List<String> headers, Operator rows) throws IOException {
+		
+		List<List<String>> firstRows = new ArrayList<>();
+		List<String> row;
+		while(firstRows.size() < WIDTH_SAMPLE_ROWS && (row = rows.next()) != null)
+			firstRows.add(row);
+		if(firstRows.isEmpty())
+			return 0;
+		
+		int[] colLengths = new int[headers.size()];
+		for(int i=0;i<headers.size();i++)
+			colLengths[i] = headers.get(i).length();
+		for(List<String> r: firstRows) {
+			for(int i=0;i<headers.size();i++)
+				colLengths[i] = Math.max(colLengths[i], text(r.get(i)).length());
+		}
+		
+		printBorder(colLengths);
+		printRow(headers, colLengths);
+		printBorder(colLengths);
+		for(List<String> r: firstRows)
+			printRow(r, colLengths);
+		long count = firstRows.size();
+		firstRows.clear();
+		while((row = rows.next()) != null) {
+			printRow(row, colLengths);
+			count++;
+		}
+		printBorder(colLengths);
+		return count;
+	}
+	//The lines are built in a StringBuilder and printed whole, printf per cell was most of the time of a big SELECT
 	private static void printBorder(int[] colLengths) {
 		
-		System.out.print("+");
+		StringBuilder line = new StringBuilder("+");
 		for(int len: colLengths) {
 			for(int i=0; i<len+2; i++)
-				System.out.print("-");
-			System.out.print("+");
+				line.append('-');
+			line.append('+');
 		}
-		System.out.println();
+		System.out.println(line);
 	}
 	private static void printRow(List<String> row, int[] colLengths) {
 		
-		System.out.print("|");
-		for(int i=0;i<row.size();i++)
-			System.out.printf(" %-" + colLengths[i] + "s |", row.get(i));
-		System.out.println();
+		StringBuilder line = new StringBuilder("|");
+		for(int i=0;i<row.size();i++) {
+			String value = text(row.get(i));
+			line.append(' ').append(value);
+			for(int pad=value.length(); pad<colLengths[i]; pad++)
+				line.append(' ');
+			line.append(" |");
+		}
+		System.out.println(line);
 		
 	}
+	//A null value is the missing side of a LEFT JOIN
+	private static String text(String value) {
+		return value == null ? "NULL" : value;
+	}
 	public static List<List<String>> readAllRows(String tableName) {
+		return readAllRows(tableName, null);
+	}
+	
+	//Reads every row, the row ids are added to rowIds in the same order when it isn't null
+	public static List<List<String>> readAllRows(String tableName, List<RowId> rowIds) {
+		return readRows(tableName, null, rowIds);
+	}
+	
+	//Reads the rows matching the predicate, every row when it is null
+	public static List<List<String>> readRows(String tableName, Predicate<List<String>> predicate, List<RowId> rowIds) {
+		
+		if(!LockManager.lockShared(tableName))
+			return new ArrayList<>();
+		try {
+			return readRowsLocked(tableName, predicate, rowIds);
+		}
+		finally {
+			LockManager.unlockShared(tableName);
+		}
+	}
+	
+	private static List<List<String>> readRowsLocked(String tableName, Predicate<List<String>> predicate, List<RowId> rowIds) {
 		
 		List<List<String>> rows = new ArrayList<>();
 		File tableFile = new File(table_dir + File.separator + tableName + ".tbl");
+		TableSchema schema = MetaManager.getSchema(tableName);
+		if(schema == null)
+			return rows;
 		
-		if(!tableFile.exists()) {
-			 System.err.println(Color.RED + "Error: Table file for '" + tableName + "' does not exist." + Color.RESET);
+		if(!schema.isColumnar() && !tableFile.exists()) {
+			 Messages.error("Error: Table file for '" + tableName + "' does not exist.");
 			 return rows;
 		}
 		
-		try(Scanner scanner = new Scanner(tableFile)) {
-			while(scanner.hasNextLine()) {
-				String line = scanner.nextLine().trim();
-				if(line.isEmpty()) continue;
-				
-				String[] values = line.split("\\|");
-				List<String> row = new ArrayList<>();
-				for(String val: values)
-					row.add(val);
+		//in page order, on several threads for a big table
+		Operator scan = null;
+		try {
+			scan = schema.isColumnar() ? new ColumnScanOperator(schema, null, null) : ParallelScanOperator.scan(tableFile, schema, null, null, null);
+			scan.open();
+			List<String> row;
+			while((row = scan.next()) != null) {
+				if(predicate != null && !predicate.test(row))
+					continue;
 				rows.add(row);
+				if(rowIds != null)
+					rowIds.add(scan.getRowId());
 			}
 		}
 		catch(Exception e) {
-			System.err.println(Color.RED + "Error reading the table file: " + e.getMessage() + Color.RESET);
+			Messages.error("Error reading the table file: " + e.getMessage());
+		}
+		finally {
+			if(scan != null)
+				scan.close();
 		}
 		
 		return rows;
@@ -168,15 +1034,53 @@ public class TableManager {
 	
 	
 	public static boolean dropTable(String tableName) {
+		
+		if(!LockManager.lockExclusive(tableName))
+			return false;
+		try {
+			return dropTableLocked(tableName);
+		}
+		finally {
+			LockManager.unlockExclusive(tableName);
+		}
+	}
+	
+	private static boolean dropTableLocked(String tableName) {
 
 		File tableFile = new File(table_dir + File.separator + tableName + ".tbl");
 		File metaFile = new File("data" + File.separator + "catalog" + File.separator + tableName + ".meta");
 		boolean tableDropped = true, metaDropped = true;
+		TableSchema columnar = Catalog.get(tableName);
+		if(columnar != null && columnar.isColumnar()) {
+			tableDropped = ColumnStore.drop(tableName);
+			metaDropped = !metaFile.exists() || metaFile.delete();
+			TableStats.dropped(tableName);
+			Catalog.remove(tableName);
+			PlanCache.invalidate(tableName);
+			return tableDropped && metaDropped;
+		}
+		try {
+			//the file is only deleted once the log says so, a replay can't bring the rows back
+			WriteAheadLog.flushUpTo(WriteAheadLog.logDrop(tableFile));
+		}
+		catch(IOException e) {
+			Messages.error("Error writing to the write ahead log: " + e.getMessage());
+			return false;
+		}
+		BufferPool.discardFile(tableFile);
+		FreeSpaceMap.drop(tableFile);
+		TransactionManager.forget(tableName);
+		TableSchema schema = Catalog.get(tableName);
+		if(schema != null)
+			IndexManager.dropIndexes(schema);
 		
 		if(tableFile.exists())
 			tableDropped = tableFile.delete();
 		if(metaFile.exists())
 			metaDropped = metaFile.delete();
+		TableStats.dropped(tableName);
+		Catalog.remove(tableName);
+		PlanCache.invalidate(tableName);
 		
 		return tableDropped && metaDropped;
 	}
@@ -186,15 +1090,158 @@ public class TableManager {
 	
 	public static void overWriteTable(String tableName, List<List<String>> rows) {
 		
+		if(!LockManager.lockExclusive(tableName))
+			return;
+		try {
+			overWriteTableLocked(tableName, rows);
+		}
+		finally {
+			LockManager.unlockExclusive(tableName);
+		}
+	}
+	
+	private static void overWriteTableLocked(String tableName, List<List<String>> rows) {
+		
+		TableSchema schema = MetaManager.getSchema(tableName);
+		if(schema == null)
+			return;
+		
+		File tableFile = new File(table_dir + File.separator + tableName + ".tbl");
+		try {
+			//the encoding is checked before anything is logged, a bad value leaves the table as it was
+			List<Page> pages = packPages(rows, schema.getColumnTypes());
+			
+			BufferPool.discardFile(tableFile);
+			FreeSpaceMap.drop(tableFile);
+			TransactionManager.forget(tableName);
+			WriteAheadLog.flushUpTo(WriteAheadLog.logTruncate(tableFile));
+			try(RandomAccessFile raf = new RandomAccessFile(tableFile, "rw")) {
+				raf.setLength(0);
+			}
+			for(int pageId=0;pageId<pages.size();pageId++) {
+				Page page = pages.get(pageId);
+				page.setLsn(WriteAheadLog.logPageImage(tableFile, pageId, page.getData()));
+				BufferPool.appendPage(tableFile, page.getData());
+				BufferPool.unpinPage(tableFile, pageId, true);
+				FreeSpaceMap.update(tableFile, pageId, page.getUsableSpace());
+			}
+			WriteAheadLog.commit();
+			
+			//every row may have moved, so the indexes are built again
+			IndexManager.rebuildIndexes(schema);
+		}
+		catch(IOException | IllegalArgumentException e) {
+			Messages.error("Error: " + e.getMessage());
+		}
+		
+	}
+	
+	//Packs the rows into pages, in order
+	private static List<Page> packPages(List<List<String>> rows, List<DataType> types) throws IOException {
+		
+		List<Page> pages = new ArrayList<>();
+		Page page = new Page();
+		for(List<String> row : rows) {
+			byte[] record = RowCodec.encode(row, types);
+			if(page.insertRecord(record) == -1) {
+				pages.add(page);
+				page = new Page();
+				if(page.insertRecord(record) == -1)
+					throw new IOException("Row is too large to fit in a page (" + record.length + " bytes)");
+			}
+		}
+		if(page.getSlotCount() > 0)
+			pages.add(page);
+		return pages;
+	}
+	
+	//Writes the rows straight to a new file and syncs it, used when converting a text table
+	private static void writePages(File tableFile, List<List<String>> rows, List<DataType> types) throws IOException {
+		
+		try(FileOutputStream file = new FileOutputStream(tableFile,false);
+				BufferedOutputStream out = new BufferedOutputStream(file)) {
+			for(Page page: packPages(rows, types))
+				out.write(page.getData());
+			out.flush();
+			file.getFD().sync();
+		}
+	}
+	
+	
+	
+	
+	//A .tbl file is still in the old pipe delimited text format if it doesn't start with a page header
+	public static boolean isTextTable(String tableName) {
+		
 		File tableFile = new File(table_dir + File.separator + tableName + ".tbl");
-		try(FileWriter writer = new FileWriter(tableFile,false)) {
-			for(List<String> row : rows) 
-				writer.write(String.join("|",row) + "\n");
+		if(!tableFile.exists() || tableFile.length() == 0)
+			return false;
+		
+		try(FileInputStream in = new FileInputStream(tableFile)) {
+			byte[] head = new byte[4];
+			return in.read(head) < 4 || !Page.isPage(head);
 		}
 		catch(IOException e) {
-			System.err.println(Color.RED + "Error: " + e.getMessage() + Color.RESET);
+			return false;
 		}
+	}
+	
+	
+	
+	
+	//One time upgrade of a pipe delimited text table to the paged format
+	public static boolean convertTextTable(String tableName) {
 		
+		TableSchema schema = MetaManager.getSchema(tableName);
+		if(schema == null)
+			return false;
+		List<DataType> types = schema.getColumnTypes();
+		
+		File tableFile = new File(table_dir + File.separator + tableName + ".tbl");
+		List<List<String>> rows = new ArrayList<>();
+		try(BufferedReader reader = new BufferedReader(new FileReader(tableFile))) {
+			String line;
+			int lineNo = 0;
+			while((line = reader.readLine()) != null) {
+				lineNo++;
+				line = line.trim();
+				if(line.isEmpty()) continue;
+				
+				//-1 keeps the trailing empty TEXT values
+				String[] values = line.split("\\|", -1);
+				if(values.length != types.size()) {
+					Messages.warning("Skipping line " + lineNo + " of '" + tableName + "': expected " + types.size() + " values");
+					continue;
+				}
+				List<String> row = new ArrayList<>();
+				for(String val: values)
+					row.add(val);
+				rows.add(row);
+			}
+		}
+		catch(IOException e) {
+			Messages.error("Error reading the text table '" + tableName + "': " + e.getMessage());
+			return false;
+		}
+		
+		//write next to the old file first so a failure never loses the table
+		File tmpFile = new File(table_dir + File.separator + tableName + ".tbl.tmp");
+		try {
+			writePages(tmpFile, rows, types);
+		}
+		catch(IOException | IllegalArgumentException e) {
+			Messages.error("Error converting table '" + tableName + "': " + e.getMessage());
+			tmpFile.delete();
+			return false;
+		}
+		
+		BufferPool.discardFile(tableFile);
+		if(!tableFile.delete() || !tmpFile.renameTo(tableFile)) {
+			Messages.error("Error replacing the table file of '" + tableName + "'");
+			return false;
+		}
+		Messages.info("Converted table '" + tableName + "' to the paged format (" + rows.size() + " rows)");
+		return true;
 	}
 	
 }
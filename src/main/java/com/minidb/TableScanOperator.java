@@ -0,0 +1,180 @@
+package com.minidb;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.function.Predicate;
+
+//Reads every row of a table, one page at a time.
+//Only the rows of the current page are kept, and no page stays pinned between two calls of next().
+//Without a snapshot a moved row is read in the page it was moved to, its FORWARD stub is skipped.
+//
+//With a snapshot the rows are the ones the snapshot sees (see TransactionManager). The page is
+//copied under its latch, then the rows of the page that have versions are read one by one and
+//walked back to the snapshot, the others are taken from the copy. Writers keep changing the
+//table meanwhile, so a moved row is read from its home slot instead, where it can't be met twice.
+//
+//The pages the buffer pool doesn't hold are read in place from the mapped table file. A WHERE
+//clause given to the scan is tested on the record bytes (see RecordView), only the rows passing
+//it are turned into Strings, and only their columns the scan returns.
+//
+//A scan can be limited to a range of pages, ParallelScanOperator runs one per range.
+public class TableScanOperator implements Operator {
+
+	private final File tableFile;
+	private final String tableName;
+	private final List<DataType> types;
+	private final TransactionManager.Snapshot snapshot;
+	private final Predicate<List<String>> predicate;
+	private final Predicate<RecordView> recordPredicate;
+	private final int[] colIndexes;
+	private final int firstPage;
+	private final int endPage;
+	private final RecordView record;
+
+	private int pageCount;
+	private int nextPageId;
+	private final List<List<String>> pageRows = new ArrayList<>();
+	private final List<RowId> pageRowIds = new ArrayList<>();
+	private int position;
+
+	public TableScanOperator(File tableFile, TableSchema schema) {
+		this(tableFile, schema, null);
+	}
+
+	//A null snapshot reads the rows as they are
+	public TableScanOperator(File tableFile, TableSchema schema, TransactionManager.Snapshot snapshot) {
+		this(tableFile, schema, snapshot, null, null, 0, Integer.MAX_VALUE);
+	}
+
+	//Reads the rows matching where (every row when null) from firstPage up to endPage excluded, with
+	//the columns of colIndexes (every column when null). Throws IllegalArgumentException for a
+	//column of where the table doesn't have
+	public TableScanOperator(File tableFile, TableSchema schema, TransactionManager.Snapshot snapshot, Condition where, int[] colIndexes,
+			int firstPage, int endPage) {
+		this.tableFile = tableFile;
+		this.tableName = schema.getTableName();
+		this.types = schema.getColumnTypes();
+		this.snapshot = snapshot;
+		this.predicate = where == null ? null : where.predicate(schema);
+		this.recordPredicate = where == null ? null : where.recordPredicate(schema);
+		this.colIndexes = colIndexes;
+		this.firstPage = firstPage;
+		this.endPage = endPage;
+		this.record = new RecordView(types);
+	}
+
+	@Override
+	public void open() throws IOException {
+		pageCount = Math.min(endPage, BufferPool.getPageCount(tableFile));
+		nextPageId = firstPage;
+		pageRows.clear();
+		pageRowIds.clear();
+		position = 0;
+	}
+
+	@Override
+	public List<String> next() throws IOException {
+
+		while(position == pageRows.size()) {
+			if(nextPageId >= pageCount)
+				return null;
+			readPage(nextPageId++);
+		}
+		return pageRows.get(position++);
+	}
+
+	private void readPage(int pageId) throws IOException {
+
+		pageRows.clear();
+		pageRowIds.clear();
+		position = 0;
+		long stamp = BufferPool.getWriteStamp();
+		ByteBuffer mapped = BufferPool.mappedPage(tableFile, pageId);
+		if(mapped != null) {
+			try {
+				readRows(new Page(mapped), pageId);
+				if(BufferPool.getWriteStamp() == stamp)
+					return;
+			}
+			catch(RuntimeException e) {
+				if(BufferPool.getWriteStamp() == stamp)
+					throw e;
+			}
+			//a page was written back while this one was read, it may have been torn
+			pageRows.clear();
+			pageRowIds.clear();
+		}
+		readRows(TableManager.readPage(tableFile, pageId), pageId);
+	}
+
+	private void readRows(Page page, int pageId) throws IOException {
+
+		//looked up after the page was read: a change missing from the page has its version kept by now
+		NavigableMap<RowId, ?> versions = TransactionManager.pageVersions(snapshot, tableName, pageId);
+		boolean pageVisible = TransactionManager.pageVisible(snapshot, tableName, pageId);
+
+		for(int slot=0;slot<page.getSlotCount();slot++) {
+			RowId rowId = new RowId(pageId, slot);
+			if(page.isDeleted(slot) || versions.containsKey(rowId))
+				continue;  //a tombstone, or read below
+			int flags = page.getFlags(slot);
+			if((flags & Page.FORWARD) != 0) {
+				if(snapshot != null)
+					addVersioned(rowId);
+			}
+			else if((flags & Page.MOVED) != 0) {
+				if(snapshot == null)
+					addRecord(page, slot, page.getLinkedRowId(slot));
+			}
+			else if(pageVisible)
+				addRecord(page, slot, rowId);
+		}
+
+		for(RowId rowId: versions.keySet()) {
+			if(rowId.getSlot() >= 0)
+				addVersioned(rowId);
+		}
+	}
+
+	private void addRecord(Page page, int slot, RowId rowId) {
+
+		record.reset(page.getBuffer(), page.getRowOffset(slot));
+		if(recordPredicate == null || recordPredicate.test(record)) {
+			pageRows.add(record.decode(colIndexes));
+			pageRowIds.add(rowId);
+		}
+	}
+
+	//The row as the snapshot sees it, read again from the table through its home slot
+	private void addVersioned(RowId rowId) throws IOException {
+
+		byte[] bytes = TableManager.readRecord(tableFile, rowId);
+		List<String> row = TransactionManager.visible(snapshot, tableName, rowId, bytes == null ? null : RowCodec.decode(bytes, types));
+		if(row == null || predicate != null && !predicate.test(row))
+			return;
+		if(colIndexes != null) {
+			List<String> projected = new ArrayList<>(colIndexes.length);
+			for(int index: colIndexes)
+				projected.add(row.get(index));
+			row = projected;
+		}
+		pageRows.add(row);
+		pageRowIds.add(rowId);
+	}
+
+	@Override
+	public RowId getRowId() {
+		return position == 0 ? null : pageRowIds.get(position - 1);
+	}
+
+	@Override
+	public void close() {
+		pageRows.clear();
+		pageRowIds.clear();
+	}
+
+}
@@ -0,0 +1,132 @@
+package com.minidb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//Immutable schema of a table.
+//The column name to index map is built once so lookups don't scan the column list.
+public class TableSchema {
+
+	private final String tableName;
+	private final List<Column> columns;
+	private final List<String> columnNames;
+	private final List<DataType> columnTypes;
+	private final Map<String, Integer> columnIndex;
+	private final List<IndexInfo> indexes;
+	private final Column primaryKey;
+	private final boolean columnar;
+
+	public TableSchema(String tableName, List<Column> columns) {
+		this(tableName, columns, Collections.<IndexInfo>emptyList());
+	}
+
+	public TableSchema(String tableName, List<Column> columns, List<IndexInfo> indexes) {
+		this(tableName, columns, indexes, false);
+	}
+
+	//columnar for a table stored one column per file (see ColumnStore)
+	public TableSchema(String tableName, List<Column> columns, List<IndexInfo> indexes, boolean columnar) {
+
+		this.tableName = tableName;
+		this.columns = Collections.unmodifiableList(new ArrayList<>(columns));
+
+		List<String> names = new ArrayList<>();
+		List<DataType> types = new ArrayList<>();
+		Map<String, Integer> index = new HashMap<>();
+		Column pk = null;
+		for(Column column: columns) {
+			if(column.isPrimaryKey())
+				pk = column;
+			names.add(column.getName());
+			types.add(column.getType());
+			index.put(column.getName(), column.getIndex());
+		}
+		this.columnNames = Collections.unmodifiableList(names);
+		this.columnTypes = Collections.unmodifiableList(types);
+		this.columnIndex = Collections.unmodifiableMap(index);
+		this.indexes = Collections.unmodifiableList(new ArrayList<>(indexes));
+		this.primaryKey = pk;
+		this.columnar = columnar;
+	}
+
+
+
+
+	public String getTableName() {
+		return tableName;
+	}
+
+	public List<Column> getColumns() {
+		return columns;
+	}
+
+	public List<String> getColumnNames() {
+		return columnNames;
+	}
+
+	public List<DataType> getColumnTypes() {
+		return columnTypes;
+	}
+
+	public int size() {
+		return columns.size();
+	}
+
+	//Index of the column in the rows, -1 if the table has no such column
+	public int indexOf(String columnName) {
+		Integer index = columnIndex.get(columnName);
+		return index == null ? -1 : index;
+	}
+
+	public Column getColumn(String columnName) {
+		int index = indexOf(columnName);
+		return index == -1 ? null : columns.get(index);
+	}
+
+	//PRIMARY KEY column, null if the table has none
+	public Column getPrimaryKey() {
+		return primaryKey;
+	}
+
+	//Created WITH (storage = columnar)
+	public boolean isColumnar() {
+		return columnar;
+	}
+
+	public List<IndexInfo> getIndexes() {
+		return indexes;
+	}
+
+	//Index on the column, null if the column isn't indexed
+	public IndexInfo getIndexOn(String columnName) {
+		for(IndexInfo index: indexes) {
+			if(index.getColumnName().equals(columnName))
+				return index;
+		}
+		return null;
+	}
+
+
+
+
+	//Copy of the schema with one more index
+	public TableSchema withIndex(IndexInfo index) {
+		List<IndexInfo> newIndexes = new ArrayList<>(indexes);
+		newIndexes.add(index);
+		return new TableSchema(tableName, columns, newIndexes, columnar);
+	}
+
+	//Copy of the schema without the index
+	public TableSchema withoutIndex(String indexName) {
+		List<IndexInfo> newIndexes = new ArrayList<>();
+		for(IndexInfo index: indexes) {
+			if(!index.getName().equals(indexName))
+				newIndexes.add(index);
+		}
+		return new TableSchema(tableName, columns, newIndexes, columnar);
+	}
+
+}
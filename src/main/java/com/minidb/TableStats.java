@@ -0,0 +1,290 @@
+package com.minidb;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Statistics of the tables kept in memory, so a query needing only them reads no row, and the
+//statistics ANALYZE collects for the planner to estimate how many rows each step of a plan gives.
+//
+//The number of rows answers SELECT COUNT(*) FROM table.
+//A columnar table has its row count in its manifest. A row table has it counted once from the slot
+//directories of its pages, without decoding a record, then kept by its changes: every change of a
+//transaction starts with a version (see TransactionManager), which adds the rows the change adds,
+//and its rollback takes them off. A snapshot gets the count less the rows added by the changes it
+//doesn't see, from the versions of the table, so the transaction counts its own changes and the
+//others don't. The count is only taken while the table has no version, and a change made without
+//a transaction drops it, the next count reads the pages again.
+//
+//ANALYZE reads every row of a table and keeps its row count, its size in bytes and the ColumnStats
+//of each column in data/catalog/table.stats, next to its .meta file. They aren't updated as the rows
+//change: the row count is scaled by how much the table grew since, the fractions are kept as they
+//are. A table never analyzed gets rough guesses, and the planner keeps its simple rules for it.
+public class TableStats {
+
+	private static final String catalog_dir = "data" + File.separator + "catalog";
+
+	//changes of each table so far, a row count taken while the count of its table didn't move is kept
+	private static final ConcurrentMap<String, AtomicLong> changes = new ConcurrentHashMap<>();
+	//rows of a table once the changes started on it are written, guarded by TransactionManager.table()
+	private static final ConcurrentMap<String, Long> rowCounts = new ConcurrentHashMap<>();
+	//statistics of ANALYZE, read from the .stats file the first time a table is planned
+	private static final ConcurrentMap<String, Analysis> analyses = new ConcurrentHashMap<>();
+	//marks a table without a .stats file
+	private static final Analysis NONE = new Analysis(0, 0, Collections.<String, ColumnStats>emptyMap());
+
+	//What ANALYZE found in a table
+	public static class Analysis {
+
+		private final long rows;
+		private final long bytes;
+		private final Map<String, ColumnStats> columns;
+
+		Analysis(long rows, long bytes, Map<String, ColumnStats> columns) {
+			this.rows = rows;
+			this.bytes = bytes;
+			this.columns = Collections.unmodifiableMap(new LinkedHashMap<>(columns));
+		}
+
+		public long getRows() {
+			return rows;
+		}
+
+		//Size of the table files when it was analyzed
+		public long getBytes() {
+			return bytes;
+		}
+
+		//Statistics by column name
+		public Map<String, ColumnStats> getColumns() {
+			return columns;
+		}
+	}
+
+
+
+
+	//Called when a transaction starts a change of the table adding rows, or rolls it back with -rows.
+	//Under the monitor of TransactionManager.table()
+	static void changed(String tableName, int rows) {
+		changes.computeIfAbsent(tableName, name -> new AtomicLong()).incrementAndGet();
+		if(rows != 0)
+			rowCounts.computeIfPresent(tableName, (name, count) -> count + rows);
+	}
+
+	//Called when the table is dropped or rewritten, or changed without a transaction: its rows are counted again
+	static void rewritten(String tableName) {
+		changes.computeIfAbsent(tableName, name -> new AtomicLong()).incrementAndGet();
+		rowCounts.remove(tableName);
+	}
+
+	//Called when the table is dropped, a new table with its name starts without statistics
+	static void dropped(String tableName) {
+
+		analyses.remove(tableName);
+		File statsFile = statsFile(tableName);
+		if(statsFile.exists())
+			statsFile.delete();
+	}
+
+	private static long changeCount(String tableName) {
+		AtomicLong count = changes.get(tableName);
+		return count == null ? 0 : count.get();
+	}
+
+	//Rows of the table the snapshot sees, -1 when no count is kept and the table has versions: the rows
+	//must then be counted with the snapshot. The table must be locked shared
+	public static long rowCount(TableSchema schema, TransactionManager.Snapshot snapshot) throws IOException {
+
+		String tableName = schema.getTableName();
+		if(schema.isColumnar())
+			return ColumnStore.getManifest(tableName).getRowCount();
+
+		Object lock = TransactionManager.table(tableName);
+		synchronized(lock) {
+			Long rows = rowCounts.get(tableName);
+			if(rows != null)
+				return rows - TransactionManager.unseenRows(snapshot, tableName);
+		}
+
+		long stamp = changeCount(tableName);
+		if(TransactionManager.hasVersions(tableName))
+			return -1;
+		long rows = countRows(TableManager.getTableFile(tableName));
+		synchronized(lock) {
+			//a writer that started meanwhile has a version kept until the snapshots of the readers see it
+			if(TransactionManager.hasVersions(tableName) || changeCount(tableName) != stamp)
+				return -1;
+			rowCounts.put(tableName, rows);
+		}
+		return rows;
+	}
+
+	//Rows stored in the pages of the table, from their slot directories
+	private static long countRows(File tableFile) throws IOException {
+
+		long rows = 0;
+		int pageCount = BufferPool.getPageCount(tableFile);
+		for(int pageId=0;pageId<pageCount;pageId++) {
+			long stamp = BufferPool.getWriteStamp();
+			ByteBuffer mapped = BufferPool.mappedPage(tableFile, pageId);
+			if(mapped != null) {
+				try {
+					int count = new Page(mapped).getRowCount();
+					if(BufferPool.getWriteStamp() == stamp) {
+						rows += count;
+						continue;
+					}
+				}
+				catch(RuntimeException e) {
+					if(BufferPool.getWriteStamp() == stamp)
+						throw e;
+				}
+			}
+			//not mapped, or a page was written back while this one was read
+			rows += TableManager.readPage(tableFile, pageId).getRowCount();
+		}
+		return rows;
+	}
+
+
+
+
+
+	//ANALYZE: collects the statistics of the table from rows, every row of the table with all its
+	//columns, and writes them to its .stats file
+	public static Analysis analyze(TableSchema schema, Operator rows) throws IOException {
+
+		List<Column> columns = schema.getColumns();
+		ColumnStats.Collector[] collectors = new ColumnStats.Collector[columns.size()];
+		for(int i=0;i<collectors.length;i++)
+			collectors[i] = new ColumnStats.Collector(columns.get(i).getType());
+		long count = 0;
+		rows.open();
+		try {
+			List<String> row;
+			while((row = rows.next()) != null) {
+				for(int i=0;i<collectors.length;i++)
+					collectors[i].add(row.get(i));
+				count++;
+			}
+		}
+		finally {
+			rows.close();
+		}
+
+		Map<String, ColumnStats> stats = new LinkedHashMap<>();
+		for(int i=0;i<collectors.length;i++)
+			stats.put(columns.get(i).getName(), collectors[i].build());
+		Analysis analysis = new Analysis(count, size(schema), stats);
+		write(schema.getTableName(), analysis);
+		analyses.put(schema.getTableName(), analysis);
+		return analysis;
+	}
+
+	//Statistics of the last ANALYZE of the table, null if it was never analyzed
+	public static Analysis getAnalysis(String tableName) {
+
+		Analysis analysis = analyses.computeIfAbsent(tableName, TableStats::read);
+		return analysis == NONE ? null : analysis;
+	}
+
+	//Estimated rows of the table: the rows analyzed scaled by the growth of the table since, the
+	//exact count when one is kept, or the rows of its first page times its pages
+	public static double estimateRows(TableSchema schema) throws IOException {
+
+		String tableName = schema.getTableName();
+		if(schema.isColumnar())
+			return ColumnStore.getManifest(tableName).getRowCount();
+		Analysis analysis = getAnalysis(tableName);
+		long bytes = size(schema);
+		if(analysis != null && analysis.bytes > 0)
+			return (double) analysis.rows * bytes / analysis.bytes;
+		Long rows = rowCounts.get(tableName);
+		if(rows != null)
+			return rows;
+		File tableFile = TableManager.getTableFile(tableName);
+		int pageCount = BufferPool.getPageCount(tableFile);
+		return pageCount == 0 ? 0 : (double) TableManager.readPage(tableFile, 0).getRowCount() * pageCount;
+	}
+
+	//Estimated fraction of the rows of the table the condition is true for, 1 for no condition
+	public static double selectivity(TableSchema schema, Condition where) {
+		if(where == null)
+			return 1;
+		return Math.max(0, Math.min(1, where.selectivity(columns(schema.getTableName()))));
+	}
+
+	//Statistics of the columns of the table by name, empty when it was never analyzed
+	public static Map<String, ColumnStats> columns(String tableName) {
+		Analysis analysis = getAnalysis(tableName);
+		return analysis == null ? Collections.<String, ColumnStats>emptyMap() : analysis.columns;
+	}
+
+	//Bytes of the table, counting the pages added but not yet written out
+	static long size(TableSchema schema) throws IOException {
+		String tableName = schema.getTableName();
+		if(schema.isColumnar())
+			return ColumnStore.getSize(tableName);
+		return (long) BufferPool.getPageCount(TableManager.getTableFile(tableName)) * Page.PAGE_SIZE;
+	}
+
+
+
+
+	private static File statsFile(String tableName) {
+		return new File(catalog_dir + File.separator + tableName + ".stats");
+	}
+
+	//A row with the row count and the bytes of the table, then one row per column: its name, type,
+	//rows, nulls, distinct values, minimum, maximum and the bounds of its histogram, written like
+	//the rows of a SpillFile
+	private static void write(String tableName, Analysis analysis) throws IOException {
+
+		try(DataOutputStream out = SpillFile.output(statsFile(tableName))) {
+			SpillFile.writeRow(out, Arrays.asList(Long.toString(analysis.rows), Long.toString(analysis.bytes)));
+			for(Map.Entry<String, ColumnStats> entry: analysis.columns.entrySet()) {
+				ColumnStats stats = entry.getValue();
+				List<String> row = new ArrayList<>(Arrays.asList(entry.getKey(), stats.getType().name(), Long.toString(analysis.rows),
+						Long.toString(stats.getNulls()), Long.toString(stats.getDistinct()), stats.getMin(), stats.getMax()));
+				row.addAll(stats.getBounds());
+				SpillFile.writeRow(out, row);
+			}
+		}
+	}
+
+	//The statistics in the .stats file of the table, NONE without one or when it can't be read
+	private static Analysis read(String tableName) {
+
+		File statsFile = statsFile(tableName);
+		if(!statsFile.exists())
+			return NONE;
+		try(DataInputStream in = SpillFile.input(statsFile)) {
+			List<String> header = SpillFile.readRow(in);
+			Map<String, ColumnStats> columns = new LinkedHashMap<>();
+			List<String> row;
+			while((row = SpillFile.readRow(in)) != null) {
+				DataType type = DataType.fromName(row.get(1));
+				columns.put(row.get(0), new ColumnStats(type == null ? DataType.TEXT : type, Long.parseLong(row.get(2)), Long.parseLong(row.get(3)),
+						Long.parseLong(row.get(4)), row.get(5), row.get(6), row.subList(7, row.size())));
+			}
+			return new Analysis(Long.parseLong(header.get(0)), Long.parseLong(header.get(1)), columns);
+		}
+		catch(IOException | RuntimeException e) {
+			Messages.error("Error reading the statistics of '" + tableName + "': " + e.getMessage());
+			return NONE;
+		}
+	}
+
+}
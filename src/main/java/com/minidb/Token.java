@@ -0,0 +1,52 @@
+package com.minidb;
+
+//A token of a SQL statement, made by the Lexer
+public class Token {
+
+	public enum Type {
+		WORD,	//keyword or name, keywords aren't reserved
+		INT,
+		DECIMAL,	//digits with a fraction, like 1.5
+		STRING,	//text in single or double quotes, without the quotes
+		SYMBOL,	//( ) , ; * = != <> < <= > >= - ? .
+		END
+	}
+
+	private final Type type;
+	private final String text;
+	private final int position;
+
+	public Token(Type type, String text, int position) {
+		this.type = type;
+		this.text = text;
+		this.position = position;
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	public String getText() {
+		return text;
+	}
+
+	//Offset of the token in the statement
+	public int getPosition() {
+		return position;
+	}
+
+	//Whether the token is the keyword, in any case
+	public boolean is(String keyword) {
+		return type == Type.WORD && text.equalsIgnoreCase(keyword);
+	}
+
+	public boolean isSymbol(String symbol) {
+		return type == Type.SYMBOL && text.equals(symbol);
+	}
+
+	@Override
+	public String toString() {
+		return type == Type.END ? "end of statement" : "'" + text + "'";
+	}
+
+}
@@ -0,0 +1,53 @@
+package com.minidb;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+//A transaction of a Connection: the changes it made, so they can be rolled back, and the
+//snapshot its statements read. Started by BEGIN, or around a single statement outside of one.
+//It runs one statement at a time, its statements and its end can run on different threads
+public class Transaction {
+
+	private final long id;
+	private final boolean explicit;
+
+	//null until the first statement reads or changes a row
+	TransactionManager.Snapshot snapshot;
+	//order of the commit among the committed transactions, 0 while it isn't committed
+	volatile long commitCsn;
+
+	//changes in the order they were made, the last one collects the slots being written
+	final List<TransactionManager.Change> changes = new ArrayList<>();
+	//tables locked for writing until the transaction ends, and the owner of their locks (see LockManager)
+	final Set<String> lockedTables = new LinkedHashSet<>();
+	Object lockOwner;
+	//the write ahead log holds undo records of this transaction
+	boolean logged;
+	boolean ended;
+
+	Transaction(long id, boolean explicit) {
+		this.id = id;
+		this.explicit = explicit;
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	//Started by BEGIN, not for a single statement
+	public boolean isExplicit() {
+		return explicit;
+	}
+
+	public boolean isEnded() {
+		return ended;
+	}
+
+	@Override
+	public String toString() {
+		return "transaction " + id;
+	}
+
+}
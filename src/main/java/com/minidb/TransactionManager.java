@@ -0,0 +1,541 @@
+package com.minidb;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+//Transactions and the versions of the rows they change, for snapshot isolation.
+//
+//The table pages hold the newest version of every row, changed in place as before. Before a
+//transaction changes a row, the row as it was (null if it didn't exist) is kept here in memory
+//with the transaction that changed it: the versions of a row make a chain from the newest to the
+//oldest. A reader has a snapshot, the commits done when its transaction first read or changed a
+//row. It reads the row in the page then walks back the chain past the changes it doesn't see, so
+//it gets the row as it was when the snapshot was taken without taking a lock: writers don't wait
+//for the readers and the readers don't wait for the writers. A version is dropped once every
+//snapshot in use sees the transaction that made it.
+//
+//The writers of a table run one at a time (see LockManager) and a transaction keeps the tables it
+//changed locked until it ends. Updating or deleting a row changed by a transaction that committed
+//after the snapshot was taken fails: the first to commit wins.
+//
+//The old bytes of every slot a change writes are kept with it, and logged as UNDO records before
+//the slot is written. ROLLBACK, or a statement failing in the middle, writes them back newest first
+//and fixes the indexes. After a crash the replay of the log does the same for the transactions
+//that have no END record (see WriteAheadLog).
+//
+//The Connection attaches its transaction to the thread running a statement, and the managers
+//find it with current(). The next statement, or the COMMIT, can run on another thread: the table
+//locks of the transaction belong to the connection, not to the thread.
+public class TransactionManager {
+
+	private static final AtomicLong nextId = new AtomicLong(1);
+	private static final Object commitLock = new Object();
+	//order of the last commit
+	private static volatile long lastCsn = 0;
+
+	//snapshots in use, by transactions and by the rows of open queries
+	private static final Set<Snapshot> snapshots = ConcurrentHashMap.newKeySet();
+	//committed transactions whose versions are still kept, in commit order
+	private static final Queue<Transaction> committed = new ConcurrentLinkedQueue<>();
+	private static final ReentrantLock pruneLock = new ReentrantLock();
+
+	//newest version of the changed rows, by table. The slot -1 of a page is the page added whole by a bulk insert
+	private static final ConcurrentMap<String, ConcurrentSkipListMap<RowId, Version>> versions = new ConcurrentHashMap<>();
+
+	private static final ThreadLocal<Transaction> current = new ThreadLocal<>();
+
+
+
+
+	//The commits a reader sees: those done before the snapshot was taken, and the changes of its own transaction
+	public static class Snapshot {
+
+		private final Transaction owner;
+		//-1 until the snapshot is registered
+		private volatile long csn = -1;
+
+		private Snapshot(Transaction owner) {
+			this.owner = owner;
+		}
+
+		public boolean sees(Transaction writer) {
+			if(writer == owner)
+				return true;
+			long commit = writer.commitCsn;
+			return commit != 0 && commit <= csn;
+		}
+	}
+
+	//A row as it was before a transaction changed it, before is null if the row didn't exist.
+	//rows is what the change adds to the rows of the table: 1 for an insert, -1 for a delete, 0 for
+	//an update, the rows of the page for a page added by a bulk insert
+	static class Version {
+
+		final Transaction writer;
+		final List<String> before;
+		final int rows;
+		volatile Version older;
+
+		Version(Transaction writer, List<String> before, int rows, Version older) {
+			this.writer = writer;
+			this.before = before;
+			this.rows = rows;
+			this.older = older;
+		}
+	}
+
+	//One change of a row by a transaction, with the old bytes of the slots it wrote in order
+	static class Change {
+
+		final String tableName;
+		final RowId rowId;
+		final List<String> before;
+		final int rows;
+		List<SlotImage> slots = new ArrayList<>();
+
+		Change(String tableName, RowId rowId, List<String> before, int rows) {
+			this.tableName = tableName;
+			this.rowId = rowId;
+			this.before = before;
+			this.rows = rows;
+		}
+	}
+
+	//What a slot of a page held before a change: a record with its flags, or nothing when record is null.
+	//A new page is a page added whole by a bulk insert, slot is -1
+	public static class SlotImage {
+
+		private final File file;
+		private final int pageId;
+		private final int slot;
+		private final int flags;
+		private final byte[] record;
+		private final boolean newPage;
+
+		public SlotImage(File file, int pageId, int slot, int flags, byte[] record, boolean newPage) {
+			this.file = file;
+			this.pageId = pageId;
+			this.slot = slot;
+			this.flags = flags;
+			this.record = record;
+			this.newPage = newPage;
+		}
+
+		public File getFile() {
+			return file;
+		}
+
+		public int getPageId() {
+			return pageId;
+		}
+
+		public int getSlot() {
+			return slot;
+		}
+
+		public int getFlags() {
+			return flags;
+		}
+
+		public byte[] getRecord() {
+			return record;
+		}
+
+		public boolean isNewPage() {
+			return newPage;
+		}
+	}
+
+
+
+
+	//A new transaction, explicit when it was started by BEGIN
+	public static Transaction begin(boolean explicit) {
+		return new Transaction(nextId.getAndIncrement(), explicit);
+	}
+
+	//Transaction of the statement this thread runs, null when the managers are called without one
+	public static Transaction current() {
+		return current.get();
+	}
+
+	//Set by the Connection while it runs a statement of the transaction, null to detach it
+	static void attach(Transaction tx) {
+		if(tx == null)
+			current.remove();
+		else
+			current.set(tx);
+	}
+
+	//Locks the table for writing until the transaction ends, false with an error if it timed out
+	public static boolean lockTable(Transaction tx, String tableName) {
+
+		if(tx.lockedTables.contains(tableName))
+			return true;
+		if(!LockManager.lockWrite(tableName))
+			return false;
+		tx.lockOwner = LockManager.owner();
+		tx.lockedTables.add(tableName);
+		return true;
+	}
+
+	//The snapshot of the transaction, taken the first time it is needed
+	public static Snapshot snapshot(Transaction tx) {
+
+		if(tx.snapshot == null)
+			tx.snapshot = register(new Snapshot(tx), -1);
+		return tx.snapshot;
+	}
+
+	//A snapshot for the rows of a query, the one of the transaction of this thread. It stays in use until
+	//closeSnapshot(), so the rows can still be read after the transaction ended.
+	//Null when no transaction runs, the rows are then read as they are
+	public static Snapshot openSnapshot() {
+
+		Transaction tx = current.get();
+		if(tx == null)
+			return null;
+		return register(new Snapshot(tx), snapshot(tx).csn);
+	}
+
+	public static void closeSnapshot(Snapshot snapshot) {
+		if(snapshot != null && snapshots.remove(snapshot))
+			prune();
+	}
+
+	private static Snapshot register(Snapshot snapshot, long csn) {
+
+		snapshots.add(snapshot);
+		//set once registered, a prune running meanwhile sees -1 and keeps every version
+		snapshot.csn = csn >= 0 ? csn : lastCsn;
+		return snapshot;
+	}
+
+
+
+
+	//Makes the changes durable and visible to the snapshots taken from now on, then unlocks the tables
+	public static void commit(Transaction tx) throws IOException {
+
+		if(tx.logged) {
+			try {
+				WriteAheadLog.logEnd(tx.getId());
+				WriteAheadLog.commit();
+			}
+			catch(IOException e) {
+				rollback(tx);
+				throw e;
+			}
+		}
+
+		if(!tx.changes.isEmpty()) {
+			synchronized(commitLock) {
+				long csn = lastCsn + 1;
+				tx.commitCsn = csn;
+				committed.add(tx);
+				lastCsn = csn;
+			}
+			//the old bytes are only needed to roll back
+			for(Change change: tx.changes)
+				change.slots = null;
+		}
+		end(tx);
+	}
+
+	//Undoes every change of the transaction, then unlocks the tables
+	public static void rollback(Transaction tx) throws IOException {
+
+		try {
+			rollbackTo(tx, 0);
+			if(tx.logged)
+				WriteAheadLog.logEnd(tx.getId());
+		}
+		finally {
+			end(tx);
+		}
+	}
+
+	//Position in the changes of the transaction, for rollbackTo
+	public static int savepoint(Transaction tx) {
+		return tx.changes.size();
+	}
+
+	//Undoes the changes made since the savepoint, newest first, used when a statement fails in the middle.
+	//The page is put back before its version is dropped, so a reader sees the old row either way
+	public static void rollbackTo(Transaction tx, int savepoint) throws IOException {
+
+		while(tx.changes.size() > savepoint) {
+			Change change = tx.changes.get(tx.changes.size() - 1);
+			TableManager.undoChange(change.tableName, change.rowId, change.before, change.slots);
+			ConcurrentSkipListMap<RowId, Version> table = table(change.tableName);
+			synchronized(table) {
+				table.computeIfPresent(change.rowId, (rowId, newest) -> newest.writer == tx ? newest.older : newest);
+				TableStats.changed(change.tableName, -change.rows);
+			}
+			tx.changes.remove(tx.changes.size() - 1);
+		}
+	}
+
+	private static void end(Transaction tx) {
+
+		tx.ended = true;
+		//the owner of the locks, the thread ending the transaction may be another one
+		for(String tableName: tx.lockedTables)
+			LockManager.unlockWrite(tableName, tx.lockOwner);
+		tx.lockedTables.clear();
+		if(tx.snapshot != null)
+			snapshots.remove(tx.snapshot);
+		prune();
+	}
+
+	//Drops the versions made by the transactions every snapshot in use sees, and the older ones with them
+	private static void prune() {
+
+		if(!pruneLock.tryLock())
+			return;  //the running prune does it
+		try {
+			//read before the snapshots, a snapshot registered after it sees at least this commit
+			long oldest = lastCsn;
+			for(Snapshot snapshot: snapshots)
+				oldest = Math.min(oldest, snapshot.csn);
+
+			Transaction tx;
+			while((tx = committed.peek()) != null && tx.commitCsn <= oldest) {
+				committed.poll();
+				for(Change change: tx.changes)
+					dropVersions(change.tableName, change.rowId, tx);
+			}
+		}
+		finally {
+			pruneLock.unlock();
+		}
+	}
+
+	private static void dropVersions(String tableName, RowId rowId, Transaction tx) {
+
+		ConcurrentSkipListMap<RowId, Version> table = versions.get(tableName);
+		if(table == null)
+			return;
+		table.computeIfPresent(rowId, (id, newest) -> {
+			if(newest.writer == tx)
+				return null;
+			for(Version version = newest; version.older != null; version = version.older) {
+				if(version.older.writer == tx) {
+					version.older = null;
+					break;
+				}
+			}
+			return newest;
+		});
+	}
+
+	//Drops the versions of a table that was dropped or rewritten
+	static void forget(String tableName) {
+		versions.remove(tableName);
+		TableStats.rewritten(tableName);
+	}
+
+	//The versions of the table. Their monitor also guards the row count TableStats keeps for it:
+	//a change and its version are added, or rolled back, together
+	static ConcurrentSkipListMap<RowId, Version> table(String tableName) {
+		return versions.computeIfAbsent(tableName, name -> new ConcurrentSkipListMap<>());
+	}
+
+	//Whether rows of the table have versions: while none has, every snapshot sees the rows as the pages hold them
+	public static boolean hasVersions(String tableName) {
+		ConcurrentSkipListMap<RowId, Version> table = versions.get(tableName);
+		return table != null && !table.isEmpty();
+	}
+
+
+
+
+	//Called by TableManager before a row is changed by the transaction of this thread: keeps the row as
+	//it was for the snapshots that don't see the change, and starts collecting the slots it writes.
+	//rows is what the change adds to the rows of the table, see Version.
+	//When checkConflict is set, a row changed by a transaction the snapshot doesn't see can't be changed.
+	//Nothing is kept when no transaction runs
+	static void startChange(String tableName, RowId rowId, List<String> before, int rows, boolean checkConflict) throws IOException {
+
+		Transaction tx = current.get();
+		if(tx == null) {
+			//can't be rolled back, TableStats counts the rows again
+			TableStats.rewritten(tableName);
+			return;
+		}
+		ConcurrentSkipListMap<RowId, Version> table = table(tableName);
+		synchronized(table) {
+			if(checkConflict) {
+				Version newest = table.get(rowId);
+				if(newest != null && !snapshot(tx).sees(newest.writer))
+					throw new IOException("Could not serialize access, row " + rowId + " was changed by a transaction that committed after this one started");
+			}
+			table.compute(rowId, (id, newest) -> new Version(tx, before, rows, newest));
+			TableStats.changed(tableName, rows);
+		}
+		tx.changes.add(new Change(tableName, rowId, before, rows));
+	}
+
+	//A page added whole by a bulk insert with its rows, they are new to the transaction
+	static void startPage(String tableName, File file, int pageId, int rows) throws IOException {
+
+		Transaction tx = current.get();
+		startChange(tableName, new RowId(pageId, -1), null, rows, false);
+		if(tx != null)
+			logSlot(tx, new SlotImage(file, pageId, -1, 0, null, true));
+	}
+
+	//Called by TableManager before a slot of a pinned page is written: keeps and logs what the slot
+	//holds, for the change started last
+	static void saveSlot(File file, int pageId, int slot, Page page) throws IOException {
+
+		Transaction tx = current.get();
+		if(tx == null || tx.changes.isEmpty())
+			return;
+		if(slot < page.getSlotCount() && !page.isDeleted(slot))
+			logSlot(tx, new SlotImage(file, pageId, slot, page.getFlags(slot), page.getRecord(slot), false));
+		else
+			logSlot(tx, new SlotImage(file, pageId, slot, 0, null, false));
+	}
+
+	private static void logSlot(Transaction tx, SlotImage image) throws IOException {
+
+		//logged before the slot is written, a crash can't leave a change the replay can't undo
+		WriteAheadLog.logUndo(tx.getId(), image);
+		tx.logged = true;
+		tx.changes.get(tx.changes.size() - 1).slots.add(image);
+	}
+
+
+
+
+	//The row the snapshot sees at rowId, from the row the page holds now (null if none).
+	//A null snapshot sees the rows as they are
+	public static List<String> visible(Snapshot snapshot, String tableName, RowId rowId, List<String> current) {
+
+		if(snapshot == null)
+			return current;
+		ConcurrentSkipListMap<RowId, Version> table = versions.get(tableName);
+		if(table == null || table.isEmpty())
+			return current;
+
+		List<String> row = current;
+		Version version = table.get(rowId);
+		while(version != null && !snapshot.sees(version.writer)) {
+			row = version.before;
+			version = version.older;
+		}
+		//the oldest row known was there from the start, unless its page was bulk inserted since
+		if(version == null && row != null && !pageVisible(snapshot, table, rowId.getPageId()))
+			return null;
+		return row;
+	}
+
+	//Whether the rows bulk inserted in the page are there for the snapshot
+	public static boolean pageVisible(Snapshot snapshot, String tableName, int pageId) {
+
+		if(snapshot == null)
+			return true;
+		ConcurrentSkipListMap<RowId, Version> table = versions.get(tableName);
+		return table == null || pageVisible(snapshot, table, pageId);
+	}
+
+	private static boolean pageVisible(Snapshot snapshot, ConcurrentSkipListMap<RowId, Version> table, int pageId) {
+		Version page = table.get(new RowId(pageId, -1));
+		return page == null || snapshot.sees(page.writer);
+	}
+
+	//Rows the snapshot doesn't see in the rows the table holds: what the changes of the transactions it
+	//doesn't see add, newest first along each row until a change it sees. Called under the monitor of table()
+	static long unseenRows(Snapshot snapshot, String tableName) {
+
+		long rows = 0;
+		ConcurrentSkipListMap<RowId, Version> table = snapshot == null ? null : versions.get(tableName);
+		if(table != null) {
+			for(Version newest: table.values()) {
+				for(Version version = newest; version != null && !snapshot.sees(version.writer); version = version.older)
+					rows += version.rows;
+			}
+		}
+		return rows;
+	}
+
+	//Row ids of the page with versions, the slot -1 when the page was bulk inserted. Empty for a null snapshot
+	public static NavigableMap<RowId, ?> pageVersions(Snapshot snapshot, String tableName, int pageId) {
+
+		ConcurrentSkipListMap<RowId, Version> table = snapshot == null ? null : versions.get(tableName);
+		if(table == null)
+			return Collections.emptyNavigableMap();
+		return table.subMap(new RowId(pageId, -1), true, new RowId(pageId + 1, -1), false);
+	}
+
+	//Row ids of the rows changed by a transaction the snapshot doesn't see: it may see rows there
+	//under values the indexes no longer point to
+	public static List<RowId> changedRows(Snapshot snapshot, String tableName) {
+
+		List<RowId> rowIds = new ArrayList<>();
+		ConcurrentSkipListMap<RowId, Version> table = snapshot == null ? null : versions.get(tableName);
+		if(table != null) {
+			for(Map.Entry<RowId, Version> entry: table.entrySet()) {
+				if(entry.getKey().getSlot() >= 0 && !snapshot.sees(entry.getValue().writer))
+					rowIds.add(entry.getKey());
+			}
+		}
+		return rowIds;
+	}
+
+
+
+
+	//An operator that stops using its snapshot when it is closed, for the rows of a SELECT
+	public static class SnapshotScan implements Operator {
+
+		private final Operator child;
+		private Snapshot snapshot;
+
+		public SnapshotScan(Operator child, Snapshot snapshot) {
+			this.child = child;
+			this.snapshot = snapshot;
+		}
+
+		@Override
+		public void open() throws IOException {
+			child.open();
+		}
+
+		@Override
+		public List<String> next() throws IOException {
+			return child.next();
+		}
+
+		@Override
+		public RowId getRowId() {
+			return child.getRowId();
+		}
+
+		@Override
+		public void close() {
+			try {
+				child.close();
+			}
+			finally {
+				closeSnapshot(snapshot);
+				snapshot = null;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,31 @@
+package com.minidb;
+
+import java.util.Iterator;
+import java.util.List;
+
+//Returns rows that are already in memory, like the rows of SHOW and DESC
+public class ValuesOperator implements Operator {
+
+	private final List<List<String>> rows;
+	private Iterator<List<String>> it;
+
+	public ValuesOperator(List<List<String>> rows) {
+		this.rows = rows;
+	}
+
+	@Override
+	public void open() {
+		it = rows.iterator();
+	}
+
+	@Override
+	public List<String> next() {
+		return it.hasNext() ? it.next() : null;
+	}
+
+	@Override
+	public void close() {
+		it = null;
+	}
+
+}
@@ -0,0 +1,658 @@
+package com.minidb;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+//Redo log of the changes made to the table pages, stored in data/wal.log.
+//A change is appended to the log before the page is changed in the buffer pool, and the
+//buffer pool never writes a page whose log records are not on the disk yet. A statement is
+//durable once commit() returns, the pages themselves are written later.
+//
+//  header : magic(4) firstLsn(8)
+//  record : length(4) crc(4) lsn(8) type(1) path(UTF) then the data of the type
+//    INSERT     pageId(4) length(4) record                   a record added to a page
+//    UPDATE     pageId(4) slot(2) flags(2) length(4) record  a slot given a new record
+//    DELETE     pageId(4) slot(2)                            a slot turned into a tombstone
+//    COMPACT    pageId(4)                                    a page compacted by VACUUM
+//    PAGE_IMAGE pageId(4) page(4096)                         a whole page written when a table is rewritten
+//    TRUNCATE                                                the file was created or emptied
+//    DROP                                                    the file was deleted
+//    UNDO       txId(8) pageId(4) slot(4) kind(1) [flags(2) length(4) record]
+//                                     what a slot held before a transaction wrote it: kind 0 nothing,
+//                                     1 a record, 2 a page added whole (slot -1)
+//    END        txId(8)               the transaction committed or finished rolling back
+//The page changes are applied again with the same Page methods, which give the same result
+//on the same page. Then the slots written by the transactions that have no END record get their
+//old bytes back, newest first, so a transaction cut by the crash leaves nothing behind.
+//
+//Group commit: the first statement to commit becomes the leader, waits for the commit interval
+//so the statements running at the same time can append their records, then writes and fsyncs
+//the log once for all of them. The interval is set in ms with -Dminidb.wal.commitInterval (default 0,
+//the statements arriving during an fsync are still batched into the next one).
+//
+//The log is emptied by a checkpoint, which writes every dirty page and syncs the data files,
+//when it grows past -Dminidb.wal.checkpointSize MB (default 16) and on exit. It is kept while a
+//transaction that logged UNDO records runs, its records may still be needed after a crash.
+//On startup the log is replayed, a record is applied only if the LSN of the page is older.
+public class WriteAheadLog {
+
+	private static final String log_path = "data" + File.separator + "wal.log";
+	private static final String table_dir = "data" + File.separator + "tables";
+
+	private static final int MAGIC = 0xDB0A0001;
+	private static final int HEADER_SIZE = 12;
+
+	private static final byte INSERT = 1;
+	private static final byte PAGE_IMAGE = 2;
+	private static final byte TRUNCATE = 3;
+	private static final byte DROP = 4;
+	private static final byte UPDATE = 5;
+	private static final byte DELETE = 6;
+	private static final byte COMPACT = 7;
+	private static final byte UNDO = 8;
+	private static final byte END = 9;
+
+	private static final byte UNDO_EMPTY = 0;
+	private static final byte UNDO_RECORD = 1;
+	private static final byte UNDO_NEW_PAGE = 2;
+	//path of the records that aren't about a file
+	private static final File NO_FILE = new File("");
+
+	private static final long commitInterval = Long.getLong("minidb.wal.commitInterval", 0);
+	private static final long checkpointSize = Long.getLong("minidb.wal.checkpointSize", 16) * 1024 * 1024;
+
+	//lock guards the records not written yet, flushLock is held by the leader writing them
+	private static final Object lock = new Object();
+	private static final Object flushLock = new Object();
+
+	private static FileChannel channel;
+	private static ByteArrayOutputStream pending = new ByteArrayOutputStream();
+	private static long lastLsn = 0;
+	private static volatile long flushedLsn = 0;
+	private static long logSize = 0;
+	//transactions with UNDO records and no END record yet
+	private static final Set<Long> openTransactions = new HashSet<>();
+
+	private static long records = 0;
+	private static long commits = 0;
+	private static long syncs = 0;
+	private static long checkpoints = 0;
+
+
+
+
+	//Replays the log left by the last run, then empties it. Done once, when the storage is initialized
+	public static void recover() {
+
+		synchronized(flushLock) {
+			synchronized(lock) {
+				if(channel != null)
+					return;
+			}
+
+			File logFile = new File(log_path);
+			long nextLsn = 1;
+			try {
+				if(logFile.exists() && logFile.length() >= HEADER_SIZE) {
+					try {
+						nextLsn = replay(logFile);
+					}
+					catch(IOException e) {
+						//keep the log aside for inspection rather than writing over it
+						File bad = new File(log_path + ".corrupt");
+						bad.delete();
+						logFile.renameTo(bad);
+						System.err.println(Color.RED + "Error replaying the write ahead log, moved to " + bad.getPath() + ": " + e.getMessage() + Color.RESET);
+					}
+				}
+
+				RandomAccessFile raf = new RandomAccessFile(logFile, "rw");
+				synchronized(lock) {
+					channel = raf.getChannel();
+					lastLsn = nextLsn - 1;
+					flushedLsn = lastLsn;
+					resetLog();
+				}
+			}
+			catch(IOException e) {
+				System.err.println(Color.RED + "Error recovering the write ahead log: " + e.getMessage() + Color.RESET);
+			}
+		}
+	}
+
+	//Applies the records of the log to the table files, returns the next LSN to use
+	private static long replay(File logFile) throws IOException {
+
+		Set<String> touchedTables = new HashSet<>();
+		Map<String, RandomAccessFile> files = new HashMap<>();
+		//UNDO records of the transactions without an END record so far, in log order
+		Map<Long, List<TransactionManager.SlotImage>> unfinished = new LinkedHashMap<>();
+		long nextLsn;
+		int applied = 0;
+
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile)))) {
+			if(in.readInt() != MAGIC)
+				throw new IOException(log_path + " is not a log file");
+			nextLsn = in.readLong();
+
+			while(true) {
+				byte[] body;
+				try {
+					int length = in.readInt();
+					int crc = in.readInt();
+					if(length <= 0 || length > 2 * Page.PAGE_SIZE)
+						break;
+					body = new byte[length];
+					in.readFully(body);
+					if(checksum(body) != crc)
+						break;
+				}
+				catch(EOFException e) {
+					break;  //the last record was cut by the crash, it was never committed
+				}
+
+				DataInputStream record = new DataInputStream(new ByteArrayInputStream(body));
+				long lsn = record.readLong();
+				byte type = record.readByte();
+				File file = new File(record.readUTF());
+				nextLsn = Math.max(nextLsn, lsn + 1);
+
+				if(type == END) {
+					unfinished.remove(record.readLong());
+					continue;
+				}
+				String tableName = tableName(file);
+				if(type != DROP && (tableName == null || Catalog.get(tableName) == null))
+					continue;  //the table was dropped since
+				if(tableName != null)
+					touchedTables.add(tableName);
+				if(type == UNDO) {
+					long txId = record.readLong();
+					unfinished.computeIfAbsent(txId, id -> new ArrayList<>()).add(readUndo(file, record));
+				}
+				else if(redo(files, file, lsn, type, record))
+					applied++;
+			}
+
+			//the pages undone get the last LSN, a replay after a crash in the middle skips the records before
+			for(List<TransactionManager.SlotImage> images: unfinished.values()) {
+				for(int i=images.size()-1;i>=0;i--)
+					undo(files, images.get(i), nextLsn - 1);
+			}
+		}
+		finally {
+			for(RandomAccessFile raf: files.values()) {
+				raf.getFD().sync();
+				raf.close();
+			}
+		}
+
+		//index pages aren't logged, so the indexes of the tables changed since the last checkpoint are built again
+		for(String tableName: touchedTables) {
+			TableSchema schema = Catalog.get(tableName);
+			if(schema != null) {
+				BufferPool.discardFile(TableManager.getTableFile(tableName));
+				IndexManager.rebuildIndexes(schema);
+			}
+		}
+		BufferPool.flushAll();
+		BufferPool.sync();
+
+		if(applied > 0)
+			System.out.println(Color.GREEN + "Recovered " + applied + " changes from the write ahead log" + Color.RESET);
+		if(!unfinished.isEmpty())
+			System.out.println(Color.GREEN + "Rolled back " + unfinished.size() + " unfinished transaction(s)" + Color.RESET);
+		return nextLsn;
+	}
+
+	private static boolean redo(Map<String, RandomAccessFile> files, File file, long lsn, byte type, DataInputStream record) throws IOException {
+
+		BufferPool.discardFile(file);
+		if(type == DROP) {
+			RandomAccessFile raf = files.remove(file.getPath());
+			if(raf != null)
+				raf.close();
+			return file.delete();
+		}
+
+		RandomAccessFile raf = files.get(file.getPath());
+		if(raf == null) {
+			raf = new RandomAccessFile(file, "rw");
+			files.put(file.getPath(), raf);
+		}
+		if(type == TRUNCATE) {
+			raf.setLength(0);
+			return true;
+		}
+
+		int pageId = record.readInt();
+		Page page = readPage(raf, pageId);
+		if(page.getLsn() >= lsn)
+			return false;  //the page was written after this change
+
+		if(type == INSERT) {
+			byte[] bytes = new byte[record.readInt()];
+			record.readFully(bytes);
+			if(page.insertRecord(bytes) == -1)
+				throw new IOException("Record of LSN " + lsn + " does not fit in page " + pageId + " of " + file.getPath());
+		}
+		else if(type == UPDATE) {
+			int slot = record.readShort() & 0xFFFF;
+			int flags = record.readShort() & 0xFFFF;
+			byte[] bytes = new byte[record.readInt()];
+			record.readFully(bytes);
+			if(!page.setRecord(slot, bytes, flags))
+				throw new IOException("Record of LSN " + lsn + " does not fit in page " + pageId + " of " + file.getPath());
+		}
+		else if(type == DELETE)
+			page.deleteRecord(record.readShort() & 0xFFFF);
+		else if(type == COMPACT)
+			page.compact();
+		else if(type == PAGE_IMAGE) {
+			byte[] data = new byte[Page.PAGE_SIZE];
+			record.readFully(data);
+			page = new Page(data);
+		}
+		else
+			throw new IOException("Unknown log record type " + type);
+
+		page.setLsn(lsn);
+		raf.seek((long) pageId * Page.PAGE_SIZE);
+		raf.write(page.getData());
+		return true;
+	}
+
+	private static TransactionManager.SlotImage readUndo(File file, DataInputStream record) throws IOException {
+
+		int pageId = record.readInt();
+		int slot = record.readInt();
+		byte kind = record.readByte();
+		if(kind != UNDO_RECORD)
+			return new TransactionManager.SlotImage(file, pageId, slot, 0, null, kind == UNDO_NEW_PAGE);
+		int flags = record.readShort() & 0xFFFF;
+		byte[] bytes = new byte[record.readInt()];
+		record.readFully(bytes);
+		return new TransactionManager.SlotImage(file, pageId, slot, flags, bytes, false);
+	}
+
+	//Gives a slot its bytes from before an unfinished transaction wrote it
+	private static void undo(Map<String, RandomAccessFile> files, TransactionManager.SlotImage image, long lsn) throws IOException {
+
+		RandomAccessFile raf = files.get(image.getFile().getPath());
+		if(raf == null) {
+			if(!image.getFile().exists())
+				return;
+			raf = new RandomAccessFile(image.getFile(), "rw");
+			files.put(image.getFile().getPath(), raf);
+		}
+
+		int pageId = image.getPageId();
+		Page page = readPage(raf, pageId);
+		if(image.isNewPage())
+			page = new Page();
+		else if(image.getRecord() == null) {
+			if(image.getSlot() < page.getSlotCount() && !page.isDeleted(image.getSlot()))
+				page.deleteRecord(image.getSlot());
+		}
+		else if(!page.setRecord(image.getSlot(), image.getRecord(), image.getFlags()))
+			throw new IOException("Undo record does not fit in page " + pageId + " of " + image.getFile().getPath());
+
+		page.setLsn(lsn);
+		raf.seek((long) pageId * Page.PAGE_SIZE);
+		raf.write(page.getData());
+	}
+
+	//The page on the disk, or an empty page if it was never written
+	private static Page readPage(RandomAccessFile raf, int pageId) throws IOException {
+
+		long offset = (long) pageId * Page.PAGE_SIZE;
+		if(offset + Page.PAGE_SIZE > raf.length())
+			return new Page();
+		byte[] data = new byte[Page.PAGE_SIZE];
+		raf.seek(offset);
+		raf.readFully(data);
+		return Page.isPage(data) ? new Page(data) : new Page();
+	}
+
+	//Name of the table stored in the file, null if it isn't a table file
+	private static String tableName(File file) {
+		String name = file.getName();
+		if(!name.endsWith(".tbl") || file.getParentFile() == null || !file.getParentFile().getPath().equals(table_dir))
+			return null;
+		return name.substring(0, name.length() - 4);
+	}
+
+
+
+
+	//Log record of a record added to a table page, returns its LSN
+	public static long logInsert(File file, int pageId, byte[] bytes) throws IOException {
+
+		ByteArrayOutputStream body = new ByteArrayOutputStream(bytes.length + 64);
+		DataOutputStream out = new DataOutputStream(body);
+		out.writeInt(pageId);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+		return append(INSERT, file, body.toByteArray());
+	}
+
+	//Log record of a slot of a table page given a new record, returns its LSN
+	public static long logUpdate(File file, int pageId, int slot, int flags, byte[] bytes) throws IOException {
+
+		ByteArrayOutputStream body = new ByteArrayOutputStream(bytes.length + 64);
+		DataOutputStream out = new DataOutputStream(body);
+		out.writeInt(pageId);
+		out.writeShort(slot);
+		out.writeShort(flags);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+		return append(UPDATE, file, body.toByteArray());
+	}
+
+	//Log record of a record of a table page deleted, returns its LSN
+	public static long logDelete(File file, int pageId, int slot) throws IOException {
+
+		ByteArrayOutputStream body = new ByteArrayOutputStream(6);
+		DataOutputStream out = new DataOutputStream(body);
+		out.writeInt(pageId);
+		out.writeShort(slot);
+		return append(DELETE, file, body.toByteArray());
+	}
+
+	public static long logCompact(File file, int pageId) throws IOException {
+
+		ByteArrayOutputStream body = new ByteArrayOutputStream(4);
+		new DataOutputStream(body).writeInt(pageId);
+		return append(COMPACT, file, body.toByteArray());
+	}
+
+	//Log record of a whole page of a table being rewritten, returns its LSN
+	public static long logPageImage(File file, int pageId, byte[] data) throws IOException {
+
+		ByteArrayOutputStream body = new ByteArrayOutputStream(Page.PAGE_SIZE + 4);
+		DataOutputStream out = new DataOutputStream(body);
+		out.writeInt(pageId);
+		out.write(data);
+		return append(PAGE_IMAGE, file, body.toByteArray());
+	}
+
+	//Log record of a table file created or emptied. The file must not be changed on the disk before
+	//the record is flushed, or a crash could lose rows that are still only in the log
+	public static long logTruncate(File file) throws IOException {
+		return append(TRUNCATE, file, new byte[0]);
+	}
+
+	public static long logDrop(File file) throws IOException {
+		return append(DROP, file, new byte[0]);
+	}
+
+	//Log record of what a slot held before a transaction writes it, see TransactionManager
+	public static long logUndo(long txId, TransactionManager.SlotImage image) throws IOException {
+
+		byte[] bytes = image.getRecord();
+		ByteArrayOutputStream body = new ByteArrayOutputStream(bytes == null ? 17 : bytes.length + 23);
+		DataOutputStream out = new DataOutputStream(body);
+		out.writeLong(txId);
+		out.writeInt(image.getPageId());
+		out.writeInt(image.getSlot());
+		if(bytes == null)
+			out.writeByte(image.isNewPage() ? UNDO_NEW_PAGE : UNDO_EMPTY);
+		else {
+			out.writeByte(UNDO_RECORD);
+			out.writeShort(image.getFlags());
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+		synchronized(lock) {
+			openTransactions.add(txId);
+			return append(UNDO, image.getFile(), body.toByteArray());
+		}
+	}
+
+	//Log record of the end of a transaction that logged UNDO records, its changes stay after a crash
+	public static long logEnd(long txId) throws IOException {
+
+		ByteArrayOutputStream body = new ByteArrayOutputStream(8);
+		new DataOutputStream(body).writeLong(txId);
+		synchronized(lock) {
+			openTransactions.remove(txId);
+			return append(END, NO_FILE, body.toByteArray());
+		}
+	}
+
+	private static long append(byte type, File file, byte[] data) throws IOException {
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length + 64);
+		DataOutputStream out = new DataOutputStream(bytes);
+		synchronized(lock) {
+			if(channel == null)
+				throw new IOException("The write ahead log is not open");
+			long lsn = ++lastLsn;
+			out.writeLong(lsn);
+			out.writeByte(type);
+			out.writeUTF(file.getPath());
+			out.write(data);
+			byte[] body = bytes.toByteArray();
+
+			DataOutputStream log = new DataOutputStream(pending);
+			log.writeInt(body.length);
+			log.writeInt(checksum(body));
+			log.write(body);
+			records++;
+			return lsn;
+		}
+	}
+
+	private static int checksum(byte[] body) {
+		CRC32 crc = new CRC32();
+		crc.update(body, 0, body.length);
+		return (int) crc.getValue();
+	}
+
+
+
+
+	//Waits until every record appended so far is on the disk
+	public static void commit() throws IOException {
+
+		long lsn;
+		synchronized(lock) {
+			lsn = lastLsn;
+			commits++;
+		}
+
+		synchronized(flushLock) {
+			if(flushedLsn < lsn) {
+				//leader: give the other statements time to join this fsync
+				if(commitInterval > 0) {
+					try {
+						Thread.sleep(commitInterval);
+					}
+					catch(InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				write();
+			}
+		}
+
+		boolean full;
+		synchronized(lock) {
+			full = logSize > checkpointSize;
+		}
+		if(full)
+			checkpoint();
+	}
+
+	//Makes sure the records up to lsn are on the disk, the buffer pool calls it before writing a page
+	public static void flushUpTo(long lsn) throws IOException {
+
+		if(flushedLsn >= lsn)
+			return;
+		synchronized(flushLock) {
+			if(flushedLsn < lsn)
+				write();
+		}
+	}
+
+	//Writes and fsyncs the pending records, flushLock must be held
+	private static void write() throws IOException {
+
+		byte[] data;
+		long upTo;
+		synchronized(lock) {
+			if(channel == null)
+				return;
+			data = pending.toByteArray();
+			pending = new ByteArrayOutputStream();
+			upTo = lastLsn;
+		}
+
+		if(data.length > 0) {
+			ByteBuffer buffer = ByteBuffer.wrap(data);
+			while(buffer.hasRemaining())
+				channel.write(buffer);
+			channel.force(false);
+		}
+
+		synchronized(lock) {
+			logSize += data.length;
+			syncs++;
+			flushedLsn = upTo;
+		}
+	}
+
+
+
+
+	//Writes every dirty page to the data files and empties the log
+	public static void checkpoint() throws IOException {
+
+		long upTo;
+		synchronized(lock) {
+			if(channel == null)
+				return;
+			upTo = lastLsn;
+		}
+
+		BufferPool.flushAll();
+		BufferPool.sync();
+
+		synchronized(flushLock) {
+			synchronized(lock) {
+				//records appended meanwhile may belong to pages not written, they stay for the next checkpoint
+				if(lastLsn != upTo || channel == null || !openTransactions.isEmpty())
+					return;
+				resetLog();
+				checkpoints++;
+			}
+		}
+	}
+
+	//Empties the log file, keeping the next LSN in the header so the LSNs keep growing. lock must be held
+	private static void resetLog() throws IOException {
+
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(MAGIC);
+		header.putLong(lastLsn + 1);
+		header.flip();
+
+		channel.truncate(0);
+		channel.position(0);
+		while(header.hasRemaining())
+			channel.write(header);
+		channel.force(false);
+		pending = new ByteArrayOutputStream();
+		logSize = HEADER_SIZE;
+	}
+
+	//Checkpoint and close the log, used on exit
+	public static void close() {
+
+		try {
+			checkpoint();
+		}
+		catch(IOException e) {
+			System.err.println(Color.RED + "Error writing the checkpoint: " + e.getMessage() + Color.RESET);
+		}
+
+		synchronized(flushLock) {
+			synchronized(lock) {
+				if(channel == null)
+					return;
+				try {
+					channel.close();
+				}
+				catch(IOException e) {
+					System.err.println(Color.RED + "Error closing the write ahead log: " + e.getMessage() + Color.RESET);
+				}
+				channel = null;
+			}
+		}
+	}
+
+
+
+
+	//Closes the log like a crash would: no checkpoint and the records not flushed are lost.
+	//Used by the tests, the next recover() replays the log
+	static void closeWithoutCheckpoint() throws IOException {
+
+		synchronized(flushLock) {
+			synchronized(lock) {
+				if(channel != null)
+					channel.close();
+				channel = null;
+				pending = new ByteArrayOutputStream();
+				openTransactions.clear();
+			}
+		}
+	}
+
+
+
+
+	//Counters shown by SHOW WAL
+	public static List<List<String>> getStats() {
+
+		synchronized(lock) {
+			List<List<String>> stats = new ArrayList<>();
+			stats.add(stat("last lsn", lastLsn));
+			stats.add(stat("flushed lsn", flushedLsn));
+			stats.add(stat("log size (bytes)", logSize + pending.size()));
+			stats.add(stat("records", records));
+			stats.add(stat("commits", commits));
+			stats.add(stat("fsyncs", syncs));
+			stats.add(stat("checkpoints", checkpoints));
+			stats.add(stat("open transactions", openTransactions.size()));
+			stats.add(stat("commit interval (ms)", commitInterval));
+			return stats;
+		}
+	}
+
+	private static List<String> stat(String name, long value) {
+		List<String> row = new ArrayList<>();
+		row.add(name);
+		row.add(Long.toString(value));
+		return row;
+	}
+
+}
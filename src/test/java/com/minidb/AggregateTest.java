@@ -0,0 +1,153 @@
+package com.minidb;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.minidb.TestRows.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class AggregateTest {
+
+    private Connection connection;
+    private Connection other;
+
+    @BeforeEach
+    void setup() throws Exception {
+        connection = MiniDB.connect();
+        other = MiniDB.connect();
+        connection.executeUpdate("CREATE TABLE junitSales (id INT, region TEXT, amount INT)");
+        connection.executeUpdate("CREATE TABLE junitRegions (name TEXT, manager TEXT)");
+
+        // 1000 sales over 4 regions, amount = id
+        PreparedQuery sale = connection.prepare("INSERT INTO junitSales VALUES (?, ?, ?)");
+        for (int i = 0; i < 1000; i++)
+            sale.executeUpdate(i, "r" + i % 4, i);
+        connection.executeUpdate("INSERT INTO junitRegions VALUES ('r0', 'ann'), ('r1', 'bob'), ('r9', 'eve')");
+    }
+
+    @AfterEach
+    void clear() throws Exception {
+        connection.executeUpdate("DROP TABLE junitSales");
+        connection.executeUpdate("DROP TABLE junitRegions");
+        connection.close();
+        other.close();
+    }
+
+    @Test
+    void testGroupBy() throws Exception {
+        assertEquals(Arrays.asList("r0|250|124500|498|0|996", "r1|250|124750|499|1|997", "r2|250|125000|500|2|998", "r3|250|125250|501|3|999"),
+                sortedRows(connection, "SELECT region, COUNT(*), SUM(amount), AVG(amount), MIN(amount), MAX(amount) FROM junitSales GROUP BY region"));
+        assertEquals(Arrays.asList("1|r3", "2|r1", "2|r2"), sortedRows(connection, "SELECT COUNT(id), s.region FROM junitSales s WHERE id < 7 AND region > 'r0' GROUP BY s.region"),
+                "The selected columns can come in any order");
+        assertEquals(Arrays.asList("3.5|r3|r0"), sortedRows(connection, "SELECT AVG(id), MAX(region), MIN(region) FROM junitSales WHERE id < 8"));
+
+        try (ResultSet result = connection.executeQuery("SELECT region, SUM(amount) AS total FROM junitSales GROUP BY region")) {
+            assertEquals("total", result.getColumnName(2));
+            assertEquals(DataType.INT, result.getColumnType(2));
+            assertTrue(result.next());
+            assertTrue(result.getInt("total") > 0);
+        }
+
+        assertThrows(DatabaseException.class, () -> sortedRows(connection, "SELECT region, amount FROM junitSales GROUP BY region"));
+        assertThrows(DatabaseException.class, () -> sortedRows(connection, "SELECT SUM(region) FROM junitSales"));
+        assertThrows(DatabaseException.class, () -> sortedRows(connection, "SELECT * FROM junitSales GROUP BY region"));
+        assertThrows(DatabaseException.class, () -> sortedRows(connection, "SELECT COUNT(x) FROM junitSales"));
+    }
+
+    @Test
+    void testEmptyInputAndNulls() throws Exception {
+        assertEquals(Arrays.asList("0|null|null|null"), sortedRows(connection, "SELECT COUNT(*), SUM(amount), AVG(amount), MIN(region) FROM junitSales WHERE id < 0"),
+                "Without GROUP BY there is one row");
+        assertEquals(Collections.emptyList(), sortedRows(connection, "SELECT region, COUNT(*) FROM junitSales WHERE id < 0 GROUP BY region"));
+
+        // the regions without a sale have a null sale id, which COUNT and MAX skip
+        assertEquals(Arrays.asList("r0|250|250|996", "r1|250|250|997", "r9|1|0|null"),
+                sortedRows(connection, "SELECT name, COUNT(*), COUNT(s.id), MAX(s.id) FROM junitRegions r LEFT JOIN junitSales s ON s.region = r.name GROUP BY name"));
+        assertEquals(Arrays.asList("ann|124500", "bob|124750"),
+                sortedRows(connection, "SELECT manager, SUM(amount) FROM junitSales JOIN junitRegions ON name = region GROUP BY manager"));
+    }
+
+    @Test
+    void testCountFromStatistics() throws Exception {
+        assertEquals(Arrays.asList("1000"), sortedRows(connection, "SELECT COUNT(*) FROM junitSales"));
+        long reads = BufferPool.getHits() + BufferPool.getMisses();
+        assertEquals(Arrays.asList("1000|1000"), sortedRows(connection, "SELECT COUNT(*), count(*) AS n FROM junitSales"));
+        assertEquals(reads, BufferPool.getHits() + BufferPool.getMisses(), "The count is kept, no page is read again");
+
+        connection.executeUpdate("DELETE FROM junitSales WHERE id < 10");
+        connection.executeUpdate("UPDATE junitSales SET region = 'x' WHERE id < 500");
+        assertEquals(Arrays.asList("990"), sortedRows(connection, "SELECT COUNT(*) FROM junitSales"));
+
+        connection.executeUpdate("BEGIN");
+        connection.executeUpdate("INSERT INTO junitSales VALUES (2000, 'r0', 1), (2001, 'r0', 1)");
+        assertEquals(Arrays.asList("992"), sortedRows(connection, "SELECT COUNT(*) FROM junitSales"), "The transaction counts its own rows");
+        assertEquals(Arrays.asList("990"), sortedRows(other, "SELECT COUNT(*) FROM junitSales"), "Other snapshots don't");
+        connection.executeUpdate("ROLLBACK");
+        assertEquals(Arrays.asList("990"), sortedRows(connection, "SELECT COUNT(*) FROM junitSales"));
+        assertEquals(Arrays.asList("10"), sortedRows(connection, "SELECT COUNT(*) FROM junitSales WHERE id < 20"));
+
+        connection.executeUpdate("CREATE TABLE junitSalesColumns (id INT, region TEXT) WITH (storage = columnar)");
+        try {
+            connection.executeUpdate("INSERT INTO junitSalesColumns VALUES (1, 'a'), (2, 'b'), (3, 'c')");
+            connection.executeUpdate("DELETE FROM junitSalesColumns WHERE id = 2");
+            assertEquals(Arrays.asList("2"), sortedRows(connection, "SELECT COUNT(*) FROM junitSalesColumns"));
+            assertEquals(Arrays.asList("1"), sortedRows(connection, "SELECT COUNT(*) FROM junitSalesColumns WHERE region = 'c'"));
+        }
+        finally {
+            connection.executeUpdate("DROP TABLE junitSalesColumns");
+        }
+    }
+
+    @Test
+    void testCountKeptThroughTransactions() throws Exception {
+        assertEquals(Arrays.asList("1000"), sortedRows(connection, "SELECT COUNT(*) FROM junitSales"));
+        other.executeUpdate("BEGIN");
+        assertEquals(Arrays.asList("1000"), sortedRows(other, "SELECT COUNT(*) FROM junitSales"));
+
+        // deletes, updates, and inserts filling the free space then new pages
+        StringBuilder insert = new StringBuilder("INSERT INTO junitSales VALUES (1000, 'r0', 1000)");
+        for (int i = 1001; i < 1300; i++)
+            insert.append(", (").append(i).append(", 'r0', ").append(i).append(")");
+        connection.executeUpdate("BEGIN");
+        connection.executeUpdate("DELETE FROM junitSales WHERE id < 10");
+        connection.executeUpdate("UPDATE junitSales SET region = 'x' WHERE id < 500");
+        connection.executeUpdate(insert.toString());
+
+        long reads = BufferPool.getHits() + BufferPool.getMisses();
+        assertEquals(Arrays.asList("1290"), sortedRows(connection, "SELECT COUNT(*) FROM junitSales"), "The transaction counts its own changes");
+        assertEquals(Arrays.asList("1000"), sortedRows(other, "SELECT COUNT(*) FROM junitSales"), "An older snapshot doesn't");
+        connection.executeUpdate("COMMIT");
+        assertEquals(Arrays.asList("1000"), sortedRows(other, "SELECT COUNT(*) FROM junitSales"), "Nor after the commit");
+        other.executeUpdate("COMMIT");
+        assertEquals(Arrays.asList("1290"), sortedRows(other, "SELECT COUNT(*) FROM junitSales"));
+        assertEquals(reads, BufferPool.getHits() + BufferPool.getMisses(), "The count is kept, no page is read");
+
+        connection.executeUpdate("BEGIN");
+        connection.executeUpdate("DELETE FROM junitSales WHERE id >= 1000");
+        assertEquals(Arrays.asList("990"), sortedRows(connection, "SELECT COUNT(*) FROM junitSales"));
+        connection.executeUpdate("ROLLBACK");
+        assertEquals(Arrays.asList("1290"), sortedRows(connection, "SELECT COUNT(*) FROM junitSales"));
+        assertEquals(Arrays.asList("1290"), sortedRows(connection, "SELECT COUNT(id) FROM junitSales"), "The rows scanned agree");
+    }
+
+    @Test
+    void testGroupsSpillToDisk() throws Exception {
+        List<String> expected = sortedRows(connection, "SELECT id, COUNT(*), MIN(region) FROM junitSales GROUP BY id");
+        assertEquals(1000, expected.size());
+
+        connection.executeUpdate("SET WORK_MEMORY = 16");
+        try (ResultSet result = connection.executeQuery("SELECT id, COUNT(*), MIN(region) FROM junitSales GROUP BY id")) {
+            assertTrue(result.next());
+            assertTrue(new File("data/tmp").list().length > 0, "1000 groups don't fit in 16 KB");
+        }
+        String[] partitions = new File("data/tmp").list();
+        assertTrue(partitions == null || partitions.length == 0, "Partitions are deleted once the rows are closed");
+        assertEquals(expected, sortedRows(connection, "SELECT id, COUNT(*), MIN(region) FROM junitSales GROUP BY id"));
+    }
+}
@@ -0,0 +1,71 @@
+package com.minidb;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BPlusTreeTest {
+
+    private static final File testFile = new File("data/indexes/junitTree.idx");
+
+    @BeforeEach
+    void setup() {
+        StorageManager.initializeStorage();
+    }
+
+    @AfterEach
+    void clear() {
+        BufferPool.discardFile(testFile);
+        testFile.delete();
+    }
+
+    @Test
+    void testSearchAfterSplits() throws Exception {
+        BPlusTree tree = BPlusTree.create(testFile, DataType.INT);
+        // enough entries to split leaves and internal nodes
+        for (int i = 0; i < 5000; i++)
+            tree.insert((i * 7919) % 5000, new RowId(i / 100, i % 100));
+
+        for (int key = 0; key < 5000; key += 499) {
+            List<RowId> found = tree.search(key);
+            assertEquals(1, found.size(), "Key " + key + " should be found once");
+        }
+        assertTrue(tree.search(5000).isEmpty());
+    }
+
+    @Test
+    void testDuplicateKeysAndRange() throws Exception {
+        BPlusTree tree = BPlusTree.create(testFile, DataType.INT);
+        for (int i = 0; i < 1000; i++)
+            tree.insert(i % 10, new RowId(i, 0));
+
+        assertEquals(100, tree.search(3).size(), "Every duplicate should be returned");
+        assertEquals(300, tree.range(2, true, 4, true).size());
+        assertEquals(100, tree.range(2, false, 4, false).size());
+        assertEquals(200, tree.range(null, false, 2, false).size());
+        assertEquals(100, tree.range(9, true, null, false).size());
+    }
+
+    @Test
+    void testDeleteAndReopen() throws Exception {
+        BPlusTree tree = BPlusTree.create(testFile, DataType.TEXT);
+        tree.insert("andrew", new RowId(0, 0));
+        tree.insert("selena", new RowId(0, 1));
+        tree.insert("andrew", new RowId(0, 2));
+
+        assertTrue(tree.delete("andrew", new RowId(0, 0)));
+        assertFalse(tree.delete("andrew", new RowId(0, 0)), "Entry was already deleted");
+
+        BufferPool.flushFile(testFile);
+        BufferPool.discardFile(testFile);
+        BPlusTree reopened = BPlusTree.open(testFile);
+        List<RowId> found = reopened.search("andrew");
+        assertEquals(1, found.size());
+        assertEquals(new RowId(0, 2), found.get(0));
+    }
+}
@@ -0,0 +1,117 @@
+package com.minidb;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BufferPoolTest {
+
+    private static final File testFile = new File("data/tables/junitPool.tbl");
+    private int oldCapacity;
+
+    @BeforeEach
+    void setup() throws Exception {
+        StorageManager.initializeStorage();
+        oldCapacity = BufferPool.getCapacity();
+        BufferPool.setCapacity(2);
+        BufferPool.discardFile(testFile);
+        testFile.delete();
+        testFile.createNewFile();
+    }
+
+    @AfterEach
+    void clear() throws Exception {
+        BufferPool.discardFile(testFile);
+        BufferPool.setCapacity(oldCapacity);
+        testFile.delete();
+    }
+
+    private static int appendPageWithByte(byte value) throws Exception {
+        Page page = new Page();
+        page.insertRecord(new byte[] { value });
+        int pageId = BufferPool.appendPage(testFile, page.getData());
+        BufferPool.unpinPage(testFile, pageId, true);
+        return pageId;
+    }
+
+    @Test
+    void testHitsAndMisses() throws Exception {
+        int pageId = appendPageWithByte((byte) 1);
+
+        long hits = BufferPool.getHits();
+        BufferPool.fetchPage(testFile, pageId);
+        BufferPool.unpinPage(testFile, pageId, false);
+        assertEquals(hits + 1, BufferPool.getHits(), "A cached page should be a hit");
+    }
+
+    @Test
+    void testEvictionWritesDirtyPages() throws Exception {
+        appendPageWithByte((byte) 1);
+        appendPageWithByte((byte) 2);
+        appendPageWithByte((byte) 3); // evicts one of the first two
+
+        assertTrue(testFile.length() >= Page.PAGE_SIZE, "Evicted dirty page should be written to the file");
+
+        long misses = BufferPool.getMisses();
+        for (int pageId = 0; pageId < 3; pageId++) {
+            Page page = new Page(BufferPool.fetchPage(testFile, pageId));
+            assertEquals(pageId + 1, page.getRecord(0)[0]);
+            BufferPool.unpinPage(testFile, pageId, false);
+        }
+        assertTrue(BufferPool.getMisses() > misses, "Evicted pages should be read back from the file");
+    }
+
+    @Test
+    void testPinnedPagesAreNotEvicted() throws Exception {
+        int first = appendPageWithByte((byte) 1);
+        int second = appendPageWithByte((byte) 2);
+        BufferPool.fetchPage(testFile, first);
+        BufferPool.fetchPage(testFile, second);
+
+        assertThrows(IllegalStateException.class, () -> appendPageWithByte((byte) 3),
+                "Pool with every page pinned can't take a new page");
+
+        BufferPool.unpinPage(testFile, first, false);
+        BufferPool.unpinPage(testFile, second, false);
+    }
+
+    @Test
+    void testConcurrentFetchesReadPageOnce() throws Exception {
+        appendPageWithByte((byte) 1);
+        appendPageWithByte((byte) 2);
+        appendPageWithByte((byte) 3);
+        BufferPool.flushFile(testFile);
+        BufferPool.discardFile(testFile);
+
+        long misses = BufferPool.getMisses();
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Byte>> reads = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                reads.add(threads.submit(() -> {
+                    start.await();
+                    byte value = new Page(BufferPool.fetchPage(testFile, 1)).getRecord(0)[0];
+                    BufferPool.unpinPage(testFile, 1, false);
+                    return value;
+                }));
+            }
+            start.countDown();
+            for (Future<Byte> read : reads)
+                assertEquals(2, (byte) read.get(), "Every thread should see the page read from the file");
+        } finally {
+            threads.shutdown();
+        }
+        assertEquals(misses + 1, BufferPool.getMisses(), "Threads fetching a page being read should wait for it");
+    }
+}
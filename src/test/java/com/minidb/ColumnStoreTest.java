@@ -0,0 +1,129 @@
+package com.minidb;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static com.minidb.TestRows.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ColumnStoreTest {
+
+    private Connection connection;
+
+    @BeforeEach
+    void setup() throws Exception {
+        connection = MiniDB.connect();
+        connection.executeUpdate("CREATE TABLE junitColumns (id INT, city TEXT, amount INT, note TEXT) WITH (storage = columnar)");
+    }
+
+    @AfterEach
+    void clear() throws Exception {
+        connection.executeUpdate("DROP TABLE junitColumns");
+        connection.close();
+        new File("data/junitColumns.csv").delete();
+    }
+
+    @Test
+    void testCodecRoundTrip() {
+        Random random = new Random(42);
+        int[][] ints = new int[4][1000];
+        for (int i = 0; i < 1000; i++) {
+            ints[0][i] = random.nextInt();
+            ints[1][i] = 1000 + i * 3 + random.nextInt(3);
+            ints[2][i] = 7;
+            ints[3][i] = i % 2 == 0 ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+        }
+        for (int[] values : ints) {
+            ColumnCodec.Block block = ColumnCodec.decode(ByteBuffer.wrap(ColumnCodec.encodeInts(values, values.length)), DataType.INT, values.length);
+            for (int i = 0; i < values.length; i++)
+                assertEquals(Integer.toString(values[i]), block.getText(i));
+        }
+        assertTrue(ColumnCodec.encodeInts(ints[1], 1000).length < 1000, "Growing ids are delta encoded in a few bits");
+        assertTrue(ColumnCodec.encodeInts(ints[2], 1000).length < 16, "A constant takes no bits per row");
+
+        String[] cities = new String[1000], notes = new String[1000];
+        for (int i = 0; i < 1000; i++) {
+            cities[i] = i % 3 == 0 ? "Zürich" : i % 3 == 1 ? "" : "Paris";
+            notes[i] = "note " + random.nextLong();
+        }
+        for (String[] values : new String[][] { cities, notes }) {
+            ColumnCodec.Block block = ColumnCodec.decode(ByteBuffer.wrap(ColumnCodec.encodeTexts(values, values.length)), DataType.TEXT, values.length);
+            RecordView record = new RecordView(Collections.singletonList(DataType.TEXT));
+            for (int i = 0; i < values.length; i++) {
+                assertEquals(values[i], block.getText(i));
+                record.setField(0, block.getFields(), block.getOffset(i));
+                assertEquals(values[i], record.getString(0));
+            }
+        }
+        assertTrue(ColumnCodec.encodeTexts(cities, 1000).length < 300, "Repeated values are stored once");
+    }
+
+    @Test
+    void testQueriesReadOnlyTheirColumns() throws Exception {
+        // two full groups
+        try (FileWriter writer = new FileWriter("data/junitColumns.csv")) {
+            for (int i = 0; i < 2 * ColumnStore.GROUP_ROWS; i++)
+                writer.write(i + ",city" + (i % 10) + "," + (i % 100) + ",a long note that nobody reads " + i + "\n");
+        }
+        assertEquals(8192, connection.executeUpdate("LOAD DATA 'data/junitColumns.csv' INTO TABLE junitColumns"));
+
+        long before = ColumnStore.getBytesRead();
+        column(connection, "SELECT amount FROM junitColumns");
+        long oneColumn = ColumnStore.getBytesRead() - before;
+        before = ColumnStore.getBytesRead();
+        column(connection, "SELECT * FROM junitColumns");
+        long allColumns = ColumnStore.getBytesRead() - before;
+        assertTrue(oneColumn * 10 < allColumns, "Reading one small column reads " + oneColumn + " bytes of " + allColumns);
+
+        // rows in the tail
+        connection.executeUpdate("INSERT INTO junitColumns VALUES (8192, 'city0', 5, 'x'), (8193, 'city1', 6, 'y')");
+        connection.executeUpdate("INSERT INTO junitColumns VALUES (8194, 'city3', 7, 'z')");
+        assertEquals(8195, column(connection, "SELECT id FROM junitColumns").size());
+        List<String> ids = column(connection, "SELECT id FROM junitColumns WHERE city = 'city3' AND amount < 50");
+        assertEquals(411, ids.size());
+        assertEquals("3", ids.get(0));
+        assertEquals("8194", ids.get(ids.size() - 1));
+        assertEquals(Arrays.asList("8193", "8194"), column(connection, "SELECT id FROM junitColumns WHERE id > 8192"));
+        assertEquals("x", column(connection, "SELECT note FROM junitColumns WHERE note LIKE 'x%'").get(0));
+    }
+
+    @Test
+    void testChangesAndVacuum() throws Exception {
+        PreparedQuery insert = connection.prepare("INSERT INTO junitColumns VALUES (?, ?, ?, ?)");
+        for (int i = 0; i < 5000; i++)
+            insert.executeUpdate(i, "c" + (i % 4), i, "n");
+
+        assertEquals(1250, connection.executeUpdate("DELETE FROM junitColumns WHERE city = 'c0'"));
+        assertEquals(1250, connection.executeUpdate("UPDATE junitColumns SET amount = -1 WHERE city = 'c1'"));
+        assertEquals(3750, column(connection, "SELECT id FROM junitColumns").size());
+        assertEquals(1250, column(connection, "SELECT id FROM junitColumns WHERE amount = -1").size());
+        assertEquals(0, column(connection, "SELECT id FROM junitColumns WHERE city = 'c0'").size());
+
+        connection.executeUpdate("VACUUM junitColumns");
+        assertEquals(3750, column(connection, "SELECT id FROM junitColumns").size());
+        assertEquals(1250, column(connection, "SELECT id FROM junitColumns WHERE amount = -1 AND city = 'c1'").size());
+    }
+
+    @Test
+    void testUnsupportedFeatures() throws Exception {
+        assertThrows(DatabaseException.class,
+                () -> connection.executeUpdate("CREATE TABLE junitColumnsPk (id INT PRIMARY KEY) WITH (storage = columnar)"));
+        assertThrows(DatabaseException.class, () -> connection.executeUpdate("CREATE INDEX junitColumnsIdx ON junitColumns(id)"));
+
+        connection.executeUpdate("BEGIN");
+        DatabaseException e = assertThrows(DatabaseException.class,
+                () -> connection.executeUpdate("INSERT INTO junitColumns VALUES (1, 'a', 1, 'b')"));
+        assertTrue(e.getMessage().contains("inside a transaction"));
+        connection.executeUpdate("ROLLBACK");
+        assertEquals(1, connection.executeUpdate("INSERT INTO junitColumns VALUES (1, 'a', 1, 'b')"));
+    }
+}
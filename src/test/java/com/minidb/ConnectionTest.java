@@ -0,0 +1,136 @@
+package com.minidb;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConnectionTest {
+
+    private Connection connection;
+
+    @BeforeEach
+    void setup() throws Exception {
+        connection = MiniDB.connect();
+        connection.executeUpdate("CREATE TABLE junitConn (id INT PRIMARY KEY, name TEXT)");
+    }
+
+    @AfterEach
+    void clear() throws Exception {
+        connection.executeUpdate("DROP TABLE junitConn");
+        connection.close();
+        new File("data/junitConn.csv").delete();
+    }
+
+    @Test
+    void testQueryReturnsTypedValues() throws Exception {
+        assertEquals(2, connection.executeUpdate("INSERT INTO junitConn VALUES (1, 'a'), (2, 'b')"));
+
+        try (ResultSet rows = connection.executeQuery("SELECT name, id FROM junitConn WHERE id > ?", 1)) {
+            assertEquals(2, rows.getColumnCount());
+            assertEquals("name", rows.getColumnName(1));
+            assertEquals(DataType.INT, rows.getColumnType(2));
+
+            assertTrue(rows.next());
+            assertEquals("b", rows.getString("name"));
+            assertEquals(2, rows.getInt(2));
+            assertEquals(Integer.valueOf(2), rows.getObject("id"));
+            assertFalse(rows.next());
+            assertTrue(rows.isClosed(), "The rows are closed once they are all read");
+        }
+    }
+
+    @Test
+    void testUpdateCountsAndPreparedQuery() throws Exception {
+        PreparedQuery insert = connection.prepare("INSERT INTO junitConn VALUES (?, ?)");
+        assertEquals(2, insert.getParameterCount());
+        for (int i = 1; i <= 5; i++)
+            assertEquals(1, insert.executeUpdate(i, "user" + i));
+
+        assertEquals(3, connection.executeUpdate("UPDATE junitConn SET name = ? WHERE id <= ?", "x", 3));
+        assertEquals(2, connection.executeUpdate("DELETE FROM junitConn WHERE name != 'x'"));
+        assertEquals(0, connection.executeUpdate("DELETE FROM junitConn WHERE id = 99"));
+    }
+
+    @Test
+    void testErrorsAreThrownNotPrinted() throws Exception {
+        connection.executeUpdate("INSERT INTO junitConn VALUES (1, 'a')");
+
+        DatabaseException duplicate = assertThrows(DatabaseException.class,
+                () -> connection.executeUpdate("INSERT INTO junitConn VALUES (1, 'b')"));
+        assertEquals("Error: Duplicate value '1' for PRIMARY KEY 'id'", duplicate.getMessage());
+
+        assertThrows(DatabaseException.class, () -> connection.executeQuery("SELEC * FROM junitConn"));
+        assertThrows(DatabaseException.class, () -> connection.executeQuery("SELECT * FROM junitConn WHERE id = ?"),
+                "Missing parameter");
+        assertThrows(DatabaseException.class, () -> connection.executeUpdate("SELECT * FROM junitConn"));
+    }
+
+    @Test
+    void testLoadWarnings() throws Exception {
+        try (FileWriter writer = new FileWriter("data/junitConn.csv")) {
+            writer.write("1,a\nx,b\n3,c\n");
+        }
+
+        assertEquals(2, connection.executeUpdate("LOAD DATA 'data/junitConn.csv' INTO TABLE junitConn"));
+        assertEquals(1, connection.getWarnings().size());
+        assertTrue(connection.getWarnings().get(0).startsWith("Skipping row 2"));
+    }
+
+    @Test
+    void testParallelSettings() throws Exception {
+        // enough rows for the scan to be split among threads
+        try (FileWriter writer = new FileWriter("data/junitConn.csv")) {
+            for (int i = 0; i < 20000; i++)
+                writer.write(i + ",name" + i + "\n");
+        }
+        connection.executeUpdate("LOAD DATA 'data/junitConn.csv' INTO TABLE junitConn");
+
+        connection.executeUpdate("SET PARALLELISM = 4");
+        connection.executeUpdate("SET scan_order TO unordered");
+        try (ResultSet rows = connection.executeQuery("SHOW SETTINGS")) {
+            assertTrue(rows.next());
+            assertEquals("4", rows.getString(2));
+            assertTrue(rows.next());
+            assertEquals("UNORDERED", rows.getString(2));
+        }
+
+        int count = 0;
+        try (ResultSet rows = connection.executeQuery("SELECT id FROM junitConn WHERE name LIKE 'name1%'")) {
+            while (rows.next())
+                count++;
+        }
+        assertEquals(11111, count);
+        assertEquals(4110, connection.executeUpdate("UPDATE junitConn SET name = 'x' WHERE name LIKE 'name1_'"
+                + " OR name LIKE 'name1__' OR name LIKE 'name1___' OR id >= 17000"));
+        assertEquals(4110, connection.executeUpdate("DELETE FROM junitConn WHERE name = 'x'"));
+
+        assertThrows(DatabaseException.class, () -> connection.executeUpdate("SET PARALLELISM = 0"));
+        assertThrows(DatabaseException.class, () -> connection.executeUpdate("SET WORKERS = 2"));
+    }
+
+    @Test
+    void testRestrictedLoadData() throws Exception {
+        try (FileWriter writer = new FileWriter("data/junitConn.csv")) {
+            writer.write("1,a\n2,b\n");
+        }
+
+        connection.getSettings().restrictLoadData(new File("data"));
+        assertEquals(2, connection.executeUpdate("LOAD DATA 'junitConn.csv' INTO TABLE junitConn"),
+                "A relative name is read from the directory");
+        DatabaseException outside = assertThrows(DatabaseException.class,
+                () -> connection.executeUpdate("LOAD DATA '../pom.xml' INTO TABLE junitConn"));
+        assertEquals("Error: LOAD DATA can only read files in 'data'", outside.getMessage());
+        assertThrows(DatabaseException.class, () -> connection.executeUpdate(
+                "LOAD DATA '" + new File("pom.xml").getAbsolutePath() + "' INTO TABLE junitConn"));
+
+        connection.getSettings().restrictLoadData(null);
+        DatabaseException disabled = assertThrows(DatabaseException.class,
+                () -> connection.executeUpdate("LOAD DATA 'junitConn.csv' INTO TABLE junitConn"));
+        assertEquals("Error: LOAD DATA is disabled on server connections", disabled.getMessage());
+    }
+}
@@ -0,0 +1,67 @@
+package com.minidb;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HashIndexTest {
+
+    private static final File testFile = new File("data/indexes/junitHash.hidx");
+
+    @BeforeEach
+    void setup() {
+        StorageManager.initializeStorage();
+    }
+
+    @AfterEach
+    void clear() {
+        BufferPool.discardFile(testFile);
+        BufferPool.discardFile(HashIndex.directoryFile(testFile));
+        testFile.delete();
+        HashIndex.directoryFile(testFile).delete();
+    }
+
+    @Test
+    void testInsertAndSearchWithSplits() throws Exception {
+        HashIndex index = HashIndex.create(testFile, DataType.INT);
+        for (int i = 0; i < 20000; i++)
+            index.insert(i, new RowId(i / 100, i % 100));
+
+        for (int i = 0; i < 20000; i += 997) {
+            List<RowId> found = index.search(i);
+            assertEquals(1, found.size(), "Key " + i + " should be found once");
+            assertEquals(new RowId(i / 100, i % 100), found.get(0));
+        }
+        assertFalse(index.contains(20000));
+    }
+
+    @Test
+    void testReopenAndDelete() throws Exception {
+        HashIndex index = HashIndex.create(testFile, DataType.TEXT);
+        for (int i = 0; i < 3000; i++)
+            index.insert("user" + i, new RowId(i, 0));
+        assertTrue(index.delete("user42", new RowId(42, 0)));
+
+        BufferPool.flushAll();
+        BufferPool.discardFile(testFile);
+        BufferPool.discardFile(HashIndex.directoryFile(testFile));
+
+        HashIndex reopened = HashIndex.open(testFile);
+        assertTrue(reopened.contains("user2999"), "Entries should survive reopening the index");
+        assertFalse(reopened.contains("user42"), "Deleted entry should be gone");
+    }
+
+    @Test
+    void testSameKeyUsesOverflowPages() throws Exception {
+        HashIndex index = HashIndex.create(testFile, DataType.INT);
+        for (int i = 0; i < 2000; i++)
+            index.insert(7, new RowId(i, 0));
+
+        assertEquals(2000, index.search(7).size());
+    }
+}
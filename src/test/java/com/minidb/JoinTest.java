@@ -0,0 +1,135 @@
+package com.minidb;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static com.minidb.TestRows.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class JoinTest {
+
+    private Connection connection;
+
+    @BeforeEach
+    void setup() throws Exception {
+        connection = MiniDB.connect();
+        connection.executeUpdate("CREATE TABLE junitCustomers (id INT, name TEXT, city TEXT)");
+        connection.executeUpdate("CREATE TABLE junitOrders (id INT, customer INT, amount INT)");
+
+        PreparedQuery customer = connection.prepare("INSERT INTO junitCustomers VALUES (?, ?, ?)");
+        for (int i = 0; i < 100; i++)
+            customer.executeUpdate(i, "customer" + i, i % 2 == 0 ? "Paris" : "Rome");
+        // customers 0..89 have 3 orders each, 90..99 none, and one order has no customer
+        PreparedQuery order = connection.prepare("INSERT INTO junitOrders VALUES (?, ?, ?)");
+        for (int i = 0; i < 270; i++)
+            order.executeUpdate(i, i % 90, i);
+        order.executeUpdate(1000, 500, 7);
+    }
+
+    @AfterEach
+    void clear() throws Exception {
+        connection.executeUpdate("DROP TABLE junitCustomers");
+        connection.executeUpdate("DROP TABLE junitOrders");
+        connection.close();
+    }
+
+    // every join strategy gives the same rows
+    private void assertJoins() throws Exception {
+        List<String> inner = sortedRows(connection, "SELECT o.id, c.name, amount FROM junitOrders o JOIN junitCustomers c ON o.customer = c.id WHERE c.city = 'Rome' AND o.amount < 100");
+        assertEquals(50, inner.size());
+        assertTrue(inner.contains("1|customer1|1"));
+        assertTrue(inner.contains("91|customer1|91"));
+        assertFalse(inner.contains("2|customer2|2"), "Paris customers are filtered out");
+
+        assertEquals(270, sortedRows(connection, "SELECT junitOrders.id FROM junitOrders INNER JOIN junitCustomers ON junitCustomers.id = junitOrders.customer").size());
+
+        List<String> left = sortedRows(connection, "SELECT c.id, o.id FROM junitCustomers c LEFT JOIN junitOrders o ON o.customer = c.id");
+        assertEquals(280, left.size());
+        assertTrue(left.contains("95|null"), "A customer without orders is kept once");
+        assertEquals(10, left.stream().filter(row -> row.endsWith("|null")).count());
+        assertEquals(270, sortedRows(connection, "SELECT c.id FROM junitCustomers c LEFT JOIN junitOrders o ON o.customer = c.id WHERE o.amount >= 0").size(),
+                "A condition on the LEFT joined table is tested after the join");
+        assertEquals(Arrays.asList("1000|null"), sortedRows(connection, "SELECT o.id, c.name FROM junitOrders o LEFT JOIN junitCustomers c ON c.id = o.customer WHERE o.id = 1000"));
+
+        // three tables: the orders of each customer with the other customers of the same city
+        List<String> three = sortedRows(connection, "SELECT o.id, b.id FROM junitOrders o JOIN junitCustomers a ON a.id = o.customer "
+                + "JOIN junitCustomers b ON b.city = a.city WHERE o.id < 3 AND b.id < 4");
+        assertEquals(Arrays.asList("0|0", "0|2", "1|1", "1|3", "2|0", "2|2"), three);
+    }
+
+    @Test
+    void testHashJoin() throws Exception {
+        assertJoins();
+    }
+
+    @Test
+    void testIndexNestedLoopJoin() throws Exception {
+        connection.executeUpdate("CREATE INDEX junitCustomersId ON junitCustomers(id)");
+        connection.executeUpdate("CREATE INDEX junitOrdersCustomer ON junitOrders(customer)");
+        assertJoins();
+    }
+
+    @Test
+    void testSortMergeJoinSpillsToDisk() throws Exception {
+        connection.executeUpdate("SET WORK_MEMORY = 16");
+        assertJoins();
+        try (ResultSet result = connection.executeQuery("SELECT o.id, c.name, c.city FROM junitOrders o JOIN junitCustomers c ON o.customer = c.id")) {
+            assertTrue(result.next());
+            assertTrue(new File("data/tmp").list().length > 0, "Neither table fits in 16 KB");
+        }
+        String[] runs = new File("data/tmp").list();
+        assertTrue(runs == null || runs.length == 0, "Sort runs are deleted once the rows are read");
+    }
+
+    @Test
+    void testColumnsAndErrors() throws Exception {
+        try (ResultSet result = connection.executeQuery("SELECT * FROM junitCustomers c LEFT JOIN junitOrders o ON o.customer = c.id WHERE c.id = 99")) {
+            assertEquals(Arrays.asList("c.id", "name", "city", "o.id", "customer", "amount"),
+                    Arrays.asList(result.getColumnName(1), result.getColumnName(2), result.getColumnName(3), result.getColumnName(4), result.getColumnName(5), result.getColumnName(6)));
+            assertTrue(result.next());
+            assertEquals(99, result.getInt(1));
+            assertNull(result.getString("amount"));
+            assertNull(result.getObject("amount"));
+            assertThrows(DatabaseException.class, () -> result.getInt("amount"));
+            assertFalse(result.next());
+        }
+        assertEquals(Arrays.asList("customer7"), sortedRows(connection, "SELECT junitCustomers.name FROM junitCustomers WHERE junitCustomers.id = 7"));
+
+        assertThrows(DatabaseException.class, () -> sortedRows(connection, "SELECT id FROM junitOrders o JOIN junitCustomers c ON o.customer = c.id"), "id is in both tables");
+        assertThrows(DatabaseException.class, () -> sortedRows(connection, "SELECT * FROM junitOrders o JOIN junitCustomers c ON x.customer = c.id"));
+        assertThrows(DatabaseException.class, () -> sortedRows(connection, "SELECT * FROM junitOrders o JOIN junitCustomers c ON o.customer = o.id"), "ON must use the joined table");
+        assertThrows(DatabaseException.class, () -> sortedRows(connection, "SELECT * FROM junitOrders JOIN junitOrders ON junitOrders.id = junitOrders.id"));
+    }
+
+    @Test
+    void testExternalSorterMergesManyRuns() throws Exception {
+        Random random = new Random(7);
+        List<List<String>> expected = new ArrayList<>();
+        ExternalSorter sorter = new ExternalSorter(new RowOrder(new int[] { 0 }, new DataType[] { DataType.INT }), 1024);
+        for (int i = 0; i < 20000; i++) {
+            List<String> row = Arrays.asList(Integer.toString(random.nextInt(1000) - 500), Integer.toString(i), i % 7 == 0 ? null : "x");
+            expected.add(row);
+            sorter.add(row);
+        }
+        expected.sort(new RowOrder(new int[] { 0 }, new DataType[] { DataType.INT }));
+        assertTrue(sorter.getSpilledRows() > 0);
+
+        Operator sorted = sorter.sorted();
+        List<List<String>> rows = new ArrayList<>();
+        sorted.open();
+        List<String> row;
+        while ((row = sorted.next()) != null)
+            rows.add(row);
+        sorted.close();
+        assertEquals(expected, rows, "Equal keys keep the order they were added in");
+        String[] runs = new File("data/tmp").list();
+        assertTrue(runs == null || runs.length == 0);
+    }
+}
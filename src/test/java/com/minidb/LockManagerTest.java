@@ -0,0 +1,101 @@
+package com.minidb;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LockManagerTest {
+
+    private static final int WRITERS = 8;
+    private static final int ROWS_PER_WRITER = 200;
+
+    private Connection connection;
+
+    @BeforeEach
+    void setup() throws Exception {
+        connection = MiniDB.connect();
+        connection.executeUpdate("CREATE TABLE junitLocks (id INT PRIMARY KEY, name TEXT)");
+    }
+
+    @AfterEach
+    void clear() throws Exception {
+        connection.executeUpdate("DROP TABLE junitLocks");
+        connection.close();
+    }
+
+    @Test
+    void testConcurrentWritersAndReaders() throws Exception {
+        ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        List<Thread> threads = new ArrayList<>();
+
+        for (int w = 0; w < WRITERS; w++) {
+            final int writer = w;
+            threads.add(new Thread(() -> {
+                try (Connection own = MiniDB.connect()) {
+                    PreparedQuery insert = own.prepare("INSERT INTO junitLocks VALUES (?, ?)");
+                    for (int i = 0; i < ROWS_PER_WRITER; i++) {
+                        int id = writer * ROWS_PER_WRITER + i;
+                        insert.executeUpdate(id, "name" + id);
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            }));
+        }
+        for (int r = 0; r < 4; r++) {
+            threads.add(new Thread(() -> {
+                try (Connection own = MiniDB.connect()) {
+                    for (int i = 0; i < 20; i++) {
+                        try (ResultSet rows = own.executeQuery("SELECT * FROM junitLocks")) {
+                            while (rows.next())
+                                assertEquals("name" + rows.getInt(1), rows.getString(2), "A reader never sees a half written row");
+                        }
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            }));
+        }
+
+        for (Thread thread : threads)
+            thread.start();
+        for (Thread thread : threads)
+            thread.join();
+        assertTrue(failures.isEmpty(), () -> "Failed: " + failures.peek());
+
+        int count = 0;
+        try (ResultSet rows = connection.executeQuery("SELECT id FROM junitLocks")) {
+            while (rows.next())
+                count++;
+        }
+        assertEquals(WRITERS * ROWS_PER_WRITER, count, "No insert was lost");
+        try (ResultSet rows = connection.executeQuery("SELECT name FROM junitLocks WHERE id = ?", 1234)) {
+            assertTrue(rows.next(), "The primary key index has every row");
+            assertEquals("name1234", rows.getString(1));
+        }
+    }
+
+    @Test
+    void testOpenResultKeepsItsSnapshotAndBlocksDefinitions() throws Exception {
+        connection.executeUpdate("INSERT INTO junitLocks VALUES (1, 'a'), (2, 'b')");
+
+        ResultSet rows = connection.executeQuery("SELECT * FROM junitLocks");
+        assertEquals(1, connection.executeUpdate("DELETE FROM junitLocks WHERE id = 1"), "Writers don't wait for readers");
+        DatabaseException error = assertThrows(DatabaseException.class,
+                () -> connection.executeUpdate("VACUUM junitLocks"));
+        assertTrue(error.getMessage().contains("open result"), error.getMessage());
+
+        int count = 0;
+        while (rows.next())
+            count++;
+        assertEquals(2, count, "The open result still reads the deleted row");
+        rows.close();
+        connection.executeUpdate("VACUUM junitLocks");
+    }
+}
@@ -46,4 +46,29 @@ class MetaManagerTest {
         boolean isCreatedSecondTime = MetaManager.createTable(testTable, columns);
         assertFalse(isCreatedSecondTime, "Should not be able to create a table that already exists");
     }
-}
\ No newline at end of file
+
+    @Test
+    void testSchemaCachedInCatalog() {
+        LinkedHashMap<String, String> columns = new LinkedHashMap<>();
+        columns.put("id", "INT");
+        columns.put("name", "TEXT");
+        MetaManager.createTable(testTable, columns);
+
+        TableSchema schema = MetaManager.getSchema(testTable);
+        assertNotNull(schema, "Created table should be in the catalog");
+        assertEquals(1, schema.indexOf("name"));
+        assertEquals(DataType.INT, schema.getColumn("id").getType());
+        assertTrue(MetaManager.showTables().contains(testTable));
+
+        Catalog.load();
+        assertEquals(2, MetaManager.getSchema(testTable).size(), "Schema should be read back from the .meta file");
+    }
+
+    @Test
+    void testCreateTableUnknownType() {
+        LinkedHashMap<String, String> columns = new LinkedHashMap<>();
+        columns.put("id", "NUMBER");
+
+        assertFalse(MetaManager.createTable(testTable, columns), "Unknown column types should be rejected");
+    }
+}
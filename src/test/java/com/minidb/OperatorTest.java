@@ -0,0 +1,167 @@
+package com.minidb;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OperatorTest {
+
+    private static final String testTable = "junitOperatorTable";
+
+    @BeforeEach
+    void setup() {
+        StorageManager.initializeStorage();
+
+        LinkedHashMap<String, String> columns = new LinkedHashMap<>();
+        columns.put("id", "INT");
+        columns.put("username", "TEXT");
+        MetaManager.createTable(testTable, columns);
+        TableManager.createTableFile(testTable);
+
+        // enough rows to span several pages
+        for (int i = 0; i < 1000; i++) {
+            List<String> values = new ArrayList<>();
+            values.add(Integer.toString(i));
+            values.add("'user" + i + "'");
+            TableManager.insertRow(testTable, values);
+        }
+    }
+
+    @AfterEach
+    void clear() {
+        TableManager.dropTable(testTable);
+    }
+
+    private static List<List<String>> drain(Operator op) throws Exception {
+        List<List<String>> rows = new ArrayList<>();
+        op.open();
+        List<String> row;
+        while ((row = op.next()) != null)
+            rows.add(row);
+        op.close();
+        return rows;
+    }
+
+    @Test
+    void testScanReadsEveryPage() throws Exception {
+        TableSchema schema = MetaManager.getSchema(testTable);
+        List<List<String>> rows = drain(new TableScanOperator(TableManager.getTableFile(testTable), schema));
+
+        assertTrue(BufferPool.getPageCount(TableManager.getTableFile(testTable)) > 1, "Table should span several pages");
+        assertEquals(1000, rows.size());
+        assertEquals("user999", rows.get(999).get(1));
+    }
+
+    @Test
+    void testFilterProjectLimit() throws Exception {
+        TableSchema schema = MetaManager.getSchema(testTable);
+        Operator plan = new TableScanOperator(TableManager.getTableFile(testTable), schema);
+        plan = new FilterOperator(plan, row -> Integer.parseInt(row.get(0)) % 10 == 0);
+        plan = new ProjectOperator(plan, new int[] { 1 });
+        plan = new LimitOperator(plan, 3);
+
+        List<List<String>> rows = drain(plan);
+        assertEquals(3, rows.size());
+        assertEquals(1, rows.get(0).size(), "Only the projected column should be kept");
+        assertEquals("user20", rows.get(2).get(0));
+    }
+
+    @Test
+    void testRowIdsFollowTheRows() throws Exception {
+        TableSchema schema = MetaManager.getSchema(testTable);
+        List<RowId> expected = new ArrayList<>();
+        TableManager.readAllRows(testTable, expected);
+
+        Operator plan = new FilterOperator(new TableScanOperator(TableManager.getTableFile(testTable), schema),
+                row -> row.get(0).equals("777"));
+        plan = new ProjectOperator(plan, new int[] { 1 });
+        plan.open();
+        assertEquals("user777", plan.next().get(0));
+        assertEquals(expected.get(777), plan.getRowId(), "Row id should come through filter and project");
+        plan.close();
+
+        List<RowId> lookup = new ArrayList<>();
+        lookup.add(expected.get(500));
+        lookup.add(expected.get(3));
+        Operator index = new IndexScanOperator(TableManager.getTableFile(testTable), schema, lookup);
+        index.open();
+        assertEquals("3", index.next().get(0));
+        assertEquals(expected.get(3), index.getRowId());
+        assertEquals("500", index.next().get(0));
+        assertEquals(expected.get(500), index.getRowId());
+        index.close();
+    }
+
+    @Test
+    void testParallelScanMatchesSerialScan() throws Exception {
+        TableSchema schema = MetaManager.getSchema(testTable);
+        File tableFile = TableManager.getTableFile(testTable);
+        List<List<String>> serial = drain(new FilterOperator(new TableScanOperator(tableFile, schema), row -> row.get(0).endsWith("7")));
+
+        // one page per chunk so the small table still gets several chunks
+        Condition where = new Condition.Like("username", "%7");
+        List<List<String>> ordered = drain(new ParallelScanOperator(tableFile, schema, null, where,
+                null, 4, Settings.ScanOrder.ORDERED, 1));
+        assertEquals(serial, ordered, "Ordered parallel scan returns the rows in page order");
+
+        List<List<String>> unordered = drain(new ParallelScanOperator(tableFile, schema, null, where,
+                new int[] { 1 }, 4, Settings.ScanOrder.UNORDERED, 1));
+        Set<String> names = new HashSet<>();
+        for (List<String> row : unordered)
+            names.add(row.get(0));
+        assertEquals(serial.size(), unordered.size());
+        assertEquals(serial.size(), names.size(), "Every row is returned once");
+        assertTrue(names.contains("user997"));
+    }
+
+    @Test
+    void testScanFiltersRecordsInPlace() throws Exception {
+        TableSchema schema = MetaManager.getSchema(testTable);
+        File tableFile = TableManager.getTableFile(testTable);
+        // written back so the pages are read from the mapped file, then one page cached again
+        BufferPool.flushFile(tableFile);
+        BufferPool.discardFile(tableFile);
+        TableManager.readPage(tableFile, 1);
+
+        Condition where = new Condition.Or(Arrays.asList(new Condition.Comparison("id", Condition.Comparison.Op.LT, 3),
+                new Condition.Like("username", "user99%")));
+        List<List<String>> rows = drain(new TableScanOperator(tableFile, schema, null, where, new int[] { 1 }, 0, Integer.MAX_VALUE));
+        List<List<String>> expected = drain(new ProjectOperator(new FilterOperator(new TableScanOperator(tableFile, schema),
+                where.predicate(schema)), new int[] { 1 }));
+
+        assertEquals(14, rows.size());
+        assertEquals(expected, rows);
+        assertEquals("user0", rows.get(0).get(0));
+        assertEquals(1, rows.get(0).size(), "Only the projected column is returned");
+    }
+
+    @Test
+    void testParallelScanRowIdsAndLimit() throws Exception {
+        TableSchema schema = MetaManager.getSchema(testTable);
+        List<RowId> expected = new ArrayList<>();
+        TableManager.readAllRows(testTable, expected);
+
+        Operator plan = new ParallelScanOperator(TableManager.getTableFile(testTable), schema, null, null,
+                null, 2, Settings.ScanOrder.ORDERED, 1);
+        plan = new LimitOperator(plan, 600);
+        plan.open();
+        List<String> row;
+        int count = 0;
+        while ((row = plan.next()) != null) {
+            assertEquals(expected.get(Integer.parseInt(row.get(0))), plan.getRowId());
+            count++;
+        }
+        plan.close();
+        assertEquals(600, count);
+    }
+}
@@ -0,0 +1,124 @@
+package com.minidb;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static com.minidb.TestRows.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderByTest {
+
+    private Connection connection;
+
+    @BeforeEach
+    void setup() throws Exception {
+        connection = MiniDB.connect();
+        connection.executeUpdate("CREATE TABLE junitEvents (id INT, kind TEXT, score INT)");
+        connection.executeUpdate("CREATE TABLE junitKinds (kind TEXT, label TEXT)");
+
+        // ids 0..1999 in a shuffled order, score = id % 50 - 25
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 2000; i++)
+            ids.add(i);
+        Collections.shuffle(ids, new Random(3));
+        PreparedQuery event = connection.prepare("INSERT INTO junitEvents VALUES (?, ?, ?)");
+        for (int id : ids)
+            event.executeUpdate(id, "k" + id % 3, id % 50 - 25);
+        connection.executeUpdate("INSERT INTO junitKinds VALUES ('k0', 'zero'), ('k1', 'one'), ('k2', 'two')");
+    }
+
+    @AfterEach
+    void clear() throws Exception {
+        connection.executeUpdate("DROP TABLE junitEvents");
+        connection.executeUpdate("DROP TABLE junitKinds");
+        connection.close();
+    }
+
+    @Test
+    void testOrderByLimitOffset() throws Exception {
+        assertEquals(Arrays.asList("1999", "1998", "1997"), rows(connection, "SELECT id FROM junitEvents ORDER BY id DESC LIMIT 3"));
+        assertEquals(Arrays.asList("9", "10", "11"), rows(connection, "SELECT id FROM junitEvents ORDER BY id LIMIT 3 OFFSET 9"),
+                "INT columns sort as numbers, 10 after 9");
+        assertEquals(Arrays.asList("k0|-25|0", "k0|-25|150", "k0|-25|300"), rows(connection, "SELECT kind, score, id FROM junitEvents ORDER BY kind, score, id LIMIT 3"));
+        assertEquals(Arrays.asList("1950", "1900"), rows(connection, "SELECT id FROM junitEvents WHERE score = -25 ORDER BY junitEvents.id DESC LIMIT 2"));
+        assertEquals(2000, rows(connection, "SELECT id FROM junitEvents ORDER BY score").size());
+        assertEquals(Collections.emptyList(), rows(connection, "SELECT id FROM junitEvents ORDER BY id LIMIT 0"));
+
+        try (ResultSet result = connection.executeQuery("SELECT kind FROM junitEvents ORDER BY id LIMIT 1")) {
+            assertEquals(1, result.getColumnCount(), "A column only ordered on isn't returned");
+            assertTrue(result.next());
+            assertEquals("k0", result.getString(1));
+        }
+        assertEquals(3, rows(connection, "SELECT id FROM junitEvents LIMIT 3 OFFSET 10").size());
+        assertEquals(2, rows(connection, "SELECT id FROM junitEvents WHERE id < 10 LIMIT 5 OFFSET 8").size());
+    }
+
+    @Test
+    void testOrderByGroupsAndJoins() throws Exception {
+        assertEquals(Arrays.asList("k1|667", "k0|667", "k2|666"), rows(connection, "SELECT kind, COUNT(*) AS n FROM junitEvents GROUP BY kind ORDER BY n DESC, kind DESC"));
+        assertEquals(Arrays.asList("k1|1000", "k2|999.5", "k0|999"), rows(connection, "SELECT kind, AVG(id) FROM junitEvents GROUP BY kind ORDER BY AVG(id) DESC, kind DESC"));
+        assertEquals(Arrays.asList("one|1999", "zero|1998"), rows(connection, "SELECT label, MAX(id) FROM junitEvents e JOIN junitKinds k ON e.kind = k.kind GROUP BY label ORDER BY MAX(id) DESC LIMIT 2"));
+        assertEquals(Arrays.asList("zero|1998", "two|1997"), rows(connection, "SELECT label, e.id FROM junitEvents e JOIN junitKinds k ON k.kind = e.kind ORDER BY e.id DESC LIMIT 2 OFFSET 1"));
+
+        assertThrows(DatabaseException.class, () -> rows(connection, "SELECT kind, COUNT(*) FROM junitEvents GROUP BY kind ORDER BY id"));
+        assertThrows(DatabaseException.class, () -> rows(connection, "SELECT kind FROM junitEvents GROUP BY kind ORDER BY SUM(id)"));
+        assertThrows(DatabaseException.class, () -> rows(connection, "SELECT id FROM junitEvents ORDER BY missing"));
+    }
+
+    @Test
+    void testSortSpillsToDisk() throws Exception {
+        List<String> expected = rows(connection, "SELECT id, kind FROM junitEvents ORDER BY score DESC, id");
+        assertEquals("49|k1", expected.get(0));
+
+        connection.executeUpdate("SET WORK_MEMORY = 16");
+        try (ResultSet result = connection.executeQuery("SELECT id, kind FROM junitEvents ORDER BY score DESC, id")) {
+            assertTrue(result.next());
+            assertTrue(new File("data/tmp").list().length > 0, "2000 rows don't fit in 16 KB");
+        }
+        String[] runs = new File("data/tmp").list();
+        assertTrue(runs == null || runs.length == 0, "Sort runs are deleted once the rows are closed");
+        assertEquals(expected, rows(connection, "SELECT id, kind FROM junitEvents ORDER BY score DESC, id"));
+        assertEquals(expected.subList(1500, 1510), rows(connection, "SELECT id, kind FROM junitEvents ORDER BY score DESC, id LIMIT 10 OFFSET 1500"),
+                "A top-N past the memory is sorted on disk");
+    }
+
+    @Test
+    void testTopNKeepsInputOrderOfEqualRows() throws Exception {
+        // values 0..4 as text, null for the ids multiple of 3
+        List<List<String>> input = new ArrayList<>();
+        List<String> zeros = new ArrayList<>(), ones = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            String value = i % 3 == 0 ? null : Integer.toString(i % 5);
+            input.add(Arrays.asList(value, Integer.toString(i)));
+            if ("0".equals(value))
+                zeros.add(Integer.toString(i));
+            if ("1".equals(value))
+                ones.add(Integer.toString(i));
+        }
+        List<String> expected = new ArrayList<>(zeros);
+        expected.addAll(ones.subList(0, 25 - zeros.size()));
+
+        SortOperator top = new SortOperator(new ValuesOperator(input), new RowOrder(new int[] { 0 }, new DataType[] { DataType.INT }, new boolean[] { false }), 25, 1 << 20);
+        top.open();
+        List<String> ids = new ArrayList<>();
+        List<String> row;
+        while ((row = top.next()) != null)
+            ids.add(row.get(1));
+        top.close();
+        assertEquals(expected, ids);
+        assertFalse(top.isSpilled());
+
+        SortOperator descending = new SortOperator(new ValuesOperator(input), new RowOrder(new int[] { 0 }, new DataType[] { DataType.INT }, new boolean[] { true }), 1, 1 << 20);
+        descending.open();
+        assertNull(descending.next().get(0), "Nulls come first when descending");
+        descending.close();
+    }
+}
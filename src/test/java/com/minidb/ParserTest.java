@@ -0,0 +1,203 @@
+package com.minidb;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParserTest {
+
+    @Test
+    void testQuotedValuesKeepSeparators() throws Exception {
+        Statement.Insert insert = (Statement.Insert) Parser.parse("insert into users values (1, 'a, b = c AND d'), (-2, 'it''s OR (x)');");
+
+        assertEquals("users", insert.getTableName());
+        assertEquals(2, insert.getRows().size());
+        assertEquals(Arrays.asList(1, "a, b = c AND d"), insert.getRows().get(0));
+        assertEquals(Arrays.asList(-2, "it's OR (x)"), insert.getRows().get(1), "Literals should be typed and unquoted once");
+    }
+
+    @Test
+    void testWhereAndBindsTighterThanOr() throws Exception {
+        Statement.Select select = (Statement.Select) Parser.parse("SELECT id FROM users WHERE id = 1 OR id > 5 AND name = 'x' LIMIT 10");
+
+        assertEquals(10, select.getLimit());
+        assertTrue(select.getWhere() instanceof Condition.Or);
+        assertEquals("id = 1 OR id > 5 AND name = 'x'", select.getWhere().toString());
+
+        select = (Statement.Select) Parser.parse("SELECT * FROM users WHERE (id = 1 OR id > 5) AND name = 'x'");
+        assertNull(select.getColumns());
+        assertEquals(2, select.getWhere().conjuncts().size(), "The ANDed conditions can each use an index");
+    }
+
+    @Test
+    void testJoins() throws Exception {
+        Statement.Select select = (Statement.Select) Parser.parse(
+                "SELECT o.id, c.name FROM orders o JOIN customers AS c ON o.customer = c.id "
+                + "LEFT OUTER JOIN notes ON notes.order_id = o.id AND notes.kind = o.kind WHERE c.name = 'x' LIMIT 5");
+
+        assertEquals(Arrays.asList("o.id", "c.name"), select.getColumns());
+        assertEquals("orders", select.getTableName());
+        assertEquals("o", select.getAlias());
+        assertEquals(2, select.getJoins().size());
+        Statement.Join customers = select.getJoins().get(0), notes = select.getJoins().get(1);
+        assertEquals("c", customers.getAlias());
+        assertFalse(customers.isLeft());
+        assertEquals(Arrays.asList("o.customer"), customers.getLeftColumns());
+        assertEquals(Arrays.asList("c.id"), customers.getRightColumns());
+        assertNull(notes.getAlias());
+        assertTrue(notes.isLeft());
+        assertEquals(Arrays.asList("notes.order_id", "notes.kind"), notes.getLeftColumns());
+        assertEquals("c.name = 'x'", select.getWhere().toString());
+        assertEquals(5, select.getLimit());
+
+        assertNull(((Statement.Select) Parser.parse("SELECT * FROM users WHERE id = 1")).getAlias(), "WHERE isn't an alias");
+        assertThrows(SyntaxException.class, () -> Parser.parse("SELECT * FROM a JOIN b"), "JOIN needs ON");
+        assertThrows(SyntaxException.class, () -> Parser.parse("SELECT * FROM a JOIN b ON a.x > b.y"));
+    }
+
+    @Test
+    void testAggregates() throws Exception {
+        Statement.Select select = (Statement.Select) Parser.parse(
+                "SELECT city, count(*), SUM(o.amount) AS total, max(name) top FROM customers GROUP BY city, country LIMIT 3");
+
+        assertEquals(Arrays.asList("city", "COUNT(*)", "total", "top"), select.getColumns());
+        List<Statement.Aggregate> aggregates = select.getAggregates();
+        assertNull(aggregates.get(0));
+        assertEquals(Statement.Aggregate.Function.COUNT, aggregates.get(1).getFunction());
+        assertNull(aggregates.get(1).getColumn());
+        assertEquals("SUM(o.amount)", aggregates.get(2).toString());
+        assertEquals(Statement.Aggregate.Function.MAX, aggregates.get(3).getFunction());
+        assertEquals(Arrays.asList("city", "country"), select.getGroupBy());
+        assertEquals(3, select.getLimit());
+        assertTrue(select.isGrouped());
+
+        Statement.Select plain = (Statement.Select) Parser.parse("SELECT count FROM t GROUP BY count");
+        assertNull(plain.getAggregates(), "A column can be named like a function");
+        assertTrue(plain.isGrouped());
+        assertFalse(((Statement.Select) Parser.parse("SELECT * FROM t")).isGrouped());
+        assertThrows(SyntaxException.class, () -> Parser.parse("SELECT SUM(*) FROM t"));
+        assertThrows(SyntaxException.class, () -> Parser.parse("SELECT MEDIAN(x) FROM t"));
+        assertThrows(SyntaxException.class, () -> Parser.parse("SELECT x FROM t GROUP x"));
+    }
+
+    @Test
+    void testOrderByAndOffset() throws Exception {
+        Statement.Select select = (Statement.Select) Parser.parse("SELECT region, COUNT(*) FROM t GROUP BY region ORDER BY COUNT(*) DESC, t.region ASC, id LIMIT 10 OFFSET 20");
+
+        List<Statement.Order> orderBy = select.getOrderBy();
+        assertEquals(3, orderBy.size());
+        assertEquals("COUNT(*)", orderBy.get(0).getAggregate().toString());
+        assertTrue(orderBy.get(0).isDescending());
+        assertEquals("t.region", orderBy.get(1).getColumn());
+        assertFalse(orderBy.get(1).isDescending());
+        assertEquals("id", orderBy.get(2).toString());
+        assertEquals(10, select.getLimit());
+        assertEquals(20, select.getOffset());
+
+        Statement.Select plain = (Statement.Select) Parser.parse("SELECT * FROM t ORDER BY id DESC");
+        assertEquals(-1, plain.getLimit());
+        assertEquals(0, plain.getOffset());
+        assertNull(((Statement.Select) Parser.parse("SELECT * FROM t ORDER BY id")).getAlias(), "ORDER isn't an alias");
+        assertThrows(SyntaxException.class, () -> Parser.parse("SELECT * FROM t ORDER id"));
+        assertThrows(SyntaxException.class, () -> Parser.parse("SELECT * FROM t LIMIT 1 OFFSET x"));
+    }
+
+    @Test
+    void testCompiledCondition() throws Exception {
+        List<Column> columns = new ArrayList<>();
+        columns.add(new Column("id", DataType.INT, 0));
+        columns.add(new Column("name", DataType.TEXT, 1));
+        TableSchema schema = new TableSchema("users", columns);
+
+        Statement.Delete delete = (Statement.Delete) Parser.parse("DELETE FROM users WHERE id >= 10 AND name = 'a,b'");
+        assertTrue(delete.getWhere().compile(schema).test(Arrays.asList("10", "a,b")));
+        assertFalse(delete.getWhere().compile(schema).test(Arrays.asList("9", "a,b")), "INT columns compare as numbers");
+
+        Statement.Delete unknown = (Statement.Delete) Parser.parse("DELETE FROM users WHERE age = 1");
+        assertThrows(IllegalArgumentException.class, () -> unknown.getWhere().compile(schema));
+    }
+
+    @Test
+    void testSyntaxErrors() {
+        SyntaxException e = assertThrows(SyntaxException.class, () -> Parser.parse("SELECT * FORM users"));
+        assertEquals(9, e.getPosition());
+        assertThrows(SyntaxException.class, () -> Parser.parse("INSERT INTO users VALUES (1, 'open"));
+        assertThrows(SyntaxException.class, () -> Parser.parse("UPDATE users SET id = 1"), "UPDATE needs a WHERE clause");
+        assertThrows(SyntaxException.class, () -> Parser.parse("INSERT INTO users VALUES (99999999999999999999)"), "Past the BIGINT range");
+        assertThrows(SyntaxException.class, () -> Parser.parse("CREATE TABLE t (a INT PRIMARY KEY, b INT PRIMARY KEY)"));
+    }
+
+    @Test
+    void testComparisonOperators() throws Exception {
+        List<Column> columns = new ArrayList<>();
+        columns.add(new Column("id", DataType.INT, 0));
+        columns.add(new Column("name", DataType.TEXT, 1));
+        TableSchema schema = new TableSchema("users", columns);
+        List<String> row = Arrays.asList("42", "Andrew_J");
+
+        assertTrue(where("id != 41 AND id <> 43", schema).test(row));
+        assertTrue(where("id BETWEEN 42 AND 50", schema).test(row));
+        assertFalse(where("id BETWEEN 43 AND 50", schema).test(row));
+        assertTrue(where("id IN (1, '42', 7)", schema).test(row));
+        assertFalse(where("name IN ('andrew_j')", schema).test(row));
+        assertTrue(where("name LIKE 'And%'", schema).test(row));
+        assertTrue(where("name LIKE '%w_J'", schema).test(row));
+        assertTrue(where("name LIKE 'A_d%_J'", schema).test(row), "_ matches one character");
+        assertFalse(where("name LIKE 'A_J'", schema).test(row));
+        assertTrue(where("name LIKE '%'", schema).test(row));
+    }
+
+    @Test
+    void testRecordConditionMatchesRowCondition() throws Exception {
+        List<Column> columns = new ArrayList<>();
+        columns.add(new Column("id", DataType.INT, 0));
+        columns.add(new Column("name", DataType.TEXT, 1));
+        TableSchema schema = new TableSchema("users", columns);
+        List<List<String>> rows = Arrays.asList(
+                Arrays.asList("42", "Andrew_J"), Arrays.asList("-7", ""), Arrays.asList("1000", "andrew"),
+                Arrays.asList("5", "caf\u00e9"), Arrays.asList("6", "\uffff"), Arrays.asList("8", "\ud83d\ude00"));
+        String[] conditions = { "id = 42", "id < 6", "id >= 1000 OR name = ''", "id BETWEEN -7 AND 5",
+                "id IN (1, '42', 8, 'x')", "name IN ('andrew', 'caf\u00e9')",
+                "name IN ('a', 'b', 'c', 'd', 'e', 'f', 'g', 'h', 'andrew')", "name > 'And'", "name <= 'caf'",
+                "name < '\ud83d\ude00'", "name != 'andrew' AND id > 0", "name BETWEEN 'A' AND 'b'", "name LIKE 'And%'",
+                "name LIKE '%w_J'", "name LIKE '%\u00e9'", "name LIKE '%dre%'", "name LIKE ''", "id LIKE '4%'", "id = 'x'" };
+
+        RecordView record = new RecordView(schema.getColumnTypes());
+        for (String condition : conditions) {
+            Condition where = ((Statement.Delete) Parser.parse("DELETE FROM users WHERE " + condition)).getWhere();
+            for (List<String> row : rows) {
+                record.reset(ByteBuffer.wrap(RowCodec.encode(row, schema.getColumnTypes())), 0);
+                assertEquals(where.compile(schema).test(row), where.compileRecord(schema).test(record), condition + " on " + row);
+            }
+        }
+        assertEquals(Arrays.asList("\ud83d\ude00", "8"), record.decode(new int[] { 1, 0 }), "Only the projected columns are decoded");
+    }
+
+    @Test
+    void testTypedLiterals() throws Exception {
+        Statement.Insert insert = (Statement.Insert) Parser.parse("INSERT INTO t VALUES (007, -2147483648, 99999999999, -1.25, TRUE, false, '2024-02-29 10:00:00')");
+        assertEquals(Arrays.<Object>asList(7, Integer.MIN_VALUE, 99999999999L, -1.25, true, false, "2024-02-29 10:00:00"), insert.getRows().get(0));
+        assertEquals("price < 2.5 AND active = true", ((Statement.Delete) Parser.parse("DELETE FROM t WHERE price < 2.5 AND active = TRUE")).getWhere().toString());
+    }
+
+    @Test
+    void testAnalyzeAndExplain() throws Exception {
+        assertEquals("users", Parser.parse("ANALYZE users").getTableName());
+        assertNull(Parser.parse("ANALYZE").getTableName(), "ANALYZE alone analyzes every table");
+
+        Statement.Explain explain = (Statement.Explain) Parser.parse("EXPLAIN SELECT name FROM users WHERE id > 3 LIMIT 2");
+        assertEquals("users", explain.getSelect().getTableName());
+        assertEquals(2, explain.getSelect().getLimit());
+        assertThrows(SyntaxException.class, () -> Parser.parse("EXPLAIN DELETE FROM users WHERE id = 1"), "Only a SELECT can be explained");
+    }
+
+    private static Predicate<List<String>> where(String condition, TableSchema schema) throws Exception {
+        return ((Statement.Delete) Parser.parse("DELETE FROM users WHERE " + condition)).getWhere().compile(schema);
+    }
+}
@@ -0,0 +1,99 @@
+package com.minidb;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PlanCacheTest {
+
+    @BeforeEach
+    void setup() {
+        PlanCache.clear();
+    }
+
+    @Test
+    void testSameTextIsParsedOnce() throws Exception {
+        Statement first = PlanCache.parse("SELECT * FROM users WHERE name = 'a  b'");
+        Statement second = PlanCache.parse("  SELECT *\tFROM users   WHERE name = 'a  b';");
+        assertSame(first, second, "Whitespace outside quotes and the final ; don't matter");
+
+        Statement other = PlanCache.parse("SELECT * FROM users WHERE name = 'a b'");
+        assertNotSame(first, other, "Whitespace inside quotes is part of the value");
+    }
+
+    @Test
+    void testInvalidateDropsTheTableStatements() throws Exception {
+        Statement users = PlanCache.parse("DELETE FROM users WHERE id = 1");
+        Statement orders = PlanCache.parse("DELETE FROM orders WHERE id = 1");
+
+        PlanCache.invalidate("users");
+
+        assertNotSame(users, PlanCache.parse("DELETE FROM users WHERE id = 1"));
+        assertSame(orders, PlanCache.parse("DELETE FROM orders WHERE id = 1"));
+    }
+
+    @Test
+    void testInvalidateDropsTheJoinsOfTheTable() throws Exception {
+        String sql = "SELECT o.id, u.name FROM orders o JOIN users u ON o.user = u.id";
+        Statement join = PlanCache.parse(sql);
+        Statement explain = PlanCache.parse("EXPLAIN " + sql);
+
+        PlanCache.invalidate("users");
+
+        assertNotSame(join, PlanCache.parse(sql), "The statement joins the table");
+        assertNotSame(explain, PlanCache.parse("EXPLAIN " + sql));
+    }
+
+    // the order ids with the name of their user, sorted
+    private static List<String> names(Connection connection, String sql) throws Exception {
+        List<String> rows = new ArrayList<>();
+        try (ResultSet result = connection.executeQuery(sql)) {
+            while (result.next())
+                rows.add(result.getInt(1) + "|" + result.getString(2));
+        }
+        Collections.sort(rows);
+        return rows;
+    }
+
+    @Test
+    void testCachedJoinSeesRecreatedTable() throws Exception {
+        String sql = "SELECT o.id, u.name FROM junitCacheOrders o JOIN junitCacheUsers u ON o.userId = u.id";
+        try (Connection connection = MiniDB.connect()) {
+            connection.executeUpdate("CREATE TABLE junitCacheOrders (id INT PRIMARY KEY, userId INT)");
+            connection.executeUpdate("CREATE TABLE junitCacheUsers (id INT PRIMARY KEY, name TEXT)");
+            try {
+                connection.executeUpdate("INSERT INTO junitCacheOrders VALUES (1, 10), (2, 20)");
+                connection.executeUpdate("INSERT INTO junitCacheUsers VALUES (10, 'a'), (20, 'b')");
+                assertEquals(Arrays.asList("1|a", "2|b"), names(connection, sql));
+
+                connection.executeUpdate("DROP TABLE junitCacheUsers");
+                connection.executeUpdate("CREATE TABLE junitCacheUsers (name TEXT, id INT)");
+                connection.executeUpdate("INSERT INTO junitCacheUsers VALUES ('c', 10), ('d', 20)");
+                assertEquals(Arrays.asList("1|c", "2|d"), names(connection, sql),
+                        "The joined table has its columns in another order now");
+            }
+            finally {
+                connection.executeUpdate("DROP TABLE junitCacheOrders");
+                connection.executeUpdate("DROP TABLE junitCacheUsers");
+            }
+        }
+    }
+
+    @Test
+    void testBindReplacesParameters() throws Exception {
+        Statement statement = PlanCache.parse("UPDATE users SET name = ? WHERE id BETWEEN ? AND ? AND name LIKE ?");
+        assertEquals(4, statement.getParameterCount());
+
+        Statement.Update bound = (Statement.Update) statement.bind(Arrays.<Object>asList("x", 1, 10L, "a%"));
+        assertEquals(Arrays.<Object>asList("x"), bound.getSetValues());
+        assertEquals("id BETWEEN 1 AND 10 AND name LIKE 'a%'", bound.getWhere().toString());
+        assertEquals("id BETWEEN ? AND ? AND name LIKE ?", ((Statement.Update) statement).getWhere().toString(),
+                "The cached statement is left as it was");
+    }
+}
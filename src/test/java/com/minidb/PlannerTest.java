@@ -0,0 +1,156 @@
+package com.minidb;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.minidb.TestRows.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class PlannerTest {
+
+    private Connection connection;
+
+    @BeforeEach
+    void setup() throws Exception {
+        connection = MiniDB.connect();
+        connection.executeUpdate("CREATE TABLE junitOrders (id INT, kind TEXT, amount INT)");
+        connection.executeUpdate("CREATE TABLE junitKinds (kind TEXT, label TEXT)");
+
+        // 5000 orders, kind 'k' + id % 4, amount = id % 100
+        PreparedQuery order = connection.prepare("INSERT INTO junitOrders VALUES (?, ?, ?)");
+        for (int i = 0; i < 5000; i++)
+            order.executeUpdate(i, "k" + i % 4, i % 100);
+        connection.executeUpdate("INSERT INTO junitKinds VALUES ('k0', 'zero'), ('k1', 'one')");
+        connection.executeUpdate("CREATE INDEX junitOrdersId ON junitOrders(id)");
+    }
+
+    @AfterEach
+    void clear() throws Exception {
+        connection.executeUpdate("DROP TABLE junitOrders");
+        connection.executeUpdate("DROP TABLE junitKinds");
+        connection.close();
+    }
+
+    // the rows of EXPLAIN: step, estimated rows, rows
+    private List<String[]> explain(String sql) throws Exception {
+        List<String[]> steps = new ArrayList<>();
+        try (ResultSet result = connection.executeQuery("EXPLAIN " + sql)) {
+            while (result.next())
+                steps.add(new String[] { result.getString(1).trim(), result.getString(2), result.getString(3) });
+        }
+        return steps;
+    }
+
+    @Test
+    void testAnalyzeCollectsStatistics() throws Exception {
+        assertNull(TableStats.getAnalysis("junitOrders"));
+        connection.executeUpdate("ANALYZE junitOrders");
+
+        TableStats.Analysis analysis = TableStats.getAnalysis("junitOrders");
+        assertEquals(5000, analysis.getRows());
+        ColumnStats id = analysis.getColumns().get("id"), kind = analysis.getColumns().get("kind");
+        assertEquals(5000, id.getDistinct());
+        assertEquals("0", id.getMin());
+        assertEquals("4999", id.getMax(), "INT columns are ordered as numbers");
+        assertEquals(4, kind.getDistinct());
+        assertEquals(100, analysis.getColumns().get("amount").getDistinct());
+        assertTrue(new File("data/catalog/junitOrders.stats").exists(), "The statistics are kept next to the .meta file");
+
+        connection.executeUpdate("DROP TABLE junitKinds");
+        connection.executeUpdate("CREATE TABLE junitKinds (kind TEXT, label TEXT)");
+        connection.executeUpdate("ANALYZE");
+        assertEquals(0, TableStats.getAnalysis("junitKinds").getRows());
+        connection.executeUpdate("DROP TABLE junitKinds");
+        assertNull(TableStats.getAnalysis("junitKinds"), "A dropped table loses its statistics");
+        assertFalse(new File("data/catalog/junitKinds.stats").exists());
+        connection.executeUpdate("CREATE TABLE junitKinds (kind TEXT, label TEXT)");
+
+        assertThrows(DatabaseException.class, () -> connection.executeUpdate("ANALYZE junitMissing"));
+    }
+
+    @Test
+    void testHyperLogLogEstimate() {
+        HyperLogLog sketch = new HyperLogLog();
+        for (int i = 0; i < 200000; i++) {
+            sketch.add(Integer.toString(i));
+            sketch.add(Integer.toString(i));
+        }
+        assertEquals(200000, sketch.estimate(), 200000 * 0.05);
+
+        HyperLogLog few = new HyperLogLog();
+        for (int i = 0; i < 100; i++)
+            few.add("v" + i % 10);
+        assertEquals(10, few.estimate());
+    }
+
+    @Test
+    void testExplainEstimatesAndCounts() throws Exception {
+        connection.executeUpdate("ANALYZE junitOrders");
+
+        List<String[]> steps = explain("SELECT id FROM junitOrders WHERE amount < 10");
+        assertEquals(1, steps.size());
+        assertEquals("500", steps.get(0)[2]);
+        assertEquals(500, Double.parseDouble(steps.get(0)[1]), 50, "The histogram gives the share of the range");
+        assertEquals(1250, Double.parseDouble(explain("SELECT id FROM junitOrders WHERE kind = 'k2'").get(0)[1]), 1);
+        assertEquals("0", explain("SELECT id FROM junitOrders WHERE amount > 500").get(0)[1]);
+        assertEquals(250, Double.parseDouble(explain("SELECT id FROM junitOrders WHERE amount BETWEEN 10 AND 14").get(0)[1]), 30);
+
+        steps = explain("SELECT kind, COUNT(*) FROM junitOrders GROUP BY kind ORDER BY kind LIMIT 2 OFFSET 1");
+        assertEquals("Limit 2 OFFSET 1", steps.get(0)[0]);
+        assertEquals("-> Top-N Sort BY kind", steps.get(1)[0]);
+        assertEquals("-> Hash Aggregate COUNT(*) GROUP BY kind", steps.get(2)[0]);
+        assertEquals("4", steps.get(2)[1]);
+        assertEquals("4", steps.get(2)[2]);
+        assertEquals("5000", steps.get(3)[2]);
+        assertEquals("2", steps.get(0)[2]);
+    }
+
+    @Test
+    void testIndexOrScan() throws Exception {
+        connection.executeUpdate("CREATE INDEX junitOrdersAmount ON junitOrders(amount)");
+        assertTrue(explain("SELECT id FROM junitOrders WHERE id > 10").get(0)[0].startsWith("Index Scan"), "Without statistics an index is always used");
+        assertTrue(explain("SELECT id FROM junitOrders WHERE id < 4000 AND amount = 3").get(0)[0].startsWith("Index Scan junitOrders using junitOrdersId"));
+
+        connection.executeUpdate("ANALYZE junitOrders");
+        List<String[]> steps = explain("SELECT id FROM junitOrders WHERE id > 10");
+        assertEquals("Scan junitOrders WHERE id > 10", steps.get(0)[0], "Most rows are read faster by a scan");
+        assertEquals("4989", steps.get(0)[2]);
+        assertEquals("Index Scan junitOrders using junitOrdersId (id = 42)", explain("SELECT id FROM junitOrders WHERE id = 42").get(0)[0]);
+        steps = explain("SELECT id FROM junitOrders WHERE id < 4000 AND amount = 3");
+        assertEquals("Index Scan junitOrders using junitOrdersAmount (amount = 3) WHERE id < 4000 AND amount = 3", steps.get(0)[0],
+                "The condition selecting the fewest rows is looked up");
+        assertEquals("40", steps.get(0)[2]);
+    }
+
+    @Test
+    void testJoinOrderAndAlgorithm() throws Exception {
+        connection.executeUpdate("CREATE INDEX junitOrdersKind ON junitOrders(kind)");
+        String join = "SELECT label, o.id FROM junitOrders o JOIN junitKinds k ON o.kind = k.kind";
+        List<String> expected = sortedRows(connection, join);
+        assertEquals(2500, expected.size());
+        List<String[]> steps = explain(join);
+        assertEquals("Hash Join ON o.kind = k.kind, hashing k", steps.get(0)[0]);
+        assertEquals("-> Scan junitOrders", steps.get(1)[0]);
+        assertTrue(explain("SELECT label, o.id FROM junitKinds k JOIN junitOrders o ON o.kind = k.kind").get(0)[0].startsWith("Index Join o using junitOrdersKind"),
+                "Without statistics an index is always used");
+
+        connection.executeUpdate("ANALYZE");
+        steps = explain(join);
+        assertEquals("Hash Join ON k.kind = o.kind, hashing k", steps.get(0)[0], "The smaller table comes first, and 1250 lookups for each of its rows cost more than a scan");
+        assertEquals("-> Scan junitKinds", steps.get(1)[0]);
+        assertEquals(2500, Double.parseDouble(steps.get(0)[1]), 1);
+        assertEquals("2500", steps.get(0)[2]);
+        assertEquals(expected, sortedRows(connection, join));
+
+        steps = explain("SELECT a.id, b.kind FROM junitOrders a JOIN junitOrders b ON b.id = a.amount WHERE a.id < 3");
+        assertEquals("Index Join b using junitOrdersId ON a.amount = b.id", steps.get(0)[0]);
+        assertEquals("-> Index Scan junitOrders using junitOrdersId (id < 3)", steps.get(1)[0]);
+        assertEquals("3", steps.get(0)[2]);
+    }
+
+}
@@ -0,0 +1,108 @@
+package com.minidb;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ServerTest {
+
+    private Server server;
+    private String host;
+
+    @BeforeEach
+    void setup() throws Exception {
+        server = new Server(InetAddress.getLoopbackAddress(), 0);
+        server.start();
+        host = InetAddress.getLoopbackAddress().getHostAddress();
+        try (Client client = new Client(host, server.getPort())) {
+            client.executeUpdate("CREATE TABLE junitServer (id INT PRIMARY KEY, name TEXT)");
+        }
+    }
+
+    @AfterEach
+    void clear() throws Exception {
+        try (Client client = new Client(host, server.getPort())) {
+            client.executeUpdate("DROP TABLE junitServer");
+        }
+        server.close();
+    }
+
+    @Test
+    void testRowsComeBackInBatches() throws Exception {
+        try (Client client = new Client(host, server.getPort())) {
+            Client.Prepared insert = client.prepare("INSERT INTO junitServer VALUES (?, ?)");
+            for (int i = 0; i < 1000; i++)
+                assertEquals(1, insert.executeUpdate(i, "name, with 'quotes' " + i));
+
+            int count = 0;
+            try (ResultSet rows = client.executeQuery("SELECT * FROM junitServer WHERE id >= ?", 0)) {
+                assertEquals(DataType.INT, rows.getColumnType(1));
+                while (rows.next()) {
+                    assertEquals(count, rows.getInt("id"));
+                    assertEquals("name, with 'quotes' " + count, rows.getString(2));
+                    count++;
+                }
+            }
+            assertEquals(1000, count);
+
+            //a statement started before the last rows are read drops them
+            ResultSet partial = client.executeQuery("SELECT id FROM junitServer");
+            assertTrue(partial.next());
+            assertEquals(1000, client.executeUpdate("DELETE FROM junitServer WHERE id >= 0"));
+        }
+    }
+
+    @Test
+    void testErrorsKeepTheConnectionUsable() throws Exception {
+        try (Client client = new Client(host, server.getPort())) {
+            client.executeUpdate("INSERT INTO junitServer VALUES (1, 'a')");
+
+            DatabaseException duplicate = assertThrows(DatabaseException.class,
+                    () -> client.executeUpdate("INSERT INTO junitServer VALUES (?, 'b')", 1));
+            assertEquals("Error: Duplicate value '1' for PRIMARY KEY 'id'", duplicate.getMessage());
+            assertThrows(DatabaseException.class, () -> client.prepare("SELEC 1"));
+
+            assertTrue(client.isUsable());
+            try (ResultSet rows = client.executeQuery("SELECT name FROM junitServer")) {
+                assertTrue(rows.next());
+                assertEquals("a", rows.getString(1));
+            }
+        }
+    }
+
+    @Test
+    void testPoolReusesClients() throws Exception {
+        try (ClientPool pool = new ClientPool(host, server.getPort(), 2)) {
+            Client first = pool.borrow();
+            first.executeUpdate("INSERT INTO junitServer VALUES (1, 'a')");
+            pool.release(first);
+
+            Client second = pool.borrow();
+            assertSame(first, second, "An idle client is reused");
+            Client third = pool.borrow();
+            assertNotSame(second, third);
+
+            third.close();
+            pool.release(third);
+            pool.release(second);
+        }
+    }
+
+    @Test
+    void testDefaultsToLoopbackWithoutLoadData() throws Exception {
+        try (Server local = new Server(0)) {
+            assertTrue(local.getAddress().isLoopbackAddress(), "A server without an address listens on loopback only");
+        }
+
+        try (Client client = new Client(host, server.getPort())) {
+            DatabaseException load = assertThrows(DatabaseException.class,
+                    () -> client.executeUpdate("LOAD DATA 'pom.xml' INTO TABLE junitServer"));
+            assertEquals("Error: LOAD DATA is disabled on server connections", load.getMessage());
+            assertTrue(client.isUsable());
+        }
+    }
+}
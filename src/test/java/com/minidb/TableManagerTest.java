@@ -5,7 +5,9 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.io.File;
+import java.io.FileWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.List;
 
@@ -96,4 +98,146 @@ class TableManagerTest {
         assertEquals(1, rowsAfterDelete.size(), "Should have 1 row left");
         assertEquals("2", rowsAfterDelete.get(0).get(0), "Remaining row should be ID 2");
     }
+
+    @Test
+    void testValueWithPipe() {
+        List<String> values = new ArrayList<>();
+        values.add("7");
+        values.add("'a|b|c'");
+        TableManager.insertRow(testTable, values);
+
+        List<List<String>> rows = TableManager.readAllRows(testTable);
+        assertEquals(1, rows.size());
+        assertEquals("a|b|c", rows.get(0).get(1), "Pipes inside TEXT values should be kept");
+    }
+
+    @Test
+    void testConvertTextTable() throws Exception {
+        try (FileWriter writer = new FileWriter("data/tables/" + testTable + ".tbl")) {
+            writer.write("1|Andrew\n2|\n");
+        }
+        assertTrue(TableManager.isTextTable(testTable), "Old format should be detected");
+
+        assertTrue(TableManager.convertTextTable(testTable), "Conversion should succeed");
+        assertFalse(TableManager.isTextTable(testTable));
+
+        List<List<String>> rows = TableManager.readAllRows(testTable);
+        assertEquals(2, rows.size());
+        assertEquals("Andrew", rows.get(0).get(1));
+        assertEquals("", rows.get(1).get(1), "Empty trailing TEXT value should survive");
+    }
+
+    private static void insert(int id, String name) {
+        List<String> values = new ArrayList<>();
+        values.add(Integer.toString(id));
+        values.add("'" + name + "'");
+        TableManager.insertRow(testTable, values);
+    }
+
+    @Test
+    void testDeleteRowsKeepsOtherRowIds() {
+        for (int i = 0; i < 300; i++)
+            insert(i, "user" + i);
+        List<RowId> rowIds = new ArrayList<>();
+        List<List<String>> rows = TableManager.readRows(testTable, row -> Integer.parseInt(row.get(0)) % 3 == 0, rowIds);
+        assertEquals(100, rows.size());
+
+        List<RowId> before = new ArrayList<>();
+        TableManager.readRows(testTable, row -> row.get(0).equals("298"), before);
+        assertTrue(TableManager.deleteRows(testTable, rowIds, rows));
+
+        List<RowId> after = new ArrayList<>();
+        assertEquals(200, TableManager.readAllRows(testTable, after).size());
+        assertTrue(after.contains(before.get(0)), "Rows that weren't deleted keep their row id");
+
+        // the freed slots are reused before the table grows
+        long length = TableManager.getTableFile(testTable).length();
+        int pages = after.stream().mapToInt(RowId::getPageId).max().getAsInt() + 1;
+        insert(1000, "reused");
+        List<RowId> reused = new ArrayList<>();
+        TableManager.readRows(testTable, row -> row.get(0).equals("1000"), reused);
+        assertTrue(reused.get(0).getPageId() < pages - 1, "Insert should go to a page with free space");
+        assertTrue(TableManager.getTableFile(testTable).length() <= length);
+    }
+
+    @Test
+    void testUpdateMovesRowAndVacuumBringsItBack() {
+        for (int i = 0; i < 400; i++)
+            insert(i, "user" + i);
+        List<RowId> rowIds = new ArrayList<>();
+        List<List<String>> rows = TableManager.readRows(testTable, row -> row.get(0).equals("5"), rowIds);
+
+        // too long to stay in its full page
+        List<String> grown = new ArrayList<>(rows.get(0));
+        char[] name = new char[2000];
+        Arrays.fill(name, 'x');
+        grown.set(1, new String(name));
+        List<List<String>> newRows = new ArrayList<>();
+        newRows.add(grown);
+        assertTrue(TableManager.updateRows(testTable, rowIds, rows, newRows));
+
+        List<RowId> found = new ArrayList<>();
+        List<List<String>> result = TableManager.readRows(testTable, row -> row.get(0).equals("5"), found);
+        assertEquals(1, result.size(), "A moved row is seen once");
+        assertEquals(2000, result.get(0).get(1).length());
+        assertEquals(rowIds.get(0), found.get(0), "A moved row keeps its row id");
+        assertEquals(400, TableManager.readAllRows(testTable).size());
+
+        // make room in the home page, then VACUUM moves the row back
+        List<RowId> others = new ArrayList<>();
+        List<List<String>> neighbours = TableManager.readRows(testTable, row -> Integer.parseInt(row.get(0)) < 100 && !row.get(0).equals("5"), others);
+        assertTrue(TableManager.deleteRows(testTable, others, neighbours));
+        assertTrue(TableManager.vacuum(testTable) > 0);
+
+        result = TableManager.readRows(testTable, row -> row.get(0).equals("5"), found);
+        assertEquals(2000, result.get(0).get(1).length());
+        assertEquals(301, TableManager.readAllRows(testTable).size());
+    }
+
+    @Test
+    void testInsertRowsIsAllOrNothing() {
+        List<List<String>> rows = new ArrayList<>();
+        rows.add(Arrays.asList("1", "'a, b'"));
+        rows.add(Arrays.asList("oops", "'c'"));
+        assertEquals(-1, TableManager.insertRows(testTable, rows), "An invalid row should reject the whole INSERT");
+        assertEquals(0, TableManager.readAllRows(testTable).size());
+
+        rows.set(1, Arrays.asList("2", "'c'"));
+        assertEquals(2, TableManager.insertRows(testTable, rows));
+        assertEquals("a, b", TableManager.readAllRows(testTable).get(0).get(1));
+    }
+
+    @Test
+    void testLoadRowsSkipsInvalidRows() throws Exception {
+        File csv = new File("data/junitLoad.csv");
+        try (FileWriter writer = new FileWriter(csv)) {
+            writer.write("1,\"Smith, John\"\n");
+            writer.write("two,Bad\n\n");
+            writer.write("3,\"say \"\"hi\"\"\nbye\"\n");
+        }
+        try (CsvReader reader = new CsvReader(csv)) {
+            assertEquals(2, TableManager.loadRows(testTable, reader));
+        }
+        finally {
+            csv.delete();
+        }
+
+        List<List<String>> rows = TableManager.readAllRows(testTable);
+        assertEquals(2, rows.size());
+        assertEquals("Smith, John", rows.get(0).get(1));
+        assertEquals("say \"hi\"\nbye", rows.get(1).get(1), "Quoted fields can hold quotes and line breaks");
+    }
+
+    @Test
+    void testSmallInsertsShareThePages() throws Exception {
+        for (int i = 0; i < 200; i++) {
+            List<List<String>> rows = new ArrayList<>();
+            rows.add(Arrays.asList(Integer.toString(2 * i), "'user" + i + "'"));
+            rows.add(Arrays.asList(Integer.toString(2 * i + 1), "'other" + i + "'"));
+            assertEquals(2, TableManager.insertRows(testTable, rows));
+        }
+        assertEquals(400, TableManager.readAllRows(testTable).size());
+        assertTrue(BufferPool.getPageCount(TableManager.getTableFile(testTable)) <= 4,
+                "Each INSERT should fill the last page instead of starting its own");
+    }
 }
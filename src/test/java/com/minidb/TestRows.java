@@ -0,0 +1,43 @@
+package com.minidb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// query results as text for the tests to compare
+final class TestRows {
+
+    private TestRows() {
+    }
+
+    // the rows in the order they come, their values joined by |
+    static List<String> rows(Connection connection, String sql) throws Exception {
+        List<String> rows = new ArrayList<>();
+        try (ResultSet result = connection.executeQuery(sql)) {
+            while (result.next()) {
+                StringBuilder row = new StringBuilder();
+                for (int i = 1; i <= result.getColumnCount(); i++)
+                    row.append(i == 1 ? "" : "|").append(result.getString(i));
+                rows.add(row.toString());
+            }
+        }
+        return rows;
+    }
+
+    // the rows sorted, for queries whose order isn't defined
+    static List<String> sortedRows(Connection connection, String sql) throws Exception {
+        List<String> rows = rows(connection, sql);
+        Collections.sort(rows);
+        return rows;
+    }
+
+    // the first column of the rows, in order
+    static List<String> column(Connection connection, String sql) throws Exception {
+        List<String> values = new ArrayList<>();
+        try (ResultSet result = connection.executeQuery(sql)) {
+            while (result.next())
+                values.add(result.getString(1));
+        }
+        return values;
+    }
+}
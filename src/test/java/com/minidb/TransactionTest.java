@@ -0,0 +1,152 @@
+package com.minidb;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransactionTest {
+
+    private Connection connection;
+    private Connection other;
+
+    @BeforeEach
+    void setup() throws Exception {
+        connection = MiniDB.connect();
+        other = MiniDB.connect();
+        connection.executeUpdate("CREATE TABLE junitTx (id INT PRIMARY KEY, name TEXT)");
+        connection.executeUpdate("INSERT INTO junitTx VALUES (1, 'a'), (2, 'b'), (3, 'c')");
+    }
+
+    @AfterEach
+    void clear() throws Exception {
+        connection.close();
+        other.close();
+        MiniDB.connect().executeUpdate("DROP TABLE junitTx");
+    }
+
+    private static List<String> names(Connection connection) throws Exception {
+        List<String> names = new ArrayList<>();
+        try (ResultSet rows = connection.executeQuery("SELECT name FROM junitTx")) {
+            while (rows.next())
+                names.add(rows.getString(1));
+        }
+        names.sort(null);
+        return names;
+    }
+
+    @Test
+    void testRollbackRestoresRows() throws Exception {
+        connection.executeUpdate("BEGIN");
+        connection.executeUpdate("INSERT INTO junitTx VALUES (4, 'd')");
+        connection.executeUpdate("UPDATE junitTx SET name = 'x' WHERE id = 1");
+        connection.executeUpdate("DELETE FROM junitTx WHERE id = 2");
+        assertEquals(Arrays.asList("c", "d", "x"), names(connection), "The transaction sees its own changes");
+        connection.executeUpdate("ROLLBACK");
+
+        assertEquals(Arrays.asList("a", "b", "c"), names(connection));
+        try (ResultSet rows = connection.executeQuery("SELECT name FROM junitTx WHERE id = 2")) {
+            assertTrue(rows.next(), "The primary key index has the deleted row again");
+        }
+        assertEquals(1, connection.executeUpdate("INSERT INTO junitTx VALUES (4, 'd')"), "The rolled back key is free");
+    }
+
+    @Test
+    void testFailedStatementRolledBackAlone() throws Exception {
+        connection.executeUpdate("BEGIN");
+        connection.executeUpdate("INSERT INTO junitTx VALUES (4, 'd')");
+        assertThrows(DatabaseException.class, () -> connection.executeUpdate("INSERT INTO junitTx VALUES (5, 'e'), (1, 'dup')"));
+        assertThrows(DatabaseException.class, () -> connection.executeUpdate("DROP TABLE junitTx"));
+        connection.executeUpdate("COMMIT");
+
+        assertEquals(Arrays.asList("a", "b", "c", "d"), names(connection));
+    }
+
+    @Test
+    void testUncommittedChangesAreInvisible() throws Exception {
+        connection.executeUpdate("BEGIN");
+        connection.executeUpdate("UPDATE junitTx SET name = 'x' WHERE id = 1");
+        connection.executeUpdate("INSERT INTO junitTx VALUES (4, 'd')");
+
+        assertEquals(Arrays.asList("a", "b", "c"), names(other));
+        try (ResultSet rows = other.executeQuery("SELECT name FROM junitTx WHERE id = 1")) {
+            assertTrue(rows.next());
+            assertEquals("a", rows.getString(1), "The index scan reads the committed row");
+        }
+
+        connection.executeUpdate("COMMIT");
+        assertEquals(Arrays.asList("b", "c", "d", "x"), names(other));
+    }
+
+    @Test
+    void testSnapshotIgnoresLaterCommits() throws Exception {
+        connection.executeUpdate("BEGIN");
+        assertEquals(Arrays.asList("a", "b", "c"), names(connection));
+
+        other.executeUpdate("INSERT INTO junitTx VALUES (4, 'd')");
+        other.executeUpdate("DELETE FROM junitTx WHERE id = 1");
+        assertEquals(Arrays.asList("a", "b", "c"), names(connection), "The snapshot was taken by the first query");
+
+        connection.executeUpdate("COMMIT");
+        assertEquals(Arrays.asList("b", "c", "d"), names(connection));
+    }
+
+    @Test
+    void testWriteConflict() throws Exception {
+        connection.executeUpdate("BEGIN");
+        assertEquals(Arrays.asList("a", "b", "c"), names(connection));
+        other.executeUpdate("UPDATE junitTx SET name = 'y' WHERE id = 1");
+
+        DatabaseException error = assertThrows(DatabaseException.class,
+                () -> connection.executeUpdate("UPDATE junitTx SET name = 'x' WHERE id = 1"));
+        assertTrue(error.getMessage().contains("Could not serialize"), error.getMessage());
+        connection.executeUpdate("ROLLBACK");
+
+        assertEquals(Arrays.asList("b", "c", "y"), names(connection));
+    }
+
+    @Test
+    void testTransactionStatements() throws Exception {
+        assertThrows(DatabaseException.class, () -> connection.executeUpdate("COMMIT"));
+        connection.executeUpdate("START TRANSACTION");
+        assertTrue(connection.inTransaction());
+        assertThrows(DatabaseException.class, () -> connection.executeUpdate("BEGIN WORK"));
+        connection.executeUpdate("DELETE FROM junitTx WHERE id > 0");
+        connection.close();
+
+        assertEquals(Arrays.asList("a", "b", "c"), names(other), "Closing the connection rolls back its transaction");
+    }
+
+    @Test
+    void testTransactionEndsOnAnotherThread() throws Exception {
+        ExecutorService first = Executors.newSingleThreadExecutor();
+        ExecutorService second = Executors.newSingleThreadExecutor();
+        try {
+            first.submit(() -> {
+                connection.executeUpdate("BEGIN");
+                return connection.executeUpdate("INSERT INTO junitTx VALUES (4, 'd')");
+            }).get();
+            ResultSet rows = first.submit(() -> connection.executeQuery("SELECT name FROM junitTx")).get();
+
+            second.submit(() -> connection.executeUpdate("COMMIT")).get();
+            second.submit(() -> {
+                rows.close();
+                return null;
+            }).get();
+        } finally {
+            first.shutdown();
+            second.shutdown();
+        }
+
+        assertEquals(1, other.executeUpdate("INSERT INTO junitTx VALUES (5, 'e')"), "The COMMIT unlocked the table");
+        assertEquals(Arrays.asList("a", "b", "c", "d", "e"), names(other));
+        other.executeUpdate("VACUUM junitTx");
+    }
+}
@@ -0,0 +1,210 @@
+package com.minidb;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.minidb.TestRows.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class TypesTest {
+
+    private Connection connection;
+
+    @BeforeEach
+    void setup() throws Exception {
+        connection = MiniDB.connect();
+        connection.executeUpdate("CREATE TABLE junitTyped (id INT PRIMARY KEY, big BIGINT, price DOUBLE, active BOOLEAN, at TIMESTAMP, note TEXT)");
+        connection.executeUpdate("INSERT INTO junitTyped VALUES (1, 10000000000, 2.5, TRUE, '2024-01-05 10:30:00', 'a'), "
+                + "('007', -3, -0.75, false, '2024-01-05', 'b'), (3, 9, '1e3', 1, '2023-12-31T23:59:59.5', 'c')");
+    }
+
+    @AfterEach
+    void clear() throws Exception {
+        connection.executeUpdate("DROP TABLE junitTyped");
+        connection.close();
+    }
+
+    @Test
+    void testValuesAreStoredCanonical() throws Exception {
+        try (ResultSet result = connection.executeQuery("SELECT * FROM junitTyped WHERE id = 007")) {
+            assertTrue(result.next(), "'007' was stored as 7");
+            assertEquals(7, result.getObject(1));
+            assertEquals(-3L, result.getObject(2));
+            assertEquals(-0.75, result.getObject(3));
+            assertEquals(false, result.getObject(4));
+            assertEquals(LocalDateTime.of(2024, 1, 5, 0, 0), result.getObject(5));
+            assertEquals("2024-01-05 00:00:00", result.getString("at"));
+            assertEquals("b", result.getObject(6));
+        }
+        assertEquals(Arrays.asList("1000.0"), column(connection, "SELECT price FROM junitTyped WHERE id = 3"));
+        assertEquals(Arrays.asList("2023-12-31 23:59:59.500"), column(connection, "SELECT at FROM junitTyped WHERE active = true AND id = 3"));
+
+        assertThrows(DatabaseException.class, () -> connection.executeUpdate("INSERT INTO junitTyped VALUES (4, 1, 'x', TRUE, '2024-01-01', 'd')"));
+        assertThrows(DatabaseException.class, () -> connection.executeUpdate("INSERT INTO junitTyped VALUES (4, 1, 1.5, TRUE, '2024-02-30', 'd')"));
+        assertThrows(DatabaseException.class, () -> connection.executeUpdate("INSERT INTO junitTyped VALUES (10000000000, 1, 1.5, TRUE, '2024-01-01', 'd')"),
+                "INT stays 4 bytes");
+        assertThrows(DatabaseException.class, () -> connection.executeUpdate("INSERT INTO junitTyped VALUES (7, 1, 1.5, TRUE, '2024-01-01', 'd')"),
+                "7 and '007' are one key");
+        assertThrows(DatabaseException.class, () -> connection.executeUpdate("UPDATE junitTyped SET active = 'maybe' WHERE id = 1"));
+    }
+
+    @Test
+    void testTypedComparisonsAndOrder() throws Exception {
+        assertEquals(Arrays.asList("1", "3"), column(connection, "SELECT id FROM junitTyped WHERE big > 8 ORDER BY id"));
+        assertEquals(Arrays.asList("7"), column(connection, "SELECT id FROM junitTyped WHERE price < 0"));
+        assertEquals(Arrays.asList("3", "7"), column(connection, "SELECT id FROM junitTyped WHERE at < '2024-01-05 10:00' ORDER BY id"));
+        assertEquals(Arrays.asList("7", "1", "3"), column(connection, "SELECT id FROM junitTyped ORDER BY price"), "DOUBLE values sort as numbers");
+        assertEquals(Arrays.asList("1", "3", "7"), column(connection, "SELECT id FROM junitTyped ORDER BY big DESC"));
+        assertEquals(Arrays.asList("3", "7", "1"), column(connection, "SELECT id FROM junitTyped ORDER BY at"));
+        assertEquals(Arrays.asList("1", "3"), column(connection, "SELECT id FROM junitTyped WHERE price IN (2.5, 1000) ORDER BY id"));
+
+        connection.executeUpdate("UPDATE junitTyped SET price = 3 WHERE id = 7");
+        assertEquals(Arrays.asList("3.0"), column(connection, "SELECT price FROM junitTyped WHERE id = 7"));
+    }
+
+    @Test
+    void testNumbersCompareAcrossTypes() throws Exception {
+        for (int indexed = 0; indexed < 2; indexed++) {
+            assertEquals(Arrays.asList("1", "3", "7"), column(connection, "SELECT id FROM junitTyped WHERE id < 7.5 ORDER BY id"));
+            assertEquals(Arrays.asList("1", "3", "7"), column(connection, "SELECT id FROM junitTyped WHERE id != 7.5 ORDER BY id"));
+            assertEquals(Arrays.asList("7"), column(connection, "SELECT id FROM junitTyped WHERE id = 7.0"));
+            assertEquals(Arrays.asList(), column(connection, "SELECT id FROM junitTyped WHERE id = 7.5"));
+            assertEquals(Arrays.asList("3", "7"), column(connection, "SELECT id FROM junitTyped WHERE id >= 2.5 ORDER BY id"));
+            assertEquals(Arrays.asList("1", "3", "7"), column(connection, "SELECT id FROM junitTyped WHERE id < 99999999999 ORDER BY id"), "Past the INT range");
+            assertEquals(Arrays.asList(), column(connection, "SELECT id FROM junitTyped WHERE id > 99999999999"));
+            assertEquals(Arrays.asList("1", "3"), column(connection, "SELECT id FROM junitTyped WHERE id BETWEEN 0.5 AND 3.5 ORDER BY id"));
+            assertEquals(Arrays.asList("3"), column(connection, "SELECT id FROM junitTyped WHERE id IN (3.0, 7.5)"));
+            assertEquals(Arrays.asList("1", "3", "7"), column(connection, "SELECT id FROM junitTyped WHERE big < 99999999999 ORDER BY id"));
+            assertEquals(Arrays.asList("3"), column(connection, "SELECT id FROM junitTyped WHERE big = 8.0 OR big = 9.0"));
+            assertEquals(Arrays.asList("1"), column(connection, "SELECT id FROM junitTyped WHERE big > 9.5"));
+            assertEquals(Arrays.asList("1", "3"), column(connection, "SELECT id FROM junitTyped WHERE price > 2 ORDER BY id"));
+            if (indexed == 0) {
+                connection.executeUpdate("CREATE INDEX junitTypedBig ON junitTyped(big)");
+                connection.executeUpdate("CREATE INDEX junitTypedPrice ON junitTyped(price)");
+            }
+        }
+    }
+
+    @Test
+    void testJoinsCompareNumbersAcrossTypes() throws Exception {
+        connection.executeUpdate("CREATE TABLE junitTypedPrices (d DOUBLE, label TEXT)");
+        try {
+            PreparedQuery price = connection.prepare("INSERT INTO junitTypedPrices VALUES (?, ?)");
+            for (int i = 0; i < 400; i++)
+                price.executeUpdate(i + 0.5, "p" + i);
+            connection.executeUpdate("INSERT INTO junitTypedPrices VALUES (7, 'seven'), (10000000000, 'big')");
+
+            List<String> byId = Arrays.asList(null, null, "seven");
+            assertEquals(byId, column(connection, "SELECT p.label FROM junitTyped t LEFT JOIN junitTypedPrices p ON t.id = p.d ORDER BY t.id"), "Hash join");
+            assertEquals(Arrays.asList("big"), column(connection, "SELECT p.label FROM junitTyped t JOIN junitTypedPrices p ON t.big = p.d"));
+            assertEquals(Arrays.asList("7"), column(connection, "SELECT t.id FROM junitTypedPrices p JOIN junitTyped t ON p.d = t.id"), "Index join on the PRIMARY KEY");
+            connection.executeUpdate("CREATE INDEX junitTypedPricesD ON junitTypedPrices(d)");
+            assertEquals(byId, column(connection, "SELECT p.label FROM junitTyped t LEFT JOIN junitTypedPrices p ON t.id = p.d ORDER BY t.id"), "Index join");
+            connection.executeUpdate("DROP INDEX junitTypedPricesD");
+            connection.executeUpdate("SET WORK_MEMORY = 16");
+            assertEquals(byId, column(connection, "SELECT p.label FROM junitTyped t LEFT JOIN junitTypedPrices p ON t.id = p.d ORDER BY t.id"), "Sort-merge join");
+
+            assertThrows(DatabaseException.class, () -> column(connection, "SELECT * FROM junitTyped t JOIN junitTypedPrices p ON t.at = p.d"));
+        }
+        finally {
+            connection.executeUpdate("DROP TABLE junitTypedPrices");
+        }
+    }
+
+    @Test
+    void testBigNumbersCompareExactly() throws Exception {
+        // neighbours past 2^53 round to the same double: 2^63 - 1 and 2^63 - 2 to 2^63, 2^53 + 1 to 2^53
+        connection.executeUpdate("CREATE TABLE junitTypedHuge (id INT, b BIGINT)");
+        connection.executeUpdate("CREATE TABLE junitTypedHugePrices (d DOUBLE, label TEXT)");
+        try {
+            connection.executeUpdate("INSERT INTO junitTypedHuge VALUES (1, 9223372036854775807), (2, 9223372036854775806), "
+                    + "(3, 9007199254740993), (4, 9007199254740992)");
+            PreparedQuery price = connection.prepare("INSERT INTO junitTypedHugePrices VALUES (?, ?)");
+            for (int i = 0; i < 400; i++)
+                price.executeUpdate(i + 0.5, "p" + i);
+            connection.executeUpdate("INSERT INTO junitTypedHugePrices VALUES (9223372036854775808.0, 'two63'), (9007199254740992, 'two53')");
+
+            assertEquals(Arrays.asList(), column(connection, "SELECT id FROM junitTypedHuge WHERE b = 9223372036854775808.0"));
+            assertEquals(Arrays.asList("1", "2", "3", "4"), column(connection, "SELECT id FROM junitTypedHuge WHERE b < 9223372036854775808.0 ORDER BY id"));
+            assertEquals(Arrays.asList("4"), column(connection, "SELECT id FROM junitTypedHuge WHERE b = 9007199254740992.0"));
+            assertEquals(Arrays.asList(), column(connection, "SELECT label FROM junitTypedHugePrices WHERE d = 9223372036854775807"));
+            assertEquals(Arrays.asList("two63"), column(connection, "SELECT label FROM junitTypedHugePrices WHERE d > 9223372036854775807"));
+            assertEquals(Arrays.asList(), column(connection, "SELECT label FROM junitTypedHugePrices WHERE d = 9007199254740993"));
+            assertEquals(Arrays.asList("two53"), column(connection, "SELECT label FROM junitTypedHugePrices WHERE d = 9007199254740992"));
+            assertEquals(Arrays.asList("two53"), column(connection, "SELECT label FROM junitTypedHugePrices WHERE d > 9007199254740991 AND d < 9007199254740993"));
+
+            String join = "SELECT h.id, p.label FROM junitTypedHuge h JOIN junitTypedHugePrices p ON h.b = p.d";
+            List<String> matches = Arrays.asList("4|two53");
+            assertEquals(matches, sortedRows(connection, join), "Hash join");
+            connection.executeUpdate("CREATE INDEX junitTypedHugePricesD ON junitTypedHugePrices(d)");
+            assertEquals(matches, sortedRows(connection, join), "Index join");
+            connection.executeUpdate("DROP INDEX junitTypedHugePricesD");
+            connection.executeUpdate("SET WORK_MEMORY = 16");
+            assertEquals(matches, sortedRows(connection, join), "Sort-merge join");
+        }
+        finally {
+            connection.executeUpdate("DROP TABLE junitTypedHuge");
+            connection.executeUpdate("DROP TABLE junitTypedHugePrices");
+        }
+    }
+
+    @Test
+    void testAggregates() throws Exception {
+        try (ResultSet result = connection.executeQuery("SELECT SUM(big), SUM(price), AVG(price), MIN(at), MAX(active) FROM junitTyped")) {
+            assertTrue(result.next());
+            assertEquals(10000000006L, result.getLong(1));
+            assertEquals(1001.75, result.getDouble(2));
+            assertEquals(1001.75 / 3, result.getDouble(3), 1e-4, "AVG keeps 4 decimals");
+            assertEquals("2023-12-31 23:59:59.500", result.getString(4));
+            assertTrue(result.getBoolean(5));
+        }
+        assertThrows(DatabaseException.class, () -> column(connection, "SELECT SUM(active) FROM junitTyped"));
+        assertThrows(DatabaseException.class, () -> column(connection, "SELECT AVG(at) FROM junitTyped"));
+    }
+
+    @Test
+    void testIndexesOnTypedColumns() throws Exception {
+        connection.executeUpdate("CREATE INDEX junitTypedBig ON junitTyped(big)");
+        connection.executeUpdate("CREATE INDEX junitTypedAt ON junitTyped(at)");
+        assertEquals(Arrays.asList("1"), column(connection, "SELECT id FROM junitTyped WHERE big = 10000000000"));
+        assertEquals(Arrays.asList("7", "3"), column(connection, "SELECT id FROM junitTyped WHERE big < 10 ORDER BY big"));
+        assertEquals(Arrays.asList("7"), column(connection, "SELECT id FROM junitTyped WHERE at = '2024-01-05T00:00:00.000'"));
+        assertEquals(Arrays.asList(), column(connection, "SELECT id FROM junitTyped WHERE big = 'x'"));
+
+        // the hash index of a BIGINT PRIMARY KEY
+        connection.executeUpdate("CREATE TABLE junitTypedKeys (id BIGINT PRIMARY KEY, note TEXT)");
+        try {
+            connection.executeUpdate("INSERT INTO junitTypedKeys VALUES (10000000000, 'a'), (-10000000000, 'b')");
+            assertThrows(DatabaseException.class, () -> connection.executeUpdate("INSERT INTO junitTypedKeys VALUES ('+10000000000', 'c')"));
+            assertEquals(Arrays.asList("b"), column(connection, "SELECT note FROM junitTypedKeys WHERE id = -10000000000"));
+        }
+        finally {
+            connection.executeUpdate("DROP TABLE junitTypedKeys");
+        }
+    }
+
+    @Test
+    void testKeysOrderLikeValues() {
+        double[] doubles = { Double.NEGATIVE_INFINITY, -1e10, -2.5, -0.0, 0.0, 1e-300, 2.5, Double.MAX_VALUE };
+        for (int i = 1; i < doubles.length; i++)
+            assertTrue(DataType.toKey(doubles[i - 1]) <= DataType.toKey(doubles[i]));
+        assertEquals(DataType.toKey(0.0), DataType.toKey(-0.0));
+        assertEquals(-2.5, DataType.toDouble(DataType.toKey(-2.5)));
+        assertEquals("1970-01-01 00:00:00", DataType.TIMESTAMP.fromKey(0));
+        assertEquals("1969-12-31 23:59:59.999", DataType.TIMESTAMP.fromKey(-1));
+        assertEquals("true", DataType.BOOLEAN.parse("1"));
+        for (String notDouble : new String[] { "NaN", "Infinity", "1e400", "1.5d", "0x1p3", "", "1..2" })
+            assertThrows(IllegalArgumentException.class, () -> DataType.DOUBLE.parse(notDouble), notDouble);
+        assertEquals("-1.0E-5", DataType.DOUBLE.parse("-.00001"));
+    }
+
+    @Test
+    void testColumnarTablesOnlyTakeIntAndText() {
+        assertThrows(DatabaseException.class, () -> connection.executeUpdate("CREATE TABLE junitTypedColumns (id INT, price DOUBLE) WITH (storage = columnar)"));
+    }
+}
@@ -0,0 +1,116 @@
+package com.minidb;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteAheadLogTest {
+
+    private static final String testTable = "junitWalTable";
+
+    @BeforeEach
+    void setup() {
+        StorageManager.initializeStorage();
+
+        LinkedHashMap<String, String> columns = new LinkedHashMap<>();
+        columns.put("id", "INT");
+        columns.put("username", "TEXT");
+        MetaManager.createTable(testTable, columns, "id");
+        TableManager.createTableFile(testTable);
+    }
+
+    @AfterEach
+    void clear() {
+        TableManager.dropTable(testTable);
+    }
+
+    private static void insert(int id) {
+        List<String> values = new ArrayList<>();
+        values.add(Integer.toString(id));
+        values.add("'user" + id + "'");
+        assertTrue(TableManager.insertRow(testTable, values));
+    }
+
+    // the committed rows were never written to the table file, only to the log
+    private static void crash() throws Exception {
+        BufferPool.discardFile(TableManager.getTableFile(testTable));
+        WriteAheadLog.closeWithoutCheckpoint();
+        StorageManager.initializeStorage();
+    }
+
+    @Test
+    void testCommittedRowsSurviveCrash() throws Exception {
+        for (int i = 0; i < 500; i++)
+            insert(i);
+
+        crash();
+
+        List<List<String>> rows = TableManager.readAllRows(testTable);
+        assertEquals(500, rows.size(), "Every committed row should be replayed");
+        assertEquals("user499", rows.get(499).get(1));
+        assertTrue(IndexManager.containsPrimaryKey(Catalog.get(testTable), "250"), "Primary key index should be rebuilt");
+    }
+
+    @Test
+    void testRewrittenTableSurvivesCrash() throws Exception {
+        for (int i = 0; i < 10; i++)
+            insert(i);
+        List<List<String>> rows = TableManager.readAllRows(testTable);
+        rows.remove(0);
+        TableManager.overWriteTable(testTable, rows);
+
+        crash();
+
+        rows = TableManager.readAllRows(testTable);
+        assertEquals(9, rows.size());
+        assertEquals("1", rows.get(0).get(0));
+    }
+
+    @Test
+    void testTornRecordIgnored() throws Exception {
+        insert(1);
+        WriteAheadLog.flushUpTo(Long.MAX_VALUE);
+        // half written record at the end of the log
+        try (FileOutputStream out = new FileOutputStream("data/wal.log", true)) {
+            out.write(new byte[] { 0, 0, 0, 40, 1, 2, 3 });
+        }
+
+        crash();
+
+        assertEquals(1, TableManager.readAllRows(testTable).size());
+        insert(2);
+        assertEquals(2, TableManager.readAllRows(testTable).size());
+    }
+
+    @Test
+    void testUnfinishedTransactionRolledBack() throws Exception {
+        for (int i = 0; i < 10; i++)
+            insert(i);
+
+        // the transaction never commits, its changes reach the log before the crash
+        Transaction tx = TransactionManager.begin(true);
+        TransactionManager.attach(tx);
+        try {
+            insert(100);
+            insert(101);
+        } finally {
+            TransactionManager.attach(null);
+        }
+        WriteAheadLog.flushUpTo(Long.MAX_VALUE);
+
+        crash();
+
+        List<List<String>> rows = TableManager.readAllRows(testTable);
+        assertEquals(10, rows.size(), "Rows of the unfinished transaction should be undone");
+        assertFalse(IndexManager.containsPrimaryKey(Catalog.get(testTable), "100"));
+        insert(100);
+        assertEquals(11, TableManager.readAllRows(testTable).size());
+    }
+}